@@ -0,0 +1,119 @@
+package com.example.refactoring.analyzer;
+
+import com.example.refactoring.checker.MethodConflictChecker;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.ModifierKind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重复方法查找器 - 在一组后代类中查找结构相同的重复方法实现
+ */
+public class DuplicateMethodFinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateMethodFinder.class);
+
+    private final MethodConflictChecker conflictChecker;
+
+    public DuplicateMethodFinder() {
+        this.conflictChecker = new MethodConflictChecker();
+    }
+
+    /**
+     * 查找在至少两个后代类中存在结构相同实现的方法
+     *
+     * @param descendantClasses 后代类列表
+     * @return 重复方法组列表（每组的第一个方法作为上提代表）
+     */
+    public List<DuplicateGroup> findDuplicateGroups(List<CtClass<?>> descendantClasses) {
+        // 1. 按签名分桶，避免对不同签名的方法做结构比较
+        Map<String, List<CtMethod<?>>> bySignature = new LinkedHashMap<>();
+        for (CtClass<?> clazz : descendantClasses) {
+            for (CtMethod<?> method : clazz.getMethods()) {
+                if (method.getBody() == null || method.hasModifier(ModifierKind.ABSTRACT)) {
+                    continue;
+                }
+                bySignature.computeIfAbsent(method.getSignature(), k -> new ArrayList<>()).add(method);
+            }
+        }
+
+        // 2. 在每个签名桶内按结构相等聚类
+        List<DuplicateGroup> groups = new ArrayList<>();
+        for (List<CtMethod<?>> bucket : bySignature.values()) {
+            if (bucket.size() < 2) {
+                continue;
+            }
+            List<List<CtMethod<?>>> clusters = new ArrayList<>();
+            for (CtMethod<?> method : bucket) {
+                List<CtMethod<?>> target = null;
+                for (List<CtMethod<?>> cluster : clusters) {
+                    if (conflictChecker.isStructurallyIdentical(cluster.get(0), method)) {
+                        target = cluster;
+                        break;
+                    }
+                }
+                if (target == null) {
+                    target = new ArrayList<>();
+                    clusters.add(target);
+                }
+                target.add(method);
+            }
+            for (List<CtMethod<?>> cluster : clusters) {
+                if (cluster.size() >= 2) {
+                    groups.add(new DuplicateGroup(cluster));
+                    logger.debug("发现重复方法: {} ({} 处)", cluster.get(0).getSignature(), cluster.size());
+                }
+            }
+        }
+
+        logger.info("共发现 {} 组重复方法", groups.size());
+        return groups;
+    }
+
+    /**
+     * 重复方法组
+     */
+    public static class DuplicateGroup {
+        private final List<CtMethod<?>> methods;
+
+        public DuplicateGroup(List<CtMethod<?>> methods) {
+            this.methods = methods;
+        }
+
+        /**
+         * 作为上提来源的代表方法
+         */
+        public CtMethod<?> getRepresentative() {
+            return methods.get(0);
+        }
+
+        /**
+         * 代表方法所在的类
+         */
+        public CtClass<?> getRepresentativeClass() {
+            return (CtClass<?>) methods.get(0).getParent();
+        }
+
+        public List<CtMethod<?>> getMethods() {
+            return new ArrayList<>(methods);
+        }
+
+        public String getSignature() {
+            return methods.get(0).getSignature();
+        }
+
+        @Override
+        public String toString() {
+            return "DuplicateGroup{" +
+                   "signature=" + getSignature() +
+                   ", copies=" + methods.size() +
+                   '}';
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package com.example.refactoring.analyzer;
+
+import com.example.refactoring.adjuster.VisibilityAdjuster;
+import com.example.refactoring.checker.MethodConflictChecker;
+import com.example.refactoring.core.ClassFinder;
+import com.example.refactoring.core.ModuleMembership;
+import com.example.refactoring.handler.FieldPullUpHandler;
+import com.example.refactoring.handler.MethodPullUpHandler;
+import spoon.reflect.cu.SourcePosition;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.ModifierKind;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtFieldReference;
+import spoon.reflect.visitor.CtScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 上提可行性分析器 - 以只读方式评估方法上提，不修改模型也不写出文件
+ *
+ * 依次执行依赖分析、冲突检查、依赖字段与依赖方法收集以及基础实现生成计划，
+ * 汇总为一份结构化的可行性报告。
+ */
+public class PullUpFeasibilityAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PullUpFeasibilityAnalyzer.class);
+
+    private final ClassFinder classFinder;
+    private final DependencyAnalyzer dependencyAnalyzer;
+    private final MethodConflictChecker conflictChecker;
+    private final VisibilityAdjuster visibilityAdjuster;
+    private final FieldPullUpHandler fieldPullUpHandler;
+    private final MethodPullUpHandler methodPullUpHandler;
+
+    public PullUpFeasibilityAnalyzer() {
+        this.classFinder = new ClassFinder();
+        this.dependencyAnalyzer = new DependencyAnalyzer();
+        this.conflictChecker = new MethodConflictChecker();
+        this.visibilityAdjuster = new VisibilityAdjuster();
+        this.fieldPullUpHandler = new FieldPullUpHandler();
+        this.methodPullUpHandler = new MethodPullUpHandler();
+    }
+
+    /**
+     * 分析将方法从后代类上提到目标祖先类的可行性及影响范围
+     *
+     * @param method 要上提的方法
+     * @param childClass 方法所在的后代类
+     * @param targetAncestorClass 目标祖先类
+     * @param modules 本次运行共用的模块归属查询
+     * @return 可行性报告
+     */
+    public FeasibilityReport analyze(CtMethod<?> method, CtClass<?> childClass, CtClass<?> targetAncestorClass,
+                                     ModuleMembership modules) {
+        FeasibilityReport report = new FeasibilityReport(
+            childClass.getQualifiedName(), method.getSimpleName(), targetAncestorClass.getQualifiedName());
+        Set<String> files = new LinkedHashSet<>();
+        addFile(files, childClass);
+        addFile(files, targetAncestorClass);
+
+        try {
+            // 1. 依赖分析
+            DependencyAnalyzer.DependencyAnalysisResult dependencyResult =
+                dependencyAnalyzer.analyzeDependencies(method, childClass);
+            if (!dependencyResult.canBePulledUp()) {
+                dependencyResult.getDependencyIssues().forEach(issue -> report.addBlockingIssue("子类依赖: " + issue));
+            } else {
+                dependencyResult.getDependencyIssues().forEach(issue -> report.addWarning("依赖警告: " + issue));
+            }
+
+            // 2. 方法冲突检查
+            MethodConflictChecker.ConflictCheckResult conflictResult =
+                conflictChecker.checkConflict(method, childClass, targetAncestorClass);
+            if (!conflictResult.isSuccess()) {
+                report.addBlockingIssue("方法冲突: " + conflictResult.getMessage());
+            }
+
+            // 3. 可见性
+            if (visibilityAdjuster.needsVisibilityAdjustment(method)) {
+                report.widenedSignatures++;
+                report.addWarning("方法可见性将被调整为: " + visibilityAdjuster.getSuggestedVisibility(method));
+            }
+
+            // 4. 依赖字段
+            FieldPullUpHandler.FieldPullUpResult fieldPlan =
+                fieldPullUpHandler.planDependentFields(method, childClass, targetAncestorClass);
+            if (!fieldPlan.isSuccess()) {
+                report.addBlockingIssue("依赖字段无法上提: " + fieldPlan.getMessage());
+            } else {
+                for (CtField<?> field : fieldPlan.getPulledUpFields()) {
+                    report.liftedFields.add(field.getSimpleName());
+                    if (field.hasModifier(ModifierKind.PRIVATE)) {
+                        report.widenedSignatures++;
+                    }
+                    if (field.getParent() instanceof CtClass) {
+                        addFile(files, (CtClass<?>) field.getParent());
+                    }
+                }
+                fieldPlan.getWarnings().forEach(report::addWarning);
+            }
+
+            // 5. 依赖方法（抽象声明）与基础实现生成计划
+            List<CtClass<?>> descendants = classFinder.collectAllDescendantClasses(targetAncestorClass);
+            MethodPullUpHandler.MethodPullUpResult methodPlan =
+                methodPullUpHandler.planDependentMethods(method, childClass, targetAncestorClass);
+            if (!methodPlan.isSuccess()) {
+                report.addBlockingIssue("依赖方法无法上提: " + methodPlan.getMessage());
+            } else {
+                for (CtMethod<?> dependent : methodPlan.getPulledUpMethods()) {
+                    report.abstractMethods.add(dependent.getSignature());
+                    if (dependent.hasModifier(ModifierKind.PRIVATE)) {
+                        report.widenedSignatures++;
+                    }
+                    if (dependent.getParent() instanceof CtClass) {
+                        addFile(files, (CtClass<?>) dependent.getParent());
+                    }
+                    for (CtClass<?> stubOwner : methodPullUpHandler.planMissingChildStubs(
+                            dependent, childClass, targetAncestorClass, descendants)) {
+                        report.stubs.add(stubOwner.getQualifiedName() + "#" + dependent.getSignature());
+                        addFile(files, stubOwner);
+                    }
+                }
+            }
+
+            // 6. 后代类中的同签名方法（可见性调整与 @Override）
+            for (CtClass<?> descendant : descendants) {
+                if (descendant.equals(childClass)) {
+                    continue;
+                }
+                if (classFinder.findMatchingMethod(descendant, method.getSimpleName(), method.getParameters()) != null) {
+                    addFile(files, descendant);
+                }
+            }
+
+            // 7. 跨模块
+            report.crossModule = modules.isCrossModule(childClass, targetAncestorClass);
+            if (report.crossModule) {
+                report.addWarning("跨模块上提，将自动补充 pom.xml 模块依赖");
+            }
+        } catch (Exception e) {
+            logger.error("可行性分析过程中发生异常", e);
+            report.addBlockingIssue("分析失败: " + e.getMessage());
+        }
+
+        report.filesToChange.addAll(files);
+        return report;
+    }
+
+    /**
+     * 批量分析：评估类中每个方法上提到每个祖先类的可行性
+     * 
+     * 每个方法只扫描一次方法体，收集引用的字段与调用的方法，再对各祖先类分别判定；
+     * 各方法依次分析：Spoon 模型不是线程安全的，只读查询也会延迟解析引用、按需创建影子类型。
+     *
+     * @param clazz 要分析的类
+     * @param ancestors 祖先类列表（从直接父类到最顶层）
+     * @param modules 本次运行共用的模块归属查询
+     * @return 方法 × 祖先类的可行性矩阵
+     */
+    public FeasibilityMatrix analyzeMatrix(CtClass<?> clazz, List<CtClass<?>> ancestors, ModuleMembership modules) {
+        List<String> ancestorNames = new ArrayList<>();
+        List<Boolean> crossModule = new ArrayList<>();
+        for (CtClass<?> ancestor : ancestors) {
+            ancestorNames.add(ancestor.getQualifiedName());
+            crossModule.add(modules.isCrossModule(clazz, ancestor));
+        }
+        FeasibilityMatrix matrix = new FeasibilityMatrix(clazz.getQualifiedName(), ancestorNames);
+
+        List<CtMethod<?>> methods = new ArrayList<>(clazz.getMethods());
+        methods.sort(Comparator.comparing(CtMethod::getSignature));
+        if (methods.isEmpty() || ancestors.isEmpty()) {
+            return matrix;
+        }
+
+        for (CtMethod<?> method : methods) {
+            List<MatrixCell> row;
+            try {
+                row = analyzeRow(method, clazz, ancestors, crossModule);
+            } catch (Exception e) {
+                row = new ArrayList<>();
+                for (int j = 0; j < ancestors.size(); j++) {
+                    row.add(new MatrixCell(FeasibilityStatus.DEPENDENCY, "分析失败: " + e.getMessage()));
+                }
+            }
+            matrix.rows.put(method.getSignature(), row);
+        }
+        return matrix;
+    }
+
+    /**
+     * 分析单个方法对所有祖先类的可行性（方法体只扫描一次）
+     */
+    private List<MatrixCell> analyzeRow(CtMethod<?> method, CtClass<?> clazz, List<CtClass<?>> ancestors,
+                                        List<Boolean> crossModule) {
+        MemberReferences references = MemberReferences.scan(method);
+
+        // 位于 类 -> 祖先类 之间的类（不含祖先类本身），随祖先类上移逐步扩大
+        Set<CtClass<?>> between = new LinkedHashSet<>();
+        between.add(clazz);
+
+        List<MatrixCell> row = new ArrayList<>();
+        for (int i = 0; i < ancestors.size(); i++) {
+            CtClass<?> ancestor = ancestors.get(i);
+            row.add(evaluateCell(method, clazz, ancestor, references, between, crossModule.get(i)));
+            between.add(ancestor);
+        }
+        return row;
+    }
+
+    private MatrixCell evaluateCell(CtMethod<?> method, CtClass<?> clazz, CtClass<?> ancestor,
+                                    MemberReferences references, Set<CtClass<?>> between, boolean crossModule) {
+        MethodConflictChecker.ConflictCheckResult conflictResult = conflictChecker.checkConflict(method, clazz, ancestor);
+        if (!conflictResult.isSuccess()) {
+            return new MatrixCell(FeasibilityStatus.CONFLICT, conflictResult.getMessage());
+        }
+
+        // 依赖字段：目标祖先类存在同名字段时无法上提
+        for (CtField<?> field : references.fields) {
+            if (between.contains(field.getParent()) && ancestor.getField(field.getSimpleName()) != null) {
+                return new MatrixCell(FeasibilityStatus.DEPENDENCY, "父类已存在同名字段: " + field.getSimpleName());
+            }
+        }
+        // 依赖方法：目标祖先类存在同签名方法时无法上提为抽象方法
+        for (CtMethod<?> called : references.methods) {
+            if (called == method || !between.contains(called.getParent())) {
+                continue;
+            }
+            if (classFinder.findMatchingMethod(ancestor, called.getSimpleName(), called.getParameters()) != null) {
+                return new MatrixCell(FeasibilityStatus.DEPENDENCY, "父类已存在同签名方法: " + called.getSimpleName());
+            }
+        }
+
+        if (crossModule) {
+            return new MatrixCell(FeasibilityStatus.CROSS_MODULE, "跨模块上提，将自动补充 pom.xml 模块依赖");
+        }
+        return new MatrixCell(FeasibilityStatus.OK, "可以上提");
+    }
+
+    /**
+     * 方法体中引用的字段与调用的方法（一次扫描的结果）
+     */
+    private static class MemberReferences {
+        private final Set<CtField<?>> fields = new LinkedHashSet<>();
+        private final Set<CtMethod<?>> methods = new LinkedHashSet<>();
+
+        static MemberReferences scan(CtMethod<?> method) {
+            MemberReferences references = new MemberReferences();
+            method.accept(new CtScanner() {
+                @Override
+                public <T> void visitCtFieldRead(spoon.reflect.code.CtFieldRead<T> fieldRead) {
+                    addField(fieldRead.getVariable());
+                    super.visitCtFieldRead(fieldRead);
+                }
+
+                @Override
+                public <T> void visitCtFieldWrite(spoon.reflect.code.CtFieldWrite<T> fieldWrite) {
+                    addField(fieldWrite.getVariable());
+                    super.visitCtFieldWrite(fieldWrite);
+                }
+
+                @Override
+                public <T> void visitCtInvocation(spoon.reflect.code.CtInvocation<T> invocation) {
+                    addMethod(invocation.getExecutable());
+                    super.visitCtInvocation(invocation);
+                }
+
+                private void addField(CtFieldReference<?> fieldRef) {
+                    CtField<?> field = fieldRef != null ? fieldRef.getFieldDeclaration() : null;
+                    if (field != null && field.getParent() instanceof CtClass) {
+                        references.fields.add(field);
+                    }
+                }
+
+                private void addMethod(CtExecutableReference<?> methodRef) {
+                    CtExecutable<?> executable = methodRef != null ? methodRef.getExecutableDeclaration() : null;
+                    if (executable instanceof CtMethod && executable.getParent() instanceof CtClass) {
+                        references.methods.add((CtMethod<?>) executable);
+                    }
+                }
+            });
+            return references;
+        }
+    }
+
+    /**
+     * 记录类所在的源文件（嵌套类记录其顶层类文件）
+     */
+    private void addFile(Set<String> files, CtClass<?> clazz) {
+        File file = getSourceFile(clazz);
+        if (file != null) {
+            files.add(file.getAbsolutePath());
+        }
+    }
+
+    private File getSourceFile(CtType<?> type) {
+        try {
+            CtType<?> topLevel = type.getTopLevelType();
+            SourcePosition position = topLevel.getPosition();
+            return position != null && position.isValidPosition() ? position.getFile() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 矩阵单元格的可行性状态
+     */
+    public enum FeasibilityStatus {
+        OK,           // 可以上提
+        CONFLICT,     // 目标祖先类中存在冲突方法
+        DEPENDENCY,   // 依赖的字段或方法无法一并上提
+        CROSS_MODULE  // 可以上提，但跨模块
+    }
+
+    /**
+     * 矩阵单元格
+     */
+    public static class MatrixCell {
+        private final FeasibilityStatus status;
+        private final String reason;
+
+        public MatrixCell(FeasibilityStatus status, String reason) {
+            this.status = status;
+            this.reason = reason;
+        }
+
+        public FeasibilityStatus getStatus() { return status; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return status.name();
+        }
+    }
+
+    /**
+     * 方法 × 祖先类的可行性矩阵
+     */
+    public static class FeasibilityMatrix {
+        private final String className;
+        private final List<String> ancestorNames;
+        private final Map<String, List<MatrixCell>> rows = new LinkedHashMap<>();
+
+        public FeasibilityMatrix(String className, List<String> ancestorNames) {
+            this.className = className;
+            this.ancestorNames = ancestorNames;
+        }
+
+        public String getClassName() { return className; }
+        public List<String> getAncestorNames() { return new ArrayList<>(ancestorNames); }
+
+        /**
+         * @return 方法签名到各祖先类单元格（顺序与 getAncestorNames 一致）的映射
+         */
+        public Map<String, List<MatrixCell>> getRows() { return new LinkedHashMap<>(rows); }
+
+        @Override
+        public String toString() {
+            return "FeasibilityMatrix{" +
+                   "className=" + className +
+                   ", ancestors=" + ancestorNames.size() +
+                   ", methods=" + rows.size() +
+                   '}';
+        }
+    }
+
+    /**
+     * 候选目标祖先类的评分
+     *
+     * 得分 = 移除的重复代码行数 - 生成基础实现数 × 5 - 放宽可见性的声明数 × 3 - 修改的文件数；
+     * 不可上提的候选不参与排序。
+     */
+    public static class TargetScore {
+        private static final int STUB_COST = 5;
+        private static final int WIDEN_COST = 3;
+        private static final int FILE_COST = 1;
+
+        private final FeasibilityReport report;
+        private final int removedLines;
+        private final int score;
+
+        public TargetScore(FeasibilityReport report, int removedLines) {
+            this.report = report;
+            this.removedLines = removedLines;
+            this.score = removedLines
+                - report.getStubs().size() * STUB_COST
+                - report.getWidenedSignatures() * WIDEN_COST
+                - report.getFilesToChange().size() * FILE_COST;
+        }
+
+        public String getAncestorName() { return report.getTargetClassName(); }
+        public FeasibilityReport getReport() { return report; }
+        public boolean isFeasible() { return report.isFeasible(); }
+        public int getRemovedLines() { return removedLines; }
+        public int getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return getAncestorName() + ": " +
+                   (isFeasible() ? "得分=" + score : "不可上提") +
+                   "（移除重复行=" + removedLines +
+                   ", 基础实现=" + report.getStubs().size() +
+                   ", 放宽可见性=" + report.getWidenedSignatures() +
+                   ", 修改文件=" + report.getFilesToChange().size() + "）";
+        }
+    }
+
+    /**
+     * 可行性报告
+     */
+    public static class FeasibilityReport {
+        private final String className;
+        private final String methodName;
+        private final String targetClassName;
+        private final List<String> blockingIssues = new ArrayList<>();
+        private final List<String> warnings = new ArrayList<>();
+        private final List<String> liftedFields = new ArrayList<>();
+        private final List<String> abstractMethods = new ArrayList<>();
+        private final List<String> stubs = new ArrayList<>();
+        private final List<String> filesToChange = new ArrayList<>();
+        private boolean crossModule;
+        private int widenedSignatures;
+
+        public FeasibilityReport(String className, String methodName, String targetClassName) {
+            this.className = className;
+            this.methodName = methodName;
+            this.targetClassName = targetClassName;
+        }
+
+        /**
+         * 创建无法进行分析（如找不到类或方法）时的报告
+         */
+        public static FeasibilityReport failure(String className, String methodName, String targetClassName,
+                                                String message) {
+            FeasibilityReport report = new FeasibilityReport(className, methodName, targetClassName);
+            report.addBlockingIssue(message);
+            return report;
+        }
+
+        public boolean isFeasible() {
+            return blockingIssues.isEmpty();
+        }
+
+        public String getClassName() { return className; }
+        public String getMethodName() { return methodName; }
+        public String getTargetClassName() { return targetClassName; }
+        public List<String> getBlockingIssues() { return new ArrayList<>(blockingIssues); }
+        public List<String> getWarnings() { return new ArrayList<>(warnings); }
+        public List<String> getLiftedFields() { return new ArrayList<>(liftedFields); }
+        public List<String> getAbstractMethods() { return new ArrayList<>(abstractMethods); }
+        public List<String> getStubs() { return new ArrayList<>(stubs); }
+        public List<String> getFilesToChange() { return new ArrayList<>(filesToChange); }
+        public boolean isCrossModule() { return crossModule; }
+
+        /**
+         * @return 将被放宽可见性的声明数（方法自身及私有的依赖字段、依赖方法）
+         */
+        public int getWidenedSignatures() { return widenedSignatures; }
+
+        public void addBlockingIssue(String issue) {
+            this.blockingIssues.add(issue);
+        }
+
+        public void addWarning(String warning) {
+            this.warnings.add(warning);
+        }
+
+        @Override
+        public String toString() {
+            return "FeasibilityReport{" +
+                   "method=" + className + "#" + methodName +
+                   ", target=" + targetClassName +
+                   ", feasible=" + isFeasible() +
+                   ", blockingIssues=" + blockingIssues +
+                   ", liftedFields=" + liftedFields +
+                   ", abstractMethods=" + abstractMethods +
+                   ", stubs=" + stubs +
+                   ", filesToChange=" + filesToChange.size() +
+                   '}';
+        }
+    }
+}
@@ -119,6 +119,30 @@ public class MethodConflictChecker {
         return body1.equals(body2);
     }
     
+    /**
+     * 检查两个方法是否结构相同（签名、static 修饰、抛出异常与方法体的 AST 完全一致）
+     * 使用 Spoon 元素的结构相等比较，忽略源码位置与格式差异
+     */
+    public boolean isStructurallyIdentical(CtMethod<?> method1, CtMethod<?> method2) {
+        if (method1 == null || method2 == null) {
+            return false;
+        }
+        if (!hasSameSignature(method1, method2)) {
+            return false;
+        }
+        if (method1.hasModifier(spoon.reflect.declaration.ModifierKind.STATIC)
+            != method2.hasModifier(spoon.reflect.declaration.ModifierKind.STATIC)) {
+            return false;
+        }
+        if (!method1.getThrownTypes().equals(method2.getThrownTypes())) {
+            return false;
+        }
+        if (method1.getBody() == null || method2.getBody() == null) {
+            return method1.getBody() == null && method2.getBody() == null;
+        }
+        return method1.getBody().equals(method2.getBody());
+    }
+
     /**
      * 检查重载方法是否会产生冲突
      */
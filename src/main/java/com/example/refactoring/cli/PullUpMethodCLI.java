@@ -1,13 +1,23 @@
 package com.example.refactoring.cli;
 
+import com.example.refactoring.analyzer.PullUpFeasibilityAnalyzer;
 import com.example.refactoring.core.PullUpMethodRefactoring;
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.FileSystemOutputSink;
+import com.example.refactoring.core.OutputSink;
+import com.example.refactoring.core.RefactoringOptions;
 import com.example.refactoring.core.RefactoringResult;
+import com.example.refactoring.core.SnapshotManager;
+import com.example.refactoring.core.UnifiedDiffOutputSink;
+import com.example.refactoring.core.ZipOutputSink;
 
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -49,6 +59,8 @@ public class PullUpMethodCLI {
             boolean listMethods = cmd.hasOption("list-methods");
             boolean listAncestors = cmd.hasOption("list-ancestors");
             boolean restore = cmd.hasOption("restore");
+            boolean listSnapshots = cmd.hasOption("list-snapshots");
+            boolean dedup = cmd.hasOption("dedup-under");
             
             if (!cmd.hasOption("source")) {
                 System.err.println("错误: 缺少必需的参数 --source");
@@ -56,7 +68,8 @@ public class PullUpMethodCLI {
                 System.exit(1);
             }
             
-            if (!listClasses && !listMethods && !listAncestors && !restore && (!cmd.hasOption("class") || !cmd.hasOption("method"))) {
+            if (!listClasses && !listMethods && !listAncestors && !restore && !listSnapshots && !dedup
+                    && (!cmd.hasOption("class") || !cmd.hasOption("method"))) {
                 System.err.println("错误: 缺少必需的参数 --class 和 --method");
                 printHelp(options);
                 System.exit(1);
@@ -69,6 +82,18 @@ public class PullUpMethodCLI {
             String targetAncestorClassName = cmd.getOptionValue("target");
             String outputPath = cmd.getOptionValue("output");
             boolean verbose = cmd.hasOption("verbose");
+            RefactoringOptions refactoringOptions = RefactoringOptions.defaults()
+                .setRemoveIdenticalDescendantCopies(cmd.hasOption("remove-duplicates"))
+                .setSelectBestTarget(cmd.hasOption("best-target"));
+            if (cmd.hasOption("printer")) {
+                try {
+                    refactoringOptions.setPrinterMode(CodeGenerator.PrinterMode.fromName(cmd.getOptionValue("printer")));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("错误: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+            refactoringOptions.setOutputSink(createOutputSink(cmd));
             
             // 设置日志级别
             if (verbose) {
@@ -89,7 +114,11 @@ public class PullUpMethodCLI {
             }
             
             if (listMethods) {
-                listMethods(refactoring, sourcePaths, className);
+                if (cmd.hasOption("with-feasibility")) {
+                    listMethodsWithFeasibility(refactoring, sourcePaths, className);
+                } else {
+                    listMethods(refactoring, sourcePaths, className);
+                }
                 return;
             }
             
@@ -98,11 +127,17 @@ public class PullUpMethodCLI {
                 return;
             }
 
-            // 处理恢复选项
+            if (listSnapshots) {
+                listSnapshots(refactoring, sourcePaths);
+                return;
+            }
+
+            // 处理恢复选项（可指定快照 id，默认恢复最近一次）
             if (restore) {
-                boolean ok = refactoring.restoreSnapshot(sourcePaths);
+                String snapshotId = cmd.getOptionValue("restore");
+                boolean ok = refactoring.restoreSnapshot(sourcePaths, snapshotId);
                 if (ok) {
-                    System.out.println("✓ 已从快照恢复变更文件");
+                    System.out.println("✓ 已从快照" + (snapshotId != null ? " " + snapshotId : "") + " 恢复变更文件");
                     return;
                 } else {
                     System.err.println("✗ 未找到可恢复的快照或恢复失败");
@@ -110,8 +145,27 @@ public class PullUpMethodCLI {
                 }
             }
             
+            // 处理只读可行性分析选项
+            if (cmd.hasOption("check") && refactoringOptions.isSelectBestTarget() && targetAncestorClassName == null) {
+                listTargetRanking(refactoring, sourcePaths, className, methodName);
+                return;
+            }
+            if (cmd.hasOption("check")) {
+                executeCheck(refactoring, sourcePaths, className, methodName, targetAncestorClassName);
+                return;
+            }
+            
+            // 处理自动去重选项
+            if (dedup) {
+                executeDedup(refactoring, sourcePaths, cmd.getOptionValue("dedup-under"), outputPath, refactoringOptions);
+                finishOutput(cmd, refactoringOptions.getOutputSink());
+                return;
+            }
+            
             // 执行重构
-            executeRefactoring(refactoring, sourcePaths, className, methodName, targetAncestorClassName, outputPath);
+            executeRefactoring(refactoring, sourcePaths, className, methodName, targetAncestorClassName, outputPath,
+                refactoringOptions);
+            finishOutput(cmd, refactoringOptions.getOutputSink());
             
         } catch (ParseException e) {
             System.err.println("参数解析错误: " + e.getMessage());
@@ -167,6 +221,54 @@ public class PullUpMethodCLI {
             .desc("输出目录路径（默认覆盖原文件）")
             .build());
         
+        options.addOption(Option.builder()
+            .longOpt("remove-duplicates")
+            .desc("同时移除所有后代类中与被上提方法结构相同的实现")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("best-target")
+            .desc("未指定 --target 时评估所有祖先类并上提到得分最高者（同时移除后代类中的相同实现）；配合 --check 仅列出评分")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("check")
+            .desc("仅分析上提的可行性与影响范围，不修改任何文件")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("dedup-under")
+            .hasArg()
+            .argName("ancestorClassName")
+            .desc("查找指定祖先类所有后代类中的重复方法，并将可安全上提的全部上提到该祖先类")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("printer")
+            .hasArg()
+            .argName("fast|sniper")
+            .desc("写出文件使用的打印器：sniper 保留原有格式（默认），fast 使用默认打印器整体重新输出，速度更快")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("dry-run")
+            .desc("只在内存中执行重构并输出统一 diff，不修改任何文件")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("patch")
+            .hasArg()
+            .argName("file")
+            .desc("将所有修改写成一个统一 diff 补丁文件，不修改源文件")
+            .build());
+        
+        options.addOption(Option.builder()
+            .longOpt("zip")
+            .hasArg()
+            .argName("file")
+            .desc("将所有修改后的文件按相对路径打包为 zip，不修改源文件")
+            .build());
+        
         options.addOption(Option.builder("v")
             .longOpt("verbose")
             .desc("启用详细输出")
@@ -183,6 +285,11 @@ public class PullUpMethodCLI {
             .desc("列出指定类的所有方法（需要配合 --class 使用）")
             .build());
         
+        options.addOption(Option.builder()
+            .longOpt("with-feasibility")
+            .desc("配合 --list-methods 使用，列出每个方法上提到每个祖先类的可行性")
+            .build());
+        
         options.addOption(Option.builder()
             .longOpt("list-ancestors")
             .desc("列出指定类的所有祖先类（需要配合 --class 使用）")
@@ -190,7 +297,16 @@ public class PullUpMethodCLI {
 
         options.addOption(Option.builder("r")
             .longOpt("restore")
-            .desc("从项目根目录的 .refactor-snapshot 快照恢复上一次重构修改")
+            .hasArg()
+            .optionalArg(true)
+            .argName("id")
+            .desc("从项目根目录的 .refactor-snapshot 快照恢复：不带 id 时撤销最近一次重构，"
+                + "带 id 时撤销该快照及之后的所有重构")
+            .build());
+
+        options.addOption(Option.builder()
+            .longOpt("list-snapshots")
+            .desc("列出可恢复的快照（最新的在前）")
             .build());
         
         // 帮助和版本
@@ -278,6 +394,39 @@ public class PullUpMethodCLI {
         }
     }
     
+    /**
+     * 列出指定类的方法及其上提到各祖先类的可行性矩阵
+     */
+    private void listMethodsWithFeasibility(PullUpMethodRefactoring refactoring, List<String> sourcePaths, String className) {
+        if (className == null || className.trim().isEmpty()) {
+            System.err.println("错误: 使用 --list-methods 时必须指定 --class 参数");
+            return;
+        }
+        
+        System.out.println("正在分析类 " + className + " 的方法上提可行性...");
+        PullUpFeasibilityAnalyzer.FeasibilityMatrix matrix = refactoring.analyzeFeasibilityMatrix(sourcePaths, className);
+        if (matrix == null) {
+            System.err.println("错误: 找不到类 " + className);
+            return;
+        }
+        if (matrix.getAncestorNames().isEmpty()) {
+            System.out.println("类 " + className + " 没有可用的祖先类（除了Object）");
+            return;
+        }
+        
+        System.out.println("祖先类:");
+        List<String> ancestors = matrix.getAncestorNames();
+        for (int i = 0; i < ancestors.size(); i++) {
+            System.out.println("  [" + (i + 1) + "] " + ancestors.get(i));
+        }
+        System.out.println("方法可行性（列顺序同上）:");
+        matrix.getRows().forEach((signature, cells) -> {
+            StringBuilder line = new StringBuilder("  ").append(signature).append(":");
+            cells.forEach(cell -> line.append(" ").append(cell.getStatus()));
+            System.out.println(line);
+        });
+    }
+    
     /**
      * 列出指定类的祖先类
      */
@@ -301,6 +450,21 @@ public class PullUpMethodCLI {
         }
     }
     
+    /**
+     * 列出可恢复的快照
+     */
+    private void listSnapshots(PullUpMethodRefactoring refactoring, List<String> sourcePaths) {
+        List<SnapshotManager.SnapshotInfo> snapshots = refactoring.listSnapshots(sourcePaths);
+        if (snapshots.isEmpty()) {
+            System.out.println("没有可恢复的快照");
+            return;
+        }
+        System.out.println("可恢复的快照（最新的在前，使用 --restore <id> 恢复）:");
+        for (SnapshotManager.SnapshotInfo snapshot : snapshots) {
+            System.out.println("  " + snapshot);
+        }
+    }
+    
     /**
      * 执行重构
      */
@@ -309,34 +473,36 @@ public class PullUpMethodCLI {
                                   String className, 
                                   String methodName,
                                   String targetAncestorClassName,
-                                  String outputPath) {
+                                  String outputPath,
+                                  RefactoringOptions options) {
         System.out.println("开始执行 Pull-Up-Method 重构...");
         System.out.println("  源码路径: " + sourcePaths);
         System.out.println("  目标类: " + className);
         System.out.println("  目标方法: " + methodName);
         if (targetAncestorClassName != null) {
             System.out.println("  目标祖先类: " + targetAncestorClassName);
+        } else if (options.isSelectBestTarget()) {
+            System.out.println("  目标祖先类: 自动选择得分最高的祖先类");
         } else {
             System.out.println("  目标祖先类: 直接父类（默认）");
         }
         if (outputPath != null) {
             System.out.println("  输出路径: " + outputPath);
         }
+        if (options.isRemoveIdenticalDescendantCopies()) {
+            System.out.println("  移除后代类中的相同实现: 是");
+        }
         System.out.println();
         
-        RefactoringResult result;
-        if (targetAncestorClassName != null) {
-            result = refactoring.pullUpMethodToAncestor(sourcePaths, className, methodName, targetAncestorClassName, outputPath);
-        } else {
-            result = refactoring.pullUpMethod(sourcePaths, className, methodName, outputPath);
-        }
+        RefactoringResult result = refactoring.pullUpMethodToAncestor(
+            sourcePaths, className, methodName, targetAncestorClassName, outputPath, options);
         
         if (result.isSuccess()) {
             System.out.println("✓ 重构成功!");
             System.out.println("  " + result.getMessage());
             
             if (!result.getModifiedFiles().isEmpty()) {
-                System.out.println("  修改的文件:");
+                System.out.println(options.getOutputSink().writesFiles() ? "  修改的文件:" : "  将修改的文件（未写入源文件）:");
                 result.getModifiedFiles().forEach(file -> System.out.println("    " + file));
             }
             
@@ -351,6 +517,141 @@ public class PullUpMethodCLI {
         }
     }
     
+    /**
+     * 执行只读可行性分析
+     */
+    private void executeCheck(PullUpMethodRefactoring refactoring,
+                              List<String> sourcePaths,
+                              String className,
+                              String methodName,
+                              String targetAncestorClassName) {
+        PullUpFeasibilityAnalyzer.FeasibilityReport report =
+            refactoring.analyzePullUp(sourcePaths, className, methodName, targetAncestorClassName);
+        
+        String target = report.getTargetClassName() != null ? report.getTargetClassName() : "直接父类";
+        System.out.println("可行性分析: " + className + "#" + methodName + " -> " + target);
+        if (report.isFeasible()) {
+            System.out.println("✓ 可以上提");
+        } else {
+            System.out.println("✗ 无法上提");
+            System.out.println("  阻断问题:");
+            report.getBlockingIssues().forEach(issue -> System.out.println("    - " + issue));
+        }
+        printSection("将上提的字段", report.getLiftedFields());
+        printSection("将上提的抽象方法", report.getAbstractMethods());
+        printSection("将生成的基础实现", report.getStubs());
+        printSection("将修改的文件", report.getFilesToChange());
+        if (!report.getWarnings().isEmpty()) {
+            System.out.println("  警告:");
+            report.getWarnings().forEach(warning -> System.out.println("    ⚠ " + warning));
+        }
+        
+        if (!report.isFeasible()) {
+            System.exit(1);
+        }
+    }
+    
+    private void printSection(String title, List<String> items) {
+        if (!items.isEmpty()) {
+            System.out.println("  " + title + ":");
+            items.forEach(item -> System.out.println("    " + item));
+        }
+    }
+    
+    /**
+     * 列出所有候选目标祖先类的评分
+     */
+    private void listTargetRanking(PullUpMethodRefactoring refactoring,
+                                   List<String> sourcePaths,
+                                   String className,
+                                   String methodName) {
+        System.out.println("正在评估 " + className + "#" + methodName + " 的候选目标祖先类...");
+        List<PullUpFeasibilityAnalyzer.TargetScore> ranking =
+            refactoring.rankTargetAncestors(sourcePaths, className, methodName);
+        if (ranking.isEmpty()) {
+            System.err.println("✗ 没有可评估的祖先类");
+            System.exit(1);
+        }
+        for (int i = 0; i < ranking.size(); i++) {
+            System.out.println("  " + (i + 1) + ". " + ranking.get(i));
+        }
+    }
+    
+    /**
+     * 执行自动去重
+     */
+    private void executeDedup(PullUpMethodRefactoring refactoring,
+                              List<String> sourcePaths,
+                              String ancestorClassName,
+                              String outputPath,
+                              RefactoringOptions options) {
+        System.out.println("开始执行自动去重...");
+        System.out.println("  源码路径: " + sourcePaths);
+        System.out.println("  目标祖先类: " + ancestorClassName);
+        if (outputPath != null) {
+            System.out.println("  输出路径: " + outputPath);
+        }
+        System.out.println();
+        
+        RefactoringResult result = refactoring.dedupUnderAncestor(sourcePaths, ancestorClassName, outputPath, options);
+        
+        if (result.isSuccess()) {
+            System.out.println("✓ 自动去重完成!");
+            System.out.println("  " + result.getMessage());
+            
+            if (!result.getModifiedFiles().isEmpty()) {
+                System.out.println(options.getOutputSink().writesFiles() ? "  修改的文件:" : "  将修改的文件（未写入源文件）:");
+                result.getModifiedFiles().forEach(file -> System.out.println("    " + file));
+            }
+            
+            if (!result.getWarnings().isEmpty()) {
+                System.out.println("  详情:");
+                result.getWarnings().forEach(warning -> System.out.println("    " + warning));
+            }
+        } else {
+            System.err.println("✗ 自动去重失败!");
+            System.err.println("  " + result.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * 创建命令行指定的输出目标（默认直接写入文件系统）
+     */
+    private OutputSink createOutputSink(CommandLine cmd) {
+        if (cmd.hasOption("dry-run")) {
+            return new UnifiedDiffOutputSink();
+        }
+        if (cmd.hasOption("patch")) {
+            return new UnifiedDiffOutputSink(new File(cmd.getOptionValue("patch")), StandardCharsets.UTF_8);
+        }
+        if (cmd.hasOption("zip")) {
+            return new ZipOutputSink(new File(cmd.getOptionValue("zip")));
+        }
+        return new FileSystemOutputSink();
+    }
+    
+    /**
+     * 结束输出：写出补丁或压缩包，预览模式下打印 diff
+     */
+    private void finishOutput(CommandLine cmd, OutputSink outputSink) {
+        try {
+            outputSink.close();
+        } catch (IOException e) {
+            System.err.println("✗ 输出失败: " + e.getMessage());
+            System.exit(1);
+        }
+        if (cmd.hasOption("dry-run")) {
+            String diff = ((UnifiedDiffOutputSink) outputSink).getDiff();
+            System.out.println();
+            System.out.println(diff.isEmpty() ? "（没有需要修改的内容）" : diff);
+        } else if (cmd.hasOption("patch")) {
+            System.out.println("  补丁文件: " + new File(cmd.getOptionValue("patch")).getAbsolutePath());
+        } else if (cmd.hasOption("zip")) {
+            System.out.println("  压缩包: " + ((ZipOutputSink) outputSink).getArchiveFile().getAbsolutePath());
+        }
+    }
+    
     /**
      * 打印帮助信息
      */
@@ -378,14 +679,42 @@ public class PullUpMethodCLI {
         System.out.println("  # 列出类的所有方法");
         System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child --list-methods");
         System.out.println();
+        System.out.println("  # 列出类的所有方法及其上提到各祖先类的可行性");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child --list-methods --with-feasibility");
+        System.out.println();
         System.out.println("  # 列出类的祖先类");
         System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child --list-ancestors");
         System.out.println();
+        System.out.println("  # 上提并一次性移除所有后代类中的相同实现");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove --remove-duplicates");
+        System.out.println();
+        System.out.println("  # 自动选择得分最高的目标祖先类");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove --best-target");
+        System.out.println();
+        System.out.println("  # 仅检查能否上提及影响范围（不修改文件）");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove --check");
+        System.out.println();
+        System.out.println("  # 将指定祖先类下所有可安全上提的重复方法一次性上提");
+        System.out.println("  java -jar tool.jar -s src/main/java --dedup-under com.example.BaseFigure");
+        System.out.println();
         System.out.println("  # 输出到指定目录");
         System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove -o output/");
         System.out.println();
-        System.out.println("  # 从最新快照恢复");
+        System.out.println("  # 输出到指定目录并使用快速打印器（整体重新格式化）");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove -o output/ --printer=fast");
+        System.out.println();
+        System.out.println("  # 预览修改（输出统一 diff，不修改任何文件）");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove --dry-run");
+        System.out.println();
+        System.out.println("  # 将修改写成补丁文件供 CI 使用");
+        System.out.println("  java -jar tool.jar -s src/main/java -c com.example.Child -m methodToMove --patch out.diff");
+        System.out.println();
+        System.out.println("  # 撤销最近一次重构（再次执行继续撤销更早的一次）");
         System.out.println("  java -jar tool.jar -s src/main/java --restore");
+        System.out.println();
+        System.out.println("  # 列出快照并撤销到指定快照之前");
+        System.out.println("  java -jar tool.jar -s src/main/java --list-snapshots");
+        System.out.println("  java -jar tool.jar -s src/main/java --restore 20240101-120000-000");
     }
     
     /**
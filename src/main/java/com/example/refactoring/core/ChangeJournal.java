@@ -0,0 +1,459 @@
+package com.example.refactoring.core;
+
+import spoon.compiler.Environment;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtPackage;
+import spoon.reflect.declaration.CtShadowable;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.ModifierKind;
+import spoon.reflect.path.CtRole;
+import spoon.support.modelobs.ChangeCollector;
+import spoon.support.modelobs.EmptyModelChangeListener;
+import spoon.support.modelobs.FineModelChangeListener;
+import spoon.support.modelobs.SourceFragmentCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 模型变更日志 - 记录重构期间对模型的所有修改，并支持在内存中回滚
+ *
+ * 以模型变更监听器的方式挂接到 Spoon 环境上：每个（元素, 角色）在首次被修改前保存其原值，
+ * 回滚时按相反顺序写回原值。原有监听器（Sniper 打印器依赖的 ChangeCollector）仍会收到所有通知，
+ * 但在打印前必须调用 {@link #close()} 或 {@link #rollback()} 将其恢复为环境的监听器。
+ * 打印器的 import 预处理同样会修改模型，需要撤销时在打印前调用 {@link #recordPrinting()}。
+ */
+public class ChangeJournal implements FineModelChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeJournal.class);
+
+    private final Environment environment;
+    private final FineModelChangeListener delegate;
+
+    /** 元素 -> 角色 -> 首次修改前的值（按首次修改的顺序） */
+    private final Map<CtElement, Map<CtRole, Object>> originalValues = new IdentityHashMap<>();
+    private final List<Change> changes = new ArrayList<>();
+    private final Set<CtType<?>> touchedTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<CtCompilationUnit, Boolean> touchedUnits = new IdentityHashMap<>();
+    private final List<CtCompilationUnit> touchedUnitOrder = new ArrayList<>();
+    private boolean closed;
+    private ChangeJournal printing;
+
+    private ChangeJournal(Environment environment) {
+        this.environment = environment;
+        this.delegate = environment.getModelChangeListener();
+    }
+
+    /**
+     * 在指定环境上开始记录
+     */
+    public static ChangeJournal begin(Environment environment) {
+        ChangeJournal journal = new ChangeJournal(environment);
+        environment.setModelChangeListener(journal);
+        return journal;
+    }
+
+    /**
+     * 停止记录并保留所有修改
+     */
+    public void close() {
+        if (!closed) {
+            environment.setModelChangeListener(delegate);
+            closed = true;
+        }
+    }
+
+    /**
+     * 在已关闭的日志上继续记录打印期间的修改：打印器的 import 预处理会修改编译单元的 import 与引用的隐式标记。
+     *
+     * 挂接一个 Sniper 打印器可用的变更收集器，修改仍记入原收集器，向打印器报告的也是原收集器的记录；
+     * 打印期间的修改单独保存，不出现在 {@link #getChanges()} 等查询中，{@link #rollback()} 时先于其他修改撤销。
+     * 打印可以并发进行；结束后由调用方恢复环境原有的监听器。
+     */
+    public void recordPrinting() {
+        if (!closed) {
+            throw new IllegalStateException("打印前必须先关闭变更日志");
+        }
+        if (printing == null) {
+            printing = new ChangeJournal(environment);
+        }
+        ChangeCollector collector = ChangeCollector.getChangeCollector(environment);
+        if (collector != null) {
+            new PrintingCollector(printing, collector, environment.getModelChangeListener()).attachTo(environment);
+        } else {
+            // 环境中没有 Sniper 的变更收集器（快速模式打印不需要），直接挂接打印日志
+            environment.setModelChangeListener(printing);
+        }
+    }
+
+    /**
+     * 停止记录并将所有被修改的（元素, 角色）恢复为修改前的值
+     *
+     * @return 是否全部恢复成功；为false时模型与修改前不一致，不应继续使用
+     */
+    public boolean rollback() {
+        close();
+        boolean restored = printing == null || printing.rollback();
+        List<Change> firstTouches = new ArrayList<>();
+        for (Change change : changes) {
+            // 按需构建的内容在任何修改撤销前判断：撤销顺序与构建相反，其 shadow 标记会先被清除
+            if (change.firstTouch && !isLazilyBuilt(change.element)) {
+                firstTouches.add(change);
+            }
+        }
+        Collections.reverse(firstTouches);
+
+        // 回滚本身不应再被 ChangeCollector 记录为修改
+        environment.setModelChangeListener(new EmptyModelChangeListener());
+        try {
+            for (Change change : firstTouches) {
+                Object original = originalValues.get(change.element).get(change.role);
+                try {
+                    change.element.setValueByRole(change.role, original);
+                } catch (Exception e) {
+                    restored = false;
+                    logger.warn("回滚 {} 的 {} 失败: {}", change.element.getClass().getSimpleName(), change.role,
+                        e.getMessage());
+                }
+            }
+        } finally {
+            environment.setModelChangeListener(delegate);
+        }
+        logger.debug("回滚了 {} 处模型修改", firstTouches.size());
+        originalValues.clear();
+        return restored;
+    }
+
+    /**
+     * @return 记录到的所有修改（按发生顺序）
+     */
+    public List<Change> getChanges() {
+        return new ArrayList<>(changes);
+    }
+
+    /**
+     * @return 被修改的元素所在的顶层类型
+     */
+    public Set<CtType<?>> getTouchedTypes() {
+        Set<CtType<?>> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        result.addAll(touchedTypes);
+        return result;
+    }
+
+    /**
+     * 获取（元素, 角色）在本日志开始记录后首次被修改前的值
+     * 
+     * @return 原值（集合类型为副本）；未被修改过时返回元素的当前值
+     */
+    public Object getOriginalValue(CtElement element, CtRole role) {
+        Map<CtRole, Object> roles = originalValues.get(element);
+        if (roles != null && roles.containsKey(role)) {
+            return roles.get(role);
+        }
+        return element.getValueByRole(role);
+    }
+
+    /**
+     * @return 归属于指定编译单元的修改中每个（元素, 角色）的首次修改
+     */
+    public List<Change> getFirstTouches(CtCompilationUnit unit) {
+        List<Change> result = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.firstTouch && change.compilationUnit == unit) {
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 被修改的编译单元（按首次修改的顺序），即需要快照和重新输出的源文件
+     */
+    public List<CtCompilationUnit> getTouchedCompilationUnits() {
+        return new ArrayList<>(touchedUnitOrder);
+    }
+
+    private synchronized void record(CtElement element, CtRole role) {
+        if (closed || element == null || role == null) {
+            return;
+        }
+        Map<CtRole, Object> roles = originalValues.computeIfAbsent(element, k -> new LinkedHashMap<>());
+        boolean firstTouch = !roles.containsKey(role);
+        if (firstTouch) {
+            try {
+                roles.put(role, copyValue(element.getValueByRole(role)));
+            } catch (Exception e) {
+                // 克隆等内部过程报告的角色不一定能通过 getValueByRole 读取，这类元素尚未进入模型，无需回滚
+                logger.debug("无法记录 {} 的 {}: {}", element.getClass().getSimpleName(), role, e.getMessage());
+                firstTouch = false;
+            }
+        }
+        CtType<?> type = findTopLevelType(element);
+        if (type != null) {
+            touchedTypes.add(type);
+        }
+        CtCompilationUnit unit = findCompilationUnit(element, type);
+        if (unit != null && touchedUnits.put(unit, Boolean.TRUE) == null) {
+            touchedUnitOrder.add(unit);
+        }
+        changes.add(new Change(element, role, firstTouch, type, unit));
+    }
+
+    /**
+     * 查询时通过反射按需构建的类型（shadow）及其所在的包结构：Spoon 在类型工厂中缓存构建结果，
+     * 撤销构建过程只会留下没有成员与父类型的空壳，之后的子类型判断等查询随之出错。重构本身不增删包与类型
+     */
+    private static boolean isLazilyBuilt(CtElement element) {
+        if (element instanceof CtPackage) {
+            return true;
+        }
+        for (CtElement current = element; current != null;
+             current = current.isParentInitialized() ? current.getParent() : null) {
+            if (current instanceof CtShadowable && ((CtShadowable) current).isShadow()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 集合类的值需要复制，否则保存的是会被随后修改的同一个实例
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object copyValue(Object value) {
+        if (value instanceof List) {
+            return new ArrayList<>((List) value);
+        }
+        if (value instanceof Set) {
+            return new LinkedHashSet<>((Set) value);
+        }
+        if (value instanceof Map) {
+            return new LinkedHashMap<>((Map) value);
+        }
+        return value;
+    }
+
+    private CtType<?> findTopLevelType(CtElement element) {
+        try {
+            CtType<?> type = element instanceof CtType ? (CtType<?>) element : element.getParent(CtType.class);
+            return type != null ? type.getTopLevelType() : null;
+        } catch (Exception e) {
+            // 尚未挂接到模型中的新元素
+            return null;
+        }
+    }
+
+    /**
+     * 类型成员的修改归属于顶层类型所在的编译单元；import 等修改直接挂在编译单元上
+     */
+    private CtCompilationUnit findCompilationUnit(CtElement element, CtType<?> topLevelType) {
+        try {
+            if (topLevelType != null) {
+                if (topLevelType.getPosition().isValidPosition()) {
+                    return topLevelType.getPosition().getCompilationUnit();
+                }
+                return null;
+            }
+            CtCompilationUnit unit = element instanceof CtCompilationUnit
+                ? (CtCompilationUnit) element : element.getParent(CtCompilationUnit.class);
+            return unit instanceof CtCompilationUnit ? (CtCompilationUnit) unit : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void onObjectUpdate(CtElement currentElement, CtRole role, CtElement newValue, CtElement oldValue) {
+        record(currentElement, role);
+        delegate.onObjectUpdate(currentElement, role, newValue, oldValue);
+    }
+
+    @Override
+    public void onObjectUpdate(CtElement currentElement, CtRole role, Object newValue, Object oldValue) {
+        record(currentElement, role);
+        delegate.onObjectUpdate(currentElement, role, newValue, oldValue);
+    }
+
+    @Override
+    public void onObjectDelete(CtElement currentElement, CtRole role, CtElement oldValue) {
+        record(currentElement, role);
+        delegate.onObjectDelete(currentElement, role, oldValue);
+    }
+
+    @Override
+    public void onListAdd(CtElement currentElement, CtRole role, List field, CtElement newValue) {
+        record(currentElement, role);
+        delegate.onListAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public void onListAdd(CtElement currentElement, CtRole role, List field, int index, CtElement newValue) {
+        record(currentElement, role);
+        delegate.onListAdd(currentElement, role, field, index, newValue);
+    }
+
+    @Override
+    public void onListDelete(CtElement currentElement, CtRole role, List field,
+                             Collection<? extends CtElement> oldValue) {
+        record(currentElement, role);
+        delegate.onListDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onListDelete(CtElement currentElement, CtRole role, List field, int index, CtElement oldValue) {
+        record(currentElement, role);
+        delegate.onListDelete(currentElement, role, field, index, oldValue);
+    }
+
+    @Override
+    public void onListDeleteAll(CtElement currentElement, CtRole role, List field, List oldValue) {
+        record(currentElement, role);
+        delegate.onListDeleteAll(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public <K, V> void onMapAdd(CtElement currentElement, CtRole role, Map<K, V> field, K key, CtElement newValue) {
+        record(currentElement, role);
+        delegate.onMapAdd(currentElement, role, field, key, newValue);
+    }
+
+    @Override
+    public <K, V> void onMapDelete(CtElement currentElement, CtRole role, Map<K, V> field, K key, CtElement oldValue) {
+        record(currentElement, role);
+        delegate.onMapDelete(currentElement, role, field, key, oldValue);
+    }
+
+    @Override
+    public <K, V> void onMapDeleteAll(CtElement currentElement, CtRole role, Map<K, V> field, Map<K, V> oldValue) {
+        record(currentElement, role);
+        delegate.onMapDeleteAll(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onSetAdd(CtElement currentElement, CtRole role, Set field, CtElement newValue) {
+        record(currentElement, role);
+        delegate.onSetAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public <T extends Enum> void onSetAdd(CtElement currentElement, CtRole role, Set field, T newValue) {
+        record(currentElement, role);
+        delegate.onSetAdd(currentElement, role, field, newValue);
+    }
+
+    @Override
+    public void onSetDelete(CtElement currentElement, CtRole role, Set field, CtElement oldValue) {
+        record(currentElement, role);
+        delegate.onSetDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onSetDelete(CtElement currentElement, CtRole role, Set field, Collection<ModifierKind> oldValue) {
+        record(currentElement, role);
+        delegate.onSetDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onSetDelete(CtElement currentElement, CtRole role, Set field, ModifierKind oldValue) {
+        record(currentElement, role);
+        delegate.onSetDelete(currentElement, role, field, oldValue);
+    }
+
+    @Override
+    public void onSetDeleteAll(CtElement currentElement, CtRole role, Set field, Set oldValue) {
+        record(currentElement, role);
+        delegate.onSetDeleteAll(currentElement, role, field, oldValue);
+    }
+
+    /**
+     * 打印期间挂接的变更收集器：修改记录到打印日志并转发给原收集器，查询直接交给原收集器。
+     * 原收集器判断子元素是否修改时直接读取自身的记录，因此不能只合并 {@link #getDirectChanges} 的结果
+     */
+    private static final class PrintingCollector extends SourceFragmentCreator {
+        private final ChangeJournal journal;
+        private final ChangeCollector previous;
+        private final FineModelChangeListener previousListener;
+
+        PrintingCollector(ChangeJournal journal, ChangeCollector previous, FineModelChangeListener previousListener) {
+            this.journal = journal;
+            this.previous = previous;
+            this.previousListener = previousListener;
+        }
+
+        @Override
+        protected void onChange(CtElement currentElement, CtRole role) {
+            journal.record(currentElement, role);
+            // 原收集器的监听器对任何通知都只按（元素, 角色）记录
+            synchronized (previous) {
+                previousListener.onObjectUpdate(currentElement, role, (Object) null, (Object) null);
+            }
+        }
+
+        @Override
+        public Set<CtRole> getDirectChanges(CtElement element) {
+            synchronized (previous) {
+                return previous.getDirectChanges(element);
+            }
+        }
+
+        @Override
+        public Set<CtRole> getChanges(CtElement element) {
+            synchronized (previous) {
+                return previous.getChanges(element);
+            }
+        }
+    }
+
+    /**
+     * 一次模型修改
+     */
+    public static class Change {
+        private final CtElement element;
+        private final CtRole role;
+        private final boolean firstTouch;
+        private final CtType<?> topLevelType;
+        private final CtCompilationUnit compilationUnit;
+
+        public Change(CtElement element, CtRole role, boolean firstTouch, CtType<?> topLevelType,
+                      CtCompilationUnit compilationUnit) {
+            this.element = element;
+            this.role = role;
+            this.firstTouch = firstTouch;
+            this.topLevelType = topLevelType;
+            this.compilationUnit = compilationUnit;
+        }
+
+        public CtElement getElement() { return element; }
+        public CtRole getRole() { return role; }
+        public boolean isFirstTouch() { return firstTouch; }
+
+        /**
+         * @return 修改发生时元素所在的顶层类型（尚未挂接到模型的新元素为null）
+         */
+        public CtType<?> getTopLevelType() { return topLevelType; }
+
+        /**
+         * @return 修改所归属的编译单元（无法确定时为null）
+         */
+        public CtCompilationUnit getCompilationUnit() { return compilationUnit; }
+
+        @Override
+        public String toString() {
+            return "Change{" +
+                   "element=" + element.getClass().getSimpleName() +
+                   ", role=" + role +
+                   ", type=" + (topLevelType != null ? topLevelType.getQualifiedName() : "-") +
+                   '}';
+        }
+    }
+}
@@ -1,65 +1,170 @@
 package com.example.refactoring.core;
 
 import spoon.reflect.CtModel;
-import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtCompilationUnit;
 import spoon.reflect.declaration.CtType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * 代码生成器
- * 负责生成完整的Java文件内容并写入文件系统
+ * 负责生成完整的Java文件内容，并通过 {@link OutputSink} 写入文件系统或其他输出目标
  */
 public class CodeGenerator {
     
     private static final Logger logger = LoggerFactory.getLogger(CodeGenerator.class);
     
+    /** 写文件的最大并发数，避免大量并发写入争用磁盘 */
+    private static final int MAX_WRITE_THREADS = 4;
+    
+    /** 打印编译单元的最大并发数 */
+    private final int printThreads;
+    
+    public CodeGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
     /**
-     * 只写入被修改的类，避免重写所有文件
+     * @param printThreads 打印编译单元的最大并发数
+     */
+    public CodeGenerator(int printThreads) {
+        this.printThreads = Math.max(1, printThreads);
+    }
+    
+    /**
+     * 只写入被修改的编译单元，避免重写其他文件
      * 
-     * @param childClass 子类
-     * @param parentClass 父类
+     * @param units 重构过程中被修改的编译单元（由 {@link ChangeJournal} 记录）
      * @param outputPath 输出路径
      * @param sourcePaths 源路径列表
-     * @param classFinder 类查找器
      * @return 修改的文件列表
      */
-    public List<String> writeModifiedClassesOnly(CtClass<?> childClass, CtClass<?> parentClass, 
-                                                String outputPath, List<String> sourcePaths,
-                                                ClassFinder classFinder) {
-        List<String> modifiedFiles = new ArrayList<>();
-        
-        try {
-            // 收集所有被修改的类
-            Set<CtClass<?>> modifiedClasses = collectModifiedClasses(childClass, parentClass, classFinder);
-            
-            // 写入每个修改的类
-            for (CtClass<?> clazz : modifiedClasses) {
-                String filePath = writeClass(clazz, outputPath, sourcePaths);
-                if (filePath != null) {
-                    modifiedFiles.add(filePath);
-                    logger.info("已修改文件: {} ({})", filePath, clazz.getSimpleName());
+    public List<String> writeCompilationUnits(Collection<? extends CtCompilationUnit> units,
+                                              String outputPath, List<String> sourcePaths) {
+        WritePlan plan = planWrites(units, outputPath, sourcePaths);
+        writePlan(plan);
+        return plan.getTargetFiles();
+    }
+    
+    /**
+     * 生成写出计划：每个编译单元只打印一次，并与目标文件的现有内容按哈希比较，内容相同的文件不再写入
+     * 
+     * @param units 需要输出的编译单元
+     * @param outputPath 输出路径（null表示覆盖原文件）
+     * @param sourcePaths 源路径列表
+     * @return 写出计划
+     */
+    public WritePlan planWrites(Collection<? extends CtCompilationUnit> units, String outputPath,
+                                List<String> sourcePaths) {
+        return planWrites(units, outputPath, sourcePaths, PrinterMode.SNIPER);
+    }
+    
+    /**
+     * 使用指定打印模式生成写出计划
+     * 
+     * @param printerMode 打印模式
+     */
+    public WritePlan planWrites(Collection<? extends CtCompilationUnit> units, String outputPath,
+                                List<String> sourcePaths, PrinterMode printerMode) {
+        return planWrites(units, outputPath, sourcePaths, printerMode, null);
+    }
+    
+    /**
+     * 使用指定打印模式生成写出计划，Sniper 模式下优先按变更日志对原文件做文本编辑
+     * 
+     * @param journal 覆盖整个重构过程的变更日志（已关闭），为null时总是使用打印器
+     */
+    public WritePlan planWrites(Collection<? extends CtCompilationUnit> units, String outputPath,
+                                List<String> sourcePaths, PrinterMode printerMode, ChangeJournal journal) {
+        WritePlan plan = new WritePlan();
+        List<CtCompilationUnit> printable = new ArrayList<>();
+        for (CtCompilationUnit unit : units) {
+            if (unit.getFile() != null) {
+                printable.add(unit);
+            }
+        }
+        List<String> contents = renderCompilationUnits(printable, printerMode, journal);
+        for (int i = 0; i < printable.size(); i++) {
+            String content = contents.get(i);
+            if (content == null) {
+                continue;
+            }
+            File originalFile = printable.get(i).getFile();
+            File targetFile = determineTargetFile(originalFile, outputPath, sourcePaths);
+            // 按读取源码时的编码写回，未修改的文本逐字节保持不变
+            byte[] bytes = content.getBytes(printable.get(i).getFactory().getEnvironment().getEncoding());
+            if (hasSameContent(targetFile, bytes)) {
+                plan.skipped.add(targetFile.getAbsolutePath());
+                logger.debug("文件内容未变化，跳过写入: {}", targetFile.getAbsolutePath());
+            } else {
+                plan.entries.put(targetFile,
+                    new WritePlan.Entry(originalFile, getRelativePath(originalFile, sourcePaths), bytes));
+            }
+        }
+        return plan;
+    }
+    
+    /**
+     * 按计划写出文件到文件系统
+     * 
+     * @return 实际写入的文件列表
+     */
+    public List<String> writePlan(WritePlan plan) {
+        return writePlan(plan, new FileSystemOutputSink());
+    }
+    
+    /**
+     * 按计划将文件输出到指定输出目标
+     * 
+     * 写入文件系统时并发写出；其他输出目标按计划顺序逐个输出，保证补丁与压缩包的条目顺序稳定。
+     * 
+     * @return 成功输出的目标文件列表
+     */
+    public List<String> writePlan(WritePlan plan, OutputSink sink) {
+        List<Map.Entry<File, WritePlan.Entry>> entries = new ArrayList<>(plan.entries.entrySet());
+        int threads = sink.writesFiles() ? Math.min(MAX_WRITE_THREADS, entries.size()) : 1;
+        List<Boolean> results = runInOrder(entries, threads, entry -> {
+            File targetFile = entry.getKey();
+            WritePlan.Entry planned = entry.getValue();
+            try {
+                sink.write(planned.originalFile, targetFile, planned.relativePath, planned.content);
+                if (sink.writesFiles()) {
+                    logger.info("已修改文件: {}", targetFile.getAbsolutePath());
+                } else {
+                    logger.debug("已输出: {}", planned.relativePath);
                 }
+                return Boolean.TRUE;
+            } catch (IOException e) {
+                logger.error("写入文件失败: {}", targetFile.getAbsolutePath(), e);
+                return Boolean.FALSE;
+            }
+        });
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                written.add(entries.get(i).getKey().getAbsolutePath());
             }
-            
-            logger.info("重构完成：修改了 {} 个相关类文件", modifiedFiles.size());
-            
-        } catch (Exception e) {
-            logger.error("写入修改的类失败", e);
-            // 如果失败，回退到原来的全量写入方式
-            logger.warn("回退到全量文件写入方式");
-            return writeAllResults(childClass.getFactory().getModel(), outputPath, sourcePaths);
         }
-        
-        return modifiedFiles;
+        logger.info("重构完成：修改了 {} 个相关类文件，跳过 {} 个内容未变化的文件", written.size(), plan.getSkippedCount());
+        return written;
     }
     
     /**
@@ -98,128 +203,163 @@ public class CodeGenerator {
      * 生成包含package声明、import语句和类定义的完整文件内容
      */
     public String generateFullFileContentWithAutoImports(CtType<?> type) {
-        try {
-            spoon.reflect.factory.Factory factory = type.getFactory();
-            if (factory == null || factory.getEnvironment() == null) {
-                return type.toString();
-            }
-            
-            boolean originalAutoImports = factory.getEnvironment().isAutoImports();
-            try {
-                factory.getEnvironment().setAutoImports(true);
-                // 使用 PrettyPrinter 打印整个编译单元，包含 package 和 imports
-                spoon.reflect.cu.CompilationUnit cu = getOrCreateCompilationUnit(type, factory);
-                if (cu != null) {
-                    // 使用 SniperJavaPrettyPrinter 以避免丢失原有的 import static
-                    spoon.support.sniper.SniperJavaPrettyPrinter sniperPrinter =
-                        new spoon.support.sniper.SniperJavaPrettyPrinter(factory.getEnvironment());
-                    sniperPrinter.calculate(cu, cu.getDeclaredTypes());
-                    String result = sniperPrinter.getResult();
-                    
-                    // 修复Spoon PrettyPrinter的问题
-                    result = fixOverrideAnnotationFormatting(result);
-                    
-                    return result;
-                }
-                return type.toString();
-            } finally {
-                factory.getEnvironment().setAutoImports(originalAutoImports);
-            }
-        } catch (Exception e) {
-            logger.warn("生成完整文件内容失败: {}", e.getMessage());
+        spoon.reflect.factory.Factory factory = type.getFactory();
+        if (factory == null || factory.getEnvironment() == null) {
+            return type.toString();
+        }
+        CtCompilationUnit cu = getOrCreateCompilationUnit(type, factory);
+        if (cu == null) {
             return type.toString();
         }
+        String content = generateCompilationUnitContent(cu);
+        return content != null ? content : type.toString();
     }
     
     /**
-     * 收集所有被修改的类
+     * 生成编译单元的完整文件内容
+     * 
+     * @return 文件内容，生成失败时返回null
      */
-    private Set<CtClass<?>> collectModifiedClasses(CtClass<?> childClass, CtClass<?> parentClass, 
-                                                  ClassFinder classFinder) {
-        Set<CtClass<?>> modifiedClasses = new HashSet<>();
-        modifiedClasses.add(childClass);
-        modifiedClasses.add(parentClass);
-        
-        // 添加所有被可见性调整影响的后代类（包括间接子类）
-        List<CtClass<?>> allDescendantClasses = classFinder.collectAllDescendantClasses(parentClass);
-        for (CtClass<?> descendantClass : allDescendantClasses) {
-            if (!descendantClass.equals(childClass)) {
-                // 检查是否有方法被修改（添加了@Override注解或调整了可见性）
-                if (hasMethodModifications(descendantClass)) {
-                    modifiedClasses.add(descendantClass);
-                    logger.info("检测到后代类 {} 有方法修改，将包含在输出中", descendantClass.getSimpleName());
-                }
-            }
-        }
-        
-        return modifiedClasses;
+    public String generateCompilationUnitContent(CtCompilationUnit cu) {
+        return renderCompilationUnits(Collections.singletonList(cu)).get(0);
     }
-
+    
+    /**
+     * 打印一组编译单元，结果顺序与输入顺序一致
+     * 
+     * 编译单元之间相互独立，多个编译单元时并发打印，每个任务使用独立的打印器实例；
+     * 打印只读取模型，自动import开关在整批打印前后统一设置和恢复。
+     * 
+     * @return 每个编译单元的文件内容，生成失败的位置为null
+     */
+    public List<String> renderCompilationUnits(List<? extends CtCompilationUnit> units) {
+        return renderCompilationUnits(units, PrinterMode.SNIPER);
+    }
+    
+    /**
+     * 使用指定打印模式打印一组编译单元，结果顺序与输入顺序一致
+     */
+    public List<String> renderCompilationUnits(List<? extends CtCompilationUnit> units, PrinterMode printerMode) {
+        return renderCompilationUnits(units, printerMode, null);
+    }
+    
     /**
-     * 提供给外部使用：获取将被写入的原始文件的绝对路径列表（基于被修改的类集合）。
+     * 使用指定打印模式打印一组编译单元
+     * 
+     * Sniper 模式下若提供了变更日志，先由 {@link TextEditEngine} 将修改转换为原文件上的文本编辑，
+     * 无法转换（不支持的修改或编辑区间重叠）的编译单元再回退到 Sniper 打印。
+     * 提供了变更日志时，打印器预处理对模型的修改也记录到该日志中，回滚时一并撤销。
+     * 
+     * @param journal 变更日志（已关闭），可为null
      */
-    public List<String> getOriginalFilePathsForModifiedClasses(CtClass<?> childClass,
-                                                               CtClass<?> parentClass,
-                                                               ClassFinder classFinder) {
-        List<String> files = new ArrayList<>();
+    public List<String> renderCompilationUnits(List<? extends CtCompilationUnit> units, PrinterMode printerMode,
+                                               ChangeJournal journal) {
+        if (units.isEmpty()) {
+            return new ArrayList<>();
+        }
+        spoon.compiler.Environment environment = units.get(0).getFactory().getEnvironment();
+        boolean originalAutoImports = environment.isAutoImports();
+        spoon.support.modelobs.FineModelChangeListener originalListener = environment.getModelChangeListener();
         try {
-            Set<CtClass<?>> modified = collectModifiedClasses(childClass, parentClass, classFinder);
-            for (CtClass<?> clazz : modified) {
-                if (clazz.getPosition() != null && clazz.getPosition().getFile() != null) {
-                    files.add(clazz.getPosition().getFile().getAbsolutePath());
+            environment.setAutoImports(true);
+            int threads = Math.min(units.size(), printThreads);
+            if (journal != null) {
+                // import 预处理器会修改各自编译单元的 import 与引用的隐式标记，记录下来以便调用方回滚模型
+                journal.recordPrinting();
+            }
+            if (printerMode == PrinterMode.FAST) {
+                // 快速模式的这些修改只服务于本次输出，没有变更日志时不需要被变更收集器记录
+                if (journal == null) {
+                    environment.setModelChangeListener(new spoon.support.modelobs.EmptyModelChangeListener());
                 }
+                return runInOrder(units, threads, this::printCompilationUnitFast);
             }
-        } catch (Exception e) {
-            logger.warn("收集原始文件路径失败: {}", e.getMessage());
+            if (journal != null) {
+                TextEditEngine textEditEngine = new TextEditEngine();
+                return runInOrder(units, threads, cu -> {
+                    String edited = textEditEngine.apply(cu, journal);
+                    if (edited != null) {
+                        logger.debug("已通过文本编辑生成: {}", cu.getFile());
+                        return edited;
+                    }
+                    return printCompilationUnit(cu);
+                });
+            }
+            return runInOrder(units, threads, this::printCompilationUnit);
+        } finally {
+            environment.setModelChangeListener(originalListener);
+            environment.setAutoImports(originalAutoImports);
         }
-        return files;
     }
     
     /**
-     * 检查类是否有方法修改（@Override注解或可见性调整）
+     * 使用新的 Sniper 打印器打印单个编译单元
      */
-    private boolean hasMethodModifications(CtClass<?> clazz) {
-        for (spoon.reflect.declaration.CtMethod<?> method : clazz.getMethods()) {
-            // 检查是否有@Override注解
-            boolean hasOverride = method.getAnnotations().stream()
-                .anyMatch(annotation -> 
-                    annotation.getAnnotationType().getSimpleName().equals("Override"));
-            
-            if (hasOverride) {
-                return true;
-            }
+    private String printCompilationUnit(CtCompilationUnit cu) {
+        try {
+            // 使用 SniperJavaPrettyPrinter 以避免丢失原有的 import static
+            spoon.support.sniper.SniperJavaPrettyPrinter sniperPrinter =
+                new spoon.support.sniper.SniperJavaPrettyPrinter(cu.getFactory().getEnvironment());
+            sniperPrinter.calculate(cu, cu.getDeclaredTypes());
+            String result = sniperPrinter.getResult();
             
-            // 检查是否有可见性修改
-            if (method.hasModifier(spoon.reflect.declaration.ModifierKind.PUBLIC) && 
-                !method.getSimpleName().equals(clazz.getSimpleName())) {
-                return true;
-            }
+            // 修复Spoon PrettyPrinter的问题
+            return fixOverrideAnnotationFormatting(result);
+        } catch (Exception e) {
+            logger.warn("生成完整文件内容失败: {}", e.getMessage());
+            return null;
         }
-        return false;
     }
     
     /**
-     * 写入单个类到文件
+     * 使用带自动 import 处理的默认打印器打印单个编译单元
+     * 
+     * 不做源码对齐，整体按 Spoon 的格式重新输出；import 预处理器只修改当前编译单元内的元素，因此可以并发打印。
      */
-    private String writeClass(CtClass<?> clazz, String outputPath, List<String> sourcePaths) {
-        if (clazz.getPosition() == null || clazz.getPosition().getFile() == null) {
-            return null;
-        }
-        
+    private String printCompilationUnitFast(CtCompilationUnit cu) {
         try {
-            File originalFile = clazz.getPosition().getFile();
-            String content = generateFullFileContentWithAutoImports(clazz);
-            
-            File targetFile = determineTargetFile(originalFile, outputPath, sourcePaths);
-            writeToFile(targetFile, content);
-            
-            return targetFile.getAbsolutePath();
+            spoon.reflect.visitor.PrettyPrinter printer = cu.getFactory().getEnvironment().createPrettyPrinterAutoImport();
+            return printer.printCompilationUnit(cu);
         } catch (Exception e) {
-            logger.error("写入类失败: {}", clazz.getSimpleName(), e);
+            logger.warn("生成完整文件内容失败: {}", e.getMessage());
             return null;
         }
     }
     
+    /**
+     * 以最多 threads 个线程执行任务，结果按输入顺序返回；只有一个任务或一个线程时直接在当前线程执行
+     */
+    private <T, R> List<R> runInOrder(List<? extends T> items, int threads, Function<T, R> task) {
+        List<R> results = new ArrayList<>();
+        if (items.size() <= 1 || threads <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<R>> futures = new ArrayList<>();
+            for (T item : items) {
+                futures.add(executor.submit(() -> task.apply(item)));
+            }
+            for (Future<R> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.warn("并行任务执行失败: {}", e.getCause().getMessage());
+                    results.add(null);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("并行任务被中断", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
     /**
      * 写入单个类型到文件
      */
@@ -233,7 +373,7 @@ public class CodeGenerator {
             String content = generateFullFileContentWithAutoImports(type);
             
             File targetFile = determineTargetFile(originalFile, outputPath, sourcePaths);
-            writeToFile(targetFile, content);
+            writeToFile(targetFile, content, type.getFactory().getEnvironment().getEncoding());
             
             return targetFile.getAbsolutePath();
         } catch (Exception e) {
@@ -248,10 +388,9 @@ public class CodeGenerator {
     private File determineTargetFile(File originalFile, String outputPath, List<String> sourcePaths) {
         if (outputPath != null) {
             // 输出到指定目录
+            // 只计算路径，目录由输出目标在真正写入时创建
             String relativePath = getRelativePath(originalFile, sourcePaths);
-            File targetFile = new File(outputPath, relativePath);
-            targetFile.getParentFile().mkdirs();
-            return targetFile;
+            return new File(outputPath, relativePath);
         } else {
             // 覆盖原文件
             return originalFile;
@@ -259,19 +398,32 @@ public class CodeGenerator {
     }
     
     /**
-     * 写入内容到文件
+     * 比较目标文件的现有内容与待写入内容的哈希
      */
-    private void writeToFile(File file, String content) throws IOException {
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(content);
+    private boolean hasSameContent(File file, byte[] content) {
+        if (!file.isFile() || file.length() != content.length) {
+            return false;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] existing = digest.digest(Files.readAllBytes(file.toPath()));
+            return MessageDigest.isEqual(existing, digest.digest(content));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return false;
         }
     }
     
+    /**
+     * 按源码编码写入内容到文件
+     */
+    private void writeToFile(File file, String content, Charset charset) throws IOException {
+        new FileSystemOutputSink().write(file, file, file.getName(), content.getBytes(charset));
+    }
+    
     /**
      * 获取或创建编译单元
      */
-    private spoon.reflect.cu.CompilationUnit getOrCreateCompilationUnit(CtType<?> type, 
-                                                                       spoon.reflect.factory.Factory factory) {
+    private CtCompilationUnit getOrCreateCompilationUnit(CtType<?> type, spoon.reflect.factory.Factory factory) {
         if (type.getPosition() != null && type.getPosition().getCompilationUnit() != null) {
             return type.getPosition().getCompilationUnit();
         } else {
@@ -312,7 +464,7 @@ public class CodeGenerator {
                     String content = type.toString();
                     
                     File targetFile = determineTargetFile(originalFile, outputPath, sourcePaths);
-                    writeToFile(targetFile, content);
+                    writeToFile(targetFile, content, type.getFactory().getEnvironment().getEncoding());
                     
                     modifiedFiles.add(targetFile.getAbsolutePath());
                 }
@@ -328,12 +480,76 @@ public class CodeGenerator {
      * 获取文件的相对路径
      */
     private String getRelativePath(File file, List<String> sourcePaths) {
+        String filePath = file.getAbsolutePath();
         for (String sourcePath : sourcePaths) {
-            File sourceDir = new File(sourcePath);
-            if (file.getAbsolutePath().startsWith(sourceDir.getAbsolutePath())) {
-                return file.getAbsolutePath().substring(sourceDir.getAbsolutePath().length() + 1);
+            // 源路径也可能直接指向单个文件，此时只使用文件名
+            String sourceDir = new File(sourcePath).getAbsolutePath();
+            if (filePath.startsWith(sourceDir + File.separator)) {
+                return filePath.substring(sourceDir.length() + 1);
             }
         }
         return file.getName();
     }
+
+    /**
+     * 写出计划：待写入的目标文件及其内容，以及因内容未变化而跳过的文件
+     */
+    public static class WritePlan {
+        private final Map<File, Entry> entries = new LinkedHashMap<>();
+        private final List<String> skipped = new ArrayList<>();
+
+        /**
+         * @return 将被写入的目标文件绝对路径
+         */
+        public List<String> getTargetFiles() {
+            List<String> files = new ArrayList<>();
+            for (File file : entries.keySet()) {
+                files.add(file.getAbsolutePath());
+            }
+            return files;
+        }
+
+        public List<String> getSkippedFiles() { return new ArrayList<>(skipped); }
+        public int getSkippedCount() { return skipped.size(); }
+        public boolean isEmpty() { return entries.isEmpty(); }
+
+        /**
+         * 单个待写入文件
+         */
+        private static class Entry {
+            private final File originalFile;
+            private final String relativePath;
+            private final byte[] content;
+
+            Entry(File originalFile, String relativePath, byte[] content) {
+                this.originalFile = originalFile;
+                this.relativePath = relativePath;
+                this.content = content;
+            }
+        }
+    }
+
+    /**
+     * 打印模式
+     */
+    public enum PrinterMode {
+        /** 保留原有格式：优先直接编辑原文件文本，无法编辑时使用 Sniper 打印器只重新输出被修改的部分 */
+        SNIPER,
+        /** 默认打印器：整体重新格式化，速度更快，适合输出目录或会再次格式化的流水线 */
+        FAST;
+
+        /**
+         * 按名称解析打印模式（忽略大小写）
+         * 
+         * @throws IllegalArgumentException 名称无法识别时
+         */
+        public static PrinterMode fromName(String name) {
+            for (PrinterMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("未知的打印模式: " + name + "（可选: fast, sniper）");
+        }
+    }
 }
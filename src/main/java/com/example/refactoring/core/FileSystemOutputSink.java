@@ -0,0 +1,25 @@
+package com.example.refactoring.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * 文件系统输出 - 将内容直接写入目标文件（默认输出方式）
+ */
+public class FileSystemOutputSink implements OutputSink {
+
+    @Override
+    public void write(File originalFile, File targetFile, String relativePath, byte[] content) throws IOException {
+        File parent = targetFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent);
+        }
+        Files.write(targetFile.toPath(), content);
+    }
+
+    @Override
+    public boolean writesFiles() {
+        return true;
+    }
+}
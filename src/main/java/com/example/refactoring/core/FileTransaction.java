@@ -0,0 +1,327 @@
+package com.example.refactoring.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * 文件事务 - 以预写日志（write-ahead journal）方式原子地提交一次重构涉及的全部文件
+ *
+ * 重构过程中的源文件与 pom.xml 先暂存在内存中；提交时：
+ * 1. 将所有目标路径及新内容写入项目根目录下的 .refactor-journal，末尾附校验和，fsync 日志及其所在目录；
+ * 2. 各文件（有界并行）写入同目录临时文件并原子重命名覆盖目标文件；
+ * 3. 全部完成后批量 fsync 被替换的文件及其所在目录（每个目录一次），确认落盘后才删除日志。
+ *
+ * 进程在第 2 步中途崩溃或被终止时，下次启动由 {@link #recover(File)} 按日志重做剩余文件；
+ * 日志不完整（第 1 步中途中断）说明尚未修改任何文件，直接丢弃。
+ */
+public class FileTransaction implements OutputSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileTransaction.class);
+
+    /** 日志文件名（位于项目根目录） */
+    public static final String JOURNAL_FILE_NAME = ".refactor-journal";
+
+    private static final int JOURNAL_MAGIC = 0x52464a31; // "RFJ1"
+    private static final String TEMP_SUFFIX = ".refactor-tmp";
+
+    private final File journalFile;
+    private final Map<File, byte[]> staged = new LinkedHashMap<>();
+    private boolean committed;
+
+    /**
+     * @param projectRoot 项目根目录（日志所在位置，恢复时按同一目录查找）
+     */
+    public FileTransaction(File projectRoot) {
+        this.journalFile = new File(projectRoot, JOURNAL_FILE_NAME);
+    }
+
+    @Override
+    public void write(File originalFile, File targetFile, String relativePath, byte[] content) {
+        stage(targetFile, content);
+    }
+
+    @Override
+    public boolean writesFiles() {
+        return true;
+    }
+
+    /**
+     * 暂存一个文件的新内容（同一文件多次暂存时以最后一次为准）
+     */
+    public synchronized void stage(File targetFile, byte[] content) {
+        if (committed) {
+            throw new IllegalStateException("事务已提交");
+        }
+        staged.put(targetFile.getAbsoluteFile(), content);
+    }
+
+    /**
+     * 读取文件在本事务中的当前内容：已暂存时返回暂存内容，否则读取磁盘
+     */
+    public synchronized byte[] read(File file) throws IOException {
+        byte[] content = staged.get(file.getAbsoluteFile());
+        return content != null ? content : Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * 提交事务
+     *
+     * @return 被写入的文件（绝对路径，按暂存顺序）
+     * @throws IOException 日志写入失败（此时未修改任何文件）或重命名失败（日志保留，下次启动时重做）
+     */
+    public synchronized List<String> commit() throws IOException {
+        if (committed) {
+            throw new IllegalStateException("事务已提交");
+        }
+        committed = true;
+        List<String> files = new ArrayList<>();
+        if (staged.isEmpty()) {
+            return files;
+        }
+        writeJournal(journalFile, staged);
+        replaceAll(staged);
+        syncReplaced(staged.keySet());
+        for (File file : staged.keySet()) {
+            files.add(file.getAbsolutePath());
+        }
+        Files.deleteIfExists(journalFile.toPath());
+        logger.info("已提交文件事务：{} 个文件", files.size());
+        return files;
+    }
+
+    /**
+     * 未提交时丢弃暂存内容
+     */
+    @Override
+    public synchronized void close() {
+        if (!committed) {
+            staged.clear();
+        }
+    }
+
+    /**
+     * 恢复上一次中断的提交：日志完整时重做全部文件，不完整时丢弃
+     *
+     * @param projectRoot 项目根目录
+     * @return 重做的文件数（没有待恢复的日志或日志被丢弃时为0）
+     */
+    public static int recover(File projectRoot) {
+        File journal = new File(projectRoot, JOURNAL_FILE_NAME);
+        if (!journal.isFile()) {
+            return 0;
+        }
+        try {
+            Map<File, byte[]> entries = readJournal(journal);
+            if (entries == null) {
+                logger.warn("发现不完整的提交日志，上一次提交未修改任何文件，已丢弃: {}", journal.getAbsolutePath());
+                Files.deleteIfExists(journal.toPath());
+                return 0;
+            }
+            replaceAll(entries);
+            syncReplaced(entries.keySet());
+            Files.deleteIfExists(journal.toPath());
+            logger.warn("已按提交日志恢复上一次中断的重构：{} 个文件", entries.size());
+            return entries.size();
+        } catch (IOException e) {
+            logger.error("恢复中断的提交失败，日志已保留: {}", journal.getAbsolutePath(), e);
+            return 0;
+        }
+    }
+
+    private static void writeJournal(File journal, Map<File, byte[]> entries) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fos = new FileOutputStream(journal);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<File, byte[]> entry : entries.entrySet()) {
+                byte[] path = entry.getKey().getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+                crc.update(path);
+                crc.update(entry.getValue());
+            }
+            out.writeLong(crc.getValue());
+            out.flush();
+            fos.getFD().sync();
+        }
+        // 日志文件是新建的，目录项也要落盘，否则崩溃后日志可能整个消失
+        syncDirectory(journal.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * 删除日志前确认替换结果已落盘：各文件（有界并行）fsync 一次，所在目录（重命名产生的目录项）去重后各 fsync 一次。
+     * 否则崩溃后可能出现日志已删除、文件内容或重命名却丢失的情况。
+     */
+    private static void syncReplaced(Collection<File> files) throws IOException {
+        ParallelIo.map(new ArrayList<>(files), file -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            return file;
+        });
+        Set<File> directories = new LinkedHashSet<>();
+        for (File file : files) {
+            directories.add(file.getAbsoluteFile().getParentFile());
+        }
+        for (File directory : directories) {
+            syncDirectory(directory);
+        }
+    }
+
+    /**
+     * fsync 目录，使其中新建、重命名的目录项落盘；不支持打开目录的平台（如 Windows）上跳过
+     */
+    private static void syncDirectory(File directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("无法 fsync 目录 {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取日志；日志被截断或校验失败时返回null
+     */
+    private static Map<File, byte[]> readJournal(File journal) throws IOException {
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        CRC32 crc = new CRC32();
+        Map<File, byte[]> entries = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != JOURNAL_MAGIC) {
+                return null;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] path = readBlock(in, bytes.length);
+                byte[] content = readBlock(in, bytes.length);
+                crc.update(path);
+                crc.update(content);
+                entries.put(new File(new String(path, StandardCharsets.UTF_8)), content);
+            }
+            return in.readLong() == crc.getValue() ? entries : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readBlock(DataInputStream in, int limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > limit) {
+            throw new EOFException("日志块长度无效: " + length);
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+
+    /**
+     * 替换全部文件：各文件互不相关，以有界线程池并行写入；任一失败时抛出（日志保留，可重做）
+     */
+    private static void replaceAll(Map<File, byte[]> entries) throws IOException {
+        ParallelIo.map(new ArrayList<>(entries.entrySet()), entry -> {
+            replaceFile(entry.getKey(), entry.getValue());
+            return entry.getKey();
+        });
+    }
+
+    /**
+     * 写入同目录临时文件后原子重命名覆盖目标文件（可重复执行）
+     */
+    private static void replaceFile(File target, byte[] content) throws IOException {
+        Path temp = tempFileFor(target);
+        Files.write(temp, content);
+        moveIntoPlace(temp, target);
+    }
+
+    /**
+     * 以硬链接方式用另一个文件的内容替换目标文件：链接到同目录临时文件后原子重命名；
+     * 文件系统不支持硬链接时改为按通道复制。源文件本身保持不变。
+     */
+    static void replaceWithLink(File source, File target) throws IOException {
+        Path temp = tempFileFor(target);
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, source.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            copy(source.toPath(), temp);
+        }
+        moveIntoPlace(temp, target);
+    }
+
+    /**
+     * 以 FileChannel.transferTo 复制文件内容（由内核直接在两个文件之间传输）
+     */
+    private static void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    break; // 源文件在复制过程中被截短
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static Path tempFileFor(File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            // 并行写入同一目录下的多个文件时，目录可能已被其他线程创建
+            Files.createDirectories(parent.toPath());
+        }
+        return new File(parent, "." + target.getName() + TEMP_SUFFIX).toPath();
+    }
+
+    private static void moveIntoPlace(Path temp, File target) throws IOException {
+        try {
+            Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return 已暂存的文件（绝对路径）
+     */
+    public synchronized List<String> getStagedFiles() {
+        List<String> files = new ArrayList<>();
+        for (File file : staged.keySet()) {
+            files.add(file.getAbsolutePath());
+        }
+        return files;
+    }
+}
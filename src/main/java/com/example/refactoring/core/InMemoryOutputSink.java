@@ -0,0 +1,47 @@
+package com.example.refactoring.core;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存输出 - 按目标文件的绝对路径收集生成的内容，不做任何磁盘写入
+ */
+public class InMemoryOutputSink implements OutputSink {
+
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+    private final Charset charset;
+
+    public InMemoryOutputSink() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param charset 读取文本内容时使用的编码
+     */
+    public InMemoryOutputSink(Charset charset) {
+        this.charset = charset;
+    }
+
+    @Override
+    public synchronized void write(File originalFile, File targetFile, String relativePath, byte[] content) {
+        files.put(targetFile.getAbsolutePath(), content.clone());
+    }
+
+    /**
+     * @return 目标文件绝对路径到内容的映射（按输出顺序）
+     */
+    public synchronized Map<String, byte[]> getFiles() {
+        return new LinkedHashMap<>(files);
+    }
+
+    /**
+     * @return 指定目标文件的文本内容，未输出时返回null
+     */
+    public synchronized String getText(String targetPath) {
+        byte[] content = files.get(new File(targetPath).getAbsolutePath());
+        return content != null ? new String(content, charset) : null;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.refactoring.core;
+
+import spoon.reflect.CtModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 代码模型缓存
+ *
+ * 按规范化后的源码路径列表分别缓存模型（最多保留 {@value #MAX_CACHED_MODELS} 个，最久未使用的先淘汰），
+ * 以源码路径下各目录的时间戳（与 {@link ModuleIndexCache} 相同）作为指纹，指纹不变时复用已构建的模型。
+ * 新增、删除或以重命名方式写入文件会改变目录时间戳；原地改写文件内容不会，需要调用 {@link #invalidate(List)}。
+ *
+ * 模型在全局锁之外构建，不同源码路径的构建互不等待；同一路径的并发请求等待同一次构建。
+ *
+ * 分析与重构通过 {@link #acquire(List)} 独占使用模型：Spoon 模型不是线程安全的，只读查询也可能延迟解析引用、
+ * 创建影子类型，因此同一模型上的请求依次执行。重构直接修改缓存的模型，结束时由变更日志回滚，
+ * 模型保持与源码一致并留在缓存中；源文件已被覆盖或无法完整回滚时调用 {@link Lease#discard()} 丢弃。
+ */
+public class ModelCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCache.class);
+
+    static final int MAX_CACHED_MODELS = 4;
+
+    private final ModelBuilder modelBuilder;
+    private final Map<List<String>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 一个源码路径列表的模型及其构建时的指纹
+     */
+    private static final class Entry {
+        final String fingerprint;
+        final CompletableFuture<CtModel> model = new CompletableFuture<>();
+        final ReentrantLock lock = new ReentrantLock();
+        volatile boolean discarded;
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    public ModelCache(ModelBuilder modelBuilder) {
+        this.modelBuilder = modelBuilder;
+    }
+
+    /**
+     * 获取源码路径对应的模型：指纹未变化时直接返回缓存，否则重新构建
+     *
+     * 不加锁，只适用于单线程的调用方；多个请求可能同时使用模型时通过 {@link #acquire(List)} 获取。
+     *
+     * @param sourcePaths 源代码路径列表
+     * @return 模型，构建失败返回null
+     */
+    public CtModel getModel(List<String> sourcePaths) {
+        return entryFor(sourcePaths).model.join();
+    }
+
+    /**
+     * 独占使用源码路径对应的模型，直到返回的租约关闭；等待期间模型被丢弃时改用重新构建的模型
+     *
+     * @param sourcePaths 源代码路径列表
+     * @return 模型租约，构建失败时其中的模型为null
+     */
+    public Lease acquire(List<String> sourcePaths) {
+        while (true) {
+            Entry entry = entryFor(sourcePaths);
+            CtModel model = entry.model.join();
+            if (model == null) {
+                return new Lease(null, null);
+            }
+            entry.lock.lock();
+            if (!entry.discarded) {
+                return new Lease(entry, model);
+            }
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * 查找或构建源码路径对应的缓存项，返回时模型已构建完成
+     */
+    private Entry entryFor(List<String> sourcePaths) {
+        List<String> key = normalize(sourcePaths);
+        String fingerprint = computeFingerprint(key);
+        Entry entry;
+        boolean building = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+                entry = new Entry(fingerprint);
+                entries.put(key, entry);
+                building = true;
+                evictOldest();
+            }
+        }
+        if (!building) {
+            logger.debug("复用缓存的代码模型");
+            entry.model.join();
+            return entry;
+        }
+
+        CtModel model = null;
+        try {
+            model = modelBuilder.buildModel(sourcePaths);
+        } finally {
+            entry.model.complete(model);
+            if (model == null) {
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 丢弃与给定源码路径有重叠（相同、包含或被包含）的缓存模型，其他项目的模型保留
+     */
+    public void invalidate(List<String> sourcePaths) {
+        List<String> changed = normalize(sourcePaths);
+        synchronized (entries) {
+            entries.entrySet().removeIf(entry -> {
+                if (overlaps(entry.getKey(), changed)) {
+                    entry.getValue().discarded = true;
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * 模型租约：持有期间独占使用模型，关闭时释放
+     */
+    public final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final CtModel model;
+
+        private Lease(Entry entry, CtModel model) {
+            this.entry = entry;
+            this.model = model;
+        }
+
+        /**
+         * @return 模型，构建失败时为null
+         */
+        public CtModel getModel() {
+            return model;
+        }
+
+        /**
+         * 模型已不再与源码一致（源文件已被覆盖或修改无法完整回滚），从缓存中移除，之后的请求重新构建
+         */
+        public void discard() {
+            if (entry != null && !entry.discarded) {
+                entry.discarded = true;
+                synchronized (entries) {
+                    entries.values().remove(entry);
+                }
+            }
+        }
+
+        /**
+         * @return 模型是否已被丢弃（包括持有期间源码路径被 {@link #invalidate(List)}）
+         */
+        public boolean isDiscarded() {
+            return entry == null || entry.discarded;
+        }
+
+        @Override
+        public void close() {
+            if (entry != null) {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<List<String>> keys = entries.keySet().iterator();
+        while (entries.size() > MAX_CACHED_MODELS && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static boolean overlaps(List<String> first, List<String> second) {
+        for (String a : first) {
+            for (String b : second) {
+                Path pa = Path.of(a);
+                Path pb = Path.of(b);
+                if (pa.startsWith(pb) || pb.startsWith(pa)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 源码路径转为绝对、规范化的形式并排序去重，顺序或写法不同的同一组路径共用一个模型
+     */
+    private static List<String> normalize(List<String> sourcePaths) {
+        List<String> normalized = new ArrayList<>();
+        for (String path : sourcePaths) {
+            String absolute = new File(path).getAbsoluteFile().toPath().normalize().toString();
+            if (!normalized.contains(absolute)) {
+                normalized.add(absolute);
+            }
+        }
+        normalized.sort(null);
+        return normalized;
+    }
+
+    /**
+     * 计算源码路径的指纹：目录按其下各子目录的时间戳，单个文件按修改时间与大小（不遍历文件）
+     */
+    private static String computeFingerprint(List<String> sourcePaths) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (String path : sourcePaths) {
+            File root = new File(path);
+            if (root.isFile()) {
+                fingerprint.append(root.lastModified()).append(':').append(root.length());
+            } else {
+                fingerprint.append(ModuleIndexCache.sourceStamp(root));
+            }
+            fingerprint.append(';');
+        }
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.refactoring.core;
+
+import java.util.*;
+
+/**
+ * 模块依赖图：节点为模块的 artifactId，边为 pom.xml 顶层 dependencies 中声明的依赖（带 scope）。
+ * 由 {@link ModuleResolver} 从缓存的模块索引构建，所有查询都在内存中完成，不再读取 pom.xml。
+ *
+ * - 循环检查：Maven 反应堆不允许任何 scope 的循环依赖，按全部边计算可达性
+ * - 传递可用性：直接依赖在 compile/provided/system 下可见，经由其他模块时只沿 compile 边传递
+ */
+public class ModuleGraph {
+
+    private final Map<String, Map<String, String>> dependencies = new HashMap<>();
+
+    /**
+     * 登记模块及其声明的依赖
+     *
+     * @param scopes 依赖的 artifactId 到 scope 的映射（未声明 scope 时为空串）
+     */
+    synchronized void addModule(String artifactId, Map<String, String> scopes) {
+        Map<String, String> edges = dependencies.computeIfAbsent(artifactId, k -> new LinkedHashMap<>());
+        edges.putAll(scopes);
+    }
+
+    /**
+     * 记录新增的依赖边（本次运行中追加到 pom.xml 的依赖），之后的查询立即可见
+     */
+    public synchronized void addDependency(String from, String to, String scope) {
+        dependencies.computeIfAbsent(from, k -> new LinkedHashMap<>()).putIfAbsent(to, scope == null ? "" : scope);
+        dependencies.computeIfAbsent(to, k -> new LinkedHashMap<>());
+    }
+
+    public synchronized boolean contains(String artifactId) {
+        return dependencies.containsKey(artifactId);
+    }
+
+    /**
+     * @return from 经由任意依赖边到达 to 的最短路径（含两端），不可达时返回null
+     */
+    public synchronized List<String> findPath(String from, String to) {
+        if (from.equals(to)) {
+            return Collections.singletonList(from);
+        }
+        Map<String, String> previous = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        previous.put(from, null);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            for (String next : dependencies.getOrDefault(current, Collections.emptyMap()).keySet()) {
+                if (previous.containsKey(next)) continue;
+                previous.put(next, current);
+                if (next.equals(to)) {
+                    LinkedList<String> path = new LinkedList<>();
+                    for (String node = to; node != null; node = previous.get(node)) {
+                        path.addFirst(node);
+                    }
+                    return path;
+                }
+                queue.add(next);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 为 from 增加对 to 的依赖后会形成的循环，如 [base, app, base]；不会形成循环时返回null
+     */
+    public List<String> findCycleIfAdded(String from, String to) {
+        if (from.equals(to)) {
+            return null;
+        }
+        List<String> back = findPath(to, from);
+        if (back == null) {
+            return null;
+        }
+        List<String> cycle = new ArrayList<>(back.size() + 1);
+        cycle.add(from);
+        cycle.addAll(back);
+        return cycle;
+    }
+
+    /**
+     * to 的类型是否已在 from 的编译期 classpath 上（直接依赖，或经由 compile 依赖传递）
+     */
+    public synchronized boolean isAvailable(String from, String to) {
+        if (from.equals(to)) {
+            return true;
+        }
+        Set<String> visited = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        visited.add(from);
+        for (Map.Entry<String, String> edge : dependencies.getOrDefault(from, Collections.emptyMap()).entrySet()) {
+            String scope = edge.getValue();
+            if (isCompileScope(scope) || "provided".equals(scope) || "system".equals(scope)) {
+                if (edge.getKey().equals(to)) return true;
+                // provided/system 依赖自身的依赖不会传递
+                if (isCompileScope(scope) && visited.add(edge.getKey())) {
+                    queue.add(edge.getKey());
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            for (Map.Entry<String, String> edge : dependencies.getOrDefault(current, Collections.emptyMap()).entrySet()) {
+                if (!isCompileScope(edge.getValue())) continue;
+                if (edge.getKey().equals(to)) return true;
+                if (visited.add(edge.getKey())) {
+                    queue.add(edge.getKey());
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCompileScope(String scope) {
+        return scope == null || scope.isEmpty() || "compile".equals(scope);
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.refactoring.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模块索引的持久化缓存：项目根目录下 .refactor-cache/module-index，
+ * 按模块记录 pom.xml 的修改时间与大小、源码目录的时间戳以及模块坐标、包列表和声明的依赖（用于构建 {@link ModuleGraph}）。
+ *
+ * 模块的 pom.xml 或 src/main/java 下任一目录的修改时间变化（新增、删除、重命名文件）时，
+ * 只重新解析该模块；其余模块直接复用缓存，无需解析 pom 或读取源文件。
+ * 仅修改已有文件内容（不改变目录）不会使缓存失效，包声明的变化通常伴随文件移动。
+ */
+final class ModuleIndexCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleIndexCache.class);
+
+    static final String CACHE_DIR_NAME = ".refactor-cache";
+    private static final String INDEX_FILE_NAME = "module-index";
+    private static final int MAGIC = 0x524d4932; // "RMI2"
+
+    /**
+     * 一个模块的索引及其失效依据
+     */
+    static final class ModuleEntry {
+        final String moduleRoot;
+        final long pomModified;
+        final long pomLength;
+        final String sourceStamp;
+        final String groupId;
+        final String artifactId;
+        final List<String> packages;
+        final Map<String, String> dependencies;   // 依赖的 artifactId -> scope（未声明时为空串）
+
+        ModuleEntry(String moduleRoot, long pomModified, long pomLength, String sourceStamp,
+                    String groupId, String artifactId, List<String> packages, Map<String, String> dependencies) {
+            this.moduleRoot = moduleRoot;
+            this.pomModified = pomModified;
+            this.pomLength = pomLength;
+            this.sourceStamp = sourceStamp;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.packages = packages;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * 缓存的条目是否仍与模块当前的 pom.xml 和源码目录一致
+         */
+        boolean isValidFor(ModuleEntry current) {
+            return pomModified == current.pomModified && pomLength == current.pomLength
+                && sourceStamp.equals(current.sourceStamp);
+        }
+    }
+
+    private ModuleIndexCache() {
+    }
+
+    static File cacheFileFor(File projectRoot) {
+        return new File(new File(projectRoot, CACHE_DIR_NAME), INDEX_FILE_NAME);
+    }
+
+    /**
+     * 为模块当前状态生成失效依据（坐标与包列表为空，由调用方在需要时补全）
+     */
+    static ModuleEntry stamp(File moduleRoot) {
+        File pom = new File(moduleRoot, "pom.xml");
+        return new ModuleEntry(moduleRoot.getAbsolutePath(), pom.lastModified(), pom.length(),
+            sourceStamp(new File(moduleRoot, "src/main/java")), "", "", Collections.emptyList(), Collections.emptyMap());
+    }
+
+    /**
+     * 源码目录的时间戳：所有子目录的数量、最大修改时间与修改时间之和（不读取文件）
+     */
+    static String sourceStamp(File sourceRoot) {
+        if (!sourceRoot.isDirectory()) {
+            return "none";
+        }
+        long[] stamp = new long[3];
+        try {
+            Files.walkFileTree(sourceRoot.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    long modified = attrs.lastModifiedTime().toMillis();
+                    stamp[0]++;
+                    stamp[1] = Math.max(stamp[1], modified);
+                    stamp[2] += modified;
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            return "unknown-" + System.nanoTime();
+        }
+        return stamp[0] + ":" + stamp[1] + ":" + stamp[2];
+    }
+
+    /**
+     * 读取缓存；不存在或无法读取时返回空映射
+     *
+     * @return 模块根目录（绝对路径）到条目的映射
+     */
+    static Map<String, ModuleEntry> load(File cacheFile) {
+        Map<String, ModuleEntry> entries = new LinkedHashMap<>();
+        if (!cacheFile.isFile()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC) {
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String moduleRoot = in.readUTF();
+                long pomModified = in.readLong();
+                long pomLength = in.readLong();
+                String sourceStamp = in.readUTF();
+                String groupId = in.readUTF();
+                String artifactId = in.readUTF();
+                int packageCount = in.readInt();
+                List<String> packages = new ArrayList<>(packageCount);
+                for (int j = 0; j < packageCount; j++) {
+                    packages.add(in.readUTF());
+                }
+                int dependencyCount = in.readInt();
+                Map<String, String> dependencies = new LinkedHashMap<>();
+                for (int j = 0; j < dependencyCount; j++) {
+                    dependencies.put(in.readUTF(), in.readUTF());
+                }
+                entries.put(moduleRoot, new ModuleEntry(moduleRoot, pomModified, pomLength, sourceStamp,
+                    groupId, artifactId, packages, dependencies));
+            }
+        } catch (IOException e) {
+            logger.debug("模块索引缓存无法读取，将重新构建: {}", e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * 写入缓存（先写各自独立的临时文件再重命名，读取方与并发的写入方不会看到写了一半的缓存）；失败时只记录日志
+     */
+    static void save(File cacheFile, Collection<ModuleEntry> entries) {
+        File temp = null;
+        try {
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            temp = Files.createTempFile(cacheFile.getParentFile().toPath(), cacheFile.getName(), ".tmp").toFile();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.size());
+                for (ModuleEntry entry : entries) {
+                    out.writeUTF(entry.moduleRoot);
+                    out.writeLong(entry.pomModified);
+                    out.writeLong(entry.pomLength);
+                    out.writeUTF(entry.sourceStamp);
+                    out.writeUTF(entry.groupId);
+                    out.writeUTF(entry.artifactId);
+                    out.writeInt(entry.packages.size());
+                    for (String pkg : entry.packages) {
+                        out.writeUTF(pkg);
+                    }
+                    out.writeInt(entry.dependencies.size());
+                    for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+                        out.writeUTF(dependency.getKey());
+                        out.writeUTF(dependency.getValue());
+                    }
+                }
+            }
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.debug("写入模块索引缓存失败: {}", e.getMessage());
+            if (temp != null) {
+                try { Files.deleteIfExists(temp.toPath()); } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.refactoring.core;
+
+import spoon.reflect.cu.SourcePosition;
+import spoon.reflect.declaration.CtType;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 源文件所属模块的查询：所属模块为向上最近的包含 pom.xml 的目录，结果按目录缓存，
+ * 同一次分析或重构中的多次跨模块判断不再逐次向上遍历文件系统。
+ *
+ * 缓存只在实例内有效：每次分析、重构或保存快照使用新的实例，长驻进程（如 MCP 服务器）中不会沿用
+ * 之前运行时的结果。{@link ModuleResolver} 持有的实例由模块索引填充：索引时已扫描过项目目录下全部 pom.xml，
+ * 其下的文件只按登记的模块根目录在内存中查询，不再访问文件系统；项目目录之上的所属模块在索引时一并确定。
+ * 同一次运行应共用解析器持有的实例。
+ */
+public final class ModuleMembership {
+
+    private final Set<File> knownModuleRoots;
+    private final Map<File, Optional<File>> moduleRootAboveIndexedDir;
+    private final Map<File, Optional<File>> moduleRootByDir = new ConcurrentHashMap<>();
+
+    public ModuleMembership() {
+        this(Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * @param moduleRoots 已知的模块根目录（构建模块索引时发现的包含 pom.xml 的目录）
+     * @param indexedDirs 已完整扫描 pom.xml 的项目目录，其下不存在未登记的模块
+     */
+    ModuleMembership(Collection<File> moduleRoots, Collection<File> indexedDirs) {
+        Set<File> roots = new HashSet<>();
+        for (File moduleRoot : moduleRoots) {
+            roots.add(moduleRoot.getAbsoluteFile());
+        }
+        this.knownModuleRoots = roots;
+        Map<File, Optional<File>> above = new HashMap<>();
+        for (File indexedDir : indexedDirs) {
+            File dir = indexedDir.getAbsoluteFile();
+            above.put(dir, roots.contains(dir) ? Optional.of(dir) : walkUp(dir.getParentFile()));
+        }
+        this.moduleRootAboveIndexedDir = above;
+    }
+
+    /**
+     * @return 文件所属模块的根目录（向上最近的包含 pom.xml 的目录），不属于任何模块时返回null
+     */
+    public File moduleRootOf(File file) {
+        if (file == null) return null;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir == null) return null;
+        return moduleRootByDir.computeIfAbsent(dir, this::locate).orElse(null);
+    }
+
+    /**
+     * @return 类型所在源文件所属模块的根目录，没有源文件或不属于任何模块时返回null
+     */
+    public File moduleRootOf(CtType<?> type) {
+        try {
+            SourcePosition position = type.getTopLevelType().getPosition();
+            return position != null && position.isValidPosition() ? moduleRootOf(position.getFile()) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 两个类型是否属于不同模块；任一类型无法确定所属模块时视为同一模块
+     */
+    public boolean isCrossModule(CtType<?> first, CtType<?> second) {
+        File firstModule = moduleRootOf(first);
+        File secondModule = moduleRootOf(second);
+        return firstModule != null && secondModule != null && !firstModule.equals(secondModule);
+    }
+
+    private Optional<File> locate(File dir) {
+        // 已索引的目录下只在内存中查询：最近的已登记模块，到达项目目录时取索引时确定的上级模块
+        for (File current = dir; current != null; current = current.getParentFile()) {
+            if (knownModuleRoots.contains(current)) {
+                return Optional.of(current);
+            }
+            Optional<File> above = moduleRootAboveIndexedDir.get(current);
+            if (above != null) {
+                return above;
+            }
+        }
+        return walkUp(dir);
+    }
+
+    private Optional<File> walkUp(File dir) {
+        // 逐级向上，最近的一级为已登记的模块或包含 pom.xml 即为所属模块
+        for (File current = dir; current != null; current = current.getParentFile()) {
+            if (knownModuleRoots.contains(current) || new File(current, "pom.xml").isFile()) {
+                return Optional.of(current);
+            }
+        }
+        return Optional.empty();
+    }
+}
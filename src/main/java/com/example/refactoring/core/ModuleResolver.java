@@ -2,20 +2,25 @@ package com.example.refactoring.core;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 /**
  * 通用模块解析器：从项目根自动构建 包前缀 -> (groupId, artifactId, moduleRoot) 索引。
- * 通过扫描各模块的 pom.xml 与 src/main/java 下的包声明来建立映射。
+ * 通过扫描各模块的 pom.xml 与 src/main/java 下的包声明来建立映射，
+ * 结果按模块持久化到 {@link ModuleIndexCache}，未变化的模块在之后的运行中直接复用。
+ * 查询使用按包名段组织的前缀树；同时由各模块声明的依赖构建 {@link ModuleGraph}。
  */
 public class ModuleResolver {
 
@@ -32,52 +37,169 @@ public class ModuleResolver {
         }
     }
 
-    private final Map<String, ModuleCoords> packagePrefixToModule = new HashMap<>();
+    private final PackageTrie packageIndex = new PackageTrie();
+    private final Map<File, ModuleCoords> modulesByRoot = new HashMap<>();
+    private final ModuleGraph moduleGraph = new ModuleGraph();
+    private final ModuleMembership moduleMembership;
 
     public ModuleResolver(List<String> projectRoots) {
+        Set<File> allModuleRoots = new LinkedHashSet<>();
+        Set<File> indexedTops = new LinkedHashSet<>();
         try {
-            Set<File> moduleRoots = discoverModuleRoots(projectRoots);
-            for (File moduleRoot : moduleRoots) {
-                ModuleCoords coords = readModuleCoords(moduleRoot);
-                if (coords == null) continue;
-                for (String pkg : discoverPackagesUnderModule(moduleRoot)) {
-                    // 记录最长优先匹配的包前缀
-                    packagePrefixToModule.put(pkg + ".", coords);
+            int reused = 0;
+            int rebuilt = 0;
+            for (File top : discoverTopDirectories(projectRoots)) {
+                // 每个项目根目录一份持久化索引，按模块的 pom.xml 与源码目录时间戳失效
+                File cacheFile = ModuleIndexCache.cacheFileFor(top);
+                Map<String, ModuleIndexCache.ModuleEntry> cached = ModuleIndexCache.load(cacheFile);
+                Set<File> moduleRoots = new LinkedHashSet<>();
+                collectModulesRecursively(top, moduleRoots, new HashSet<>());
+                allModuleRoots.addAll(moduleRoots);
+                indexedTops.add(top);
+                // 各模块并行检查时间戳，只有变化的模块重新解析 pom 并扫描包声明
+                List<ModuleIndexCache.ModuleEntry> current = ParallelIo.map(new ArrayList<>(moduleRoots), moduleRoot -> {
+                    ModuleIndexCache.ModuleEntry stamp = ModuleIndexCache.stamp(moduleRoot);
+                    ModuleIndexCache.ModuleEntry entry = cached.get(stamp.moduleRoot);
+                    return entry != null && entry.isValidFor(stamp) ? entry : indexModule(moduleRoot, stamp);
+                });
+                int rebuiltHere = 0;
+                for (ModuleIndexCache.ModuleEntry entry : current) {
+                    if (cached.get(entry.moduleRoot) == entry) {
+                        reused++;
+                    } else {
+                        rebuiltHere++;
+                    }
+                    if (!entry.artifactId.isEmpty()) {
+                        ModuleCoords coords = new ModuleCoords(entry.groupId, entry.artifactId, new File(entry.moduleRoot));
+                        for (String pkg : entry.packages) {
+                            packageIndex.put(pkg, coords);
+                        }
+                        modulesByRoot.put(coords.moduleRoot, coords);
+                        moduleGraph.addModule(entry.artifactId, entry.dependencies);
+                    }
+                }
+                rebuilt += rebuiltHere;
+                if (!current.isEmpty() && (rebuiltHere > 0 || cached.size() != current.size())) {
+                    ModuleIndexCache.save(cacheFile, current);
                 }
             }
-            logger.info("模块解析完成，索引包前缀数量: {}", packagePrefixToModule.size());
+            logger.info("模块解析完成，索引包前缀数量: {}（复用缓存模块 {} 个，重新解析 {} 个）",
+                packageIndex.size(), reused, rebuilt);
         } catch (Exception e) {
             logger.warn("构建模块索引失败: {}", e.getMessage());
         }
+        this.moduleMembership = new ModuleMembership(allModuleRoots, indexedTops);
     }
 
     /**
-     * 根据全限定名解析所在模块坐标（尽量使用最长匹配的包前缀）。
+     * 根据全限定名解析所在模块坐标（使用最长匹配的包前缀，最后一段视为类型名不参与匹配）。
      */
     public ModuleCoords resolveByQualifiedName(String qualifiedName) {
         if (qualifiedName == null) return null;
         String qn = qualifiedName;
         // 去掉 static 前缀
         if (qn.startsWith("static ")) qn = qn.substring(7);
-        // 逐步缩短以进行最长前缀匹配
-        String[] parts = qn.split("\\.");
-        for (int end = parts.length - 1; end >= 1; end--) {
-            String prefix = String.join(".", Arrays.copyOf(parts, end));
-            ModuleCoords coords = packagePrefixToModule.get(prefix + ".");
-            if (coords != null) return coords;
+        return packageIndex.longestPrefix(qn);
+    }
+
+    /**
+     * @return 模块根目录对应的坐标，不是已索引的模块时返回null
+     */
+    public ModuleCoords getModule(File moduleRoot) {
+        return moduleRoot == null ? null : modulesByRoot.get(moduleRoot.getAbsoluteFile());
+    }
+
+    /**
+     * @return 由已索引模块声明的依赖构建的模块依赖图
+     */
+    public ModuleGraph getModuleGraph() {
+        return moduleGraph;
+    }
+
+    /**
+     * @return 源文件所属模块的查询（由本次索引的模块根目录填充，项目目录下的文件不再访问文件系统，缓存随解析器存在）
+     */
+    public ModuleMembership getModuleMembership() {
+        return moduleMembership;
+    }
+
+    /**
+     * 解析单个模块：读取 pom.xml 中的坐标与声明的依赖并扫描包声明
+     */
+    private ModuleIndexCache.ModuleEntry indexModule(File moduleRoot, ModuleIndexCache.ModuleEntry stamp) {
+        PomEditor pom = readPom(moduleRoot);
+        String artifactId = pom != null && pom.hasProject() ? pom.getArtifactId() : null;
+        if (artifactId == null) {
+            return new ModuleIndexCache.ModuleEntry(stamp.moduleRoot, stamp.pomModified, stamp.pomLength,
+                stamp.sourceStamp, "", "", Collections.emptyList(), Collections.emptyMap());
+        }
+        String groupId = pom.getGroupId();
+        return new ModuleIndexCache.ModuleEntry(stamp.moduleRoot, stamp.pomModified, stamp.pomLength,
+            stamp.sourceStamp, groupId != null ? groupId : "", artifactId, discoverPackagesUnderModule(moduleRoot),
+            new LinkedHashMap<>(pom.getDependencyScopes()));
+    }
+
+    /**
+     * 包名前缀树：每个节点对应一个包名段，记录声明了该包的模块
+     */
+    private static final class PackageTrie {
+        private final Node root = new Node();
+        private int size;
+
+        private static final class Node {
+            private final Map<String, Node> children = new HashMap<>();
+            private ModuleCoords module;
+        }
+
+        void put(String pkg, ModuleCoords coords) {
+            Node node = root;
+            int start = 0;
+            while (start <= pkg.length()) {
+                int dot = pkg.indexOf('.', start);
+                int end = dot < 0 ? pkg.length() : dot;
+                node = node.children.computeIfAbsent(pkg.substring(start, end), k -> new Node());
+                start = end + 1;
+            }
+            if (node.module == null) {
+                size++;
+            }
+            node.module = coords;
+        }
+
+        /**
+         * @return 与全限定名最长匹配的包所属模块（不含最后一段），没有匹配时返回null
+         */
+        ModuleCoords longestPrefix(String qualifiedName) {
+            Node node = root;
+            ModuleCoords match = null;
+            int start = 0;
+            int dot;
+            while ((dot = qualifiedName.indexOf('.', start)) >= 0) {
+                node = node.children.get(qualifiedName.substring(start, dot));
+                if (node == null) {
+                    break;
+                }
+                if (node.module != null) {
+                    match = node.module;
+                }
+                start = dot + 1;
+            }
+            return match;
+        }
+
+        int size() {
+            return size;
         }
-        return null;
     }
 
-    private Set<File> discoverModuleRoots(List<String> projectRoots) {
-        Set<File> roots = new LinkedHashSet<>();
+    private Set<File> discoverTopDirectories(List<String> projectRoots) {
+        Set<File> tops = new LinkedHashSet<>();
         for (String root : projectRoots) {
             File f = new File(root);
             if (!f.exists()) continue;
-            File top = f.isDirectory() ? f : f.getParentFile();
-            collectModulesRecursively(top, roots, new HashSet<>());
+            tops.add((f.isDirectory() ? f : f.getParentFile()).getAbsoluteFile());
         }
-        return roots;
+        return tops;
     }
 
     private void collectModulesRecursively(File dir, Set<File> out, Set<String> visited) {
@@ -94,81 +216,105 @@ public class ModuleResolver {
             String name = child.getName();
             if (!child.isDirectory()) continue;
             if ("target".equals(name) || ".git".equals(name) || ".idea".equals(name) ||
-                "node_modules".equals(name) || ".gradle".equals(name)) {
+                "node_modules".equals(name) || ".gradle".equals(name) || name.startsWith(".refactor-")) {
                 continue;
             }
             collectModulesRecursively(child, out, visited);
         }
     }
 
-    private ModuleCoords readModuleCoords(File moduleRoot) {
-        try (FileInputStream fis = new FileInputStream(new File(moduleRoot, "pom.xml"))) {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(false);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(fis);
-            Element project = doc.getDocumentElement();
-            if (project == null) return null;
-
-            String artifactId = getFirstChildText(project, "artifactId");
-            String groupId = getFirstChildText(project, "groupId");
-            if (groupId == null || groupId.isEmpty()) {
-                // 继承自 parent
-                Element parent = findFirstChild(project, "parent");
-                if (parent != null) {
-                    groupId = getFirstChildText(parent, "groupId");
-                }
-            }
-            if (artifactId == null || artifactId.isEmpty()) return null;
-            if (groupId == null || groupId.isEmpty()) groupId = "";
-            return new ModuleCoords(groupId, artifactId, moduleRoot);
-        } catch (Exception e) {
+    private PomEditor readPom(File moduleRoot) {
+        try {
+            return PomEditor.scan(Files.readAllBytes(new File(moduleRoot, "pom.xml").toPath()));
+        } catch (IOException e) {
+            logger.debug("读取 pom.xml 失败 {}: {}", moduleRoot, e.getMessage());
             return null;
         }
     }
 
+    /**
+     * 扫描模块 src/main/java 下各目录的包声明：同一目录下的文件属于同一个包，
+     * 每个目录只需读到第一个带包声明的文件的头部；各目录并行扫描。
+     */
     private List<String> discoverPackagesUnderModule(File moduleRoot) {
-        List<String> pkgs = new ArrayList<>();
+        Path src = new File(moduleRoot, "src/main/java").toPath();
+        if (!Files.isDirectory(src)) return Collections.emptyList();
         try {
-            File src = new File(moduleRoot, "src/main/java");
-            if (!src.exists()) return pkgs;
-            Files.walk(src.toPath())
-                .filter(p -> p.toString().endsWith(".java"))
-                .limit(5000) // 防止极端大仓库过慢
-                .forEach(p -> {
-                    try {
-                        List<String> lines = Files.readAllLines(p, StandardCharsets.UTF_8);
-                        for (String line : lines) {
-                            String t = line.trim();
-                            if (t.startsWith("package ") && t.endsWith(";")) {
-                                String pkg = t.substring(8, t.length() - 1).trim();
-                                if (!pkg.isEmpty()) pkgs.add(pkg);
-                                break;
-                            }
-                        }
-                    } catch (Exception ignore) {}
-                });
-        } catch (Exception ignore) {}
-        // 去重并按长度降序，方便最长前缀匹配
-        Set<String> uniq = new LinkedHashSet<>(pkgs);
-        List<String> sorted = new ArrayList<>(uniq);
-        sorted.sort((a, b) -> Integer.compare(b.length(), a.length()));
-        return sorted;
+            List<Path> dirs = new ArrayList<>();
+            Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    dirs.add(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Set<String> pkgs = new LinkedHashSet<>();
+            for (String pkg : ParallelIo.map(dirs, this::packageOfDirectory)) {
+                if (pkg != null) pkgs.add(pkg);
+            }
+            return new ArrayList<>(pkgs);
+        } catch (IOException e) {
+            logger.debug("扫描模块包声明失败 {}: {}", moduleRoot, e.getMessage());
+            return Collections.emptyList();
+        }
     }
 
-    private Element findFirstChild(Element parent, String name) {
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            if (parent.getChildNodes().item(i) instanceof Element) {
-                Element e = (Element) parent.getChildNodes().item(i);
-                if (name.equals(e.getNodeName())) return e;
+    /**
+     * @return 目录中 .java 文件声明的包；目录中没有 .java 文件或均为默认包时返回null
+     */
+    private String packageOfDirectory(Path dir) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.java")) {
+            for (Path file : files) {
+                try {
+                    String pkg = readPackageDeclaration(file);
+                    if (pkg != null) return pkg;
+                } catch (IOException e) {
+                    logger.debug("读取包声明失败 {}: {}", file, e.getMessage());
+                }
             }
+        } catch (IOException e) {
+            logger.debug("列出目录失败 {}: {}", dir, e.getMessage());
         }
         return null;
     }
 
-    private String getFirstChildText(Element parent, String name) {
-        Element e = findFirstChild(parent, name);
-        return e != null ? e.getTextContent() : null;
+    /**
+     * 只读取文件头部直到包声明（跳过注释与包注解）；先遇到 import 或类型声明时视为默认包，返回null
+     */
+    private static String readPackageDeclaration(Path file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1024)) {
+            boolean inComment = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String t = line.trim();
+                if (inComment) {
+                    int end = t.indexOf("*/");
+                    if (end < 0) continue;
+                    t = t.substring(end + 2).trim();
+                    inComment = false;
+                }
+                while (t.startsWith("/*")) {
+                    int end = t.indexOf("*/", 2);
+                    if (end < 0) {
+                        inComment = true;
+                        break;
+                    }
+                    t = t.substring(end + 2).trim();
+                }
+                if (inComment || t.isEmpty() || t.startsWith("//") || t.startsWith("@")) continue;
+                if (!t.startsWith("package ")) return null;
+                int semicolon = t.indexOf(';');
+                String pkg = (semicolon < 0 ? t.substring(8) : t.substring(8, semicolon)).trim();
+                return pkg.isEmpty() ? null : pkg;
+            }
+        }
+        return null;
     }
 }
 
@@ -0,0 +1,38 @@
+package com.example.refactoring.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 输出目标 - 接收重构生成的文件内容
+ *
+ * 默认直接写入文件系统；也可以收集到内存、汇总为一个统一 diff 补丁或打包为 zip，
+ * 这些输出方式不会修改磁盘上的源文件，适合预览和 CI 流水线。
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * 输出一个文件
+     *
+     * @param originalFile 原始源文件
+     * @param targetFile 目标文件（覆盖原文件时与原始源文件相同）
+     * @param relativePath 相对于源路径的文件路径，用作补丁与压缩包中的条目名
+     * @param content 新的文件内容
+     */
+    void write(File originalFile, File targetFile, String relativePath, byte[] content) throws IOException;
+
+    /**
+     * @return 是否修改磁盘上的目标文件；只有此时才需要保存快照、修复 pom 依赖
+     */
+    default boolean writesFiles() {
+        return false;
+    }
+
+    /**
+     * 结束输出（补丁文件与压缩包在此时落盘）
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
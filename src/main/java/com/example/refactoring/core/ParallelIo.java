@@ -0,0 +1,94 @@
+package com.example.refactoring.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有界并行文件 I/O：以最多 {@link #MAX_IO_THREADS} 个线程逐个处理元素，结果按输入顺序返回。
+ * 任一任务失败时取消其余任务，等待已开始的任务结束后抛出第一个失败（按输入顺序）。
+ */
+final class ParallelIo {
+
+    /** 文件 I/O 的并行度上限（受磁盘而非 CPU 限制，不随核数增长） */
+    static final int MAX_IO_THREADS = 4;
+
+    /**
+     * 可能抛出 IOException 的单个任务
+     */
+    interface IoFunction<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    private ParallelIo() {
+    }
+
+    static <T, R> List<R> map(List<? extends T> items, IoFunction<T, R> task) throws IOException {
+        return map(items, task, () -> { });
+    }
+
+    /**
+     * @param onItemDone 每个任务成功完成后调用（可能在工作线程中）
+     */
+    static <T, R> List<R> map(List<? extends T> items, IoFunction<T, R> task, Runnable onItemDone) throws IOException {
+        List<R> results = new ArrayList<>(items.size());
+        int threads = Math.min(MAX_IO_THREADS, items.size());
+        if (threads <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+                onItemDone.run();
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(executor.submit(() -> {
+                    R result = task.apply(item);
+                    onItemDone.run();
+                    return result;
+                }));
+            }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("并行文件操作被中断");
+        } finally {
+            executor.shutdownNow();
+            awaitQuietly(executor);
+        }
+    }
+
+    /**
+     * 等待已开始的任务结束，避免调用方在清理（如删除目录）时与残留任务并发
+     */
+    private static void awaitQuietly(ExecutorService executor) {
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,30 +4,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtImport;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtFieldReference;
+import spoon.reflect.reference.CtPackageReference;
+import spoon.reflect.reference.CtReference;
+import spoon.reflect.reference.CtTypeMemberWildcardImportReference;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
 
 /**
  * POM 依赖管理器：
- * - 扫描修改后的 Java 文件的 import 语句
+ * - 扫描修改后的 Java 文件的 import 语句（基于模型时还包括类型声明中引用的全部类型）
  * - 基于包前缀→模块映射，检查并为所属模块的 pom.xml 追加缺失的跨模块依赖
  * - 版本使用 ${project.version}
+ * - 基于 {@link ModuleGraph} 跳过会形成循环的依赖，以及已经可以经由其他依赖传递获得的依赖
+ * - 只在原文中拼接新增的依赖，不重新格式化 pom.xml
  *
  * 设计为幂等：已存在相同 artifactId 依赖则跳过
  */
@@ -44,50 +43,173 @@ public class PomDependencyManager {
      * 针对修改的文件，自动修复所属模块 pom.xml 中缺失的跨模块依赖。
      */
     public void fixMissingModuleDependencies(List<String> modifiedFiles, List<String> projectRoots) {
+        fixMissingModuleDependencies(modifiedFiles, projectRoots, null);
+    }
+
+    /**
+     * 自动修复缺失的跨模块依赖，Java 文件与 pom.xml 均按事务中的当前内容读取，
+     * 更新后的 pom.xml 暂存到事务中与源文件一起提交（transaction 为null时直接写入磁盘）。
+     */
+    public void fixMissingModuleDependencies(List<String> modifiedFiles, List<String> projectRoots,
+                                             FileTransaction transaction) {
         if (modifiedFiles == null || modifiedFiles.isEmpty()) return;
+        ModuleResolver resolver = new ModuleResolver(projectRoots);
+        Map<File, Set<String>> referencesByModule = new LinkedHashMap<>();
+        for (String filePath : modifiedFiles) {
+            if (filePath == null) continue;
+            File javaFile = new File(filePath).getAbsoluteFile();
+            if (!javaFile.exists()) continue;
+            File moduleRoot = resolver.getModuleMembership().moduleRootOf(javaFile);
+            if (moduleRoot == null) continue;
+            referencesByModule.computeIfAbsent(moduleRoot, k -> new LinkedHashSet<>())
+                .addAll(readImports(javaFile, transaction));
+        }
+        updatePoms(referencesByModule, resolver, transaction);
+    }
+
+    /**
+     * 根据内存中已修改的编译单元修复缺失的跨模块依赖：直接从模型收集各单元的导入（含通配符与静态导入）
+     * 以及所声明类型中引用的全部类型（含方法体中以全限定名书写的类型），不再重新读取文件；
+     * 所需依赖先按模块汇总，每个 pom.xml 只解析和写入一次。
+     */
+    public void fixMissingModuleDependencies(Collection<CtCompilationUnit> modifiedUnits, List<String> projectRoots,
+                                             FileTransaction transaction) {
+        if (modifiedUnits == null || modifiedUnits.isEmpty()) return;
+        ModuleResolver resolver = new ModuleResolver(projectRoots);
+        Map<File, Set<String>> referencesByModule = new LinkedHashMap<>();
+        for (CtCompilationUnit unit : modifiedUnits) {
+            if (unit == null || unit.getFile() == null) continue;
+            File moduleRoot = resolver.getModuleMembership().moduleRootOf(unit.getFile());
+            if (moduleRoot == null) continue;
+            referencesByModule.computeIfAbsent(moduleRoot, k -> new LinkedHashSet<>())
+                .addAll(collectReferences(unit));
+        }
+        updatePoms(referencesByModule, resolver, transaction);
+    }
+
+    /**
+     * 收集编译单元引用的全限定名：导入语句（通配符导入记为 "包名.*"，与按文本读取的导入一致）
+     * 以及所声明类型（含其成员与方法体）中的全部类型引用
+     */
+    private Set<String> collectReferences(CtCompilationUnit unit) {
+        Set<String> references = new LinkedHashSet<>();
+        for (CtImport ctImport : unit.getImports()) {
+            CtReference reference = ctImport.getReference();
+            if (reference instanceof CtPackageReference) {
+                references.add(((CtPackageReference) reference).getQualifiedName() + ".*");
+            } else if (reference instanceof CtTypeReference) {
+                addTypeReference(references, (CtTypeReference<?>) reference);
+            } else if (reference instanceof CtTypeMemberWildcardImportReference) {
+                addTypeReference(references, ((CtTypeMemberWildcardImportReference) reference).getTypeReference());
+            } else if (reference instanceof CtExecutableReference) {
+                addTypeReference(references, ((CtExecutableReference<?>) reference).getDeclaringType());
+            } else if (reference instanceof CtFieldReference) {
+                addTypeReference(references, ((CtFieldReference<?>) reference).getDeclaringType());
+            }
+        }
+        for (CtType<?> type : unit.getDeclaredTypes()) {
+            for (CtTypeReference<?> reference : type.getElements(new TypeFilter<>(CtTypeReference.class))) {
+                addTypeReference(references, reference);
+            }
+        }
+        return references;
+    }
+
+    private static void addTypeReference(Set<String> references, CtTypeReference<?> reference) {
+        if (reference != null && !reference.isPrimitive() && reference.getPackage() != null) {
+            references.add(reference.getQualifiedName());
+        }
+    }
+
+    /**
+     * 按模块解析引用的类型所属的其他模块，并为每个模块的 pom.xml 一次性追加缺失的依赖
+     *
+     * @param referencesByModule 模块根目录到其引用的全限定名的映射
+     */
+    private void updatePoms(Map<File, Set<String>> referencesByModule, ModuleResolver resolver,
+                            FileTransaction transaction) {
+        if (referencesByModule.isEmpty()) return;
         try {
-            // 构建通用模块解析器
-            ModuleResolver resolver = new ModuleResolver(projectRoots);
             this.moduleResolver = resolver;
-            
-            for (String filePath : modifiedFiles) {
-                if (filePath == null) continue;
-                File javaFile = new File(filePath);
-                if (!javaFile.exists()) continue;
 
-                File moduleRoot = locateModuleRoot(javaFile);
-                if (moduleRoot == null) continue;
+            ModuleGraph graph = resolver.getModuleGraph();
 
-                Set<String> neededArtifactIds = detectNeededArtifacts(javaFile, resolver);
+            for (Map.Entry<File, Set<String>> entry : referencesByModule.entrySet()) {
+                File moduleRoot = entry.getKey();
+                ModuleResolver.ModuleCoords self = resolver.getModule(moduleRoot);
+                Set<String> neededArtifactIds = new LinkedHashSet<>();
+                for (String qname : entry.getValue()) {
+                    ModuleResolver.ModuleCoords coords = resolver.resolveByQualifiedName(qname);
+                    if (coords == null || coords.artifactId == null || coords.artifactId.isEmpty()) continue;
+                    // 引用本模块自身的类型不需要依赖
+                    if (coords.moduleRoot != null && coords.moduleRoot.getAbsoluteFile().equals(moduleRoot)) continue;
+                    if (self != null && !neededArtifactIds.contains(coords.artifactId)) {
+                        List<String> cycle = graph.findCycleIfAdded(self.artifactId, coords.artifactId);
+                        if (cycle != null) {
+                            logger.warn("跳过依赖 {} -> {}：将形成模块循环依赖 {}", self.artifactId, coords.artifactId,
+                                String.join(" -> ", cycle));
+                            continue;
+                        }
+                        if (graph.isAvailable(self.artifactId, coords.artifactId)) {
+                            logger.debug("跳过依赖 {} -> {}：已可经由其他依赖传递获得", self.artifactId, coords.artifactId);
+                            continue;
+                        }
+                    }
+                    neededArtifactIds.add(coords.artifactId);
+                }
                 if (neededArtifactIds.isEmpty()) continue;
 
                 File pom = new File(moduleRoot, "pom.xml");
                 if (!pom.exists()) continue;
 
-                ensureDependenciesInPom(pom, neededArtifactIds);
+                ensureDependenciesInPom(pom, neededArtifactIds, transaction);
+                if (self != null) {
+                    // 之后的模块基于追加后的依赖关系判断
+                    for (String artifactId : neededArtifactIds) {
+                        graph.addDependency(self.artifactId, artifactId, "");
+                    }
+                }
             }
         } catch (Exception e) {
             logger.warn("自动修复 POM 依赖失败: {}", e.getMessage());
         }
     }
 
-    private File locateModuleRoot(File file) {
-        try {
-            File dir = file.getParentFile();
-            while (dir != null) {
-                File pom = new File(dir, "pom.xml");
-                if (pom.exists()) return dir;
-                dir = dir.getParentFile();
+    /**
+     * 检查把引用了给定类型的代码移入目标文件所属的模块后，为其补充依赖是否会形成模块循环依赖。
+     * 只查询内存中的模块依赖图，不读取 pom.xml。
+     *
+     * @param targetFile 代码移入的源文件
+     * @param referencedTypes 移入的代码引用的类型全限定名
+     * @return 会形成的每个循环（如 "base -> app -> base"），为空表示不会形成循环
+     */
+    public List<String> findDependencyCycles(ModuleResolver resolver, File targetFile,
+                                             Collection<String> referencedTypes) {
+        List<String> cycles = new ArrayList<>();
+        if (resolver == null || targetFile == null || referencedTypes == null) return cycles;
+        File moduleRoot = resolver.getModuleMembership().moduleRootOf(targetFile);
+        ModuleResolver.ModuleCoords self = resolver.getModule(moduleRoot);
+        if (self == null) return cycles;
+        Set<String> checked = new HashSet<>();
+        for (String qname : referencedTypes) {
+            ModuleResolver.ModuleCoords coords = resolver.resolveByQualifiedName(qname);
+            if (coords == null || coords.artifactId.isEmpty() || !checked.add(coords.artifactId)) continue;
+            List<String> cycle = resolver.getModuleGraph().findCycleIfAdded(self.artifactId, coords.artifactId);
+            if (cycle != null) {
+                cycles.add(String.join(" -> ", cycle) + "（" + qname + "）");
             }
-        } catch (Exception ignore) {}
-        return null;
+        }
+        return cycles;
     }
 
-    private Set<String> detectNeededArtifacts(File javaFile, ModuleResolver resolver) {
-        Set<String> artifacts = new LinkedHashSet<>();
+    /**
+     * 读取文件中 import 语句导入的全限定名（static 导入去掉 static 前缀）
+     */
+    private Set<String> readImports(File javaFile, FileTransaction transaction) {
+        Set<String> imports = new LinkedHashSet<>();
         try {
-            List<String> lines = Files.readAllLines(javaFile.toPath(), StandardCharsets.UTF_8);
-            for (String line : lines) {
+            String content = new String(readContent(javaFile, transaction), StandardCharsets.UTF_8);
+            for (String line : content.split("\\R")) {
                 String trimmed = line.trim();
                 if (!trimmed.startsWith("import ") || !trimmed.endsWith(";")) continue;
                 String qname = trimmed.substring(7, trimmed.length() - 1).trim(); // remove 'import ' and trailing ';'
@@ -95,72 +217,55 @@ public class PomDependencyManager {
                 if (qname.startsWith("static ")) {
                     qname = qname.substring("static ".length()).trim();
                 }
-                ModuleResolver.ModuleCoords coords = resolver.resolveByQualifiedName(qname);
-                if (coords != null && coords.artifactId != null && !coords.artifactId.isEmpty()) {
-                    artifacts.add(coords.artifactId);
-                }
+                imports.add(qname);
             }
         } catch (Exception e) {
             logger.debug("解析文件导入失败: {}", e.getMessage());
         }
-        return artifacts;
+        return imports;
     }
 
-    private void ensureDependenciesInPom(File pomFile, Set<String> artifactIds) {
-        try (FileInputStream fis = new FileInputStream(pomFile)) {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(false);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(fis);
-
-            Element project = doc.getDocumentElement();
-            if (project == null) return;
-
-            Element dependencies = findFirstChild(project, "dependencies");
-            if (dependencies == null) {
-                dependencies = doc.createElement("dependencies");
-                project.appendChild(dependencies);
-            }
-
-            Set<String> existing = collectExistingArtifactIds(dependencies);
+    /**
+     * 为 pom.xml 的顶层 dependencies 追加缺失的依赖：以 {@link PomEditor} 在原文中拼接新元素，
+     * 其余内容（格式、注释、属性顺序）保持不变
+     */
+    private void ensureDependenciesInPom(File pomFile, Set<String> artifactIds, FileTransaction transaction) {
+        try {
+            PomEditor editor = PomEditor.scan(readContent(pomFile, transaction));
+            if (!editor.hasProject()) return;
 
-            boolean changed = false;
+            Set<String> existing = editor.getDependencyArtifactIds();
+            List<String> missing = new ArrayList<>();
             for (String artifactId : artifactIds) {
-                if (existing.contains(artifactId)) continue;
-                Element dep = doc.createElement("dependency");
-
-                Element group = doc.createElement("groupId");
-                group.setTextContent(resolveGroupIdForArtifact(pomFile, artifactId));
-                dep.appendChild(group);
-
-                Element art = doc.createElement("artifactId");
-                art.setTextContent(artifactId);
-                dep.appendChild(art);
-
-                Element ver = doc.createElement("version");
-                ver.setTextContent("${project.version}");
-                dep.appendChild(ver);
-
-                dependencies.appendChild(dep);
-                existing.add(artifactId);
-                changed = true;
-                logger.info("为 {} 追加依赖: {}:{}:${project.version}", pomFile.getAbsolutePath(), resolveGroupIdForArtifact(pomFile, artifactId), artifactId);
+                if (!existing.contains(artifactId)) {
+                    missing.add(artifactId);
+                }
             }
+            if (missing.isEmpty()) return;
 
-            if (changed) {
-                try (FileOutputStream fos = new FileOutputStream(pomFile)) {
-                    TransformerFactory tf = TransformerFactory.newInstance();
-                    Transformer t = tf.newTransformer();
-                    t.setOutputProperty(OutputKeys.INDENT, "yes");
-                    t.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-                    t.transform(new DOMSource(doc), new StreamResult(fos));
-                }
+            // 同一 pom 追加的依赖共用 groupId，只解析一次
+            String groupId = editor.getGroupId();
+            if (groupId == null || groupId.isEmpty()) {
+                groupId = resolveGroupIdForArtifact(pomFile, missing.get(0));
+            }
+            byte[] updated = editor.addDependencies(groupId, "${project.version}", missing);
+            for (String artifactId : missing) {
+                logger.info("为 {} 追加依赖: {}:{}:${project.version}", pomFile.getAbsolutePath(), groupId, artifactId);
+            }
+            if (transaction != null) {
+                transaction.stage(pomFile, updated);
+            } else {
+                Files.write(pomFile.toPath(), updated);
             }
         } catch (Exception e) {
             logger.warn("更新 POM 失败: {}", e.getMessage());
         }
     }
 
+    private byte[] readContent(File file, FileTransaction transaction) throws IOException {
+        return transaction != null ? transaction.read(file) : Files.readAllBytes(file.toPath());
+    }
+
     private String resolveGroupIdForArtifact(File currentPom, String artifactId) {
         // 优先尝试使用当前项目根的父 groupId（常见 monorepo 结构共享 groupId）
         try {
@@ -168,24 +273,9 @@ public class PomDependencyManager {
             while (root != null) {
                 File pom = new File(root, "pom.xml");
                 if (pom.exists()) {
-                    try (FileInputStream fis = new FileInputStream(pom)) {
-                        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                        dbf.setNamespaceAware(false);
-                        DocumentBuilder db = dbf.newDocumentBuilder();
-                        Document doc = db.parse(fis);
-                        Element project = doc.getDocumentElement();
-                        if (project != null) {
-                            String groupId = findFirstChildText(project, "groupId");
-                            if (groupId == null || groupId.isEmpty()) {
-                                Element parent = findFirstChild(project, "parent");
-                                if (parent != null) {
-                                    groupId = findFirstChildText(parent, "groupId");
-                                }
-                            }
-                            if (groupId != null && !groupId.isEmpty()) {
-                                return groupId;
-                            }
-                        }
+                    String groupId = PomEditor.scan(Files.readAllBytes(pom.toPath())).getGroupId();
+                    if (groupId != null && !groupId.isEmpty()) {
+                        return groupId;
                     }
                 }
                 root = root.getParentFile();
@@ -194,49 +284,6 @@ public class PomDependencyManager {
         // 兜底：常见默认 groupId
         return "org.jhotdraw";
     }
-
-    private Element findFirstChild(Element parent, String name) {
-        NodeList list = parent.getChildNodes();
-        for (int i = 0; i < list.getLength(); i++) {
-            Node n = list.item(i);
-            if (n instanceof Element && name.equals(n.getNodeName())) {
-                return (Element) n;
-            }
-        }
-        return null;
-    }
-
-    private Set<String> collectExistingArtifactIds(Element dependencies) {
-        Set<String> ids = new HashSet<>();
-        NodeList deps = dependencies.getChildNodes();
-        for (int i = 0; i < deps.getLength(); i++) {
-            Node n = deps.item(i);
-            if (!(n instanceof Element)) continue;
-            Element dep = (Element) n;
-            if (!"dependency".equals(dep.getNodeName())) continue;
-            String artifactId = null;
-            NodeList children = dep.getChildNodes();
-            for (int j = 0; j < children.getLength(); j++) {
-                Node c = children.item(j);
-                if (c instanceof Element) {
-                    Element e = (Element) c;
-                    if ("artifactId".equals(e.getNodeName())) {
-                        artifactId = e.getTextContent();
-                        break;
-                    }
-                }
-            }
-            if (artifactId != null && !artifactId.isEmpty()) {
-                ids.add(artifactId.trim());
-            }
-        }
-        return ids;
-    }
-
-    private String findFirstChildText(Element parent, String name) {
-        Element e = findFirstChild(parent, name);
-        return e != null ? e.getTextContent() : null;
-    }
 }
 
 
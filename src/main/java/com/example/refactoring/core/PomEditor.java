@@ -0,0 +1,385 @@
+package com.example.refactoring.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 保留格式的 pom.xml 编辑器：一次顺序扫描定位顶层 &lt;dependencies&gt; 块（跳过注释、CDATA 与处理指令），
+ * 追加依赖时按周围元素的缩进与换行风格拼接新文本，其余字节原样保留。
+ *
+ * 扫描按字节进行（以 ISO-8859-1 一一对应），偏移即字节偏移；插入的文本按文档声明的编码写入。
+ */
+final class PomEditor {
+
+    private static final Pattern ENCODING = Pattern.compile("^\\s*<\\?xml[^>]*encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+    private static final String DEFAULT_INDENT = "  ";
+
+    private final byte[] content;
+    private final String text;
+    private final Map<String, String> dependencyScopes = new LinkedHashMap<>();
+    private boolean hasProject;
+    private String groupId;
+    private String parentGroupId;
+    private String artifactId;
+    private String pendingArtifactId;
+    private String pendingScope;
+    private int firstProjectChildStart = -1;
+    private int dependenciesStart = -1;
+    private int dependenciesEnd = -1;        // 起始标签结束位置（自闭合时为整个元素结束位置）
+    private boolean dependenciesSelfClosing;
+    private int firstDependencyStart = -1;
+    private int dependenciesCloseStart = -1;
+    private int projectCloseStart = -1;
+
+    private PomEditor(byte[] content) {
+        this.content = content;
+        this.text = new String(content, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 扫描 pom 内容
+     */
+    static PomEditor scan(byte[] content) {
+        PomEditor editor = new PomEditor(content);
+        editor.scan();
+        return editor;
+    }
+
+    /**
+     * @return 根元素是否为 project
+     */
+    boolean hasProject() {
+        return hasProject;
+    }
+
+    /**
+     * @return 项目的 groupId，未声明时取 parent 的 groupId，均未声明时返回null
+     */
+    String getGroupId() {
+        return groupId != null && !groupId.isEmpty() ? groupId : parentGroupId;
+    }
+
+    /**
+     * @return 项目自身的 artifactId，未声明时返回null
+     */
+    String getArtifactId() {
+        return artifactId != null && !artifactId.isEmpty() ? artifactId : null;
+    }
+
+    /**
+     * @return 顶层 &lt;dependencies&gt; 中已声明的 artifactId
+     */
+    Set<String> getDependencyArtifactIds() {
+        return dependencyScopes.keySet();
+    }
+
+    /**
+     * @return 顶层 &lt;dependencies&gt; 中已声明的 artifactId 到 scope 的映射（未声明 scope 时为空串）
+     */
+    Map<String, String> getDependencyScopes() {
+        return dependencyScopes;
+    }
+
+    /**
+     * 在顶层 &lt;dependencies&gt; 末尾追加依赖（不存在时在 &lt;/project&gt; 前创建）
+     *
+     * @return 编辑后的内容
+     * @throws IOException 无法定位插入位置（pom 不完整）
+     */
+    byte[] addDependencies(String dependencyGroupId, String version, Collection<String> artifactIds) throws IOException {
+        String newline = text.contains("\r\n") ? "\r\n" : "\n";
+        String projectChildIndent = firstProjectChildStart >= 0 ? lineIndent(firstProjectChildStart) : null;
+        String unit = projectChildIndent != null && !projectChildIndent.isEmpty() ? projectChildIndent : DEFAULT_INDENT;
+
+        if (dependenciesStart < 0) {
+            if (projectCloseStart < 0) {
+                throw new IOException("pom.xml 缺少 </project>");
+            }
+            String indent = projectChildIndent != null ? projectChildIndent : unit;
+            StringBuilder block = new StringBuilder();
+            block.append(indent).append("<dependencies>").append(newline);
+            appendDependencies(block, indent + unit, unit, newline, dependencyGroupId, version, artifactIds);
+            block.append(indent).append("</dependencies>").append(newline);
+            return insertBeforeClosingTag(projectCloseStart, block, "", newline);
+        }
+
+        String dependenciesIndent = lineIndent(dependenciesStart);
+        if (dependenciesIndent == null) {
+            dependenciesIndent = "";
+        }
+        String dependencyIndent = firstDependencyStart >= 0 ? lineIndent(firstDependencyStart) : null;
+        if (dependencyIndent == null) {
+            dependencyIndent = dependenciesIndent + unit;
+        } else if (dependencyIndent.length() > dependenciesIndent.length() && dependencyIndent.startsWith(dependenciesIndent)) {
+            unit = dependencyIndent.substring(dependenciesIndent.length());
+        }
+        StringBuilder block = new StringBuilder();
+        appendDependencies(block, dependencyIndent, unit, newline, dependencyGroupId, version, artifactIds);
+
+        if (dependenciesSelfClosing) {
+            // <dependencies/> 展开为成对标签
+            String replacement = "<dependencies>" + newline + block + dependenciesIndent + "</dependencies>";
+            return splice(dependenciesStart, dependenciesEnd, replacement);
+        }
+        if (dependenciesCloseStart < 0) {
+            throw new IOException("pom.xml 缺少 </dependencies>");
+        }
+        return insertBeforeClosingTag(dependenciesCloseStart, block, dependenciesIndent, newline);
+    }
+
+    private void appendDependencies(StringBuilder out, String indent, String unit, String newline,
+                                    String dependencyGroupId, String version, Collection<String> artifactIds) {
+        String inner = indent + unit;
+        for (String artifactId : artifactIds) {
+            out.append(indent).append("<dependency>").append(newline);
+            out.append(inner).append("<groupId>").append(escape(dependencyGroupId)).append("</groupId>").append(newline);
+            out.append(inner).append("<artifactId>").append(escape(artifactId)).append("</artifactId>").append(newline);
+            out.append(inner).append("<version>").append(escape(version)).append("</version>").append(newline);
+            out.append(indent).append("</dependency>").append(newline);
+        }
+    }
+
+    /**
+     * 在结束标签前插入若干完整的行：结束标签独占一行时插在该行行首，否则先换行，插入后补上结束标签的缩进
+     */
+    private byte[] insertBeforeClosingTag(int closeStart, CharSequence lines, String closeIndent, String newline) {
+        if (lineIndent(closeStart) != null) {
+            return splice(lineStart(closeStart), lineStart(closeStart), lines.toString());
+        }
+        return splice(closeStart, closeStart, newline + lines + closeIndent);
+    }
+
+    private byte[] splice(int start, int end, String replacement) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + replacement.length() * 2);
+        out.write(content, 0, start);
+        byte[] inserted = replacement.getBytes(documentCharset());
+        out.write(inserted, 0, inserted.length);
+        out.write(content, end, content.length - end);
+        return out.toByteArray();
+    }
+
+    private Charset documentCharset() {
+        Matcher matcher = ENCODING.matcher(text);
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (RuntimeException ignore) {
+                // 未知编码按 UTF-8 处理
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private int lineStart(int offset) {
+        int start = offset;
+        while (start > 0 && text.charAt(start - 1) != '\n') {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * @return offset 所在行行首到 offset 之间的空白；之间有其他字符时返回null
+     */
+    private String lineIndent(int offset) {
+        int start = lineStart(offset);
+        for (int i = start; i < offset; i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t') {
+                return null;
+            }
+        }
+        return text.substring(start, offset);
+    }
+
+    /**
+     * 顺序扫描一遍文档，记录顶层元素的位置与已声明的依赖
+     */
+    private void scan() {
+        List<String> path = new ArrayList<>();
+        StringBuilder elementText = null;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c != '<') {
+                int next = text.indexOf('<', i);
+                int end = next < 0 ? length : next;
+                if (elementText != null) {
+                    elementText.append(text, i, end);
+                }
+                i = end;
+                continue;
+            }
+            if (text.startsWith("<!--", i)) {
+                i = skipPast(i + 4, "-->");
+            } else if (text.startsWith("<![CDATA[", i)) {
+                int end = text.indexOf("]]>", i + 9);
+                if (elementText != null) {
+                    elementText.append(text, i + 9, end < 0 ? length : end);
+                }
+                i = end < 0 ? length : end + 3;
+            } else if (text.startsWith("<?", i)) {
+                i = skipPast(i + 2, "?>");
+            } else if (text.startsWith("<!", i)) {
+                i = skipPast(i + 2, ">");
+            } else if (text.startsWith("</", i)) {
+                int end = text.indexOf('>', i);
+                if (end < 0) {
+                    return;
+                }
+                if (!path.isEmpty()) {
+                    if (elementText != null) {
+                        recordText(path, elementText.toString().trim());
+                        elementText = null;
+                    }
+                    if (path.size() == 3 && "dependency".equals(path.get(2)) && isTopLevelDependencies(path)) {
+                        onDependencyEnd();
+                    } else if (path.size() == 2 && isTopLevelDependencies(path)) {
+                        dependenciesCloseStart = i;
+                    } else if (path.size() == 1 && "project".equals(path.get(0))) {
+                        projectCloseStart = i;
+                    }
+                    path.remove(path.size() - 1);
+                }
+                i = end + 1;
+            } else {
+                int end = tagEnd(i + 1);
+                if (end < 0) {
+                    return;
+                }
+                boolean selfClosing = text.charAt(end - 1) == '/';
+                String name = tagName(i + 1);
+                elementText = null;
+                path.add(name);
+                onStartTag(path, i, end + 1, selfClosing);
+                if (selfClosing) {
+                    path.remove(path.size() - 1);
+                } else if (isTextCaptured(path)) {
+                    elementText = new StringBuilder();
+                }
+                i = end + 1;
+            }
+        }
+    }
+
+    private void onStartTag(List<String> path, int start, int end, boolean selfClosing) {
+        int depth = path.size();
+        String name = path.get(depth - 1);
+        if (depth == 1) {
+            hasProject = "project".equals(name);
+        } else if (depth == 2 && hasProject) {
+            if (firstProjectChildStart < 0) {
+                firstProjectChildStart = start;
+            }
+            if ("dependencies".equals(name) && dependenciesStart < 0) {
+                dependenciesStart = start;
+                dependenciesEnd = end;
+                dependenciesSelfClosing = selfClosing;
+            }
+        } else if (depth == 3 && "dependency".equals(name) && isTopLevelDependencies(path)
+                && start > dependenciesStart) {
+            if (firstDependencyStart < 0) {
+                firstDependencyStart = start;
+            }
+            pendingArtifactId = null;
+            pendingScope = "";
+        }
+    }
+
+    private void onDependencyEnd() {
+        if (pendingArtifactId != null && !pendingArtifactId.isEmpty()) {
+            dependencyScopes.put(pendingArtifactId, pendingScope);
+        }
+        pendingArtifactId = null;
+    }
+
+    private boolean isTextCaptured(List<String> path) {
+        int depth = path.size();
+        if (!hasProject || depth < 2) {
+            return false;
+        }
+        String name = path.get(depth - 1);
+        if (depth == 2) {
+            return "groupId".equals(name) || "artifactId".equals(name);
+        }
+        if (depth == 3) {
+            return "groupId".equals(name) && "parent".equals(path.get(1));
+        }
+        return depth == 4 && ("artifactId".equals(name) || "scope".equals(name))
+            && "dependency".equals(path.get(2)) && isTopLevelDependencies(path);
+    }
+
+    private void recordText(List<String> path, String value) {
+        int depth = path.size();
+        String name = path.get(depth - 1);
+        if (depth == 2) {
+            if ("groupId".equals(name)) {
+                groupId = value;
+            } else {
+                artifactId = value;
+            }
+        } else if (depth == 3) {
+            parentGroupId = value.isEmpty() ? null : value;
+        } else if ("artifactId".equals(name)) {
+            pendingArtifactId = value;
+        } else {
+            pendingScope = value;
+        }
+    }
+
+    /**
+     * 路径位于第一个顶层 &lt;dependencies&gt; 之下（不含 dependencyManagement、profiles 等中的依赖）
+     */
+    private boolean isTopLevelDependencies(List<String> path) {
+        return hasProject && path.size() >= 2 && "dependencies".equals(path.get(1)) && dependenciesStart >= 0
+            && !dependenciesSelfClosing && dependenciesCloseStart < 0;
+    }
+
+    private int skipPast(int from, String terminator) {
+        int end = text.indexOf(terminator, from);
+        return end < 0 ? text.length() : end + terminator.length();
+    }
+
+    /**
+     * @return 起始标签中 '&gt;' 的位置（跳过引号中的属性值），找不到时返回-1
+     */
+    private int tagEnd(int from) {
+        char quote = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String tagName(int from) {
+        int end = from;
+        while (end < text.length()) {
+            char c = text.charAt(end);
+            if (Character.isWhitespace(c) || c == '>' || c == '/') break;
+            end++;
+        }
+        return text.substring(from, end);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.refactoring.core;
 
+import com.example.refactoring.analyzer.PullUpFeasibilityAnalyzer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +57,60 @@ public class PullUpMethodRefactoring {
         return orchestrator.pullUpMethodToAncestor(sourcePaths, childClassName, methodName, targetAncestorClassName, outputPath);
     }
     
+    /**
+     * 执行Pull-Up-Method重构到指定祖先类（带重构选项）
+     */
+    public RefactoringResult pullUpMethodToAncestor(List<String> sourcePaths, 
+                                                  String childClassName, 
+                                                  String methodName, 
+                                                  String targetAncestorClassName,
+                                                  String outputPath,
+                                                  RefactoringOptions options) {
+        return orchestrator.pullUpMethodToAncestor(sourcePaths, childClassName, methodName, targetAncestorClassName, outputPath, options);
+    }
+    
+    /**
+     * 只读分析方法上提的可行性（不修改任何文件）
+     */
+    public PullUpFeasibilityAnalyzer.FeasibilityReport analyzePullUp(List<String> sourcePaths,
+                                                                      String childClassName,
+                                                                      String methodName,
+                                                                      String targetAncestorClassName) {
+        return orchestrator.analyzePullUp(sourcePaths, childClassName, methodName, targetAncestorClassName);
+    }
+    
+    /**
+     * 只读分析类中所有方法对所有祖先类的上提可行性（CLI 使用）
+     */
+    public PullUpFeasibilityAnalyzer.FeasibilityMatrix analyzeFeasibilityMatrix(List<String> sourcePaths,
+                                                                                 String className) {
+        return orchestrator.analyzeFeasibilityMatrix(sourcePaths, className);
+    }
+    
+    /**
+     * 只读评估所有候选目标祖先类并按得分排序（CLI 使用）
+     */
+    public List<PullUpFeasibilityAnalyzer.TargetScore> rankTargetAncestors(List<String> sourcePaths,
+                                                                           String childClassName,
+                                                                           String methodName) {
+        return orchestrator.rankTargetAncestors(sourcePaths, childClassName, methodName);
+    }
+    
+    /**
+     * 自动去重：将指定祖先类后代中所有可安全上提的重复方法批量上提到该祖先类
+     */
+    public RefactoringResult dedupUnderAncestor(List<String> sourcePaths, String ancestorClassName, String outputPath) {
+        return orchestrator.dedupUnderAncestor(sourcePaths, ancestorClassName, outputPath);
+    }
+    
+    /**
+     * 自动去重（带重构选项）
+     */
+    public RefactoringResult dedupUnderAncestor(List<String> sourcePaths, String ancestorClassName, String outputPath,
+                                                RefactoringOptions options) {
+        return orchestrator.dedupUnderAncestor(sourcePaths, ancestorClassName, outputPath, options);
+    }
+    
     /**
      * 获取类的所有方法名称（用于CLI提示）
      */
@@ -83,4 +138,18 @@ public class PullUpMethodRefactoring {
     public boolean restoreSnapshot(List<String> sourcePaths) {
         return orchestrator.restoreSnapshot(sourcePaths);
     }
+
+    /**
+     * 从指定快照恢复（snapshotId 为null时恢复最近一代）。
+     */
+    public boolean restoreSnapshot(List<String> sourcePaths, String snapshotId) {
+        return orchestrator.restoreSnapshot(sourcePaths, snapshotId);
+    }
+
+    /**
+     * 列出可恢复的快照（最新的在前）。
+     */
+    public List<SnapshotManager.SnapshotInfo> listSnapshots(List<String> sourcePaths) {
+        return orchestrator.listSnapshots(sourcePaths);
+    }
 }
\ No newline at end of file
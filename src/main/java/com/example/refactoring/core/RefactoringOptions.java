@@ -0,0 +1,95 @@
+package com.example.refactoring.core;
+
+/**
+ * 重构选项
+ * 汇总单次重构运行的可选行为，默认值与原有行为保持一致
+ */
+public class RefactoringOptions {
+
+    /**
+     * 是否在同一次重构中移除所有后代类中与被上提方法结构相同的实现
+     */
+    private boolean removeIdenticalDescendantCopies;
+
+    /**
+     * 未指定目标祖先类时，是否评估所有祖先类并选择得分最高者（而非直接父类）
+     */
+    private boolean selectBestTarget;
+
+    /**
+     * 输出文件时使用的打印模式
+     */
+    private CodeGenerator.PrinterMode printerMode = CodeGenerator.PrinterMode.SNIPER;
+
+    /**
+     * 生成的文件内容的输出目标（默认直接写入文件系统）
+     */
+    private OutputSink outputSink = new FileSystemOutputSink();
+
+    /**
+     * 创建默认选项（与原有行为一致）
+     */
+    public static RefactoringOptions defaults() {
+        return new RefactoringOptions();
+    }
+
+    /**
+     * 复制一份选项（避免修改调用方传入的实例）
+     */
+    public RefactoringOptions copy() {
+        return new RefactoringOptions()
+            .setRemoveIdenticalDescendantCopies(removeIdenticalDescendantCopies)
+            .setSelectBestTarget(selectBestTarget)
+            .setPrinterMode(printerMode)
+            .setOutputSink(outputSink);
+    }
+
+    public boolean isRemoveIdenticalDescendantCopies() {
+        return removeIdenticalDescendantCopies;
+    }
+
+    public RefactoringOptions setRemoveIdenticalDescendantCopies(boolean removeIdenticalDescendantCopies) {
+        this.removeIdenticalDescendantCopies = removeIdenticalDescendantCopies;
+        return this;
+    }
+
+    public boolean isSelectBestTarget() {
+        return selectBestTarget;
+    }
+
+    public RefactoringOptions setSelectBestTarget(boolean selectBestTarget) {
+        this.selectBestTarget = selectBestTarget;
+        return this;
+    }
+
+    public CodeGenerator.PrinterMode getPrinterMode() {
+        return printerMode;
+    }
+
+    public RefactoringOptions setPrinterMode(CodeGenerator.PrinterMode printerMode) {
+        this.printerMode = printerMode != null ? printerMode : CodeGenerator.PrinterMode.SNIPER;
+        return this;
+    }
+
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
+
+    /**
+     * 设置输出目标；不写入文件系统的输出目标不会保存快照，也不会修改 pom.xml
+     */
+    public RefactoringOptions setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink != null ? outputSink : new FileSystemOutputSink();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "RefactoringOptions{" +
+               "removeIdenticalDescendantCopies=" + removeIdenticalDescendantCopies +
+               ", selectBestTarget=" + selectBestTarget +
+               ", printerMode=" + printerMode +
+               ", outputSink=" + outputSink.getClass().getSimpleName() +
+               '}';
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.refactoring.core;
 
 import com.example.refactoring.analyzer.DependencyAnalyzer;
+import com.example.refactoring.analyzer.DuplicateMethodFinder;
+import com.example.refactoring.analyzer.PullUpFeasibilityAnalyzer;
 import com.example.refactoring.checker.MethodConflictChecker;
 import com.example.refactoring.adjuster.VisibilityAdjuster;
 import com.example.refactoring.adjuster.ReturnTypeAdjuster;
@@ -9,16 +11,26 @@ import com.example.refactoring.handler.MethodPullUpHandler;
 import com.example.refactoring.handler.VisibilityHandler;
 import com.example.refactoring.handler.ThisCastFixHandler;
 
+import spoon.compiler.Environment;
 import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.declaration.CtParameter;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+import spoon.support.modelobs.SourceFragmentCreator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 重构编排器
@@ -28,7 +40,7 @@ public class RefactoringOrchestrator {
     
     private static final Logger logger = LoggerFactory.getLogger(RefactoringOrchestrator.class);
     
-    private final ModelBuilder modelBuilder;
+    private final ModelCache modelCache;
     private final ClassFinder classFinder;
     private final CodeGenerator codeGenerator;
     private final ImportManager importManager;
@@ -36,6 +48,8 @@ public class RefactoringOrchestrator {
     private final PomDependencyManager pomDependencyManager;
     
     private final DependencyAnalyzer dependencyAnalyzer;
+    private final DuplicateMethodFinder duplicateMethodFinder;
+    private final PullUpFeasibilityAnalyzer feasibilityAnalyzer;
     private final MethodConflictChecker conflictChecker;
     private final VisibilityAdjuster visibilityAdjuster;
     private final ReturnTypeAdjuster returnTypeAdjuster;
@@ -45,7 +59,14 @@ public class RefactoringOrchestrator {
     private final ThisCastFixHandler thisCastFixHandler;
     
     public RefactoringOrchestrator() {
-        this.modelBuilder = new ModelBuilder();
+        this(new ModelBuilder());
+    }
+    
+    /**
+     * @param modelBuilder 构建代码模型（缓存未命中时）使用的构建器
+     */
+    public RefactoringOrchestrator(ModelBuilder modelBuilder) {
+        this.modelCache = new ModelCache(modelBuilder);
         this.classFinder = new ClassFinder();
         this.codeGenerator = new CodeGenerator();
         this.importManager = new ImportManager();
@@ -53,6 +74,8 @@ public class RefactoringOrchestrator {
         this.pomDependencyManager = new PomDependencyManager();
         
         this.dependencyAnalyzer = new DependencyAnalyzer();
+        this.duplicateMethodFinder = new DuplicateMethodFinder();
+        this.feasibilityAnalyzer = new PullUpFeasibilityAnalyzer();
         this.conflictChecker = new MethodConflictChecker();
         this.visibilityAdjuster = new VisibilityAdjuster();
         this.returnTypeAdjuster = new ReturnTypeAdjuster();
@@ -93,17 +116,74 @@ public class RefactoringOrchestrator {
                                                   String methodName, 
                                                   String targetAncestorClassName,
                                                   String outputPath) {
+        return pullUpMethodToAncestor(sourcePaths, childClassName, methodName, targetAncestorClassName,
+            outputPath, RefactoringOptions.defaults());
+    }
+    
+    /**
+     * 执行Pull-Up-Method重构到指定祖先类（带重构选项）
+     * 
+     * @param sourcePaths 源代码路径列表
+     * @param childClassName 子类名称
+     * @param methodName 要上提的方法名
+     * @param targetAncestorClassName 目标祖先类名称（null表示直接父类）
+     * @param outputPath 输出路径（可选，null表示覆盖原文件）
+     * @param options 重构选项
+     * @return 重构结果
+     */
+    public RefactoringResult pullUpMethodToAncestor(List<String> sourcePaths, 
+                                                  String childClassName, 
+                                                  String methodName, 
+                                                  String targetAncestorClassName,
+                                                  String outputPath,
+                                                  RefactoringOptions options) {
+        if (options == null) {
+            options = RefactoringOptions.defaults();
+        }
+        // 不写入源文件的运行（如预览）不重做中断的提交：重做会改写文件，留给下一次写入的运行
+        if (options.getOutputSink().writesFiles()) {
+            recoverInterruptedCommit(sourcePaths);
+        }
+        // 本次运行的模块索引，评分、预检查、迁移与快照共用同一份模块归属查询
+        ModuleResolver moduleResolver = new ModuleResolver(sourcePaths);
+        // 在缓存的模型上执行（租约期间独占），结束时回滚全部修改，模型留在缓存中供后续请求复用
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            return pullUpMethodOnModel(lease, sourcePaths, childClassName, methodName, targetAncestorClassName,
+                outputPath, options, moduleResolver);
+        }
+    }
+    
+    /**
+     * 在租用的缓存模型上执行 Pull-Up-Method 重构
+     */
+    private RefactoringResult pullUpMethodOnModel(ModelCache.Lease lease, List<String> sourcePaths,
+                                                  String childClassName, String methodName,
+                                                  String targetAncestorClassName, String outputPath,
+                                                  RefactoringOptions options, ModuleResolver moduleResolver) {
+        // 1. 获取代码模型
+        CtModel model = lease.getModel();
+        if (model == null) {
+            return RefactoringResult.failure("无法构建代码模型");
+        }
+        ModuleMembership modules = moduleResolver.getModuleMembership();
+        // 最佳目标模式：评估所有祖先类，选择得分最高者（同时移除被覆盖的重复实现）
+        PullUpFeasibilityAnalyzer.TargetScore bestTarget = null;
+        if (targetAncestorClassName == null && options.isSelectBestTarget()) {
+            List<PullUpFeasibilityAnalyzer.TargetScore> ranking =
+                rankTargetAncestors(model, childClassName, methodName, modules);
+            if (ranking.isEmpty() || !ranking.get(0).isFeasible()) {
+                return RefactoringResult.failure("没有可上提的目标祖先类: " + ranking);
+            }
+            bestTarget = ranking.get(0);
+            targetAncestorClassName = bestTarget.getAncestorName();
+            options = options.copy().setRemoveIdenticalDescendantCopies(true);
+            logger.info("最佳目标模式选择祖先类: {}", bestTarget);
+        }
         try {
             String ancestorInfo = targetAncestorClassName != null ? 
                 " 到祖先类=" + targetAncestorClassName : " 到直接父类";
             logger.info("开始Pull-Up-Method重构: 类={}, 方法={}{}", childClassName, methodName, ancestorInfo);
             
-            // 1. 构建Spoon模型
-            CtModel model = modelBuilder.buildModel(sourcePaths);
-            if (model == null) {
-                return RefactoringResult.failure("无法构建代码模型");
-            }
-            
             // 2. 定位子类和方法
             CtClass<?> childClass = classFinder.findClass(model, childClassName);
             if (childClass == null) {
@@ -139,41 +219,31 @@ public class RefactoringOrchestrator {
             logger.info("找到目标祖先类: {}", targetAncestorClass.getQualifiedName());
             
             // 4. 执行重构前检查
-            RefactoringResult checkResult = performPreChecks(targetMethod, childClass, targetAncestorClass);
+            RefactoringResult checkResult = performPreChecks(targetMethod, childClass, targetAncestorClass,
+                moduleResolver);
             if (!checkResult.isSuccess()) {
                 return checkResult;
             }
             
-            // 5. 执行方法迁移
-            RefactoringResult migrationResult = performMethodMigration(targetMethod, childClass, targetAncestorClass);
-            if (!migrationResult.isSuccess()) {
-                return migrationResult;
-            }
-            
-            // 6. 在写入前保存快照（仅当覆盖原文件时生效）
-            if (outputPath == null) {
-                List<String> originals = codeGenerator.getOriginalFilePathsForModifiedClasses(
-                    childClass, targetAncestorClass, classFinder);
-                snapshotManager.saveSnapshot(originals, sourcePaths);
-            }
-
-            // 7. 输出结果
-            List<String> modifiedFiles = codeGenerator.writeModifiedClassesOnly(
-                childClass, targetAncestorClass, outputPath, sourcePaths, classFinder);
-            
-            // 7.5 自动修复跨模块依赖（仅在覆盖原文件时执行，避免输出目录被污染）
-            if (outputPath == null && !modifiedFiles.isEmpty()) {
-                pomDependencyManager.fixMissingModuleDependencies(modifiedFiles, sourcePaths);
-            }
-
-            // 7.6 清理无效的 @Override（父类为 Object 的类）
+            // 5. 执行方法迁移（整个过程的修改记录在同一个变更日志中，供输出时生成文本编辑，结束时据此回滚）
+            Set<CtClass<?>> extraModifiedClasses = new LinkedHashSet<>();
+            Set<CtCompilationUnit> touchedUnits = new LinkedHashSet<>();
+            CodeGenerator.WritePlan writePlan;
+            ChangeJournal runJournal = beginRun(childClass.getFactory().getEnvironment());
             try {
-                visibilityHandler.cleanInvalidOverrides(targetAncestorClass);
-                // 目标祖先类发生变化，需要再次写入
-                codeGenerator.writeModifiedClassesOnly(childClass, targetAncestorClass, outputPath, sourcePaths, classFinder);
-            } catch (Exception e) {
-                logger.debug("清理 @Override 注解时发生异常: {}", e.getMessage());
+                RefactoringResult migrationResult = performMethodMigration(targetMethod, childClass,
+                    targetAncestorClass, options, modules, extraModifiedClasses, touchedUnits);
+                if (!migrationResult.isSuccess()) {
+                    return migrationResult;
+                }
+                
+                // 6-7. 保存快照并输出结果
+                writePlan = persistChanges(targetAncestorClass, touchedUnits, outputPath, sourcePaths,
+                    options.getPrinterMode(), options.getOutputSink(), modules, runJournal);
+            } finally {
+                finishRun(lease, runJournal);
             }
+            List<String> modifiedFiles = writePlan.getTargetFiles();
 
             logger.info("Pull-Up-Method重构完成，修改了 {} 个文件", modifiedFiles.size());
             
@@ -182,8 +252,19 @@ public class RefactoringOrchestrator {
             successMessage.append("成功将方法 ").append(methodName)
                          .append(" 从 ").append(childClassName)
                          .append(" 上提到 ").append(targetAncestorClass.getSimpleName());
+            if (options.isRemoveIdenticalDescendantCopies()) {
+                successMessage.append("，并移除了 ").append(extraModifiedClasses.size())
+                             .append(" 个后代类中的相同实现");
+            }
+            if (writePlan.getSkippedCount() > 0) {
+                successMessage.append("（").append(writePlan.getSkippedCount()).append(" 个文件内容未变化，未重写）");
+            }
             
-            return RefactoringResult.success(successMessage.toString(), modifiedFiles);
+            RefactoringResult result = RefactoringResult.success(successMessage.toString(), modifiedFiles);
+            if (bestTarget != null) {
+                result.addWarning("自动选择目标祖先类 " + bestTarget);
+            }
+            return result;
             
         } catch (Exception e) {
             logger.error("重构过程中发生异常", e);
@@ -191,22 +272,506 @@ public class RefactoringOrchestrator {
         }
     }
 
+    /**
+     * 只读分析：评估方法能否上提到目标祖先类以及将产生哪些变更，不修改模型也不写出任何文件
+     * 
+     * 模型通过缓存获取，源码未变化时重复调用无需重新构建模型。
+     * 
+     * @param sourcePaths 源代码路径列表
+     * @param childClassName 子类名称
+     * @param methodName 要上提的方法名
+     * @param targetAncestorClassName 目标祖先类名称（null表示直接父类）
+     * @return 可行性报告
+     */
+    public PullUpFeasibilityAnalyzer.FeasibilityReport analyzePullUp(List<String> sourcePaths,
+                                                                      String childClassName,
+                                                                      String methodName,
+                                                                      String targetAncestorClassName) {
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            CtModel model = lease.getModel();
+            if (model == null) {
+                return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(
+                    childClassName, methodName, targetAncestorClassName, "无法构建代码模型");
+            }
+            
+            CtClass<?> childClass = classFinder.findClass(model, childClassName);
+            if (childClass == null) {
+                return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(
+                    childClassName, methodName, targetAncestorClassName, "找不到指定的子类: " + childClassName);
+            }
+            
+            CtMethod<?> targetMethod = classFinder.findMethod(childClass, methodName);
+            if (targetMethod == null) {
+                return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(childClassName, methodName,
+                    targetAncestorClassName, "在类 " + childClassName + " 中找不到方法: " + methodName);
+            }
+            
+            CtClass<?> targetAncestorClass;
+            if (targetAncestorClassName == null) {
+                targetAncestorClass = classFinder.getParentClass(childClass);
+                if (targetAncestorClass == null) {
+                    return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(childClassName, methodName,
+                        null, "类 " + childClassName + " 没有父类或父类无法解析");
+                }
+            } else {
+                targetAncestorClass = classFinder.findClass(model, targetAncestorClassName);
+                if (targetAncestorClass == null) {
+                    return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(childClassName, methodName,
+                        targetAncestorClassName, "找不到指定的目标祖先类: " + targetAncestorClassName);
+                }
+                if (!classFinder.isAncestorClass(targetAncestorClass, childClass)) {
+                    return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(childClassName, methodName,
+                        targetAncestorClassName,
+                        "类 " + targetAncestorClassName + " 不是 " + childClassName + " 的祖先类");
+                }
+            }
+            
+            return feasibilityAnalyzer.analyze(targetMethod, childClass, targetAncestorClass,
+                new ModuleResolver(sourcePaths).getModuleMembership());
+            
+        } catch (Exception e) {
+            logger.error("可行性分析过程中发生异常", e);
+            return PullUpFeasibilityAnalyzer.FeasibilityReport.failure(
+                childClassName, methodName, targetAncestorClassName, "分析失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 只读分析：评估类中每个方法上提到每个祖先类的可行性，返回方法 × 祖先类矩阵
+     * 
+     * @param sourcePaths 源代码路径列表
+     * @param className 类名称
+     * @return 可行性矩阵，找不到类时返回null
+     */
+    public PullUpFeasibilityAnalyzer.FeasibilityMatrix analyzeFeasibilityMatrix(List<String> sourcePaths,
+                                                                                 String className) {
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            CtModel model = lease.getModel();
+            if (model == null) {
+                return null;
+            }
+            CtClass<?> clazz = classFinder.findClass(model, className);
+            if (clazz == null) {
+                return null;
+            }
+            return feasibilityAnalyzer.analyzeMatrix(clazz, classFinder.getAllAncestorClasses(clazz),
+                new ModuleResolver(sourcePaths).getModuleMembership());
+        } catch (Exception e) {
+            logger.error("可行性矩阵分析过程中发生异常", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 只读分析：评估将方法上提到每个祖先类的方案并打分
+     * 
+     * 得分综合考虑可移除的后代重复实现行数、需生成的基础实现、需放宽可见性的声明以及修改的文件数，
+     * 评估全部基于只读分析，不修改源码中的元素。
+     * 
+     * @param sourcePaths 源代码路径列表
+     * @param childClassName 子类名称
+     * @param methodName 要上提的方法名
+     * @return 候选祖先类评分列表（可上提的在前，按得分从高到低；同分时较近的祖先类在前），找不到类或方法时为空
+     */
+    public List<PullUpFeasibilityAnalyzer.TargetScore> rankTargetAncestors(List<String> sourcePaths,
+                                                                           String childClassName,
+                                                                           String methodName) {
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            if (lease.getModel() == null) {
+                return new ArrayList<>();
+            }
+            return rankTargetAncestors(lease.getModel(), childClassName, methodName,
+                new ModuleResolver(sourcePaths).getModuleMembership());
+        }
+    }
+    
+    /**
+     * 在调用方持有的模型上评估候选目标祖先类（跨模块判断使用调用方本次运行的模块归属查询）
+     * 
+     * 依次评估各祖先类：Spoon 模型不是线程安全的，只读查询也会延迟解析引用、按需创建影子类型并修改模型。
+     */
+    private List<PullUpFeasibilityAnalyzer.TargetScore> rankTargetAncestors(CtModel model,
+                                                                            String childClassName,
+                                                                            String methodName,
+                                                                            ModuleMembership modules) {
+        List<PullUpFeasibilityAnalyzer.TargetScore> scores = new ArrayList<>();
+        try {
+            CtClass<?> childClass = classFinder.findClass(model, childClassName);
+            if (childClass == null) {
+                return scores;
+            }
+            CtMethod<?> method = classFinder.findMethod(childClass, methodName);
+            if (method == null) {
+                return scores;
+            }
+            for (CtClass<?> ancestor : classFinder.getAllAncestorClasses(childClass)) {
+                scores.add(new PullUpFeasibilityAnalyzer.TargetScore(
+                    feasibilityAnalyzer.analyze(method, childClass, ancestor, modules),
+                    countRemovableDuplicateLines(method, childClass, ancestor)));
+            }
+            
+            // 稳定排序：同分时保持从近到远的祖先顺序
+            scores.sort((a, b) -> {
+                if (a.isFeasible() != b.isFeasible()) {
+                    return a.isFeasible() ? -1 : 1;
+                }
+                return Integer.compare(b.getScore(), a.getScore());
+            });
+            scores.forEach(score -> logger.info("候选目标祖先类 {}", score));
+        } catch (Exception e) {
+            logger.error("评估候选目标祖先类时发生异常", e);
+        }
+        return scores;
+    }
+    
+    /**
+     * 计算上提到目标祖先类后可移除的后代重复实现的总行数
+     */
+    private int countRemovableDuplicateLines(CtMethod<?> method, CtClass<?> childClass, CtClass<?> ancestorClass) {
+        List<CtMethod<?>> candidates = new ArrayList<>();
+        for (CtClass<?> descendant : classFinder.collectAllDescendantClasses(ancestorClass)) {
+            if (descendant.equals(childClass)) {
+                continue;
+            }
+            CtMethod<?> candidate = classFinder.findMatchingMethod(
+                descendant, method.getSimpleName(), method.getParameters());
+            if (candidate != null) {
+                candidates.add(candidate);
+            }
+        }
+        int lines = 0;
+        for (CtMethod<?> copy : findRemovableIdenticalCopies(method, candidates, childClass, ancestorClass)) {
+            lines += copy.getPosition().isValidPosition()
+                ? copy.getPosition().getEndLine() - copy.getPosition().getLine() + 1
+                : 1;
+        }
+        return lines;
+    }
+    
+    /**
+     * 自动去重：查找指定祖先类所有后代类中结构相同的重复方法，并批量上提到该祖先类
+     * 
+     * 先对所有候选方法做预检查，通过检查的候选在同一个模型上依次迁移，最后统一写出一次。
+     * 各候选直接修改缓存的模型，修改记录在 {@link ChangeJournal} 中，迁移失败时只在内存中回滚该候选的修改；
+     * 运行结束时回滚全部修改，模型留在缓存中。只有写出了源文件的运行才需要在下次使用时重新构建模型。
+     * 未通过检查或迁移失败的候选作为警告返回，并附带跳过原因。
+     * 
+     * @param sourcePaths 源代码路径列表
+     * @param ancestorClassName 目标祖先类名称
+     * @param outputPath 输出路径（可选，null表示覆盖原文件）
+     * @return 重构结果
+     */
+    public RefactoringResult dedupUnderAncestor(List<String> sourcePaths, String ancestorClassName, String outputPath) {
+        return dedupUnderAncestor(sourcePaths, ancestorClassName, outputPath, RefactoringOptions.defaults());
+    }
+    
+    /**
+     * 自动去重（带重构选项，仅使用与输出相关的选项）
+     */
+    public RefactoringResult dedupUnderAncestor(List<String> sourcePaths, String ancestorClassName, String outputPath,
+                                                RefactoringOptions runOptions) {
+        if (runOptions == null) {
+            runOptions = RefactoringOptions.defaults();
+        }
+        if (runOptions.getOutputSink().writesFiles()) {
+            recoverInterruptedCommit(sourcePaths);
+        }
+        // 与单个方法的上提相同，在缓存的模型上执行，结束时回滚
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            return dedupOnModel(lease, sourcePaths, ancestorClassName, outputPath, runOptions);
+        }
+    }
+    
+    /**
+     * 在租用的缓存模型上执行自动去重
+     */
+    private RefactoringResult dedupOnModel(ModelCache.Lease lease, List<String> sourcePaths, String ancestorClassName,
+                                           String outputPath, RefactoringOptions runOptions) {
+        try {
+            logger.info("开始自动去重: 祖先类={}", ancestorClassName);
+            
+            // 1. 获取代码模型并定位祖先类
+            CtModel model = lease.getModel();
+            if (model == null) {
+                return RefactoringResult.failure("无法构建代码模型");
+            }
+            CtClass<?> ancestorClass = classFinder.findClass(model, ancestorClassName);
+            if (ancestorClass == null) {
+                return RefactoringResult.failure("找不到指定的目标祖先类: " + ancestorClassName);
+            }
+            
+            // 2. 查找后代类中的重复方法
+            List<CtClass<?>> descendants = classFinder.collectAllDescendantClasses(ancestorClass);
+            List<DuplicateMethodFinder.DuplicateGroup> groups = duplicateMethodFinder.findDuplicateGroups(descendants);
+            if (groups.isEmpty()) {
+                return RefactoringResult.success("在 " + ancestorClass.getSimpleName() + " 的后代类中未发现重复方法",
+                    new ArrayList<>());
+            }
+            
+            // 3. 执行预检查（只读）；本次运行的模块索引由预检查、迁移与快照共用
+            ModuleResolver moduleResolver = new ModuleResolver(sourcePaths);
+            ModuleMembership modules = moduleResolver.getModuleMembership();
+            List<RefactoringResult> checkResults = runPreChecks(groups, ancestorClass, moduleResolver);
+            
+            // 4. 依次迁移通过检查的候选；失败的候选会被回滚，然后继续下一个
+            RefactoringOptions options = runOptions.copy().setRemoveIdenticalDescendantCopies(true);
+            String ancestorQualifiedName = ancestorClass.getQualifiedName();
+            Set<CtCompilationUnit> touchedUnits = new LinkedHashSet<>();
+            List<String> pulledUp = new ArrayList<>();
+            List<String> skipped = new ArrayList<>();
+            List<String> modifiedFiles = new ArrayList<>();
+            int unchangedFiles = 0;
+            ChangeJournal runJournal = beginRun(ancestorClass.getFactory().getEnvironment());
+            try {
+                for (int i = 0; i < groups.size(); i++) {
+                    DuplicateMethodFinder.DuplicateGroup group = groups.get(i);
+                    String label = group.getRepresentativeClass().getSimpleName() + "#" + group.getSignature();
+                
+                    RefactoringResult checkResult = checkResults.get(i);
+                    if (!checkResult.isSuccess()) {
+                        skipped.add(label + ": " + checkResult.getMessage());
+                        continue;
+                    }
+                
+                    // 每次迁移前按名称重新定位，避免使用已被前一次迁移移除的元素
+                    ancestorClass = classFinder.findClass(model, ancestorQualifiedName);
+                    CtClass<?> owner = classFinder.findClass(model, group.getRepresentativeClass().getQualifiedName());
+                    CtMethod<?> method = owner != null ? findMethodBySignature(owner, group.getSignature()) : null;
+                    if (method == null) {
+                        skipped.add(label + ": 方法已不存在");
+                        continue;
+                    }
+                
+                    // 之前的迁移可能已向祖先类添加了方法，迁移前重新做一次冲突检查
+                    MethodConflictChecker.ConflictCheckResult conflictResult =
+                        conflictChecker.checkConflict(method, owner, ancestorClass);
+                    if (!conflictResult.isSuccess()) {
+                        skipped.add(label + ": " + conflictResult.getMessage());
+                        continue;
+                    }
+                
+                    // 迁移失败时由变更日志在内存中回滚该候选
+                    Set<CtClass<?>> extraModifiedClasses = new LinkedHashSet<>();
+                    RefactoringResult migrationResult = performMethodMigration(
+                        method, owner, ancestorClass, options, modules, extraModifiedClasses, touchedUnits);
+                    if (!migrationResult.isSuccess()) {
+                        skipped.add(label + ": " + migrationResult.getMessage());
+                        continue;
+                    }
+                    pulledUp.add(label + "（" + group.getMethods().size() + " 处重复）");
+                }
+            
+                // 5. 统一写出一次
+                ancestorClass = classFinder.findClass(model, ancestorQualifiedName);
+                if (!pulledUp.isEmpty()) {
+                    CodeGenerator.WritePlan writePlan = persistChanges(ancestorClass, touchedUnits, outputPath, sourcePaths,
+                        runOptions.getPrinterMode(), runOptions.getOutputSink(), modules, runJournal);
+                    modifiedFiles = writePlan.getTargetFiles();
+                    unchangedFiles = writePlan.getSkippedCount();
+                }
+            } finally {
+                finishRun(lease, runJournal);
+            }
+            
+            logger.info("自动去重完成：上提 {} 个方法，跳过 {} 个", pulledUp.size(), skipped.size());
+            RefactoringResult result = RefactoringResult.success(
+                "在 " + ancestorClass.getSimpleName() + " 下上提了 " + pulledUp.size() + " 个重复方法，跳过 "
+                    + skipped.size() + " 个", modifiedFiles);
+            pulledUp.forEach(label -> result.addWarning("已上提: " + label));
+            skipped.forEach(reason -> result.addWarning("已跳过: " + reason));
+            if (unchangedFiles > 0) {
+                result.addWarning(unchangedFiles + " 个文件内容未变化，未重写");
+            }
+            return result;
+            
+        } catch (Exception e) {
+            logger.error("自动去重过程中发生异常", e);
+            return RefactoringResult.failure("自动去重失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 在类中按签名查找方法
+     */
+    private CtMethod<?> findMethodBySignature(CtClass<?> clazz, String signature) {
+        for (CtMethod<?> method : clazz.getMethods()) {
+            if (method.getSignature().equals(signature)) {
+                return method;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 依次执行所有候选的预检查（与迁移共用同一个模型，不能并发查询），结果顺序与候选顺序一致
+     */
+    private List<RefactoringResult> runPreChecks(List<DuplicateMethodFinder.DuplicateGroup> groups,
+                                                 CtClass<?> ancestorClass, ModuleResolver moduleResolver) {
+        List<RefactoringResult> results = new ArrayList<>();
+        for (DuplicateMethodFinder.DuplicateGroup group : groups) {
+            try {
+                results.add(performPreChecks(
+                    group.getRepresentative(), group.getRepresentativeClass(), ancestorClass, moduleResolver));
+            } catch (Exception e) {
+                results.add(RefactoringResult.failure("预检查异常: " + e.getMessage()));
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 将迁移后的模型写出：清理无效的 @Override、保存快照、写入被修改的编译单元并修复跨模块依赖
+     * 
+     * 所有模型修改完成后只生成一次写出计划，内容与磁盘上一致的文件不会被快照或重写。
+     * 
+     * @param touchedUnits 迁移过程中被修改的编译单元
+     * @param printerMode 打印模式
+     * @param outputSink 输出目标；不写入文件系统时跳过快照与 pom 修复
+     * @param modules 本次运行共用的模块归属查询
+     * @param runJournal 覆盖整个迁移过程的变更日志，打印前在此关闭
+     * @return 写出计划（已执行）
+     * @throws IOException 文件事务提交失败
+     */
+    private CodeGenerator.WritePlan persistChanges(CtClass<?> targetAncestorClass, Set<CtCompilationUnit> touchedUnits,
+                                                   String outputPath, List<String> sourcePaths,
+                                                   CodeGenerator.PrinterMode printerMode, OutputSink outputSink,
+                                                   ModuleMembership modules, ChangeJournal runJournal)
+            throws IOException {
+        // 1. 清理无效的 @Override（父类为 Object 的类）
+        ChangeJournal journal = ChangeJournal.begin(targetAncestorClass.getFactory().getEnvironment());
+        try {
+            visibilityHandler.cleanInvalidOverrides(targetAncestorClass);
+        } catch (Exception e) {
+            logger.debug("清理 @Override 注解时发生异常: {}", e.getMessage());
+        } finally {
+            journal.close();
+        }
+        Set<CtCompilationUnit> units = new LinkedHashSet<>(touchedUnits);
+        units.addAll(journal.getTouchedCompilationUnits());
+        // Sniper 打印器要求环境中的监听器为其自身的变更收集器，打印前必须停止记录
+        runJournal.close();
+
+        // 2. 生成写出计划（每个编译单元只打印一次，能表达为文本编辑的直接编辑原文件）
+        CodeGenerator.WritePlan plan = codeGenerator.planWrites(units, outputPath, sourcePaths, printerMode, runJournal);
+
+        // 3. 在写入前保存快照（仅当覆盖原文件时生效）
+        // 写入文件系统时源文件与 pom.xml 先暂存到同一个文件事务，提交时以重命名整体替换，快照可直接硬链接原文件
+        boolean overwritesSources = outputPath == null && outputSink.writesFiles();
+        boolean transactional = outputSink instanceof FileSystemOutputSink;
+        if (overwritesSources) {
+            snapshotManager.saveSnapshot(plan.getTargetFiles(), sourcePaths, transactional, modules);
+        }
+
+        // 4. 输出结果
+        FileTransaction transaction = transactional
+            ? new FileTransaction(snapshotManager.determineProjectRoot(sourcePaths)) : null;
+        try {
+            List<String> modifiedFiles = codeGenerator.writePlan(plan, transaction != null ? transaction : outputSink);
+
+            // 5. 自动修复跨模块依赖（仅在覆盖原文件时执行，避免输出目录被污染）
+            // 直接使用内存中已写出的编译单元，按模块汇总后每个 pom.xml 只更新一次
+            if (overwritesSources && !modifiedFiles.isEmpty()) {
+                Set<String> written = new HashSet<>(modifiedFiles);
+                List<CtCompilationUnit> writtenUnits = new ArrayList<>();
+                for (CtCompilationUnit unit : units) {
+                    if (unit.getFile() != null && written.contains(unit.getFile().getAbsolutePath())) {
+                        writtenUnits.add(unit);
+                    }
+                }
+                pomDependencyManager.fixMissingModuleDependencies(writtenUnits, sourcePaths, transaction);
+            }
+            if (transaction != null) {
+                transaction.commit();
+            }
+        } finally {
+            if (transaction != null) {
+                transaction.close();
+            }
+            // 文件可能已（部分）写出，缓存的模型不再与源码一致
+            if (outputSink.writesFiles()) {
+                modelCache.invalidate(sourcePaths);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * 在缓存的模型上开始一次运行：换上新的 Sniper 变更收集器（之前的运行已回滚的修改不再被视为变更），并开始记录修改
+     */
+    private ChangeJournal beginRun(Environment environment) {
+        new SourceFragmentCreator().attachTo(environment);
+        return ChangeJournal.begin(environment);
+    }
+
+    /**
+     * 结束在缓存模型上的一次运行：回滚本次运行对模型的全部修改（包括打印期间的修改），
+     * 模型恢复为与源码一致，留在缓存中供后续的分析、预览与重构复用；
+     * 已写出文件（缓存已失效）时不再回滚，无法完整回滚时丢弃模型
+     */
+    private void finishRun(ModelCache.Lease lease, ChangeJournal runJournal) {
+        runJournal.close();
+        if (!lease.isDiscarded() && !runJournal.rollback()) {
+            logger.warn("模型修改未能完整回滚，丢弃缓存的模型");
+            lease.discard();
+        }
+    }
+
     /**
      * 从快照恢复上一次重构修改的文件。
      */
     public boolean restoreSnapshot(List<String> sourcePaths) {
+        return restoreSnapshot(sourcePaths, null);
+    }
+
+    /**
+     * 从指定快照恢复（snapshotId 为null时恢复最近一代），更新的各代快照一并撤销。
+     */
+    public boolean restoreSnapshot(List<String> sourcePaths, String snapshotId) {
         try {
-            return snapshotManager.restoreSnapshot(sourcePaths);
+            // 先完成被中断的提交，快照恢复才能覆盖完整的上一次修改
+            recoverInterruptedCommit(sourcePaths);
+            boolean restored = snapshotManager.restoreSnapshot(sourcePaths, snapshotId);
+            if (restored) {
+                modelCache.invalidate(sourcePaths);
+            }
+            return restored;
         } catch (Exception e) {
             logger.error("恢复快照时发生异常", e);
             return false;
         }
     }
+
+    /**
+     * 列出可恢复的快照（最新的在前）
+     */
+    public List<SnapshotManager.SnapshotInfo> listSnapshots(List<String> sourcePaths) {
+        return snapshotManager.listSnapshots(sourcePaths);
+    }
+    
+    /**
+     * 上一次提交在重命名阶段被中断（进程崩溃或被终止）时按提交日志重做，
+     * 日志不完整时丢弃；项目中因此恢复到一次重构完整生效后的状态。
+     */
+    private void recoverInterruptedCommit(List<String> sourcePaths) {
+        if (sourcePaths == null || sourcePaths.isEmpty()) {
+            return;
+        }
+        try {
+            if (FileTransaction.recover(snapshotManager.determineProjectRoot(sourcePaths)) > 0) {
+                modelCache.invalidate(sourcePaths);
+            }
+        } catch (Exception e) {
+            logger.warn("检查中断的提交时发生异常: {}", e.getMessage());
+        }
+    }
     
     /**
      * 执行重构前的各项检查
+     *
+     * @param moduleResolver 用于模块循环依赖检查的模块解析器，为null时跳过该检查
      */
-    private RefactoringResult performPreChecks(CtMethod<?> method, CtClass<?> childClass, CtClass<?> parentClass) {
+    private RefactoringResult performPreChecks(CtMethod<?> method, CtClass<?> childClass, CtClass<?> parentClass,
+                                               ModuleResolver moduleResolver) {
         List<String> warnings = new ArrayList<>();
         
         // 1. 依赖分析
@@ -239,6 +804,26 @@ public class RefactoringOrchestrator {
             warnings.add("方法可见性将被调整为: " + visibilityAdjuster.getSuggestedVisibility(method));
         }
         
+        // 4. 模块循环依赖检查：目标类所在模块需要依赖方法引用的模块，不能因此形成循环
+        File targetFile = parentClass.getPosition().isValidPosition() ? parentClass.getPosition().getFile() : null;
+        if (moduleResolver != null && targetFile != null) {
+            logger.debug("检查模块循环依赖...");
+            Set<String> referencedTypes = new LinkedHashSet<>();
+            for (CtTypeReference<?> reference : method.getElements(new TypeFilter<>(CtTypeReference.class))) {
+                // 对子类自身的隐式引用（如 this）上提后指向目标类，不产生模块依赖
+                if (reference.isImplicit() || reference.isPrimitive() || reference.getPackage() == null) continue;
+                if (!reference.getQualifiedName().equals(childClass.getQualifiedName())) {
+                    referencedTypes.add(reference.getQualifiedName());
+                }
+            }
+            List<String> cycles = pomDependencyManager.findDependencyCycles(moduleResolver, targetFile, referencedTypes);
+            if (!cycles.isEmpty()) {
+                StringBuilder sb = new StringBuilder("上提后目标类所在模块需要的依赖将形成模块循环依赖:");
+                cycles.forEach(cycle -> sb.append("\n- ").append(cycle));
+                return RefactoringResult.failure(sb.toString());
+            }
+        }
+        
         RefactoringResult result = RefactoringResult.success("预检查通过", new ArrayList<>());
         warnings.forEach(result::addWarning);
         return result;
@@ -246,8 +831,17 @@ public class RefactoringOrchestrator {
     
     /**
      * 执行方法迁移
+     * 
+     * @param modules 本次运行共用的模块归属查询（判断依赖字段与方法是否跨模块上提）
+     * @param extraModifiedClasses 输出参数：除子类、目标祖先类之外被本次迁移修改的类（如移除了重复实现的后代类）
+     * @param touchedUnits 输出参数：迁移成功时追加本次迁移修改的编译单元
      */
-    private RefactoringResult performMethodMigration(CtMethod<?> method, CtClass<?> childClass, CtClass<?> parentClass) {
+    private RefactoringResult performMethodMigration(CtMethod<?> method, CtClass<?> childClass, CtClass<?> parentClass,
+                                                     RefactoringOptions options, ModuleMembership modules,
+                                                     Set<CtClass<?>> extraModifiedClasses,
+                                                     Set<CtCompilationUnit> touchedUnits) {
+        // 记录迁移过程中的所有模型修改，失败时在内存中回滚，使模型保持迁移前的状态
+        ChangeJournal journal = ChangeJournal.begin(childClass.getFactory().getEnvironment());
         try {
             logger.debug("开始方法迁移...");
             
@@ -276,7 +870,7 @@ public class RefactoringOrchestrator {
             
             // 4. 处理依赖字段的自动上提
             FieldPullUpHandler.FieldPullUpResult fieldResult = 
-                fieldPullUpHandler.pullUpDependentFields(clonedMethod, childClass, parentClass);
+                fieldPullUpHandler.pullUpDependentFields(clonedMethod, childClass, parentClass, modules);
             
             // 5. 收集目标类的所有后代类（用于可见性调整）
             List<CtClass<?>> allDescendantClasses = classFinder.collectAllDescendantClasses(parentClass);
@@ -286,14 +880,16 @@ public class RefactoringOrchestrator {
             
             // 7. 处理依赖方法的自动上提
             MethodPullUpHandler.MethodPullUpResult methodResult = 
-                methodPullUpHandler.pullUpDependentMethods(clonedMethod, childClass, parentClass, allChildrenAndDescendants);
+                methodPullUpHandler.pullUpDependentMethods(clonedMethod, childClass, parentClass,
+                    allChildrenAndDescendants, modules);
             
             // 8. 将方法添加到父类
             parentClass.addMethod(clonedMethod);
             logger.debug("方法已添加到父类: {}", parentClass.getQualifiedName());
             
-            // 9. 调整所有后代类中同名方法的可见性
-            adjustVisibilityForConflictingMethodsInAllDescendants(clonedMethod, allDescendantClasses, childClass);
+            // 9. 调整所有后代类中同名方法的可见性（可选：移除与原方法结构相同的后代实现）
+            adjustVisibilityForConflictingMethodsInAllDescendants(clonedMethod, method, allDescendantClasses, childClass,
+                options.isRemoveIdenticalDescendantCopies(), extraModifiedClasses);
             
             // 10. 补齐导入语句
             importManager.ensureMissingImportsForMethodAndFieldsAndMethods(
@@ -306,11 +902,15 @@ public class RefactoringOrchestrator {
             // 记录结果
             logMigrationResults(fieldResult, methodResult);
             
+            journal.close();
+            touchedUnits.addAll(journal.getTouchedCompilationUnits());
             return RefactoringResult.success("方法迁移完成", new ArrayList<>());
             
         } catch (Exception e) {
             logger.error("方法迁移失败", e);
-            return RefactoringResult.failure("方法迁移失败: " + e.getMessage());
+            journal.rollback();
+            extraModifiedClasses.clear();
+            return RefactoringResult.failure("方法迁移失败，模型已回滚: " + e.getMessage());
         }
     }
 
@@ -322,10 +922,18 @@ public class RefactoringOrchestrator {
     
     /**
      * 调整所有后代类中同名方法的可见性
+     * 
+     * @param parentMethod 已添加到目标祖先类的方法
+     * @param originalMethod 子类中的原方法（用于结构相同比较）
+     * @param removeIdenticalCopies 是否移除与原方法结构相同的后代实现
+     * @param removedFromClasses 输出参数：被移除了重复实现的后代类
      */
     private void adjustVisibilityForConflictingMethodsInAllDescendants(CtMethod<?> parentMethod, 
+                                                                      CtMethod<?> originalMethod,
                                                                       List<CtClass<?>> allDescendantClasses, 
-                                                                      CtClass<?> originalChildClass) {
+                                                                      CtClass<?> originalChildClass,
+                                                                      boolean removeIdenticalCopies,
+                                                                      Set<CtClass<?>> removedFromClasses) {
         try {
             String methodName = parentMethod.getSimpleName();
             List<CtParameter<?>> parentParams = parentMethod.getParameters();
@@ -347,6 +955,12 @@ public class RefactoringOrchestrator {
                 }
             }
             
+            // 在可见性调整之前确定可移除的重复实现（比较的是原始修饰符与方法体）
+            Set<CtMethod<?>> removableCopies = removeIdenticalCopies
+                ? findRemovableIdenticalCopies(originalMethod, conflictingMethods, originalChildClass,
+                    (CtClass<?>) parentMethod.getParent())
+                : new LinkedHashSet<>();
+            
             // 如果有冲突方法，使用VisibilityHandler统一调整可见性
             if (!conflictingMethods.isEmpty()) {
                 VisibilityHandler.VisibilityAdjustmentResult result = 
@@ -359,9 +973,16 @@ public class RefactoringOrchestrator {
                     logger.warn("调整后代类方法可见性失败: {}", result.getMessage());
                 }
                 
-                // 为所有冲突方法添加@Override注解
+                // 移除结构相同的重复实现，其余冲突方法添加@Override注解
                 for (CtMethod<?> conflictingMethod : conflictingMethods) {
-                    visibilityHandler.addOverrideAnnotationProperly(conflictingMethod, true);
+                    if (removableCopies.contains(conflictingMethod)) {
+                        CtClass<?> owner = (CtClass<?>) conflictingMethod.getParent();
+                        owner.removeMethod(conflictingMethod);
+                        removedFromClasses.add(owner);
+                        logger.info("已移除后代类 {} 中与上提方法相同的实现: {}", owner.getSimpleName(), methodName);
+                    } else {
+                        visibilityHandler.addOverrideAnnotationProperly(conflictingMethod, true);
+                    }
                 }
             }
             
@@ -370,6 +991,46 @@ public class RefactoringOrchestrator {
         }
     }
     
+    /**
+     * 找出可以安全移除的重复实现：
+     * - 与原方法结构相同
+     * - 从该后代类到目标祖先类之间的中间类中，不存在会被保留下来的同签名实现（否则移除后会继承到不同的实现）
+     */
+    private Set<CtMethod<?>> findRemovableIdenticalCopies(CtMethod<?> originalMethod,
+                                                          List<CtMethod<?>> candidates,
+                                                          CtClass<?> originalChildClass,
+                                                          CtClass<?> targetAncestorClass) {
+        Set<CtMethod<?>> identical = new LinkedHashSet<>();
+        for (CtMethod<?> candidate : candidates) {
+            if (conflictChecker.isStructurallyIdentical(originalMethod, candidate)) {
+                identical.add(candidate);
+            }
+        }
+        
+        Set<CtMethod<?>> removable = new LinkedHashSet<>();
+        for (CtMethod<?> copy : identical) {
+            CtClass<?> owner = (CtClass<?>) copy.getParent();
+            boolean safe = true;
+            for (CtClass<?> intermediate : classFinder.getInheritancePath(owner, targetAncestorClass)) {
+                if (intermediate.equals(targetAncestorClass) || intermediate.equals(originalChildClass)) {
+                    continue; // 目标祖先类即新实现所在处；原始子类中的方法同样会被移除
+                }
+                CtMethod<?> inherited = classFinder.findMatchingMethod(
+                    intermediate, originalMethod.getSimpleName(), originalMethod.getParameters());
+                if (inherited != null && !identical.contains(inherited)) {
+                    safe = false;
+                    break;
+                }
+            }
+            if (safe) {
+                removable.add(copy);
+            } else {
+                logger.info("后代类 {} 中的相同实现被中间类的不同实现遮蔽，保留不删除", owner.getSimpleName());
+            }
+        }
+        return removable;
+    }
+    
     /**
      * 记录迁移结果
      */
@@ -396,8 +1057,8 @@ public class RefactoringOrchestrator {
      * 获取类的所有方法名称（用于CLI提示）
      */
     public List<String> getMethodNames(List<String> sourcePaths, String className) {
-        try {
-            CtModel model = modelBuilder.buildModel(sourcePaths);
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            CtModel model = lease.getModel();
             if (model != null) {
                 CtClass<?> clazz = classFinder.findClass(model, className);
                 if (clazz != null) {
@@ -415,8 +1076,8 @@ public class RefactoringOrchestrator {
      * 获取所有类名称（用于CLI提示）
      */
     public List<String> getClassNames(List<String> sourcePaths) {
-        try {
-            CtModel model = modelBuilder.buildModel(sourcePaths);
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            CtModel model = lease.getModel();
             if (model != null) {
                 return classFinder.getClassNames(model);
             }
@@ -435,8 +1096,8 @@ public class RefactoringOrchestrator {
      * @return 祖先类名称列表，从直接父类到最顶层祖先类的顺序
      */
     public List<String> getAncestorClassNames(List<String> sourcePaths, String className) {
-        try {
-            CtModel model = modelBuilder.buildModel(sourcePaths);
+        try (ModelCache.Lease lease = modelCache.acquire(sourcePaths)) {
+            CtModel model = lease.getModel();
             if (model != null) {
                 CtClass<?> clazz = classFinder.findClass(model, className);
                 if (clazz != null) {
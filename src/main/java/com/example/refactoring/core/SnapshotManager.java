@@ -8,25 +8,126 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
- * 快照管理器：保存/恢复上一次重构涉及的文件。
- * 约定：只保存一份最新快照；新重构会覆盖快照。
- * 目录：项目根目录下 .refactor-snapshot/
+ * 快照管理器：保存/恢复重构涉及的文件，支持多代撤销。
+ *
+ * 目录：项目根目录下 .refactor-snapshot/packs/，每次重构写入一个快照包（{@link SnapshotPack}）：
+ * 包内按 SHA-256 寻址保存本代新出现的内容（deflate 压缩），末尾索引区记录清单与内容位置。
+ * 相同内容在所有代之间只保存一份，保存在引用它的最旧一代的包中。
+ *
+ * 即将通过重命名被整体替换的文件（见 {@link FileTransaction}）默认以硬链接方式保存在 links/{id}/ 下：
+ * 原文件的 inode 由快照继续持有，每个文件只需一次元数据操作；文件系统不支持硬链接时回退为写入快照包。
+ *
+ * 超过保留代数时删除最旧的包，仍被引用的内容原样转移到下一代的包中。
+ * 恢复某一代后，该代及更新的各代一并移除（它们记录的是已被撤销的修改之前的状态）。
+ *
+ * 保存时链接、读取、哈希与压缩以有界线程池并行执行，只有追加到包中是顺序的；
+ * 恢复时各包的读取、解压校验与写回同样并行。大批文件的进度通过 {@link ProgressListener} 报告。
  */
 public class SnapshotManager {
 
     private static final Logger logger = LoggerFactory.getLogger(SnapshotManager.class);
 
     private static final String SNAPSHOT_DIR_NAME = ".refactor-snapshot";
-    private static final String META_FILE_NAME = "meta.txt"; // 记录时间和文件列表（保存原始相对路径）
-    private static final String SNAPSHOT_SUFFIX = ".snap"; // 快照文件扩展名，避免被模型识别为 .java
+    private static final String PACKS_DIR_NAME = "packs";
+    private static final String LINKS_DIR_NAME = "links";
+    private static final String LINK_SUFFIX = ".snap"; // 避免被模型识别为 .java
+    // 旧版单份快照格式（meta.txt + .snap 副本），首次访问时迁移为快照包
+    private static final String LEGACY_META_FILE_NAME = "meta.txt";
+    private static final String LEGACY_SNAPSHOT_SUFFIX = ".snap";
+
+    /** 默认保留的快照代数 */
+    public static final int DEFAULT_MAX_GENERATIONS = 20;
+
+    private static final String ID_PATTERN = "yyyyMMdd-HHmmss-SSS";
+    private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private static final String SAVE_PHASE = "保存快照";
+    private static final String RESTORE_PHASE = "恢复快照";
+    // 默认进度只在文件较多时记录日志，每跨过 10% 记录一次
+    private static final int PROGRESS_LOG_MIN_FILES = 100;
+
+    private final int maxGenerations;
+    private volatile ProgressListener progressListener = SnapshotManager::logProgress;
+
+    /**
+     * 保存/恢复进度回调（可能在工作线程中调用，completed 不保证严格递增）
+     */
+    public interface ProgressListener {
+        void onProgress(String phase, int completed, int total);
+    }
+
+    public SnapshotManager() {
+        this(DEFAULT_MAX_GENERATIONS);
+    }
+
+    /**
+     * @param maxGenerations 保留的快照代数（至少为1）
+     */
+    public SnapshotManager(int maxGenerations) {
+        this.maxGenerations = Math.max(1, maxGenerations);
+    }
+
+    /**
+     * 设置进度回调；null 表示恢复默认（文件较多时记录日志）
+     */
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener != null ? listener : SnapshotManager::logProgress;
+    }
+
+    /**
+     * 一代快照的概要信息
+     */
+    public static class SnapshotInfo {
+        private final String id;
+        private final String timestamp;
+        private final List<String> files;
+
+        private SnapshotInfo(String id, String timestamp, List<String> files) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.files = files;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return 快照中文件相对项目根目录的路径
+         */
+        public List<String> getFiles() {
+            return Collections.unmodifiableList(files);
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + timestamp + ", " + files.size() + " 个文件)";
+        }
+    }
 
     /**
      * 根据任意一个源码路径推断项目根目录（取其最近的父目录作为根）。
@@ -76,111 +177,182 @@ public class SnapshotManager {
     }
 
     /**
-     * 保存快照：将即将被修改的文件复制到 .refactor-snapshot 下，覆盖旧快照。
+     * 保存快照：将即将被修改的文件（以及所属模块和聚合 pom.xml）记录为新的一代快照。
+     * 之前各代已保存的内容只记录哈希，新内容压缩后顺序写入本代的快照包。
+     *
+     * @return 新快照的 id；没有可保存的文件或保存失败时返回null
+     */
+    public String saveSnapshot(List<String> filesAboutToChange, List<String> sourcePaths) {
+        return saveSnapshot(filesAboutToChange, sourcePaths, false);
+    }
+
+    /**
+     * 保存快照
+     *
+     * @param replacedByRename filesAboutToChange 是否会以“写临时文件后重命名”的方式被替换；
+     *                         是则这些文件以硬链接方式保存（原文件不会被原地修改，链接内容保持不变）
+     * @return 新快照的 id；没有可保存的文件或保存失败时返回null
      */
-    public void saveSnapshot(List<String> filesAboutToChange, List<String> sourcePaths) {
+    public String saveSnapshot(List<String> filesAboutToChange, List<String> sourcePaths,
+                               boolean replacedByRename) {
+        return saveSnapshot(filesAboutToChange, sourcePaths, replacedByRename, new ModuleMembership());
+    }
+
+    /**
+     * 保存快照
+     *
+     * @param replacedByRename filesAboutToChange 是否会以“写临时文件后重命名”的方式被替换；
+     *                         是则这些文件以硬链接方式保存（原文件不会被原地修改，链接内容保持不变）
+     * @param modules 本次运行共用的模块归属查询，用于确定需要一并保存的模块与聚合 pom.xml
+     * @return 新快照的 id；没有可保存的文件或保存失败时返回null
+     */
+    public synchronized String saveSnapshot(List<String> filesAboutToChange, List<String> sourcePaths,
+                                            boolean replacedByRename, ModuleMembership modules) {
         if (filesAboutToChange == null || filesAboutToChange.isEmpty()) {
-            return;
+            return null;
         }
         File projectRoot = determineProjectRoot(sourcePaths);
         File snapshotDir = new File(projectRoot, SNAPSHOT_DIR_NAME);
 
-        // 清空旧快照
-        deleteDirectory(snapshotDir);
-        snapshotDir.mkdirs();
-
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-        File meta = new File(snapshotDir, META_FILE_NAME);
-
         try {
-            StringBuilder metaContent = new StringBuilder();
-            metaContent.append("timestamp=").append(timestamp).append('\n');
-            metaContent.append("count=").append(filesAboutToChange.size()).append('\n');
-
-            Set<String> written = new HashSet<>();
-            // 扩展：将涉及到的模块 pom.xml 以及顶层聚合 pom.xml 一并纳入快照
-            java.util.List<String> expanded = new java.util.ArrayList<>(filesAboutToChange);
-            for (String filePath : filesAboutToChange) {
-                if (filePath == null) continue;
+            migrateLegacySnapshots(snapshotDir);
+
+            Map<String, File> files = new LinkedHashMap<>();
+            for (String filePath : expandWithPoms(filesAboutToChange, modules)) {
                 File src = new File(filePath);
-                File modulePom = findNearestPom(src);
-                if (modulePom != null && modulePom.exists()) {
-                    String pomPath = modulePom.getAbsolutePath();
-                    if (!expanded.contains(pomPath)) {
-                        expanded.add(pomPath);
-                    }
-                    // 同时尝试加入聚合根 pom（模块之上的最近 pom）
-                    File agg = modulePom.getParentFile() != null ? modulePom.getParentFile().getParentFile() : null;
-                    while (agg != null) {
-                        File aggPom = new File(agg, "pom.xml");
-                        if (aggPom.exists() && aggPom.isFile()) {
-                            String ap = aggPom.getAbsolutePath();
-                            if (!expanded.contains(ap)) expanded.add(ap);
-                            break;
-                        }
-                        agg = agg.getParentFile();
-                    }
+                if (src.exists() && src.isFile()) {
+                    files.put(toRelativePathWithinProject(src, projectRoot), src);
                 }
             }
+            if (files.isEmpty()) {
+                return null;
+            }
 
-            for (String filePath : expanded) {
-                if (filePath == null) continue;
-                File src = new File(filePath);
-                if (!src.exists() || !src.isFile()) continue;
-
-                String rel = toRelativePathWithinProject(src, projectRoot);
-                File dst = new File(snapshotDir, rel + SNAPSHOT_SUFFIX);
-                if (!dst.getParentFile().exists()) dst.getParentFile().mkdirs();
-                copyFile(src, dst);
-                metaContent.append(rel).append('\n');
-                written.add(rel);
+            Set<String> linkCandidates = new HashSet<>();
+            if (replacedByRename) {
+                for (String filePath : filesAboutToChange) {
+                    if (filePath != null) {
+                        linkCandidates.add(new File(filePath).getAbsolutePath());
+                    }
+                }
             }
 
-            Files.write(meta.toPath(), metaContent.toString().getBytes(StandardCharsets.UTF_8));
-            logger.info("已保存重构快照到: {} ({} 个文件)", snapshotDir.getAbsolutePath(), written.size());
+            Date now = new Date();
+            List<SnapshotPack> packs = loadPacks(snapshotDir);
+            String id = newSnapshotId(packs, now);
+            SnapshotPack pack = writeGeneration(snapshotDir, packs, id,
+                new SimpleDateFormat(TIMESTAMP_PATTERN).format(now), files, linkCandidates);
+            pruneGenerations(snapshotDir);
+            logger.info("已保存重构快照 {} 到: {} ({} 个文件，硬链接 {} 个，新增 {} 份内容)", id,
+                snapshotDir.getAbsolutePath(), files.size(), pack.getLinkedPaths().size(), pack.getIndex().size());
+            return id;
         } catch (Exception e) {
             logger.warn("保存快照失败: {}", e.getMessage());
+            return null;
         }
     }
 
     /**
-     * 恢复快照：将 .refactor-snapshot 中的文件复制回原路径，存在则覆盖。
+     * 恢复最近一代快照，恢复后该代被移除，再次调用即撤销更早的一次重构。
      */
     public boolean restoreSnapshot(List<String> sourcePaths) {
+        return restoreSnapshot(sourcePaths, null);
+    }
+
+    /**
+     * 恢复指定的一代快照（id 可以是唯一前缀；null 表示最近一代），恢复后该代及更新的各代被移除。
+     * 更新的各代保存的文件同样写回（它们的修改一并撤销），同一文件以最旧一代保存的版本为准。
+     */
+    public synchronized boolean restoreSnapshot(List<String> sourcePaths, String snapshotId) {
         File projectRoot = determineProjectRoot(sourcePaths);
         File snapshotDir = new File(projectRoot, SNAPSHOT_DIR_NAME);
-        if (!snapshotDir.exists() || !snapshotDir.isDirectory()) {
+        if (!snapshotDir.isDirectory()) {
             logger.warn("未找到快照目录: {}", snapshotDir.getAbsolutePath());
             return false;
         }
 
-        File meta = new File(snapshotDir, META_FILE_NAME);
-        if (!meta.exists()) {
-            logger.warn("快照元数据缺失: {}", meta.getAbsolutePath());
-            return false;
-        }
-
         try {
-            List<String> lines = Files.readAllLines(meta.toPath(), StandardCharsets.UTF_8);
-            int startIdx = 0;
-            for (; startIdx < lines.size(); startIdx++) {
-                String line = lines.get(startIdx);
-                if (!line.contains("=")) break; // 跳过头两行
-            }
-
-            int restored = 0;
-            for (int i = startIdx; i < lines.size(); i++) {
-                String rel = lines.get(i).trim();
-                if (rel.isEmpty()) continue;
-                File src = new File(snapshotDir, rel + SNAPSHOT_SUFFIX);
-                File dst = new File(projectRoot, rel);
-                if (!dst.getParentFile().exists()) dst.getParentFile().mkdirs();
-                if (src.exists()) {
-                    copyFile(src, dst);
-                    restored++;
-                }
-            }
-            logger.info("已从快照恢复 {} 个文件", restored);
+            migrateLegacySnapshots(snapshotDir);
+            List<SnapshotPack> packs = loadPacks(snapshotDir);
+            if (packs.isEmpty()) {
+                logger.warn("快照目录中没有可恢复的快照: {}", snapshotDir.getAbsolutePath());
+                return false;
+            }
+            int targetIndex = snapshotId == null ? packs.size() - 1 : resolveSnapshot(packs, snapshotId);
+            if (targetIndex < 0) {
+                logger.warn("找不到快照: {}（可用: {}）", snapshotId, packs.stream().map(SnapshotPack::getId)
+                    .collect(Collectors.toList()));
+                return false;
+            }
+            SnapshotPack target = packs.get(targetIndex);
+
+            // 从最新一代向目标合并各代保存的文件，较旧一代的版本覆盖较新的
+            Map<String, SnapshotPack> linkedFrom = new LinkedHashMap<>();
+            Map<String, String> files = new LinkedHashMap<>();
+            for (int i = packs.size() - 1; i >= targetIndex; i--) {
+                SnapshotPack pack = packs.get(i);
+                for (String rel : pack.getLinkedPaths()) {
+                    files.remove(rel);
+                    linkedFrom.put(rel, pack);
+                }
+                for (Map.Entry<String, String> entry : pack.getManifest().entrySet()) {
+                    linkedFrom.remove(entry.getKey());
+                    files.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            // 内容保存在引用它的最旧一代中
+            Map<String, SnapshotPack> holders = new HashMap<>();
+            Map<SnapshotPack, Set<String>> wanted = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                SnapshotPack holder = findHolder(packs, entry.getValue());
+                if (holder == null) {
+                    throw new IOException("快照 " + target.getId() + " 缺少文件内容: " + entry.getKey());
+                }
+                holders.put(entry.getValue(), holder);
+                wanted.computeIfAbsent(holder, pack -> new HashSet<>()).add(entry.getValue());
+            }
+            // 每个包按偏移顺序读取一次（不同的包并行读取），解压与校验再按文件并行
+            Map<String, byte[]> compressed = new HashMap<>();
+            for (Map<String, byte[]> part : ParallelIo.map(new ArrayList<>(wanted.entrySet()),
+                    entry -> entry.getKey().readAllCompressed(entry.getValue()))) {
+                compressed.putAll(part);
+            }
+
+            List<String> linkedPaths = new ArrayList<>(linkedFrom.keySet());
+            List<Map.Entry<String, String>> manifest = new ArrayList<>(files.entrySet());
+            Runnable progress = progressCounter(RESTORE_PHASE, linkedPaths.size() + manifest.size());
+
+            // 硬链接保存的文件同样以链接+重命名写回；全部写回后才移除各代快照，中断时可再次恢复
+            ParallelIo.map(linkedPaths, rel -> {
+                SnapshotPack pack = linkedFrom.get(rel);
+                File linked = new File(linkDir(snapshotDir, pack.getId()), rel + LINK_SUFFIX);
+                if (!linked.isFile()) {
+                    throw new IOException("快照 " + pack.getId() + " 缺少文件: " + rel);
+                }
+                FileTransaction.replaceWithLink(linked, new File(projectRoot, rel));
+                return rel;
+            }, progress);
+
+            // 所有文件在同一个文件事务中写回，恢复过程被中断时同样可以补完
+            try (FileTransaction transaction = new FileTransaction(projectRoot)) {
+                ParallelIo.map(manifest, entry -> {
+                    String hash = entry.getValue();
+                    byte[] content = holders.get(hash).decompress(hash, compressed.get(hash));
+                    if (!sha256(content).equals(hash)) {
+                        throw new IOException("快照内容校验失败: " + entry.getKey());
+                    }
+                    transaction.stage(new File(projectRoot, entry.getKey()), content);
+                    return entry.getKey();
+                }, progress);
+                transaction.commit();
+            }
+
+            for (SnapshotPack dropped : packs.subList(targetIndex, packs.size())) {
+                deleteGeneration(snapshotDir, dropped);
+            }
+            int restored = manifest.size() + linkedPaths.size();
+            logger.info("已从快照 {} 恢复 {} 个文件", target.getId(), restored);
             return restored > 0;
         } catch (Exception e) {
             logger.error("恢复快照失败", e);
@@ -188,20 +360,325 @@ public class SnapshotManager {
         }
     }
 
-    private String toRelativePathWithinProject(File file, File projectRoot) {
-        String filePath = file.getAbsolutePath();
-        String rootPath = projectRoot.getAbsolutePath();
-        if (filePath.startsWith(rootPath)) {
-            String rel = filePath.substring(rootPath.length());
-            if (rel.startsWith(File.separator)) rel = rel.substring(1);
-            return rel;
+    /**
+     * 列出所有快照（最新的在前）
+     */
+    public synchronized List<SnapshotInfo> listSnapshots(List<String> sourcePaths) {
+        File projectRoot = determineProjectRoot(sourcePaths);
+        File snapshotDir = new File(projectRoot, SNAPSHOT_DIR_NAME);
+        List<SnapshotInfo> snapshots = new ArrayList<>();
+        if (!snapshotDir.isDirectory()) {
+            return snapshots;
         }
-        return file.getName();
+        try {
+            migrateLegacySnapshots(snapshotDir);
+            for (SnapshotPack pack : loadPacks(snapshotDir)) {
+                List<String> files = new ArrayList<>(pack.getLinkedPaths());
+                files.addAll(pack.getManifest().keySet());
+                snapshots.add(0, new SnapshotInfo(pack.getId(), pack.getTimestamp(), files));
+            }
+        } catch (IOException e) {
+            logger.warn("读取快照列表失败: {}", e.getMessage());
+        }
+        return snapshots;
     }
 
-    private void copyFile(File source, File dest) throws IOException {
-        dest.getParentFile().mkdirs();
-        Files.copy(source.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * 扩展：将涉及到的模块 pom.xml 以及顶层聚合 pom.xml 一并纳入快照（所属模块由 {@link ModuleMembership} 查询）
+     */
+    private Set<String> expandWithPoms(List<String> filesAboutToChange, ModuleMembership modules) {
+        Set<String> expanded = new LinkedHashSet<>();
+        for (String filePath : filesAboutToChange) {
+            if (filePath != null) {
+                expanded.add(filePath);
+            }
+        }
+        for (String filePath : filesAboutToChange) {
+            if (filePath == null) continue;
+            File moduleRoot = modules.moduleRootOf(new File(filePath));
+            if (moduleRoot != null) {
+                expanded.add(new File(moduleRoot, "pom.xml").getAbsolutePath());
+                // 同时加入聚合根 pom（模块之上的最近 pom）
+                File aggregatorRoot = modules.moduleRootOf(moduleRoot);
+                if (aggregatorRoot != null) {
+                    expanded.add(new File(aggregatorRoot, "pom.xml").getAbsolutePath());
+                }
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * 写入一代快照包：可硬链接的文件链接到 links/{id}/ 下，其余文件中之前各代已保存的内容只记录到清单。
+     * 各文件的链接、读取、哈希与压缩并行执行，结果按原顺序追加到包中。
+     *
+     * @param files 相对路径到当前文件的映射
+     * @param linkCandidates 可以硬链接保存的文件（绝对路径）
+     */
+    private SnapshotPack writeGeneration(File snapshotDir, List<SnapshotPack> packs, String id, String timestamp,
+                                         Map<String, File> files, Set<String> linkCandidates) throws IOException {
+        Set<String> stored = new HashSet<>();
+        for (SnapshotPack pack : packs) {
+            stored.addAll(pack.getIndex().keySet());
+        }
+        File linkDir = linkDir(snapshotDir, id);
+        AtomicBoolean linksSupported = new AtomicBoolean(!linkCandidates.isEmpty());
+        List<Map.Entry<String, File>> entries = new ArrayList<>(files.entrySet());
+        try (SnapshotPack.Writer writer = new SnapshotPack.Writer(packFile(snapshotDir, id), id, timestamp)) {
+            List<SavedFile> saved = ParallelIo.map(entries, entry -> saveFile(entry.getKey(), entry.getValue(),
+                linkDir, linkCandidates, linksSupported, stored), progressCounter(SAVE_PHASE, entries.size()));
+            for (SavedFile file : saved) {
+                if (file.hash == null) {
+                    writer.addLinkedPath(file.path);
+                    continue;
+                }
+                if (file.compressed != null) {
+                    writer.addCompressed(file.hash, file.compressed, file.length);
+                }
+                writer.addManifestEntry(file.path, file.hash);
+            }
+            return writer.finish();
+        } catch (IOException | RuntimeException e) {
+            deleteDirectory(linkDir);
+            throw e;
+        }
+    }
+
+    /**
+     * 保存单个文件：能链接时创建硬链接（首次失败后本代不再尝试），否则读取并计算哈希，新内容同时压缩
+     */
+    private SavedFile saveFile(String rel, File file, File linkDir, Set<String> linkCandidates,
+                               AtomicBoolean linksSupported, Set<String> stored) throws IOException {
+        if (linksSupported.get() && linkCandidates.contains(file.getAbsolutePath())) {
+            Path link = new File(linkDir, rel + LINK_SUFFIX).toPath();
+            try {
+                Files.createDirectories(link.getParent());
+                Files.createLink(link, file.toPath());
+                return SavedFile.linked(rel);
+            } catch (UnsupportedOperationException | IOException e) {
+                if (linksSupported.getAndSet(false)) {
+                    logger.debug("无法创建硬链接，改为写入快照包: {}", e.getMessage());
+                }
+            }
+        }
+        byte[] content = Files.readAllBytes(file.toPath());
+        String hash = sha256(content);
+        byte[] compressed = stored.contains(hash) ? null : SnapshotPack.compress(content);
+        return SavedFile.content(rel, hash, compressed, content.length);
+    }
+
+    /**
+     * 单个文件的保存结果：硬链接（hash 为null），或内容哈希及新内容的压缩数据（已保存过时为null）
+     */
+    private static final class SavedFile {
+        final String path;
+        final String hash;
+        final byte[] compressed;
+        final int length;
+
+        private SavedFile(String path, String hash, byte[] compressed, int length) {
+            this.path = path;
+            this.hash = hash;
+            this.compressed = compressed;
+            this.length = length;
+        }
+
+        static SavedFile linked(String path) {
+            return new SavedFile(path, null, null, 0);
+        }
+
+        static SavedFile content(String path, String hash, byte[] compressed, int length) {
+            return new SavedFile(path, hash, compressed, length);
+        }
+    }
+
+    /**
+     * @return 每完成一个文件调用一次的计数器，向当前进度回调报告
+     */
+    private Runnable progressCounter(String phase, int total) {
+        ProgressListener listener = progressListener;
+        AtomicInteger completed = new AtomicInteger();
+        return () -> listener.onProgress(phase, completed.incrementAndGet(), total);
+    }
+
+    private static void logProgress(String phase, int completed, int total) {
+        if (total >= PROGRESS_LOG_MIN_FILES && completed * 10 / total != (completed - 1) * 10 / total) {
+            logger.info("{}: {}/{} 个文件", phase, completed, total);
+        }
+    }
+
+    private File packFile(File snapshotDir, String id) {
+        return new File(new File(snapshotDir, PACKS_DIR_NAME), id + SnapshotPack.PACK_SUFFIX);
+    }
+
+    private File linkDir(File snapshotDir, String id) {
+        return new File(new File(snapshotDir, LINKS_DIR_NAME), id);
+    }
+
+    private void deleteGeneration(File snapshotDir, SnapshotPack pack) throws IOException {
+        Files.deleteIfExists(pack.getFile().toPath());
+        deleteDirectory(linkDir(snapshotDir, pack.getId()));
+    }
+
+    /**
+     * @return 所有快照包（按时间从旧到新）；无法读取的包被跳过
+     */
+    private List<SnapshotPack> loadPacks(File snapshotDir) {
+        List<SnapshotPack> packs = new ArrayList<>();
+        File[] files = new File(snapshotDir, PACKS_DIR_NAME).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.isFile() || !file.getName().endsWith(SnapshotPack.PACK_SUFFIX)) continue;
+                try {
+                    packs.add(SnapshotPack.open(file));
+                } catch (IOException e) {
+                    logger.warn("跳过无法读取的快照包 {}: {}", file.getName(), e.getMessage());
+                }
+            }
+        }
+        packs.sort(Comparator.comparing(SnapshotPack::getId));
+        return packs;
+    }
+
+    private SnapshotPack findHolder(List<SnapshotPack> packs, String hash) {
+        for (SnapshotPack pack : packs) {
+            if (pack.getIndex().containsKey(hash)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    private String newSnapshotId(List<SnapshotPack> packs, Date now) {
+        SimpleDateFormat format = new SimpleDateFormat(ID_PATTERN);
+        long time = now.getTime();
+        String id = format.format(new Date(time));
+        // 保证 id 唯一且晚于已有的各代，按 id 排序即为时间顺序
+        String latest = packs.isEmpty() ? null : packs.get(packs.size() - 1).getId();
+        while (latest != null && id.compareTo(latest) <= 0) {
+            time++;
+            id = format.format(new Date(time));
+        }
+        return id;
+    }
+
+    /**
+     * @return 完全匹配或唯一前缀匹配的快照下标，找不到或前缀不唯一时返回-1
+     */
+    private int resolveSnapshot(List<SnapshotPack> packs, String requested) {
+        int match = -1;
+        for (int i = 0; i < packs.size(); i++) {
+            String id = packs.get(i).getId();
+            if (id.equals(requested)) {
+                return i;
+            }
+            if (id.startsWith(requested)) {
+                if (match >= 0) {
+                    return -1; // 前缀不唯一
+                }
+                match = i;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * 删除超出保留代数的最旧快照包；其中仍被较新各代引用的内容原样转移到下一代的包中
+     */
+    private void pruneGenerations(File snapshotDir) throws IOException {
+        List<SnapshotPack> packs = loadPacks(snapshotDir);
+        while (packs.size() > maxGenerations) {
+            SnapshotPack oldest = packs.remove(0);
+            Set<String> referenced = new HashSet<>();
+            for (SnapshotPack pack : packs) {
+                referenced.addAll(pack.getManifest().values());
+            }
+            List<String> moved = new ArrayList<>();
+            for (String hash : oldest.getIndex().keySet()) {
+                if (referenced.contains(hash)) {
+                    moved.add(hash);
+                }
+            }
+            if (!moved.isEmpty()) {
+                packs.set(0, repack(packs.get(0), oldest, moved));
+            }
+            deleteGeneration(snapshotDir, oldest);
+            logger.debug("已移除过期快照 {}（转移 {} 份仍被引用的内容）", oldest.getId(), moved.size());
+        }
+    }
+
+    /**
+     * 重写快照包，追加从另一个包转移过来的内容（压缩数据直接复制）
+     */
+    private SnapshotPack repack(SnapshotPack pack, SnapshotPack donor, List<String> hashes) throws IOException {
+        Map<String, byte[]> own = pack.readAllCompressed(pack.getIndex().keySet());
+        Map<String, byte[]> donated = donor.readAllCompressed(hashes);
+        try (SnapshotPack.Writer writer = new SnapshotPack.Writer(pack.getFile(), pack.getId(), pack.getTimestamp())) {
+            for (Map.Entry<String, SnapshotPack.Entry> entry : pack.getIndex().entrySet()) {
+                writer.addCompressed(entry.getKey(), own.get(entry.getKey()), entry.getValue().length);
+            }
+            for (String hash : hashes) {
+                writer.addCompressed(hash, donated.get(hash), donor.getIndex().get(hash).length);
+            }
+            for (Map.Entry<String, String> entry : pack.getManifest().entrySet()) {
+                writer.addManifestEntry(entry.getKey(), entry.getValue());
+            }
+            pack.getLinkedPaths().forEach(writer::addLinkedPath);
+            return writer.finish();
+        }
+    }
+
+    /**
+     * 将旧版单份快照（meta.txt + .snap 副本）迁移为快照包并删除旧文件
+     */
+    private void migrateLegacySnapshots(File snapshotDir) throws IOException {
+        File meta = new File(snapshotDir, LEGACY_META_FILE_NAME);
+        if (!meta.isFile()) {
+            return;
+        }
+        String timestamp = "";
+        Map<String, File> files = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(meta.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith("timestamp=")) {
+                timestamp = line.substring("timestamp=".length());
+                continue;
+            }
+            String rel = line.trim();
+            if (rel.isEmpty() || rel.contains("=")) continue;
+            File snap = new File(snapshotDir, rel + LEGACY_SNAPSHOT_SUFFIX);
+            if (snap.isFile()) {
+                files.put(rel, snap);
+            }
+        }
+        importLegacyGeneration(snapshotDir, timestamp, meta.lastModified(), files);
+        for (File snap : files.values()) {
+            Files.deleteIfExists(snap.toPath());
+        }
+        Files.deleteIfExists(meta.toPath());
+        deleteEmptyDirectories(snapshotDir);
+    }
+
+    private void importLegacyGeneration(File snapshotDir, String timestamp, long lastModified,
+                                        Map<String, File> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        Date date;
+        try {
+            date = new SimpleDateFormat(TIMESTAMP_PATTERN).parse(timestamp);
+        } catch (ParseException e) {
+            date = new Date(lastModified);
+            timestamp = new SimpleDateFormat(TIMESTAMP_PATTERN).format(date);
+        }
+        List<SnapshotPack> packs = loadPacks(snapshotDir);
+        String id = new SimpleDateFormat(ID_PATTERN).format(date);
+        for (SnapshotPack pack : packs) {
+            if (pack.getId().equals(id)) {
+                return; // 已迁移（上次迁移在删除旧文件前被中断）
+            }
+        }
+        writeGeneration(snapshotDir, packs, id, timestamp, files, Collections.emptySet());
+        logger.info("已将旧版快照迁移为快照 {}", id);
     }
 
     private void deleteDirectory(File dir) {
@@ -219,19 +696,42 @@ public class SnapshotManager {
         try { Files.deleteIfExists(dir.toPath()); } catch (IOException ignored) {}
     }
 
-    /**
-     * 向上查找最近的 pom.xml 文件
-     */
-    private File findNearestPom(File start) {
+    private void deleteEmptyDirectories(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                deleteEmptyDirectories(child);
+                File[] remaining = child.listFiles();
+                if (remaining != null && remaining.length == 0) {
+                    try { Files.deleteIfExists(child.toPath()); } catch (IOException ignored) {}
+                }
+            }
+        }
+    }
+
+    private static String sha256(byte[] content) {
         try {
-            File dir = start.isDirectory() ? start : start.getParentFile();
-            while (dir != null) {
-                File pom = new File(dir, "pom.xml");
-                if (pom.exists() && pom.isFile()) return pom;
-                dir = dir.getParentFile();
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
             }
-        } catch (Exception ignore) {}
-        return null;
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private String toRelativePathWithinProject(File file, File projectRoot) {
+        String filePath = file.getAbsolutePath();
+        String rootPath = projectRoot.getAbsolutePath();
+        if (filePath.startsWith(rootPath)) {
+            String rel = filePath.substring(rootPath.length());
+            if (rel.startsWith(File.separator)) rel = rel.substring(1);
+            return rel;
+        }
+        return file.getName();
     }
 }
 
@@ -0,0 +1,365 @@
+package com.example.refactoring.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 快照包 - 一代快照对应的单个文件：依次存放各份新内容（各自独立 deflate 压缩），
+ * 末尾是索引区（快照 id、时间、相对路径到内容哈希的清单、内容哈希到偏移的索引
+ * 以及以硬链接方式保存在包外的文件路径）和固定长度的尾部（索引区偏移 + 魔数）。
+ *
+ * 写入时顺序追加（各份内容可事先并行压缩）；读取时先读尾部与索引区，再按偏移顺序读出需要的内容并分别解压。
+ */
+final class SnapshotPack {
+
+    static final String PACK_SUFFIX = ".pack";
+
+    private static final int HEADER_MAGIC = 0x52535031; // "RSP1"
+    private static final int TRAILER_MAGIC = 0x52535049; // "RSPI"
+    private static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES;
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * 内容在包中的位置
+     */
+    static final class Entry {
+        final long offset;
+        final int compressedLength;
+        final int length;
+
+        Entry(long offset, int compressedLength, int length) {
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final String id;
+    private final String timestamp;
+    private final Map<String, String> manifest;
+    private final Map<String, Entry> index;
+    private final Set<String> linkedPaths;
+
+    private SnapshotPack(File file, String id, String timestamp, Map<String, String> manifest,
+                         Map<String, Entry> index, Set<String> linkedPaths) {
+        this.file = file;
+        this.id = id;
+        this.timestamp = timestamp;
+        this.manifest = manifest;
+        this.index = index;
+        this.linkedPaths = linkedPaths;
+    }
+
+    /**
+     * 读取包的尾部与索引区
+     */
+    static SnapshotPack open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length < Integer.BYTES + TRAILER_LENGTH) {
+                throw new EOFException("快照包不完整: " + file);
+            }
+            raf.seek(length - TRAILER_LENGTH);
+            long footerOffset = raf.readLong();
+            if (raf.readInt() != TRAILER_MAGIC || footerOffset < Integer.BYTES
+                    || footerOffset > length - TRAILER_LENGTH) {
+                throw new IOException("快照包尾部无效: " + file);
+            }
+            byte[] footer = new byte[(int) (length - TRAILER_LENGTH - footerOffset)];
+            raf.seek(footerOffset);
+            raf.readFully(footer);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer));
+            String id = in.readUTF();
+            String timestamp = in.readUTF();
+            Map<String, String> manifest = new LinkedHashMap<>();
+            int manifestCount = in.readInt();
+            for (int i = 0; i < manifestCount; i++) {
+                String path = in.readUTF();
+                manifest.put(path, readHash(in));
+            }
+            Map<String, Entry> index = new LinkedHashMap<>();
+            int indexCount = in.readInt();
+            for (int i = 0; i < indexCount; i++) {
+                String hash = readHash(in);
+                index.put(hash, new Entry(in.readLong(), in.readInt(), in.readInt()));
+            }
+            Set<String> linkedPaths = new LinkedHashSet<>();
+            int linkedCount = in.readInt();
+            for (int i = 0; i < linkedCount; i++) {
+                linkedPaths.add(in.readUTF());
+            }
+            return new SnapshotPack(file, id, timestamp, manifest, index, linkedPaths);
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return 相对路径到内容哈希的清单（按保存顺序）
+     */
+    Map<String, String> getManifest() {
+        return Collections.unmodifiableMap(manifest);
+    }
+
+    /**
+     * @return 本包中保存的内容（哈希到位置）
+     */
+    Map<String, Entry> getIndex() {
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * @return 以硬链接方式保存在包外的文件（相对路径）
+     */
+    Set<String> getLinkedPaths() {
+        return Collections.unmodifiableSet(linkedPaths);
+    }
+
+    /**
+     * 按包内偏移顺序一次读取多份内容的压缩数据（整个过程只打开一次文件）；
+     * 解压由调用方按需进行（见 {@link #decompress}），可与读取分开并行执行
+     *
+     * @return 哈希到压缩数据的映射
+     */
+    Map<String, byte[]> readAllCompressed(Collection<String> hashes) throws IOException {
+        List<String> ordered = new ArrayList<>(hashes);
+        for (String hash : ordered) {
+            if (!index.containsKey(hash)) {
+                throw new IOException("快照包 " + id + " 中没有内容 " + hash);
+            }
+        }
+        ordered.sort(Comparator.comparingLong(hash -> index.get(hash).offset));
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (String hash : ordered) {
+                Entry entry = index.get(hash);
+                ByteBuffer buffer = ByteBuffer.allocate(entry.compressedLength);
+                long position = entry.offset;
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException("快照包被截断: " + file);
+                    }
+                    position += read;
+                }
+                contents.put(hash, buffer.array());
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * 解压本包中一份内容的压缩数据（线程安全）
+     */
+    byte[] decompress(String hash, byte[] compressed) throws IOException {
+        Entry entry = index.get(hash);
+        if (entry == null) {
+            throw new IOException("快照包 " + id + " 中没有内容 " + hash);
+        }
+        int length = entry.length;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] content = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int inflated = inflater.inflate(content, offset, length - offset);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += inflated;
+            }
+            if (offset != length) {
+                throw new IOException("快照包内容损坏: " + file);
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("快照包内容损坏: " + file, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 压缩一份内容，结果由 {@link Writer#addCompressed} 追加（线程安全，可在写入前并行执行）
+     */
+    static byte[] compress(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 顺序写入一个快照包：先写到临时文件，finish 时追加索引区并重命名为正式文件
+     */
+    static final class Writer implements Closeable {
+        private final File target;
+        private final File temp;
+        private final CountingOutputStream out;
+        private final String id;
+        private final String timestamp;
+        private final Map<String, String> manifest = new LinkedHashMap<>();
+        private final Map<String, Entry> index = new LinkedHashMap<>();
+        private final Set<String> linkedPaths = new LinkedHashSet<>();
+        private boolean finished;
+
+        Writer(File target, String id, String timestamp) throws IOException {
+            this.target = target;
+            this.temp = new File(target.getParentFile(), target.getName() + ".tmp");
+            target.getParentFile().mkdirs();
+            this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            this.id = id;
+            this.timestamp = timestamp;
+            new DataOutputStream(out).writeInt(HEADER_MAGIC);
+        }
+
+        /**
+         * 追加一份已压缩的内容（已存在时忽略）
+         */
+        void addCompressed(String hash, byte[] compressed, int length) throws IOException {
+            if (index.containsKey(hash)) {
+                return;
+            }
+            long offset = out.count;
+            out.write(compressed);
+            index.put(hash, new Entry(offset, compressed.length, length));
+        }
+
+        void addManifestEntry(String path, String hash) {
+            manifest.put(path, hash);
+        }
+
+        void addLinkedPath(String path) {
+            linkedPaths.add(path);
+        }
+
+        /**
+         * 写入索引区与尾部，完成后原子替换目标文件
+         */
+        SnapshotPack finish() throws IOException {
+            long footerOffset = out.count;
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeUTF(id);
+            data.writeUTF(timestamp);
+            data.writeInt(manifest.size());
+            for (Map.Entry<String, String> entry : manifest.entrySet()) {
+                data.writeUTF(entry.getKey());
+                writeHash(data, entry.getValue());
+            }
+            data.writeInt(index.size());
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                writeHash(data, entry.getKey());
+                data.writeLong(entry.getValue().offset);
+                data.writeInt(entry.getValue().compressedLength);
+                data.writeInt(entry.getValue().length);
+            }
+            data.writeInt(linkedPaths.size());
+            for (String path : linkedPaths) {
+                data.writeUTF(path);
+            }
+            data.writeLong(footerOffset);
+            data.writeInt(TRAILER_MAGIC);
+            out.close();
+            finished = true;
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return new SnapshotPack(target, id, timestamp, manifest, index, linkedPaths);
+        }
+
+        /**
+         * 未完成时丢弃临时文件
+         */
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+    }
+
+    private static String readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[HASH_LENGTH];
+        in.readFully(hash);
+        StringBuilder hex = new StringBuilder(HASH_LENGTH * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void writeHash(DataOutputStream out, String hex) throws IOException {
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            out.writeByte(Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16));
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,917 @@
+package com.example.refactoring.core;
+
+import spoon.reflect.code.CtComment;
+import spoon.reflect.cu.SourcePosition;
+import spoon.reflect.cu.position.BodyHolderSourcePosition;
+import spoon.reflect.cu.position.DeclarationSourcePosition;
+import spoon.reflect.declaration.CtAnnotation;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtConstructor;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtImport;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtModifiable;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.CtTypeMember;
+import spoon.reflect.declaration.ModifierKind;
+import spoon.reflect.path.CtRole;
+import spoon.reflect.visitor.DefaultJavaPrettyPrinter;
+import spoon.support.reflect.CtExtendedModifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文本编辑引擎 - 将变更日志中记录的模型修改转换为基于原始源码位置的最小文本编辑
+ *
+ * 支持重构中最常见的修改：增删类型成员、调整修饰符、增删注解以及增删 import。
+ * 编辑直接作用于编译单元的原始源码，未修改的部分逐字节保留。
+ * 遇到无法表达为文本编辑的修改或编辑区间重叠时返回null，由调用方回退到 Sniper 打印。
+ */
+public class TextEditEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextEditEngine.class);
+
+    /**
+     * 类型成员相关的角色：Spoon 按成员种类报告成员的增删
+     */
+    private static final Set<CtRole> MEMBER_ROLES = new LinkedHashSet<>(Arrays.asList(
+        CtRole.TYPE_MEMBER, CtRole.METHOD, CtRole.FIELD, CtRole.CONSTRUCTOR,
+        CtRole.NESTED_TYPE, CtRole.ANNONYMOUS_EXECUTABLE));
+
+    private static final Pattern MODIFIER_TOKEN = Pattern.compile(
+        "\\b(public|protected|private|abstract|static|final|transient|volatile|synchronized|native|strictfp|default|sealed|non-sealed)\\b");
+
+    /**
+     * 对编译单元应用变更日志中的修改
+     *
+     * @param unit 编译单元
+     * @param journal 覆盖整个重构过程的变更日志（已关闭）
+     * @return 编辑后的完整文件内容；需要回退到打印器时返回null
+     */
+    public String apply(CtCompilationUnit unit, ChangeJournal journal) {
+        try {
+            String source = unit.getOriginalSourceCode();
+            if (source == null || source.isEmpty()) {
+                return null;
+            }
+            EditContext context = new EditContext(unit, source, journal);
+            if (!context.collectEdits()) {
+                return null;
+            }
+            return applyEdits(source, context.edits);
+        } catch (Exception e) {
+            logger.debug("文本编辑失败，回退到打印器: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 按起始位置依次应用编辑；编辑区间重叠时返回null
+     */
+    static String applyEdits(String source, List<TextEdit> edits) {
+        List<TextEdit> sorted = new ArrayList<>(edits);
+        // 同一位置上插入排在删除之前；多个插入按 order 排列（注解在修饰符之前）
+        sorted.sort(Comparator.comparingInt((TextEdit e) -> e.start)
+            .thenComparingInt(e -> e.end)
+            .thenComparingInt(e -> e.order));
+        StringBuilder sb = new StringBuilder(source.length());
+        int cursor = 0;
+        for (TextEdit edit : sorted) {
+            if (edit.start < cursor) {
+                logger.debug("文本编辑区间重叠: {}", edit);
+                return null;
+            }
+            sb.append(source, cursor, edit.start).append(edit.replacement);
+            cursor = edit.end;
+        }
+        sb.append(source.substring(cursor));
+        return sb.toString();
+    }
+
+    /**
+     * 单个编译单元的编辑收集过程
+     */
+    private static class EditContext {
+        private final CtCompilationUnit unit;
+        private final String source;
+        private final ChangeJournal journal;
+        private final List<TextEdit> edits = new ArrayList<>();
+        private final Set<CtElement> addedMembers = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<CtElement> removedMembers = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final String indentUnit;
+        private final String newline;
+        private boolean memberEditFailed;
+
+        EditContext(CtCompilationUnit unit, String source, ChangeJournal journal) {
+            this.unit = unit;
+            this.source = source;
+            this.journal = journal;
+            this.indentUnit = source.contains("\n\t") ? "\t" : "    ";
+            // 插入的文本沿用文件原有的换行符，避免在 CRLF 文件中混入 LF
+            this.newline = source.contains("\r\n") ? "\r\n" : "\n";
+        }
+
+        boolean collectEdits() {
+            Map<CtElement, Set<CtRole>> touched = new LinkedHashMap<>();
+            for (ChangeJournal.Change change : journal.getFirstTouches(unit)) {
+                touched.computeIfAbsent(change.getElement(), k -> new LinkedHashSet<>()).add(change.getRole());
+            }
+
+            // 1. 先确定增删的类型成员，其内部的修改随成员整体处理
+            for (Map.Entry<CtElement, Set<CtRole>> entry : touched.entrySet()) {
+                if (entry.getKey() instanceof CtType && isOriginal(entry.getKey())
+                    && !Collections.disjoint(entry.getValue(), MEMBER_ROLES)) {
+                    collectMemberDiff((CtType<?>) entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<CtElement, Set<CtRole>> entry : touched.entrySet()) {
+                CtElement element = entry.getKey();
+                if (isInside(element, addedMembers) || isInside(element, removedMembers)) {
+                    continue;
+                }
+                if (element == unit) {
+                    for (CtRole role : entry.getValue()) {
+                        if (role != CtRole.DECLARED_IMPORT || !collectImportEdits()) {
+                            return unsupported(element, role);
+                        }
+                    }
+                    continue;
+                }
+                if (!isAttached(element)) {
+                    // 已脱离模型的中间元素（如尚未加入模型的克隆）不影响输出
+                    continue;
+                }
+                if (!isOriginal(element)) {
+                    return unsupported(element, null);
+                }
+                for (CtRole role : entry.getValue()) {
+                    boolean ok;
+                    if (MEMBER_ROLES.contains(role) && element instanceof CtType) {
+                        ok = true;
+                    } else if (role == CtRole.MODIFIER && element instanceof CtModifiable) {
+                        ok = collectModifierEdits((CtModifiable) element);
+                    } else if (role == CtRole.ANNOTATION) {
+                        ok = collectAnnotationEdits(element);
+                    } else {
+                        ok = false;
+                    }
+                    if (!ok) {
+                        return unsupported(element, role);
+                    }
+                }
+            }
+            return !memberEditFailed;
+        }
+
+        private boolean unsupported(CtElement element, CtRole role) {
+            logger.debug("修改无法表达为文本编辑: {} {}", element.getClass().getSimpleName(), role);
+            return false;
+        }
+
+        // ---------- 类型成员 ----------
+
+        private void collectMemberDiff(CtType<?> type, Set<CtRole> roles) {
+            List<CtTypeMember> current = type.getTypeMembers();
+            List<CtTypeMember> original = originalMembers(type, roles);
+            Set<CtTypeMember> originalSet = identitySet(original);
+            Set<CtTypeMember> currentSet = identitySet(current);
+
+            List<CtTypeMember> survivors = new ArrayList<>();
+            for (CtTypeMember member : original) {
+                if (currentSet.contains(member)) {
+                    survivors.add(member);
+                } else if (!isImplicit(member)) {
+                    removedMembers.add(member);
+                    if (!addRemoval(member)) {
+                        memberEditFailed = true;
+                    }
+                }
+            }
+            // 保留的成员之间的相对顺序不能改变
+            List<CtTypeMember> currentSurvivors = new ArrayList<>();
+            for (CtTypeMember member : current) {
+                if (originalSet.contains(member)) {
+                    currentSurvivors.add(member);
+                }
+            }
+            if (!sameOrder(survivors, currentSurvivors)) {
+                memberEditFailed = true;
+                return;
+            }
+
+            // 新增成员插入到其后第一个保留成员之前，没有则插入到类型末尾
+            Map<Integer, List<CtTypeMember>> insertions = new LinkedHashMap<>();
+            for (int i = 0; i < current.size(); i++) {
+                CtTypeMember member = current.get(i);
+                if (originalSet.contains(member) || isImplicit(member)) {
+                    continue;
+                }
+                addedMembers.add(member);
+                int anchor = -1;
+                for (int j = i + 1; j < current.size(); j++) {
+                    CtTypeMember next = current.get(j);
+                    if (originalSet.contains(next) && !isImplicit(next)) {
+                        anchor = j;
+                        break;
+                    }
+                }
+                insertions.computeIfAbsent(anchor, k -> new ArrayList<>()).add(member);
+            }
+            for (Map.Entry<Integer, List<CtTypeMember>> entry : insertions.entrySet()) {
+                boolean ok = entry.getKey() >= 0
+                    ? addInsertionBefore(type, current.get(entry.getKey()), entry.getValue())
+                    : addInsertionAtEnd(type, entry.getValue());
+                if (!ok) {
+                    memberEditFailed = true;
+                }
+            }
+        }
+
+        /**
+         * 还原类型修改前的成员（按源码顺序）：被修改种类的成员取日志中的原值，其余种类取当前值
+         */
+        @SuppressWarnings("unchecked")
+        private List<CtTypeMember> originalMembers(CtType<?> type, Set<CtRole> roles) {
+            Set<CtTypeMember> members = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (roles.contains(CtRole.TYPE_MEMBER)) {
+                members.addAll((Collection<CtTypeMember>) journal.getOriginalValue(type, CtRole.TYPE_MEMBER));
+            } else {
+                for (CtTypeMember member : type.getTypeMembers()) {
+                    if (!roles.contains(memberRole(member))) {
+                        members.add(member);
+                    }
+                }
+                for (CtRole role : roles) {
+                    if (MEMBER_ROLES.contains(role)) {
+                        members.addAll((Collection<CtTypeMember>) journal.getOriginalValue(type, role));
+                    }
+                }
+            }
+            List<CtTypeMember> result = new ArrayList<>();
+            for (CtTypeMember member : members) {
+                if (isImplicit(member)) {
+                    continue;
+                }
+                if (!isOriginal(member)) {
+                    // 修改前就存在却没有源码位置的成员无法定位
+                    memberEditFailed = true;
+                    continue;
+                }
+                result.add(member);
+            }
+            result.sort(Comparator.comparingInt(member -> member.getPosition().getSourceStart()));
+            return result;
+        }
+
+        private CtRole memberRole(CtTypeMember member) {
+            if (member instanceof CtMethod) {
+                return CtRole.METHOD;
+            } else if (member instanceof CtField) {
+                return CtRole.FIELD;
+            } else if (member instanceof CtConstructor) {
+                return CtRole.CONSTRUCTOR;
+            } else if (member instanceof CtType) {
+                return CtRole.NESTED_TYPE;
+            }
+            return CtRole.ANNONYMOUS_EXECUTABLE;
+        }
+
+        private boolean addRemoval(CtElement member) {
+            int[] range = memberRange(member);
+            if (range == null) {
+                return false;
+            }
+            int start = expandToLineStart(range[0]);
+            int end = expandToLineEnd(range[1]);
+            // 避免留下两个连续空行：优先删除其后的空行，否则删除其前的空行
+            if (start == lineStart(start) && end == lineStart(end)) {
+                int nextLineEnd = source.indexOf('\n', end);
+                if (nextLineEnd >= 0 && source.substring(end, nextLineEnd).trim().isEmpty()) {
+                    end = nextLineEnd + 1;
+                } else if (start > 0) {
+                    int previousLineStart = lineStart(start - 1);
+                    if (source.substring(previousLineStart, start).trim().isEmpty()) {
+                        start = previousLineStart;
+                    }
+                }
+            }
+            edits.add(new TextEdit(start, end, ""));
+            return true;
+        }
+
+        private boolean addInsertionBefore(CtType<?> type, CtElement anchor, List<CtTypeMember> members) {
+            int[] range = memberRange(anchor);
+            if (range == null) {
+                return false;
+            }
+            int offset = expandToLineStart(range[0]);
+            if (offset != lineStart(offset)) {
+                return false;
+            }
+            String indent = memberIndent(type);
+            StringBuilder sb = new StringBuilder();
+            for (CtTypeMember member : members) {
+                sb.append(indentText(printElement(member), indent)).append(newline).append(newline);
+            }
+            edits.add(new TextEdit(offset, offset, sb.toString()));
+            return true;
+        }
+
+        private boolean addInsertionAtEnd(CtType<?> type, List<CtTypeMember> members) {
+            SourcePosition position = type.getPosition();
+            if (!(position instanceof BodyHolderSourcePosition)) {
+                return false;
+            }
+            int bodyStart = ((BodyHolderSourcePosition) position).getBodyStart();
+            int bodyEnd = ((BodyHolderSourcePosition) position).getBodyEnd();
+            if (bodyEnd >= source.length() || source.charAt(bodyEnd) != '}' || source.charAt(bodyStart) != '{') {
+                return false;
+            }
+            String indent = memberIndent(type);
+            StringBuilder text = new StringBuilder();
+            for (CtTypeMember member : members) {
+                text.append(indentText(printElement(member), indent)).append(newline);
+            }
+            String inner = source.substring(bodyStart + 1, bodyEnd);
+            if (inner.trim().isEmpty()) {
+                // 空类型体：整体替换为新成员
+                edits.add(new TextEdit(bodyStart + 1, bodyEnd, newline + text + leadingWhitespace(lineStart(bodyStart))));
+            } else if (lineStart(bodyEnd) == skipWhitespaceBackward(bodyEnd)) {
+                int offset = lineStart(bodyEnd);
+                edits.add(new TextEdit(offset, offset, newline + text));
+            } else {
+                edits.add(new TextEdit(bodyEnd, bodyEnd, newline + text + leadingWhitespace(lineStart(bodyStart))));
+            }
+            return true;
+        }
+
+        /**
+         * 成员在源码中的范围（包含文档注释、注解与前置注释），end 为开区间
+         */
+        private int[] memberRange(CtElement member) {
+            SourcePosition position = member.getPosition();
+            if (!position.isValidPosition() || position.getCompilationUnit() != unit) {
+                return null;
+            }
+            int start = position.getSourceStart();
+            int end = position.getSourceEnd();
+            if (position instanceof DeclarationSourcePosition) {
+                start = Math.min(start, ((DeclarationSourcePosition) position).getDeclarationStart());
+                end = Math.max(end, ((DeclarationSourcePosition) position).getDeclarationEnd());
+            }
+            for (CtComment comment : member.getComments()) {
+                SourcePosition commentPosition = comment.getPosition();
+                if (commentPosition.isValidPosition() && commentPosition.getSourceEnd() < start) {
+                    start = Math.min(start, commentPosition.getSourceStart());
+                }
+            }
+            return new int[] {start, end + 1};
+        }
+
+        private String memberIndent(CtType<?> type) {
+            for (CtTypeMember member : type.getTypeMembers()) {
+                if (!addedMembers.contains(member) && !isImplicit(member) && isOriginal(member)) {
+                    int start = expandToLineStart(memberRange(member)[0]);
+                    if (start == lineStart(start)) {
+                        return leadingWhitespace(start);
+                    }
+                }
+            }
+            return leadingWhitespace(lineStart(type.getPosition().getSourceStart())) + indentUnit;
+        }
+
+        // ---------- 修饰符 ----------
+
+        @SuppressWarnings("unchecked")
+        private boolean collectModifierEdits(CtModifiable element) {
+            Set<ModifierKind> original = new LinkedHashSet<>(
+                (Collection<ModifierKind>) journal.getOriginalValue(element, CtRole.MODIFIER));
+            Set<ModifierKind> current = new LinkedHashSet<>();
+            for (CtExtendedModifier modifier : element.getExtendedModifiers()) {
+                if (!modifier.isImplicit()) {
+                    current.add(modifier.getKind());
+                }
+            }
+            // 原值中可能包含隐式修饰符（如接口方法的 public），只比较源码中出现的关键字
+            List<int[]> tokens = new ArrayList<>();
+            Set<ModifierKind> written = new LinkedHashSet<>();
+            if (!findModifierTokens((CtElement) element, tokens, written)) {
+                return false;
+            }
+            original.retainAll(written);
+            if (!original.equals(written)) {
+                return false;
+            }
+            if (original.equals(current)) {
+                return true;
+            }
+            List<ModifierKind> writtenOrder = new ArrayList<>(written);
+            int lastKeptEnd = -1;
+            for (int i = 0; i < writtenOrder.size(); i++) {
+                int[] token = tokens.get(i);
+                if (current.contains(writtenOrder.get(i))) {
+                    lastKeptEnd = token[1];
+                } else {
+                    edits.add(new TextEdit(token[0], skipSpaces(token[1]), ""));
+                }
+            }
+            StringBuilder visibility = new StringBuilder();
+            StringBuilder others = new StringBuilder();
+            for (ModifierKind kind : current) {
+                if (written.contains(kind)) {
+                    continue;
+                }
+                if (kind == ModifierKind.PUBLIC || kind == ModifierKind.PROTECTED || kind == ModifierKind.PRIVATE) {
+                    visibility.append(kind.toString()).append(' ');
+                } else {
+                    others.append(kind.toString()).append(' ');
+                }
+            }
+            // 可见性插入到最前面，其余修饰符跟在最后一个保留的修饰符之后
+            int first = tokens.isEmpty() ? declarationAnchor((CtElement) element) : tokens.get(0)[0];
+            if (first < 0) {
+                return false;
+            }
+            if (visibility.length() > 0) {
+                edits.add(new TextEdit(first, first, visibility.toString()));
+            }
+            if (others.length() > 0) {
+                if (lastKeptEnd >= 0) {
+                    edits.add(new TextEdit(lastKeptEnd, lastKeptEnd, " " + others.toString().trim(), 1));
+                } else {
+                    edits.add(new TextEdit(first, first, others.toString(), 1));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 在声明的修饰符区间中查找修饰符关键字（跳过注释、字符串与注解参数）
+         */
+        private boolean findModifierTokens(CtElement element, List<int[]> tokens, Set<ModifierKind> kinds) {
+            SourcePosition position = element.getPosition();
+            if (!(position instanceof DeclarationSourcePosition)) {
+                return false;
+            }
+            DeclarationSourcePosition declaration = (DeclarationSourcePosition) position;
+            int start = declaration.getModifierSourceStart();
+            int end = declaration.getModifierSourceEnd() + 1;
+            if (start < 0 || end <= start) {
+                // 没有任何修饰符
+                return true;
+            }
+            String masked = maskNonCode(source.substring(start, end));
+            Matcher matcher = MODIFIER_TOKEN.matcher(masked);
+            while (matcher.find()) {
+                ModifierKind kind = toModifierKind(matcher.group(1));
+                if (kind == null || !kinds.add(kind)) {
+                    return false;
+                }
+                tokens.add(new int[] {start + matcher.start(), start + matcher.end()});
+            }
+            return true;
+        }
+
+        private ModifierKind toModifierKind(String keyword) {
+            for (ModifierKind kind : ModifierKind.values()) {
+                if (kind.toString().equals(keyword)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+
+        // ---------- 注解 ----------
+
+        @SuppressWarnings("unchecked")
+        private boolean collectAnnotationEdits(CtElement element) {
+            List<CtAnnotation<?>> original =
+                (List<CtAnnotation<?>>) journal.getOriginalValue(element, CtRole.ANNOTATION);
+            List<CtAnnotation<?>> current = element.getAnnotations();
+            Set<CtAnnotation<?>> originalSet = identitySet(original);
+            Set<CtAnnotation<?>> currentSet = identitySet(current);
+
+            for (CtAnnotation<?> annotation : original) {
+                if (currentSet.contains(annotation)) {
+                    continue;
+                }
+                SourcePosition position = annotation.getPosition();
+                if (!position.isValidPosition() || position.getCompilationUnit() != unit) {
+                    return false;
+                }
+                int end = position.getSourceEnd() + 1;
+                edits.add(new TextEdit(position.getSourceStart(), skipWhitespace(end), ""));
+            }
+
+            List<String> added = new ArrayList<>();
+            for (CtAnnotation<?> annotation : current) {
+                if (!originalSet.contains(annotation)) {
+                    added.add(printAnnotation(annotation));
+                }
+            }
+            if (added.isEmpty()) {
+                return true;
+            }
+            int anchor = annotationAnchor(element, original);
+            if (anchor < 0) {
+                return false;
+            }
+            boolean ownLine = lineStart(anchor) == skipWhitespaceBackward(anchor);
+            String separator = ownLine ? newline + leadingWhitespace(lineStart(anchor)) : " ";
+            StringBuilder sb = new StringBuilder();
+            for (String annotation : added) {
+                sb.append(annotation).append(separator);
+            }
+            edits.add(new TextEdit(anchor, anchor, sb.toString(), -1));
+            return true;
+        }
+
+        /**
+         * 新注解的插入位置：第一个原有注解之前，否则第一个修饰符之前
+         */
+        private int annotationAnchor(CtElement element, List<CtAnnotation<?>> original) {
+            for (CtAnnotation<?> annotation : original) {
+                SourcePosition position = annotation.getPosition();
+                if (position.isValidPosition() && position.getCompilationUnit() == unit) {
+                    return position.getSourceStart();
+                }
+            }
+            List<int[]> tokens = new ArrayList<>();
+            if (!findModifierTokens(element, tokens, new LinkedHashSet<>())) {
+                return -1;
+            }
+            return tokens.isEmpty() ? declarationAnchor(element) : tokens.get(0)[0];
+        }
+
+        /**
+         * 没有修饰符的声明中，修饰符应插入的位置：跳过文档注释与注解后的第一个字符
+         */
+        @SuppressWarnings("unchecked")
+        private int declarationAnchor(CtElement element) {
+            SourcePosition position = element.getPosition();
+            if (!(position instanceof DeclarationSourcePosition)) {
+                return -1;
+            }
+            int anchor = skipWhitespace(((DeclarationSourcePosition) position).getModifierSourceStart());
+            List<CtAnnotation<?>> annotations = new ArrayList<>(
+                (List<CtAnnotation<?>>) journal.getOriginalValue(element, CtRole.ANNOTATION));
+            annotations.removeIf(annotation -> !annotation.getPosition().isValidPosition());
+            annotations.sort(Comparator.comparingInt(annotation -> annotation.getPosition().getSourceStart()));
+            for (CtAnnotation<?> annotation : annotations) {
+                if (annotation.getPosition().getSourceStart() == anchor) {
+                    anchor = skipWhitespace(annotation.getPosition().getSourceEnd() + 1);
+                }
+            }
+            return anchor;
+        }
+
+        private String printAnnotation(CtAnnotation<?> annotation) {
+            String text = printElement(annotation).trim();
+            if (text.startsWith("@java.lang.") && text.indexOf('.', "@java.lang.".length()) < 0) {
+                text = "@" + text.substring("@java.lang.".length());
+            }
+            return text;
+        }
+
+        // ---------- import ----------
+
+        private boolean collectImportEdits() {
+            @SuppressWarnings("unchecked")
+            List<CtImport> original = (List<CtImport>) journal.getOriginalValue(unit, CtRole.DECLARED_IMPORT);
+            List<CtImport> current = unit.getImports();
+            Set<CtImport> originalSet = identitySet(original);
+            Set<CtImport> currentSet = identitySet(current);
+
+            int lastImportEnd = -1;
+            for (CtImport imp : original) {
+                SourcePosition position = imp.getPosition();
+                if (!position.isValidPosition()) {
+                    return false;
+                }
+                lastImportEnd = Math.max(lastImportEnd, position.getSourceEnd() + 1);
+                if (!currentSet.contains(imp)) {
+                    edits.add(new TextEdit(expandToLineStart(position.getSourceStart()),
+                        expandToLineEnd(position.getSourceEnd() + 1), ""));
+                }
+            }
+            StringBuilder added = new StringBuilder();
+            for (CtImport imp : current) {
+                if (!originalSet.contains(imp)) {
+                    added.append(printImport(imp)).append(newline);
+                }
+            }
+            if (added.length() == 0) {
+                return true;
+            }
+            if (lastImportEnd >= 0) {
+                int offset = expandToLineEnd(lastImportEnd);
+                edits.add(new TextEdit(offset, offset, offset == lastImportEnd ? newline + added : added.toString()));
+                return true;
+            }
+            SourcePosition packagePosition = unit.getPackageDeclaration() != null
+                ? unit.getPackageDeclaration().getPosition() : null;
+            if (packagePosition != null && packagePosition.isValidPosition()) {
+                int offset = expandToLineEnd(packagePosition.getSourceEnd() + 1);
+                edits.add(new TextEdit(offset, offset, newline + added));
+                return true;
+            }
+            edits.add(new TextEdit(0, 0, added + newline));
+            return true;
+        }
+
+        private String printImport(CtImport imp) {
+            String text = printElement(imp).trim();
+            return text.endsWith(";") ? text : text + ";";
+        }
+
+        // ---------- 元素归属 ----------
+
+        /**
+         * 元素是否来自本编译单元的原始源码
+         */
+        private boolean isOriginal(CtElement element) {
+            SourcePosition position = element.getPosition();
+            return position.isValidPosition() && position.getCompilationUnit() == unit && !element.isImplicit();
+        }
+
+        private boolean isImplicit(CtElement element) {
+            return element.isImplicit();
+        }
+
+        private boolean isInside(CtElement element, Set<CtElement> roots) {
+            CtElement current = element;
+            while (current != null) {
+                if (roots.contains(current)) {
+                    return true;
+                }
+                current = current.isParentInitialized() ? current.getParent() : null;
+            }
+            return false;
+        }
+
+        /**
+         * 元素当前是否仍挂接在本编译单元声明的类型之下
+         */
+        private boolean isAttached(CtElement element) {
+            CtElement current = element;
+            while (current != null) {
+                if (current instanceof CtType && ((CtType<?>) current).isTopLevel()) {
+                    for (CtType<?> declared : unit.getDeclaredTypes()) {
+                        if (declared == current) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (current instanceof CtTypeMember && current.isParentInitialized()
+                    && current.getParent() instanceof CtType
+                    && !containsIdentity(((CtType<?>) current.getParent()).getTypeMembers(), current)) {
+                    return false;
+                }
+                current = current.isParentInitialized() ? current.getParent() : null;
+            }
+            return false;
+        }
+
+        // ---------- 文本工具 ----------
+
+        private String printElement(CtElement element) {
+            return new ElementPrinter(element.getFactory().getEnvironment()).printElement(element);
+        }
+
+        /**
+         * 将打印器输出的缩进（制表符或空格）转换为目标文件的缩进
+         */
+        private String indentText(String text, String baseIndent) {
+            int tabSize = Math.max(1, unit.getFactory().getEnvironment().getTabulationSize());
+            StringBuilder sb = new StringBuilder();
+            String[] lines = text.split("\r?\n", -1);
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
+                if (i > 0) {
+                    sb.append(newline);
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                int depth = 0;
+                int index = 0;
+                int spaces = 0;
+                while (index < line.length() && (line.charAt(index) == '\t' || line.charAt(index) == ' ')) {
+                    if (line.charAt(index) == '\t') {
+                        depth++;
+                    } else if (++spaces == tabSize) {
+                        depth++;
+                        spaces = 0;
+                    }
+                    index++;
+                }
+                sb.append(baseIndent);
+                for (int d = 0; d < depth; d++) {
+                    sb.append(indentUnit);
+                }
+                // javadoc 续行的前导空格
+                for (int s = 0; s < spaces; s++) {
+                    sb.append(' ');
+                }
+                sb.append(line.substring(index));
+            }
+            return sb.toString();
+        }
+
+        private int lineStart(int offset) {
+            int index = source.lastIndexOf('\n', offset - 1);
+            return index + 1;
+        }
+
+        private String leadingWhitespace(int lineStart) {
+            int index = lineStart;
+            while (index < source.length() && (source.charAt(index) == ' ' || source.charAt(index) == '\t')) {
+                index++;
+            }
+            return source.substring(lineStart, index);
+        }
+
+        /**
+         * 若 offset 前只有空白，则扩展到行首
+         */
+        private int expandToLineStart(int offset) {
+            int start = lineStart(offset);
+            return source.substring(start, offset).trim().isEmpty() ? start : offset;
+        }
+
+        /**
+         * 若 offset 后到行尾只有空白，则扩展到下一行行首
+         */
+        private int expandToLineEnd(int offset) {
+            int index = skipSpaces(offset);
+            if (index < source.length() && source.charAt(index) == '\r') {
+                index++;
+            }
+            if (index < source.length() && source.charAt(index) == '\n') {
+                return index + 1;
+            }
+            return index >= source.length() ? index : offset;
+        }
+
+        private int skipSpaces(int offset) {
+            int index = offset;
+            while (index < source.length() && (source.charAt(index) == ' ' || source.charAt(index) == '\t')) {
+                index++;
+            }
+            return index;
+        }
+
+        private int skipWhitespace(int offset) {
+            int index = offset;
+            while (index < source.length() && Character.isWhitespace(source.charAt(index))) {
+                index++;
+            }
+            return index;
+        }
+
+        private int skipWhitespaceBackward(int offset) {
+            int index = offset;
+            while (index > 0 && (source.charAt(index - 1) == ' ' || source.charAt(index - 1) == '\t')) {
+                index--;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 将注释、字符串与括号内的内容替换为空格，保持长度不变
+     */
+    static String maskNonCode(String text) {
+        char[] chars = text.toCharArray();
+        int depth = 0;
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c == '/' && i + 1 < chars.length && chars[i + 1] == '*') {
+                int end = text.indexOf("*/", i + 2);
+                end = end < 0 ? chars.length : end + 2;
+                fill(chars, i, end);
+                i = end - 1;
+            } else if (c == '/' && i + 1 < chars.length && chars[i + 1] == '/') {
+                int end = text.indexOf('\n', i);
+                end = end < 0 ? chars.length : end;
+                fill(chars, i, end);
+                i = end - 1;
+            } else if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < chars.length && chars[end] != c) {
+                    end += chars[end] == '\\' ? 2 : 1;
+                }
+                end = Math.min(chars.length, end + 1);
+                fill(chars, i, end);
+                i = end - 1;
+            } else if (c == '(') {
+                depth++;
+                chars[i] = ' ';
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                chars[i] = ' ';
+            } else if (c == '@') {
+                // 注解名称
+                int end = i + 1;
+                while (end < chars.length && (Character.isJavaIdentifierPart(chars[end]) || chars[end] == '.')) {
+                    end++;
+                }
+                fill(chars, i, end);
+                i = end - 1;
+            } else if (depth > 0) {
+                chars[i] = ' ';
+            }
+        }
+        return new String(chars);
+    }
+
+    private static void fill(char[] chars, int from, int to) {
+        for (int i = from; i < to && i < chars.length; i++) {
+            if (chars[i] != '\n') {
+                chars[i] = ' ';
+            }
+        }
+    }
+
+    private static <T> Set<T> identitySet(Collection<? extends T> items) {
+        Set<T> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (items != null) {
+            set.addAll(items);
+        }
+        return set;
+    }
+
+    private static boolean containsIdentity(Collection<?> items, Object item) {
+        for (Object candidate : items) {
+            if (candidate == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameOrder(List<?> a, List<?> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 打印新插入元素的打印器：与 Sniper 一致，保留源码中的简单类名并省略多余的括号
+     */
+    private static class ElementPrinter extends DefaultJavaPrettyPrinter {
+        ElementPrinter(spoon.compiler.Environment environment) {
+            super(environment);
+            setIgnoreImplicit(false);
+            setMinimizeRoundBrackets(true);
+        }
+    }
+
+    /**
+     * 一次文本编辑：将原始源码中 [start, end) 替换为 replacement
+     */
+    static class TextEdit {
+        private final int start;
+        private final int end;
+        private final String replacement;
+        private final int order;
+
+        TextEdit(int start, int end, String replacement) {
+            this(start, end, replacement, 0);
+        }
+
+        TextEdit(int start, int end, String replacement, int order) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+            this.order = order;
+        }
+
+        @Override
+        public String toString() {
+            return "TextEdit{" + start + ".." + end + " -> \"" + replacement + "\"}";
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.refactoring.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 补丁输出 - 将所有修改汇总为一个统一 diff（unified diff），不修改源文件
+ *
+ * 差异以原始源文件为基准，条目路径为相对源路径的 a/、b/ 形式；
+ * 指定补丁文件时在 close 时一次性写出，否则通过 {@link #getDiff()} 获取。
+ */
+public class UnifiedDiffOutputSink implements OutputSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnifiedDiffOutputSink.class);
+
+    /** 每个变更块前后保留的上下文行数 */
+    private static final int CONTEXT_LINES = 3;
+
+    /** 逐行比较的最大规模（行数乘积），超过时整段按删除后插入处理 */
+    private static final long MAX_LCS_CELLS = 4_000_000L;
+
+    private final File patchFile;
+    private final Charset charset;
+    private final StringBuilder diff = new StringBuilder();
+    private int fileCount;
+
+    /**
+     * 只在内存中生成补丁
+     */
+    public UnifiedDiffOutputSink() {
+        this(null, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param patchFile 补丁文件，close 时写出（null 表示只保留在内存中）
+     * @param charset 源文件编码
+     */
+    public UnifiedDiffOutputSink(File patchFile, Charset charset) {
+        this.patchFile = patchFile;
+        this.charset = charset;
+    }
+
+    @Override
+    public synchronized void write(File originalFile, File targetFile, String relativePath, byte[] content)
+            throws IOException {
+        String oldText = originalFile != null && originalFile.isFile()
+            ? new String(Files.readAllBytes(originalFile.toPath()), charset) : "";
+        String newText = new String(content, charset);
+        String path = relativePath.replace(File.separatorChar, '/');
+        String fileDiff = diff(path, oldText, newText);
+        if (!fileDiff.isEmpty()) {
+            diff.append(fileDiff);
+            fileCount++;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (patchFile != null) {
+            File parent = patchFile.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            Files.write(patchFile.toPath(), diff.toString().getBytes(charset));
+            logger.info("已写出补丁（{} 个文件）: {}", fileCount, patchFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return 目前为止汇总的统一 diff 文本
+     */
+    public synchronized String getDiff() {
+        return diff.toString();
+    }
+
+    public synchronized int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * 生成单个文件的统一 diff；内容相同时返回空字符串
+     */
+    static String diff(String path, String oldText, String newText) {
+        if (oldText.equals(newText)) {
+            return "";
+        }
+        List<String> a = splitLines(oldText);
+        List<String> b = splitLines(newText);
+        List<int[]> ops = computeOps(a, b);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- a/").append(path).append('\n');
+        sb.append("+++ b/").append(path).append('\n');
+        int index = 0;
+        while (index < ops.size()) {
+            // 找到下一处变更，并把间隔不超过两倍上下文的变更合并为一个块
+            while (index < ops.size() && ops.get(index)[0] == ' ') {
+                index++;
+            }
+            if (index >= ops.size()) {
+                break;
+            }
+            int start = Math.max(0, index - CONTEXT_LINES);
+            int end = index;
+            int lastChange = index;
+            while (end < ops.size()) {
+                if (ops.get(end)[0] != ' ') {
+                    lastChange = end;
+                } else if (end - lastChange > 2 * CONTEXT_LINES) {
+                    break;
+                }
+                end++;
+            }
+            end = Math.min(ops.size(), lastChange + CONTEXT_LINES + 1);
+            appendHunk(sb, ops, start, end, a, b);
+            index = end;
+        }
+        return sb.toString();
+    }
+
+    private static void appendHunk(StringBuilder sb, List<int[]> ops, int start, int end,
+                                   List<String> a, List<String> b) {
+        int oldStart = -1;
+        int newStart = -1;
+        int oldCount = 0;
+        int newCount = 0;
+        for (int i = start; i < end; i++) {
+            int[] op = ops.get(i);
+            if (op[0] != '+') {
+                oldStart = oldStart < 0 ? op[1] : oldStart;
+                oldCount++;
+            }
+            if (op[0] != '-') {
+                newStart = newStart < 0 ? op[2] : newStart;
+                newCount++;
+            }
+        }
+        // 没有对应行时按统一 diff 的约定使用插入/删除位置之前的行号
+        int oldLine = oldCount > 0 ? oldStart + 1 : ops.get(start)[1];
+        int newLine = newCount > 0 ? newStart + 1 : ops.get(start)[2];
+        sb.append("@@ -").append(range(oldLine, oldCount))
+          .append(" +").append(range(newLine, newCount)).append(" @@\n");
+        for (int i = start; i < end; i++) {
+            int[] op = ops.get(i);
+            String line = op[0] == '+' ? b.get(op[2]) : a.get(op[1]);
+            sb.append((char) op[0]).append(line);
+            if (!line.endsWith("\n")) {
+                sb.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    private static String range(int line, int count) {
+        return count == 1 ? String.valueOf(line) : line + "," + count;
+    }
+
+    /**
+     * 计算编辑序列，每项为 {操作(' ', '-', '+'), 旧行号, 新行号}（行号从0开始；
+     * 对于插入，旧行号为插入位置；对于删除，新行号为删除位置）
+     */
+    private static List<int[]> computeOps(List<String> a, List<String> b) {
+        int prefix = 0;
+        while (prefix < a.size() && prefix < b.size() && a.get(prefix).equals(b.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.size() - prefix && suffix < b.size() - prefix
+            && a.get(a.size() - 1 - suffix).equals(b.get(b.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<int[]> ops = new ArrayList<>();
+        for (int i = 0; i < prefix; i++) {
+            ops.add(new int[] {' ', i, i});
+        }
+        int n = a.size() - prefix - suffix;
+        int m = b.size() - prefix - suffix;
+        if ((long) n * m > MAX_LCS_CELLS) {
+            for (int i = 0; i < n; i++) {
+                ops.add(new int[] {'-', prefix + i, prefix});
+            }
+            for (int j = 0; j < m; j++) {
+                ops.add(new int[] {'+', prefix + n, prefix + j});
+            }
+        } else {
+            // 中间部分使用最长公共子序列
+            int[][] lcs = new int[n + 1][m + 1];
+            for (int i = n - 1; i >= 0; i--) {
+                for (int j = m - 1; j >= 0; j--) {
+                    lcs[i][j] = a.get(prefix + i).equals(b.get(prefix + j))
+                        ? lcs[i + 1][j + 1] + 1 : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < n || j < m) {
+                if (i < n && j < m && a.get(prefix + i).equals(b.get(prefix + j))) {
+                    ops.add(new int[] {' ', prefix + i, prefix + j});
+                    i++;
+                    j++;
+                } else if (i < n && (j >= m || lcs[i + 1][j] >= lcs[i][j + 1])) {
+                    ops.add(new int[] {'-', prefix + i, prefix + j});
+                    i++;
+                } else {
+                    ops.add(new int[] {'+', prefix + i, prefix + j});
+                    j++;
+                }
+            }
+        }
+        for (int k = 0; k < suffix; k++) {
+            ops.add(new int[] {' ', a.size() - suffix + k, b.size() - suffix + k});
+        }
+        return ops;
+    }
+
+    /**
+     * 按行拆分，每行保留行结束符
+     */
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.refactoring.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 压缩包输出 - 将所有生成的文件按相对路径打包为一个 zip，不修改源文件
+ *
+ * 压缩包在第一次输出时创建，重构失败时不会留下空文件。
+ */
+public class ZipOutputSink implements OutputSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZipOutputSink.class);
+
+    private final File archiveFile;
+    private ZipOutputStream zip;
+    private int entryCount;
+
+    public ZipOutputSink(File archiveFile) {
+        this.archiveFile = archiveFile;
+    }
+
+    @Override
+    public synchronized void write(File originalFile, File targetFile, String relativePath, byte[] content)
+            throws IOException {
+        if (zip == null) {
+            File parent = archiveFile.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(archiveFile.toPath())));
+        }
+        zip.putNextEntry(new ZipEntry(relativePath.replace(File.separatorChar, '/')));
+        zip.write(content);
+        zip.closeEntry();
+        entryCount++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (zip != null) {
+            zip.close();
+            zip = null;
+            logger.info("已将 {} 个文件打包到: {}", entryCount, archiveFile.getAbsolutePath());
+        }
+    }
+
+    public File getArchiveFile() {
+        return archiveFile;
+    }
+
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+}
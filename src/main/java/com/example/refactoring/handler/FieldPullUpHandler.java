@@ -1,5 +1,6 @@
 package com.example.refactoring.handler;
 
+import com.example.refactoring.core.ModuleMembership;
 import spoon.reflect.declaration.*;
 import spoon.reflect.reference.CtFieldReference;
 import spoon.reflect.reference.CtTypeReference;
@@ -59,11 +60,13 @@ public class FieldPullUpHandler {
      * @param method 要分析的方法
      * @param childClass 后代类（触发上提的方法所在类）
      * @param parentClass 目标祖先类（字段被上提到的类）
+     * @param modules 本次运行共用的模块归属查询（用于判断是否跨模块上提）
      * @return 字段上提结果
      */
     public FieldPullUpResult pullUpDependentFields(CtMethod<?> method, 
                                                   CtClass<?> childClass, 
-                                                  CtClass<?> parentClass) {
+                                                  CtClass<?> parentClass,
+                                                  ModuleMembership modules) {
         try {
             logger.debug("开始分析方法 {} 的字段依赖", method.getSimpleName());
             
@@ -98,7 +101,7 @@ public class FieldPullUpHandler {
             for (CtField<?> field : dependentFields) {
                 try {
                     logger.info("开始上提字段: {} (类型: {})", field.getSimpleName(), field.getType());
-                    CtField<?> clonedField = pullUpSingleField(field, childClass, parentClass);
+                    CtField<?> clonedField = pullUpSingleField(field, childClass, parentClass, modules);
                     if (clonedField != null) {
                         pulledUpFields.add(clonedField);
                         logger.info("成功上提字段: {} 到目标祖先类 {}", field.getSimpleName(), parentClass.getSimpleName());
@@ -126,6 +129,41 @@ public class FieldPullUpHandler {
         }
     }
     
+    /**
+     * 只读分析：计算方法上提时将被一并上提的依赖字段，不修改模型
+     *
+     * @return 字段上提结果（其中的字段为后代类中的原字段；被阻断的字段以警告形式给出）
+     */
+    public FieldPullUpResult planDependentFields(CtMethod<?> method,
+                                                CtClass<?> childClass,
+                                                CtClass<?> parentClass) {
+        try {
+            Set<CtField<?>> dependentFields = collectDependentFields(method, childClass, parentClass);
+            if (dependentFields.isEmpty()) {
+                return FieldPullUpResult.success("方法无依赖字段需要上提", new ArrayList<>());
+            }
+
+            Set<CtField<?>> allowed = new LinkedHashSet<>(dependentFields);
+            FieldPullUpResult validationResult = validateFieldsCanBePulledUp(allowed, parentClass);
+            if (!validationResult.isSuccess()) {
+                return validationResult;
+            }
+
+            FieldPullUpResult result = FieldPullUpResult.success(
+                "将上提 " + allowed.size() + " 个字段", new ArrayList<>(allowed));
+            validationResult.getWarnings().forEach(result::addWarning);
+            for (CtField<?> field : dependentFields) {
+                if (!allowed.contains(field)) {
+                    result.addWarning("字段 " + field.getSimpleName() + " 无法上提");
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logger.error("分析依赖字段时发生异常", e);
+            return FieldPullUpResult.failure("分析依赖字段失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 收集方法中引用的当前后代类字段
      */
@@ -296,7 +334,8 @@ public class FieldPullUpHandler {
     /**
      * 上提单个字段（从后代类到目标祖先类）
      */
-    private CtField<?> pullUpSingleField(CtField<?> field, CtClass<?> childClass, CtClass<?> parentClass) {
+    private CtField<?> pullUpSingleField(CtField<?> field, CtClass<?> childClass, CtClass<?> parentClass,
+                                         ModuleMembership modules) {
         try {
             // 1. 克隆字段
             CtField<?> clonedField = field.clone();
@@ -310,7 +349,7 @@ public class FieldPullUpHandler {
                 logger.info("字段 {} 可见性已从 private 调整为 protected", field.getSimpleName());
             }
             // 2.2 若发生跨模块上提（后代类与目标祖先类属于不同模块），将字段提升为 public
-            if (isCrossModule(childClass, parentClass)) {
+            if (modules.isCrossModule(childClass, parentClass)) {
                 clonedField.removeModifier(ModifierKind.PROTECTED);
                 clonedField.removeModifier(ModifierKind.PRIVATE);
                 clonedField.addModifier(ModifierKind.PUBLIC);
@@ -462,35 +501,6 @@ public class FieldPullUpHandler {
         return false;
     }
 
-    /**
-     * 若后代类与目标祖先类属于不同模块（通过最近的 pom.xml 判断），视为跨模块
-     */
-    private boolean isCrossModule(CtClass<?> childClass, CtClass<?> parentClass) {
-        try {
-            java.io.File childFile = childClass.getPosition() != null ? childClass.getPosition().getFile() : null;
-            java.io.File parentFile = parentClass.getPosition() != null ? parentClass.getPosition().getFile() : null;
-            if (childFile == null || parentFile == null) return false;
-            java.io.File childModule = findNearestPom(childFile);
-            java.io.File parentModule = findNearestPom(parentFile);
-            if (childModule == null || parentModule == null) return false;
-            return !childModule.getAbsolutePath().equals(parentModule.getAbsolutePath());
-        } catch (Exception ignore) {
-            return false;
-        }
-    }
-
-    private java.io.File findNearestPom(java.io.File start) {
-        try {
-            java.io.File dir = start.isDirectory() ? start : start.getParentFile();
-            while (dir != null) {
-                java.io.File pom = new java.io.File(dir, "pom.xml");
-                if (pom.exists() && pom.isFile()) return pom;
-                dir = dir.getParentFile();
-            }
-        } catch (Exception ignore) {}
-        return null;
-    }
-
     /**
      * 沿 后代类 -> 目标祖先类 的继承路径，在中间祖先类中移除同名字段
      */
@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 
 import com.example.refactoring.core.ImportManager;
+import com.example.refactoring.core.ModuleMembership;
 
 /**
  * 方法依赖上提处理器 - 处理依赖方法的抽象上提
@@ -68,12 +69,14 @@ public class MethodPullUpHandler {
       * @param childClass 后代类（触发上提的方法所在类）
       * @param parentClass 目标祖先类（抽象声明将添加到此类）
       * @param allChildClasses 所有后代类（用于可见性一致性和缺失实现补全）
+      * @param modules 本次运行共用的模块归属查询（用于判断是否跨模块上提）
       * @return 方法上提结果
       */
      public MethodPullUpResult pullUpDependentMethods(CtMethod<?> method, 
                                                     CtClass<?> childClass, 
                                                     CtClass<?> parentClass,
-                                                    List<CtClass<?>> allChildClasses) {
+                                                    List<CtClass<?>> allChildClasses,
+                                                    ModuleMembership modules) {
         try {
             logger.debug("开始分析方法 {} 的方法依赖", method.getSimpleName());
             
@@ -98,7 +101,7 @@ public class MethodPullUpHandler {
              
              for (CtMethod<?> dependentMethod : dependentMethods) {
                  try {
-                     CtMethod<?> abstractMethod = pullUpSingleMethodAsAbstract(dependentMethod, childClass, parentClass);
+                     CtMethod<?> abstractMethod = pullUpSingleMethodAsAbstract(dependentMethod, childClass, parentClass, modules);
                      if (abstractMethod != null) {
                          // 先尝试根据所有后代类的方法签名统一返回类型，避免类型冲突
                          try {
@@ -187,6 +190,35 @@ public class MethodPullUpHandler {
         }
     }
     
+    /**
+     * 只读分析：计算方法上提时将作为抽象方法一并上提的依赖方法，不修改模型
+     *
+     * @return 方法上提结果（其中的方法为后代类中的原方法）
+     */
+    public MethodPullUpResult planDependentMethods(CtMethod<?> method,
+                                                   CtClass<?> childClass,
+                                                   CtClass<?> parentClass) {
+        try {
+            Set<CtMethod<?>> dependentMethods = collectDependentMethods(method, childClass, parentClass);
+            if (dependentMethods.isEmpty()) {
+                return MethodPullUpResult.success("方法无依赖方法需要上提", new ArrayList<>());
+            }
+
+            MethodPullUpResult validationResult = validateMethodsCanBePulledUp(dependentMethods, parentClass);
+            if (!validationResult.isSuccess()) {
+                return validationResult;
+            }
+
+            MethodPullUpResult result = MethodPullUpResult.success(
+                "将上提 " + dependentMethods.size() + " 个抽象方法", new ArrayList<>(dependentMethods));
+            validationResult.getWarnings().forEach(result::addWarning);
+            return result;
+        } catch (Exception e) {
+            logger.error("分析依赖方法时发生异常", e);
+            return MethodPullUpResult.failure("分析依赖方法失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 收集方法中调用的后代类自身方法，及位于 后代类 -> 目标祖先类 之间的中间祖先类的方法
      */
@@ -353,7 +385,8 @@ public class MethodPullUpHandler {
     /**
      * 上提单个方法作为抽象方法
      */
-    private CtMethod<?> pullUpSingleMethodAsAbstract(CtMethod<?> method, CtClass<?> childClass, CtClass<?> parentClass) {
+    private CtMethod<?> pullUpSingleMethodAsAbstract(CtMethod<?> method, CtClass<?> childClass, CtClass<?> parentClass,
+                                                     ModuleMembership modules) {
         try {
             // 1. 创建抽象方法签名
             CtMethod<?> abstractMethod = createAbstractMethodSignature(method, parentClass.getFactory());
@@ -366,7 +399,7 @@ public class MethodPullUpHandler {
                 logger.info("方法 {} 可见性已从 private 调整为 protected", method.getSimpleName());
             }
             // 若发生跨模块上提（后代类与目标祖先类属于不同模块），将抽象方法设为 public 以便外部模块直接调用
-            if (isCrossModule(childClass, parentClass)) {
+            if (modules.isCrossModule(childClass, parentClass)) {
                 abstractMethod.removeModifier(ModifierKind.PROTECTED);
                 abstractMethod.addModifier(ModifierKind.PUBLIC);
                 logger.info("检测到跨模块上提，方法 {} 可见性提升为 public", method.getSimpleName());
@@ -413,13 +446,14 @@ public class MethodPullUpHandler {
     
     /**
      * 创建抽象方法签名
+     * 类型引用均为克隆：共用原方法的引用会改写其父节点，回滚模型时无法恢复
      */
     private CtMethod<?> createAbstractMethodSignature(CtMethod<?> originalMethod, spoon.reflect.factory.Factory factory) {
         CtMethod<?> abstractMethod = factory.Core().createMethod();
         
         // 复制基本信息
         abstractMethod.setSimpleName(originalMethod.getSimpleName());
-        abstractMethod.setType(originalMethod.getType());
+        abstractMethod.setType(originalMethod.getType().clone());
         
         // 复制修饰符（除了 final 和 static）
         Set<ModifierKind> modifiers = new HashSet<>(originalMethod.getModifiers());
@@ -436,7 +470,7 @@ public class MethodPullUpHandler {
         
         // 复制异常声明
         for (spoon.reflect.reference.CtTypeReference<? extends Throwable> thrownType : originalMethod.getThrownTypes()) {
-            abstractMethod.addThrownType(thrownType);
+            abstractMethod.addThrownType(thrownType.clone());
         }
         
         return abstractMethod;
@@ -489,35 +523,12 @@ public class MethodPullUpHandler {
                 ? (CtClass<?>) abstractMethod.getParent()
                 : null;
 
-            // 为了避免在同一分支重复实现，按从近祖先到更深后代的顺序生成
-            List<CtClass<?>> ordered = new java.util.ArrayList<>(targetClasses);
-            ordered.sort((a, b) -> Integer.compare(
-                computeDepthFromAncestor(a, ancestorClass),
-                computeDepthFromAncestor(b, ancestorClass)));
-            
-            for (CtClass<?> child : ordered) {
-                // 跳过：原始子类及其所有后代（它们已拥有或继承实现）
-                if (child.equals(originalChildClass) || isDescendantOf(child, originalChildClass)) {
-                    continue;
-                }
-                // 跳过：若该子类的任何祖先（直到抽象方法所在类）已提供了具体实现
-                if (hasAncestorConcreteImplementation(child, methodName, referenceParams, ancestorClass)) {
-                    continue;
-                }
-                // 已存在同签名方法则跳过
-                boolean exists = false;
-                for (CtMethod<?> m : child.getMethods()) {
-                    if (m.getSimpleName().equals(methodName) && hasSameParameters(m, referenceParams)) {
-                        exists = true;
-                        break;
-                    }
-                }
-                if (exists) continue;
-                
+            for (CtClass<?> child : selectClassesNeedingStubs(
+                    methodName, referenceParams, ancestorClass, originalChildClass, targetClasses)) {
                 // 生成最基础实现
                 CtMethod<?> stub = factory.Core().createMethod();
                 stub.setSimpleName(methodName);
-                stub.setType(abstractMethod.getType());
+                stub.setType(abstractMethod.getType().clone());
                 
                 // 复制修饰符（去掉abstract）
                 java.util.Set<ModifierKind> mods = new java.util.HashSet<>(abstractMethod.getModifiers());
@@ -533,7 +544,7 @@ public class MethodPullUpHandler {
                 
                 // 复制throws
                 for (spoon.reflect.reference.CtTypeReference<? extends Throwable> t : abstractMethod.getThrownTypes()) {
-                    stub.addThrownType(t);
+                    stub.addThrownType(t.clone());
                 }
                 
                 // 方法体
@@ -564,6 +575,74 @@ public class MethodPullUpHandler {
         }
     }
 
+    /**
+     * 只读分析：计算为依赖方法 dependentMethod 上提抽象声明后，哪些后代类需要生成基础实现
+     *
+     * @param dependentMethod 后代类中被依赖的方法
+     * @param originalChildClass 触发上提的后代类
+     * @param ancestorClass 抽象声明将被添加到的目标祖先类
+     * @param targetClasses 所有后代类
+     * @return 需要生成基础实现的后代类（按从近祖先到更深后代的顺序）
+     */
+    public List<CtClass<?>> planMissingChildStubs(CtMethod<?> dependentMethod,
+                                                 CtClass<?> originalChildClass,
+                                                 CtClass<?> ancestorClass,
+                                                 List<CtClass<?>> targetClasses) {
+        if (dependentMethod == null || targetClasses == null || targetClasses.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return selectClassesNeedingStubs(dependentMethod.getSimpleName(), dependentMethod.getParameters(),
+            ancestorClass, originalChildClass, targetClasses);
+    }
+
+    /**
+     * 选出需要生成基础实现的后代类
+     * 为了避免在同一分支重复实现，按从近祖先到更深后代的顺序选择；已选中类的后代继承其实现，不再选择
+     */
+    private List<CtClass<?>> selectClassesNeedingStubs(String methodName,
+                                                       List<CtParameter<?>> referenceParams,
+                                                       CtClass<?> ancestorClass,
+                                                       CtClass<?> originalChildClass,
+                                                       List<CtClass<?>> targetClasses) {
+        List<CtClass<?>> ordered = new ArrayList<>(targetClasses);
+        ordered.sort((a, b) -> Integer.compare(
+            computeDepthFromAncestor(a, ancestorClass),
+            computeDepthFromAncestor(b, ancestorClass)));
+
+        List<CtClass<?>> selected = new ArrayList<>();
+        for (CtClass<?> child : ordered) {
+            // 跳过：原始子类及其所有后代（它们已拥有或继承实现）
+            if (child.equals(originalChildClass) || isDescendantOf(child, originalChildClass)) {
+                continue;
+            }
+            // 跳过：若该子类的任何祖先（直到抽象方法所在类）已提供了具体实现
+            if (hasAncestorConcreteImplementation(child, methodName, referenceParams, ancestorClass)) {
+                continue;
+            }
+            // 跳过：祖先已被选中生成基础实现
+            boolean inheritsStub = false;
+            for (CtClass<?> s : selected) {
+                if (isDescendantOf(child, s)) {
+                    inheritsStub = true;
+                    break;
+                }
+            }
+            if (inheritsStub) continue;
+            // 已存在同签名方法则跳过
+            boolean exists = false;
+            for (CtMethod<?> m : child.getMethods()) {
+                if (m.getSimpleName().equals(methodName) && hasSameParameters(m, referenceParams)) {
+                    exists = true;
+                    break;
+                }
+            }
+            if (exists) continue;
+
+            selected.add(child);
+        }
+        return selected;
+    }
+
     /**
      * 判断 target 是否是 ancestor 的后代类
      */
@@ -683,7 +762,7 @@ public class MethodPullUpHandler {
                 }
             }
             if (current != null) {
-                abstractMethod.setType(current);
+                abstractMethod.setType(current.clone());
             }
         } catch (Exception e) {
             logger.debug("调整抽象方法返回类型时异常: {}", e.getMessage());
@@ -722,33 +801,4 @@ public class MethodPullUpHandler {
         return factory != null ? factory.Type().OBJECT : null;
     }
 
-    /**
-     * 若后代类与目标祖先类属于不同模块（通过最近的 pom.xml 判断），视为跨模块
-     */
-    private boolean isCrossModule(CtClass<?> descendantClass, CtClass<?> ancestorClass) {
-        try {
-            java.io.File a = ancestorClass.getPosition() != null ? ancestorClass.getPosition().getFile() : null;
-            java.io.File d = descendantClass.getPosition() != null ? descendantClass.getPosition().getFile() : null;
-            if (a == null || d == null) return false;
-            java.io.File pomA = findNearestPom(a);
-            java.io.File pomD = findNearestPom(d);
-            if (pomA == null || pomD == null) return false;
-            return !pomA.getAbsolutePath().equals(pomD.getAbsolutePath());
-        } catch (Exception ignore) {
-            return false;
-        }
-    }
-
-    private java.io.File findNearestPom(java.io.File start) {
-        try {
-            java.io.File dir = start.isDirectory() ? start : start.getParentFile();
-            while (dir != null) {
-                java.io.File pom = new java.io.File(dir, "pom.xml");
-                if (pom.exists() && pom.isFile()) return pom;
-                dir = dir.getParentFile();
-            }
-        } catch (Exception ignore) {}
-        return null;
-    }
-
 }
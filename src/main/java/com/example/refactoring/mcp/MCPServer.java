@@ -1,7 +1,12 @@
 package com.example.refactoring.mcp;
 
+import com.example.refactoring.analyzer.PullUpFeasibilityAnalyzer;
 import com.example.refactoring.core.PullUpMethodRefactoring;
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.RefactoringOptions;
 import com.example.refactoring.core.RefactoringResult;
+import com.example.refactoring.core.SnapshotManager;
+import com.example.refactoring.core.UnifiedDiffOutputSink;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -11,27 +16,48 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * MCP (Model Context Protocol) 服务器实现
- * 提供 pull_up_method 和 restore_snapshot 两个工具功能
+ * 提供 pull_up_method、preview、analyze_pull_up、feasibility_matrix、restore_snapshot 和 list_snapshots 工具功能
+ *
+ * Protocol requests (initialize, tools/list) are answered directly on the reader thread; tool calls run on a
+ * worker pool and their responses are written as they complete, so responses may arrive out of order and are
+ * matched by id. Read-only tools run concurrently, while tools that modify files hold a per-project write lock.
  */
 public class MCPServer {
     
     private static final Logger logger = LoggerFactory.getLogger(MCPServer.class);
     private static final String VERSION = "1.0.0";
     private static final String SERVER_NAME = "Pull-Up-Method Refactoring MCP Server";
+    private static final Set<String> MUTATING_TOOLS = new HashSet<>(Arrays.asList("pull_up_method", "restore_snapshot"));
     
     private final ObjectMapper objectMapper;
     private final PullUpMethodRefactoring refactoring;
     private final BufferedReader reader;
     private final PrintWriter writer;
+    private final ExecutorService workers;
+    private final SnapshotManager projectLocator = new SnapshotManager();
+    private final Map<File, ReadWriteLock> projectLocks = new ConcurrentHashMap<>();
     
     public MCPServer() {
+        this(System.in, System.out);
+    }
+    
+    public MCPServer(InputStream in, OutputStream out) {
         this.objectMapper = new ObjectMapper();
         this.refactoring = new PullUpMethodRefactoring();
-        this.reader = new BufferedReader(new InputStreamReader(System.in));
-        this.writer = new PrintWriter(System.out, true);
+        this.reader = new BufferedReader(new InputStreamReader(in));
+        this.writer = new PrintWriter(out, true);
+        this.workers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
     }
     
     public static void main(String[] args) {
@@ -49,23 +75,79 @@ public class MCPServer {
                     continue;
                 }
                 
+                JsonNode request;
                 try {
-                    JsonNode request = objectMapper.readTree(line);
-                    JsonNode response = handleRequest(request);
-                    
-                    if (response != null) {
-                        writer.println(objectMapper.writeValueAsString(response));
-                        writer.flush();
-                    }
-                } catch (Exception e) {
+                    request = objectMapper.readTree(line);
+                } catch (IOException e) {
                     logger.error("Error processing request: {}", e.getMessage(), e);
-                    JsonNode errorResponse = createErrorResponse(null, -32603, "Internal error", e.getMessage());
-                    writer.println(objectMapper.writeValueAsString(errorResponse));
-                    writer.flush();
+                    send(createErrorResponse(null, -32603, "Internal error", e.getMessage()));
+                    continue;
                 }
+                dispatch(request);
             }
         } catch (IOException e) {
             logger.error("IO error: {}", e.getMessage(), e);
+        } finally {
+            awaitPendingRequests();
+        }
+    }
+    
+    /**
+     * Tool calls go to the worker pool; everything else is cheap and answered immediately
+     */
+    private void dispatch(JsonNode request) {
+        if ("tools/call".equals(request.path("method").asText())) {
+            try {
+                workers.execute(() -> respond(request));
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.warn("Worker pool rejected request {}, handling it inline", request.path("id"));
+            }
+        }
+        respond(request);
+    }
+    
+    private void respond(JsonNode request) {
+        try {
+            JsonNode response = handleRequest(request);
+            if (response != null) {
+                send(response);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing request: {}", e.getMessage(), e);
+            send(createErrorResponse(request.path("id"), -32603, "Internal error", e.getMessage()));
+        }
+    }
+    
+    /**
+     * Write one response line; responses from different workers never interleave
+     */
+    private void send(JsonNode response) {
+        String line;
+        try {
+            line = objectMapper.writeValueAsString(response);
+        } catch (IOException e) {
+            logger.error("Error serializing response: {}", e.getMessage(), e);
+            return;
+        }
+        synchronized (writer) {
+            writer.println(line);
+            writer.flush();
+        }
+    }
+    
+    /**
+     * After stdin is closed, let in-flight tool calls finish and write their responses
+     */
+    private void awaitPendingRequests() {
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for running tool calls to finish");
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
     
@@ -128,15 +210,85 @@ public class MCPServer {
         pullUpMethodProperties.set("methodName", createStringProperty("Method name to be pulled up", true));
         pullUpMethodProperties.set("targetAncestorClassName", createStringProperty("Target ancestor class name (optional, defaults to direct parent)", false));
         pullUpMethodProperties.set("outputPath", createStringProperty("Output directory path (optional, defaults to overwrite original files)", false));
+        pullUpMethodProperties.set("removeDuplicates", createBooleanProperty("Also remove structurally identical copies of the method from all descendant classes (optional, defaults to false)"));
+        pullUpMethodProperties.set("bestTarget", createBooleanProperty("When targetAncestorClassName is omitted, evaluate every ancestor and pull up to the best scoring one, removing identical copies (optional, defaults to false)"));
+        pullUpMethodProperties.set("printer", createEnumProperty("Printer used to write changed files: 'sniper' preserves the original formatting, 'fast' reprints whole files with the default printer (optional, defaults to sniper)", "sniper", "fast"));
         
         pullUpMethodInputSchema.set("properties", pullUpMethodProperties);
         pullUpMethodTool.set("inputSchema", pullUpMethodInputSchema);
         tools.add(pullUpMethodTool);
         
+        // Add preview tool
+        ObjectNode previewTool = objectMapper.createObjectNode();
+        previewTool.put("name", "preview");
+        previewTool.put("description", "Run Pull-Up-Method in memory and return the resulting changes as a unified diff, without writing any file");
+        
+        ObjectNode previewInputSchema = objectMapper.createObjectNode();
+        previewInputSchema.put("type", "object");
+        previewInputSchema.put("required", objectMapper.createArrayNode()
+            .add("projectRoot")
+            .add("className")
+            .add("methodName"));
+        
+        ObjectNode previewProperties = objectMapper.createObjectNode();
+        previewProperties.set("projectRoot", createStringProperty("Project root directory path, multiple paths separated by comma", true));
+        previewProperties.set("className", createStringProperty("Child class name containing the method to be pulled up", true));
+        previewProperties.set("methodName", createStringProperty("Method name to be pulled up", true));
+        previewProperties.set("targetAncestorClassName", createStringProperty("Target ancestor class name (optional, defaults to direct parent)", false));
+        previewProperties.set("removeDuplicates", createBooleanProperty("Also remove structurally identical copies of the method from all descendant classes (optional, defaults to false)"));
+        previewProperties.set("bestTarget", createBooleanProperty("When targetAncestorClassName is omitted, evaluate every ancestor and pull up to the best scoring one, removing identical copies (optional, defaults to false)"));
+        previewProperties.set("printer", createEnumProperty("Printer used to render changed files: 'sniper' preserves the original formatting, 'fast' reprints whole files with the default printer (optional, defaults to sniper)", "sniper", "fast"));
+        
+        previewInputSchema.set("properties", previewProperties);
+        previewTool.set("inputSchema", previewInputSchema);
+        tools.add(previewTool);
+        
+        // Add analyze_pull_up tool
+        ObjectNode analyzeTool = objectMapper.createObjectNode();
+        analyzeTool.put("name", "analyze_pull_up");
+        analyzeTool.put("description", "Dry-run feasibility check for Pull-Up-Method: reports blocking issues, fields and abstract methods that would be lifted, stubs that would be generated and files that would change, without modifying anything");
+        
+        ObjectNode analyzeInputSchema = objectMapper.createObjectNode();
+        analyzeInputSchema.put("type", "object");
+        analyzeInputSchema.put("required", objectMapper.createArrayNode()
+            .add("projectRoot")
+            .add("className")
+            .add("methodName"));
+        
+        ObjectNode analyzeProperties = objectMapper.createObjectNode();
+        analyzeProperties.set("projectRoot", createStringProperty("Project root directory path, multiple paths separated by comma", true));
+        analyzeProperties.set("className", createStringProperty("Child class name containing the method to be pulled up", true));
+        analyzeProperties.set("methodName", createStringProperty("Method name to be pulled up", true));
+        analyzeProperties.set("targetAncestorClassName", createStringProperty("Target ancestor class name (optional, defaults to direct parent)", false));
+        
+        analyzeInputSchema.set("properties", analyzeProperties);
+        analyzeTool.set("inputSchema", analyzeInputSchema);
+        tools.add(analyzeTool);
+        
+        // Add feasibility_matrix tool
+        ObjectNode matrixTool = objectMapper.createObjectNode();
+        matrixTool.put("name", "feasibility_matrix");
+        matrixTool.put("description", "Evaluate pull-up feasibility of every method of a class against every ancestor class; returns a method x ancestor matrix with OK, CONFLICT, DEPENDENCY or CROSS_MODULE status");
+        
+        ObjectNode matrixInputSchema = objectMapper.createObjectNode();
+        matrixInputSchema.put("type", "object");
+        matrixInputSchema.put("required", objectMapper.createArrayNode()
+            .add("projectRoot")
+            .add("className"));
+        
+        ObjectNode matrixProperties = objectMapper.createObjectNode();
+        matrixProperties.set("projectRoot", createStringProperty("Project root directory path, multiple paths separated by comma", true));
+        matrixProperties.set("className", createStringProperty("Class name whose methods are evaluated", true));
+        
+        matrixInputSchema.set("properties", matrixProperties);
+        matrixTool.set("inputSchema", matrixInputSchema);
+        tools.add(matrixTool);
+        
         // Add restore_snapshot tool
         ObjectNode restoreSnapshotTool = objectMapper.createObjectNode();
         restoreSnapshotTool.put("name", "restore_snapshot");
-        restoreSnapshotTool.put("description", "Restore files from the last refactoring snapshot");
+        restoreSnapshotTool.put("description",
+            "Undo refactorings from snapshots: without snapshotId the most recent one, otherwise the given snapshot and all newer ones");
         
         ObjectNode restoreSnapshotInputSchema = objectMapper.createObjectNode();
         restoreSnapshotInputSchema.put("type", "object");
@@ -144,11 +296,28 @@ public class MCPServer {
         
         ObjectNode restoreSnapshotProperties = objectMapper.createObjectNode();
         restoreSnapshotProperties.set("projectRoot", createStringProperty("Project root directory path for locating snapshot files", true));
+        restoreSnapshotProperties.set("snapshotId", createStringProperty("Snapshot id (or unique prefix) from list_snapshots", false));
         
         restoreSnapshotInputSchema.set("properties", restoreSnapshotProperties);
         restoreSnapshotTool.set("inputSchema", restoreSnapshotInputSchema);
         tools.add(restoreSnapshotTool);
         
+        // Add list_snapshots tool
+        ObjectNode listSnapshotsTool = objectMapper.createObjectNode();
+        listSnapshotsTool.put("name", "list_snapshots");
+        listSnapshotsTool.put("description", "List restorable refactoring snapshots, newest first");
+        
+        ObjectNode listSnapshotsInputSchema = objectMapper.createObjectNode();
+        listSnapshotsInputSchema.put("type", "object");
+        listSnapshotsInputSchema.put("required", objectMapper.createArrayNode().add("projectRoot"));
+        
+        ObjectNode listSnapshotsProperties = objectMapper.createObjectNode();
+        listSnapshotsProperties.set("projectRoot", createStringProperty("Project root directory path for locating snapshot files", true));
+        
+        listSnapshotsInputSchema.set("properties", listSnapshotsProperties);
+        listSnapshotsTool.set("inputSchema", listSnapshotsInputSchema);
+        tools.add(listSnapshotsTool);
+        
         result.set("tools", tools);
         response.set("result", result);
         return response;
@@ -160,27 +329,58 @@ public class MCPServer {
         
         logger.info("Calling tool: {}", toolName);
         
+        // Tools that write files are serialized per project; read-only tools only wait for a running writer
+        Lock lock = projectLockFor(toolName, arguments);
+        lock.lock();
         try {
             switch (toolName) {
                 case "pull_up_method":
                     return handlePullUpMethod(id, arguments);
+                case "preview":
+                    return handlePreview(id, arguments);
+                case "analyze_pull_up":
+                    return handleAnalyzePullUp(id, arguments);
+                case "feasibility_matrix":
+                    return handleFeasibilityMatrix(id, arguments);
                 case "restore_snapshot":
                     return handleRestoreSnapshot(id, arguments);
+                case "list_snapshots":
+                    return handleListSnapshots(id, arguments);
                 default:
                     return createErrorResponse(id, -32601, "Tool not found", "Unknown tool: " + toolName);
             }
         } catch (Exception e) {
             logger.error("Error executing tool {}: {}", toolName, e.getMessage(), e);
             return createErrorResponse(id, -32603, "Tool execution error", e.getMessage());
+        } finally {
+            lock.unlock();
         }
     }
     
+    /**
+     * Locks are keyed by the project root that holds the snapshots and the commit journal
+     */
+    private Lock projectLockFor(String toolName, JsonNode arguments) {
+        List<String> sourcePaths = new ArrayList<>();
+        for (String path : arguments.path("projectRoot").asText().split(",")) {
+            if (!path.trim().isEmpty()) {
+                sourcePaths.add(path.trim());
+            }
+        }
+        File projectRoot = projectLocator.determineProjectRoot(sourcePaths);
+        ReadWriteLock lock = projectLocks.computeIfAbsent(projectRoot, root -> new ReentrantReadWriteLock(true));
+        return MUTATING_TOOLS.contains(toolName) ? lock.writeLock() : lock.readLock();
+    }
+    
     private JsonNode handlePullUpMethod(JsonNode id, JsonNode arguments) {
         String projectRoot = arguments.path("projectRoot").asText();
         String className = arguments.path("className").asText();
         String methodName = arguments.path("methodName").asText();
         String targetAncestorClassName = arguments.path("targetAncestorClassName").asText();
         String outputPath = arguments.path("outputPath").asText();
+        boolean removeDuplicates = arguments.path("removeDuplicates").asBoolean(false);
+        boolean bestTarget = arguments.path("bestTarget").asBoolean(false);
+        String printer = arguments.path("printer").asText("");
         
         if (projectRoot.isEmpty() || className.isEmpty() || methodName.isEmpty()) {
             return createErrorResponse(id, -32602, "Invalid parameters", 
@@ -201,12 +401,21 @@ public class MCPServer {
         logger.info("Executing pull_up_method: projectRoot={}, className={}, methodName={}, targetAncestor={}", 
             sourcePaths, className, methodName, targetAncestorClassName);
         
-        RefactoringResult result;
-        if (targetAncestorClassName != null && !targetAncestorClassName.isEmpty()) {
-            result = refactoring.pullUpMethodToAncestor(sourcePaths, className, methodName, targetAncestorClassName, outputPath);
-        } else {
-            result = refactoring.pullUpMethod(sourcePaths, className, methodName, outputPath);
+        if (targetAncestorClassName != null && targetAncestorClassName.isEmpty()) {
+            targetAncestorClassName = null;
+        }
+        RefactoringOptions options = RefactoringOptions.defaults()
+            .setRemoveIdenticalDescendantCopies(removeDuplicates)
+            .setSelectBestTarget(bestTarget);
+        if (!printer.isEmpty()) {
+            try {
+                options.setPrinterMode(CodeGenerator.PrinterMode.fromName(printer));
+            } catch (IllegalArgumentException e) {
+                return createErrorResponse(id, -32602, "Invalid parameters", "Unknown printer: " + printer);
+            }
         }
+        RefactoringResult result = refactoring.pullUpMethodToAncestor(
+            sourcePaths, className, methodName, targetAncestorClassName, outputPath, options);
         
         ObjectNode response = objectMapper.createObjectNode();
         response.put("jsonrpc", "2.0");
@@ -246,6 +455,197 @@ public class MCPServer {
         return response;
     }
     
+    private JsonNode handlePreview(JsonNode id, JsonNode arguments) {
+        String projectRoot = arguments.path("projectRoot").asText();
+        String className = arguments.path("className").asText();
+        String methodName = arguments.path("methodName").asText();
+        String targetAncestorClassName = arguments.path("targetAncestorClassName").asText();
+        boolean removeDuplicates = arguments.path("removeDuplicates").asBoolean(false);
+        boolean bestTarget = arguments.path("bestTarget").asBoolean(false);
+        String printer = arguments.path("printer").asText("");
+        
+        if (projectRoot.isEmpty() || className.isEmpty() || methodName.isEmpty()) {
+            return createErrorResponse(id, -32602, "Invalid parameters", 
+                "Missing required parameters: projectRoot, className, methodName");
+        }
+        if (targetAncestorClassName.isEmpty()) {
+            targetAncestorClassName = null;
+        }
+        
+        List<String> sourcePaths = Arrays.asList(projectRoot.split(","));
+        sourcePaths = sourcePaths.stream()
+            .map(String::trim)
+            .filter(path -> !path.isEmpty())
+            .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        
+        logger.info("Executing preview: projectRoot={}, className={}, methodName={}, targetAncestor={}", 
+            sourcePaths, className, methodName, targetAncestorClassName);
+        
+        // Render changes into an in-memory patch only, nothing is written to disk
+        UnifiedDiffOutputSink diffSink = new UnifiedDiffOutputSink();
+        RefactoringOptions options = RefactoringOptions.defaults()
+            .setRemoveIdenticalDescendantCopies(removeDuplicates)
+            .setSelectBestTarget(bestTarget)
+            .setOutputSink(diffSink);
+        if (!printer.isEmpty()) {
+            try {
+                options.setPrinterMode(CodeGenerator.PrinterMode.fromName(printer));
+            } catch (IllegalArgumentException e) {
+                return createErrorResponse(id, -32602, "Invalid parameters", "Unknown printer: " + printer);
+            }
+        }
+        RefactoringResult result = refactoring.pullUpMethodToAncestor(
+            sourcePaths, className, methodName, targetAncestorClassName, null, options);
+        
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        
+        ObjectNode toolResult = objectMapper.createObjectNode();
+        ArrayNode content = objectMapper.createArrayNode();
+        
+        ObjectNode textContent = objectMapper.createObjectNode();
+        textContent.put("type", "text");
+        
+        StringBuilder resultText = new StringBuilder();
+        if (result.isSuccess()) {
+            resultText.append("✓ Preview (no files were written): ").append(result.getMessage()).append("\n");
+            if (!result.getWarnings().isEmpty()) {
+                resultText.append("  Warnings:\n");
+                result.getWarnings().forEach(warning -> resultText.append("    ⚠ ").append(warning).append("\n"));
+            }
+            resultText.append("\n").append(diffSink.getDiff().isEmpty() ? "(no changes)\n" : diffSink.getDiff());
+        } else {
+            resultText.append("✗ Refactoring failed!\n");
+            resultText.append("  ").append(result.getMessage());
+        }
+        
+        textContent.put("text", resultText.toString());
+        content.add(textContent);
+        toolResult.set("content", content);
+        toolResult.put("isError", !result.isSuccess());
+        
+        response.set("result", toolResult);
+        return response;
+    }
+    
+    private JsonNode handleAnalyzePullUp(JsonNode id, JsonNode arguments) {
+        String projectRoot = arguments.path("projectRoot").asText();
+        String className = arguments.path("className").asText();
+        String methodName = arguments.path("methodName").asText();
+        String targetAncestorClassName = arguments.path("targetAncestorClassName").asText();
+        
+        if (projectRoot.isEmpty() || className.isEmpty() || methodName.isEmpty()) {
+            return createErrorResponse(id, -32602, "Invalid parameters", 
+                "Missing required parameters: projectRoot, className, methodName");
+        }
+        if (targetAncestorClassName.isEmpty()) {
+            targetAncestorClassName = null;
+        }
+        
+        List<String> sourcePaths = Arrays.asList(projectRoot.split(","));
+        sourcePaths = sourcePaths.stream()
+            .map(String::trim)
+            .filter(path -> !path.isEmpty())
+            .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        
+        logger.info("Executing analyze_pull_up: projectRoot={}, className={}, methodName={}, targetAncestor={}", 
+            sourcePaths, className, methodName, targetAncestorClassName);
+        
+        PullUpFeasibilityAnalyzer.FeasibilityReport report =
+            refactoring.analyzePullUp(sourcePaths, className, methodName, targetAncestorClassName);
+        
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        
+        ObjectNode toolResult = objectMapper.createObjectNode();
+        ArrayNode content = objectMapper.createArrayNode();
+        
+        ObjectNode textContent = objectMapper.createObjectNode();
+        textContent.put("type", "text");
+        
+        StringBuilder resultText = new StringBuilder();
+        resultText.append(report.isFeasible() ? "✓ Pull-up is feasible\n" : "✗ Pull-up is blocked\n");
+        appendSection(resultText, "Blocking issues", report.getBlockingIssues());
+        appendSection(resultText, "Fields to lift", report.getLiftedFields());
+        appendSection(resultText, "Abstract methods to lift", report.getAbstractMethods());
+        appendSection(resultText, "Stubs to generate", report.getStubs());
+        appendSection(resultText, "Files to change", report.getFilesToChange());
+        appendSection(resultText, "Warnings", report.getWarnings());
+        
+        textContent.put("text", resultText.toString());
+        content.add(textContent);
+        toolResult.set("content", content);
+        // 分析本身成功即不视为错误，可行性由文本内容给出
+        toolResult.put("isError", false);
+        
+        response.set("result", toolResult);
+        return response;
+    }
+    
+    private JsonNode handleFeasibilityMatrix(JsonNode id, JsonNode arguments) {
+        String projectRoot = arguments.path("projectRoot").asText();
+        String className = arguments.path("className").asText();
+        
+        if (projectRoot.isEmpty() || className.isEmpty()) {
+            return createErrorResponse(id, -32602, "Invalid parameters", 
+                "Missing required parameters: projectRoot, className");
+        }
+        
+        List<String> sourcePaths = Arrays.asList(projectRoot.split(","));
+        sourcePaths = sourcePaths.stream()
+            .map(String::trim)
+            .filter(path -> !path.isEmpty())
+            .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        
+        logger.info("Executing feasibility_matrix: projectRoot={}, className={}", sourcePaths, className);
+        
+        PullUpFeasibilityAnalyzer.FeasibilityMatrix matrix = refactoring.analyzeFeasibilityMatrix(sourcePaths, className);
+        
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        
+        ObjectNode toolResult = objectMapper.createObjectNode();
+        ArrayNode content = objectMapper.createArrayNode();
+        
+        ObjectNode textContent = objectMapper.createObjectNode();
+        textContent.put("type", "text");
+        
+        StringBuilder resultText = new StringBuilder();
+        if (matrix == null) {
+            resultText.append("✗ Class not found: ").append(className);
+        } else {
+            List<String> ancestors = matrix.getAncestorNames();
+            resultText.append("Ancestors:\n");
+            for (int i = 0; i < ancestors.size(); i++) {
+                resultText.append("  [").append(i + 1).append("] ").append(ancestors.get(i)).append("\n");
+            }
+            resultText.append("Methods (columns in ancestor order):\n");
+            matrix.getRows().forEach((signature, cells) -> {
+                resultText.append("  ").append(signature).append(":");
+                cells.forEach(cell -> resultText.append(" ").append(cell.getStatus()));
+                resultText.append("\n");
+            });
+        }
+        
+        textContent.put("text", resultText.toString());
+        content.add(textContent);
+        toolResult.set("content", content);
+        toolResult.put("isError", matrix == null);
+        
+        response.set("result", toolResult);
+        return response;
+    }
+    
+    private void appendSection(StringBuilder text, String title, List<String> items) {
+        if (!items.isEmpty()) {
+            text.append("  ").append(title).append(":\n");
+            items.forEach(item -> text.append("    ").append(item).append("\n"));
+        }
+    }
+    
     private JsonNode handleRestoreSnapshot(JsonNode id, JsonNode arguments) {
         String projectRoot = arguments.path("projectRoot").asText();
         
@@ -259,9 +659,14 @@ public class MCPServer {
             .filter(path -> !path.isEmpty())
             .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
         
-        logger.info("Executing restore_snapshot: projectRoot={}", sourcePaths);
+        String snapshotId = arguments.path("snapshotId").asText();
+        if (snapshotId.isEmpty()) {
+            snapshotId = null;
+        }
         
-        boolean success = refactoring.restoreSnapshot(sourcePaths);
+        logger.info("Executing restore_snapshot: projectRoot={}, snapshotId={}", sourcePaths, snapshotId);
+        
+        boolean success = refactoring.restoreSnapshot(sourcePaths, snapshotId);
         
         ObjectNode response = objectMapper.createObjectNode();
         response.put("jsonrpc", "2.0");
@@ -289,6 +694,52 @@ public class MCPServer {
         return response;
     }
     
+    private JsonNode handleListSnapshots(JsonNode id, JsonNode arguments) {
+        String projectRoot = arguments.path("projectRoot").asText();
+        
+        if (projectRoot.isEmpty()) {
+            return createErrorResponse(id, -32602, "Invalid parameters", "Missing required parameter: projectRoot");
+        }
+        
+        List<String> sourcePaths = Arrays.asList(projectRoot.split(","));
+        sourcePaths = sourcePaths.stream()
+            .map(String::trim)
+            .filter(path -> !path.isEmpty())
+            .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        
+        logger.info("Executing list_snapshots: projectRoot={}", sourcePaths);
+        
+        List<SnapshotManager.SnapshotInfo> snapshots = refactoring.listSnapshots(sourcePaths);
+        StringBuilder resultText = new StringBuilder();
+        if (snapshots.isEmpty()) {
+            resultText.append("No snapshots found");
+        } else {
+            resultText.append("Snapshots (newest first):\n");
+            for (SnapshotManager.SnapshotInfo snapshot : snapshots) {
+                resultText.append("  ").append(snapshot.getId())
+                    .append("  ").append(snapshot.getTimestamp())
+                    .append("  ").append(snapshot.getFiles().size()).append(" files\n");
+            }
+        }
+        
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        
+        ObjectNode toolResult = objectMapper.createObjectNode();
+        ArrayNode content = objectMapper.createArrayNode();
+        
+        ObjectNode textContent = objectMapper.createObjectNode();
+        textContent.put("type", "text");
+        textContent.put("text", resultText.toString());
+        content.add(textContent);
+        toolResult.set("content", content);
+        toolResult.put("isError", false);
+        
+        response.set("result", toolResult);
+        return response;
+    }
+    
     private ObjectNode createStringProperty(String description, boolean required) {
         ObjectNode property = objectMapper.createObjectNode();
         property.put("type", "string");
@@ -296,6 +747,23 @@ public class MCPServer {
         return property;
     }
     
+    private ObjectNode createBooleanProperty(String description) {
+        ObjectNode property = objectMapper.createObjectNode();
+        property.put("type", "boolean");
+        property.put("description", description);
+        return property;
+    }
+    
+    private ObjectNode createEnumProperty(String description, String... values) {
+        ObjectNode property = createStringProperty(description, false);
+        ArrayNode allowed = objectMapper.createArrayNode();
+        for (String value : values) {
+            allowed.add(value);
+        }
+        property.set("enum", allowed);
+        return property;
+    }
+    
     private ObjectNode createCapabilities() {
         ObjectNode capabilities = objectMapper.createObjectNode();
         ObjectNode tools = objectMapper.createObjectNode();
@@ -0,0 +1,84 @@
+package com.example.refactoring;
+
+import com.example.refactoring.analyzer.PullUpFeasibilityAnalyzer;
+import com.example.refactoring.core.RefactoringOptions;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：最佳目标模式会选择能移除更多重复代码的祖先类，无收益时保持直接父类
+ */
+public class BestTargetSelectionTest {
+
+    private static final String AREA =
+        "    public int area(int w, int h) {\n" +
+        "        int a = w * h;\n" +
+        "        int b = a + 1;\n" +
+        "        int c = b * 2;\n" +
+        "        return c - a;\n" +
+        "    }\n";
+
+    @TempDir
+    Path tempDir;
+
+    private RefactoringOrchestrator orchestrator;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = new RefactoringOrchestrator();
+    }
+
+    @Test
+    void testHigherAncestorChosenWhenItRemovesDuplicates() throws Exception {
+        File top = writeFile("Top.java", "package test;\npublic class Top { }\n");
+        File mid = writeFile("Mid.java", "package test;\npublic class Mid extends Top { }\n");
+        File child = writeFile("A.java", "package test;\npublic class A extends Mid {\n" + AREA + "}\n");
+        File other = writeFile("B.java", "package test;\npublic class B extends Top {\n" + AREA + "}\n");
+
+        List<PullUpFeasibilityAnalyzer.TargetScore> ranking = orchestrator.rankTargetAncestors(
+            Arrays.asList(tempDir.toString()), "A", "area");
+        assertEquals("test.Top", ranking.get(0).getAncestorName(), ranking.toString());
+        assertEquals(6, ranking.get(0).getRemovedLines());
+
+        RefactoringResult result = orchestrator.pullUpMethodToAncestor(
+            Arrays.asList(tempDir.toString()), "A", "area", null, null,
+            RefactoringOptions.defaults().setSelectBestTarget(true));
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        assertTrue(Files.readString(top.toPath()).contains("area("), "方法应被上提到 Top");
+        assertFalse(Files.readString(mid.toPath()).contains("area("), "Mid 不应包含方法");
+        assertFalse(Files.readString(child.toPath()).contains("area("), "A 中的方法应被移除");
+        assertFalse(Files.readString(other.toPath()).contains("area("), "B 中相同的实现应被移除");
+    }
+
+    @Test
+    void testDirectParentPreferredWithoutDuplicates() throws Exception {
+        writeFile("Top.java", "package test;\npublic class Top { }\n");
+        writeFile("Mid.java", "package test;\npublic class Mid extends Top { }\n");
+        writeFile("A.java", "package test;\npublic class A extends Mid {\n" + AREA + "}\n");
+
+        List<PullUpFeasibilityAnalyzer.TargetScore> ranking = orchestrator.rankTargetAncestors(
+            Arrays.asList(tempDir.toString()), "A", "area");
+
+        assertEquals(2, ranking.size());
+        assertEquals("test.Mid", ranking.get(0).getAncestorName(), ranking.toString());
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
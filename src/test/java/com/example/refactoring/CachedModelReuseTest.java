@@ -0,0 +1,151 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.ModelBuilder;
+import com.example.refactoring.core.RefactoringOptions;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import com.example.refactoring.core.UnifiedDiffOutputSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：预览、自动去重与失败的重构在缓存的模型上执行，结束时回滚（包括打印期间的 import 整理），
+ * 之后的预览与重构复用同一个模型且结果与新构建的模型一致；写出源文件后模型重新构建
+ */
+public class CachedModelReuseTest {
+
+    private static final String BASE_SOURCE = "package test;\n\npublic abstract class Base {\n}\n";
+    private static final String CHILD_SOURCE = "package test.sub;\n\n" +
+        "import java.util.ArrayList;\nimport java.util.List;\nimport test.Base;\n\n" +
+        "public class Child extends Base {\n" +
+        "    private int count = 1;\n\n" +
+        "    public List<String> names() {\n" +
+        "        List<String> names = new ArrayList<>();\n" +
+        "        names.add(label() + count);\n" +
+        "        return names;\n" +
+        "    }\n\n" +
+        "    protected String label() {\n        return \"child\";\n    }\n}\n";
+    private static final String OTHER_SOURCE = "package test.sub;\n\nimport test.Base;\n\n" +
+        "public class Other extends Base {\n" +
+        "    protected String label() {\n        return \"other\";\n    }\n}\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPreviewsReuseCachedModelAndMatchFreshRun() throws Exception {
+        File cached = prepareSources("cached");
+        File fresh = prepareSources("fresh");
+        AtomicInteger builds = new AtomicInteger();
+        RefactoringOrchestrator orchestrator = new RefactoringOrchestrator(countingBuilder(builds));
+
+        String firstPreview = preview(orchestrator, cached, CodeGenerator.PrinterMode.SNIPER);
+        assertTrue(firstPreview.contains("+import java.util.List;"), firstPreview);
+        preview(orchestrator, cached, CodeGenerator.PrinterMode.FAST);
+        assertEquals(firstPreview, preview(orchestrator, cached, CodeGenerator.PrinterMode.SNIPER),
+            "回滚后的模型应产生与第一次相同的预览");
+        assertEquals(1, builds.get(), "预览应复用缓存的模型");
+
+        RefactoringResult result = pullUp(orchestrator, cached, RefactoringOptions.defaults());
+        assertTrue(result.isSuccess(), result.getMessage());
+        assertEquals(1, builds.get(), "重构应在预览使用的模型上执行");
+        assertTrue(pullUp(new RefactoringOrchestrator(), fresh, RefactoringOptions.defaults()).isSuccess());
+        for (String file : Arrays.asList("test/Base.java", "test/sub/Child.java", "test/sub/Other.java")) {
+            assertEquals(Files.readString(fresh.toPath().resolve(file)), Files.readString(cached.toPath().resolve(file)),
+                "复用的模型应与新构建的模型写出相同的 " + file);
+        }
+
+        assertTrue(orchestrator.getMethodNames(Arrays.asList(cached.getAbsolutePath()), "test.Base").contains("names"));
+        assertEquals(2, builds.get(), "源文件被覆盖后应重新构建模型");
+    }
+
+    @Test
+    void testDedupReusesCachedModelAfterPreviewAndFailedRun() throws Exception {
+        File cached = prepareDedupSources("cached");
+        File fresh = prepareDedupSources("fresh");
+        List<String> sourcePaths = Arrays.asList(cached.getAbsolutePath());
+        AtomicInteger builds = new AtomicInteger();
+        RefactoringOrchestrator orchestrator = new RefactoringOrchestrator(countingBuilder(builds));
+
+        UnifiedDiffOutputSink sink = new UnifiedDiffOutputSink();
+        RefactoringResult preview = orchestrator.dedupUnderAncestor(sourcePaths, "test.Figure", null,
+            RefactoringOptions.defaults().setOutputSink(sink));
+        sink.close();
+        assertTrue(preview.isSuccess(), preview.getMessage());
+        assertTrue(sink.getDiff().contains("+    public int width()"), sink.getDiff());
+        // Figure 已有不同实现的 describe()，上提失败
+        assertFalse(orchestrator.pullUpMethodToAncestor(sourcePaths, "test.Rect", "describe", null, null,
+            RefactoringOptions.defaults()).isSuccess());
+
+        assertTrue(orchestrator.dedupUnderAncestor(sourcePaths, "test.Figure", null).isSuccess());
+        assertEquals(1, builds.get(), "预览与失败的重构之后应复用同一个模型");
+        assertTrue(new RefactoringOrchestrator().dedupUnderAncestor(
+            Arrays.asList(fresh.getAbsolutePath()), "test.Figure", null).isSuccess());
+        for (String file : Arrays.asList("test/Figure.java", "test/Rect.java", "test/Oval.java")) {
+            assertEquals(Files.readString(fresh.toPath().resolve(file)), Files.readString(cached.toPath().resolve(file)),
+                "复用的模型应与新构建的模型写出相同的 " + file);
+        }
+    }
+
+    private String preview(RefactoringOrchestrator orchestrator, File src, CodeGenerator.PrinterMode printerMode)
+            throws Exception {
+        UnifiedDiffOutputSink sink = new UnifiedDiffOutputSink();
+        RefactoringResult result = pullUp(orchestrator, src,
+            RefactoringOptions.defaults().setPrinterMode(printerMode).setOutputSink(sink));
+        sink.close();
+        assertTrue(result.isSuccess(), result.getMessage());
+        assertEquals(CHILD_SOURCE, Files.readString(src.toPath().resolve("test/sub/Child.java")));
+        return sink.getDiff();
+    }
+
+    private RefactoringResult pullUp(RefactoringOrchestrator orchestrator, File src, RefactoringOptions options) {
+        return orchestrator.pullUpMethodToAncestor(Arrays.asList(src.getAbsolutePath()), "test.sub.Child", "names",
+            null, null, options);
+    }
+
+    private ModelBuilder countingBuilder(AtomicInteger builds) {
+        return new ModelBuilder() {
+            @Override
+            public CtModel buildModel(List<String> sourcePaths) {
+                builds.incrementAndGet();
+                return super.buildModel(sourcePaths);
+            }
+        };
+    }
+
+    private File prepareDedupSources(String name) throws Exception {
+        File src = new File(tempDir.toFile(), name);
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        Files.writeString(new File(pkg, "Figure.java").toPath(), "package test;\n\npublic class Figure {\n" +
+            "    protected int w;\n\n    public String describe() {\n        return \"figure\";\n    }\n}\n");
+        for (String child : Arrays.asList("Rect", "Oval")) {
+            Files.writeString(new File(pkg, child + ".java").toPath(), "package test;\n\n" +
+                "public class " + child + " extends Figure {\n" +
+                "    public int width() {\n        return w;\n    }\n\n" +
+                "    public String describe() {\n        return \"shape\";\n    }\n}\n");
+        }
+        return src;
+    }
+
+    private File prepareSources(String name) throws Exception {
+        File src = new File(tempDir.toFile(), name);
+        File sub = new File(src, "test/sub");
+        assertTrue(sub.mkdirs());
+        Files.writeString(new File(src, "test/Base.java").toPath(), BASE_SOURCE);
+        Files.writeString(new File(sub, "Child.java").toPath(), CHILD_SOURCE);
+        Files.writeString(new File(sub, "Other.java").toPath(), OTHER_SOURCE);
+        return src;
+    }
+}
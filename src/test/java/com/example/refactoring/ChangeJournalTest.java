@@ -0,0 +1,88 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ChangeJournal;
+import com.example.refactoring.core.ClassFinder;
+import com.example.refactoring.core.ModelBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.ModifierKind;
+import spoon.reflect.factory.Factory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：变更日志回滚后模型恢复原状，关闭后保留修改并恢复原有监听器
+ */
+public class ChangeJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRollbackRestoresModel() throws Exception {
+        CtModel model = buildModel();
+        ClassFinder classFinder = new ClassFinder();
+        CtClass<?> child = classFinder.findClass(model, "Child");
+        CtClass<?> base = classFinder.findClass(model, "Base");
+        Factory factory = child.getFactory();
+        String originalChild = child.toString();
+        String originalBase = base.toString();
+        Object originalListener = factory.getEnvironment().getModelChangeListener();
+
+        ChangeJournal journal = ChangeJournal.begin(factory.getEnvironment());
+        CtMethod<?> calc = classFinder.findMethod(child, "calc");
+        child.removeMethod(calc);
+        CtMethod<?> moved = calc.clone();
+        moved.removeModifier(ModifierKind.PRIVATE);
+        moved.addModifier(ModifierKind.PROTECTED);
+        base.addMethod(moved);
+        base.addModifier(ModifierKind.ABSTRACT);
+        base.addAnnotation(factory.createAnnotation(factory.Type().createReference(Deprecated.class)));
+
+        assertFalse(journal.getTouchedTypes().isEmpty());
+        journal.rollback();
+
+        assertSame(originalListener, factory.getEnvironment().getModelChangeListener(), "回滚后应恢复原有监听器");
+        assertEquals(originalChild, child.toString(), "子类应恢复原状");
+        assertEquals(originalBase, base.toString(), "父类应恢复原状");
+        assertSame(child, classFinder.findMethod(child, "calc").getParent(), "恢复的方法应挂接在原类上");
+    }
+
+    @Test
+    void testCloseKeepsChangesAndRecordsTouchedTypes() throws Exception {
+        CtModel model = buildModel();
+        ClassFinder classFinder = new ClassFinder();
+        CtClass<?> child = classFinder.findClass(model, "Child");
+        Object originalListener = child.getFactory().getEnvironment().getModelChangeListener();
+
+        ChangeJournal journal = ChangeJournal.begin(child.getFactory().getEnvironment());
+        child.removeMethod(classFinder.findMethod(child, "calc"));
+        journal.close();
+
+        assertNull(classFinder.findMethod(child, "calc"), "关闭日志后修改应保留");
+        assertSame(originalListener, child.getFactory().getEnvironment().getModelChangeListener());
+        assertEquals(1, journal.getTouchedTypes().size());
+        assertTrue(journal.getTouchedTypes().contains(child));
+    }
+
+    private CtModel buildModel() throws Exception {
+        writeFile("Base.java", "package test;\npublic class Base { }\n");
+        writeFile("Child.java", "package test;\npublic class Child extends Base {\n" +
+            "    private int calc() {\n        return 1;\n    }\n}\n");
+        return new ModelBuilder().buildModel(Arrays.asList(tempDir.toString()));
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
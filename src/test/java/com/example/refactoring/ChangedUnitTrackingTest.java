@@ -0,0 +1,83 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ClassFinder;
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.ModelBuilder;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtClass;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：只输出重构过程中实际被修改的编译单元，未修改的后代类及内容未变化的文件不会被重写
+ */
+public class ChangedUnitTrackingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testOnlyTouchedCompilationUnitsAreWritten() throws Exception {
+        File base = writeFile("Base.java", "package test;\npublic class Base { }\n");
+        File child = writeFile("Child.java", "package test;\npublic class Child extends Base {\n" +
+            "    public int calc() {\n        return 1;\n    }\n}\n");
+        // 含 @Override 与 public 方法的兄弟类，旧的启发式规则会把它当作已修改
+        String siblingSource = "package test;\npublic class Sibling extends Base {\n" +
+            "    @Override\n    public String toString() {\n        return \"s\";\n    }\n}\n";
+        File sibling = writeFile("Sibling.java", siblingSource);
+        long siblingModified = sibling.lastModified() - 10_000;
+        assertTrue(sibling.setLastModified(siblingModified));
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(tempDir.toString()), "Child", "calc", null);
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        List<String> modifiedFiles = result.getModifiedFiles();
+        assertEquals(2, modifiedFiles.size(), modifiedFiles.toString());
+        assertTrue(modifiedFiles.contains(base.getAbsolutePath()));
+        assertTrue(modifiedFiles.contains(child.getAbsolutePath()));
+        assertEquals(siblingModified, sibling.lastModified(), "未修改的兄弟类不应被重写");
+        assertEquals(siblingSource, Files.readString(sibling.toPath()));
+    }
+
+    @Test
+    void testUnchangedContentIsSkipped() throws Exception {
+        writeFile("Base.java", "package test;\npublic class Base { }\n");
+        File child = writeFile("Child.java", "package test;\npublic class Child extends Base {\n" +
+            "    public int calc() {\n        return 1;\n    }\n}\n");
+        List<String> sourcePaths = Arrays.asList(tempDir.toString());
+        CtModel model = new ModelBuilder().buildModel(sourcePaths);
+        ClassFinder classFinder = new ClassFinder();
+        CtClass<?> base = classFinder.findClass(model, "Base");
+        CtClass<?> childClass = classFinder.findClass(model, "Child");
+        List<CtCompilationUnit> units = Arrays.asList(
+            base.getPosition().getCompilationUnit(), childClass.getPosition().getCompilationUnit());
+
+        childClass.removeMethod(classFinder.findMethod(childClass, "calc"));
+        CodeGenerator codeGenerator = new CodeGenerator();
+        CodeGenerator.WritePlan plan = codeGenerator.planWrites(units, null, sourcePaths);
+
+        assertEquals(1, plan.getSkippedCount(), "未修改的 Base 应被跳过");
+        assertEquals(Arrays.asList(child.getAbsolutePath()), plan.getTargetFiles());
+        codeGenerator.writePlan(plan);
+        assertFalse(Files.readString(child.toPath()).contains("calc"));
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：自动去重会批量上提所有可安全上提的重复方法，并报告被跳过的候选
+ */
+public class DedupUnderAncestorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RefactoringOrchestrator orchestrator;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = new RefactoringOrchestrator();
+    }
+
+    @Test
+    void testSafeDuplicatesArePulledUpAndConflictsSkipped() throws Exception {
+        // Figure 已有不同实现的 describe()，因此 describe() 的重复必须被跳过
+        File base = writeFile("Figure.java", "package test;\npublic class Figure {\n" +
+            "    protected int w;\n" +
+            "    public String describe() {\n        return \"figure\";\n    }\n}\n");
+        File rect = writeFile("Rect.java", "package test;\npublic class Rect extends Figure {\n" +
+            "    public int width() {\n        return w;\n    }\n" +
+            "    public int twice() {\n        return w * 2;\n    }\n" +
+            "    public String describe() {\n        return \"shape\";\n    }\n}\n");
+        File oval = writeFile("Oval.java", "package test;\npublic class Oval extends Figure {\n" +
+            "    public int width() {\n        return w;\n    }\n" +
+            "    public int twice() {\n        return w * 2;\n    }\n" +
+            "    public String describe() {\n        return \"shape\";\n    }\n}\n");
+        File line = writeFile("Line.java", "package test;\npublic class Line extends Figure {\n" +
+            "    public int width() {\n        return w;\n    }\n" +
+            "    public int twice() {\n        return w + w;\n    }\n}\n");
+
+        RefactoringResult result = orchestrator.dedupUnderAncestor(
+            Arrays.asList(tempDir.toString()), "Figure", null);
+
+        assertTrue(result.isSuccess(), "自动去重应该成功: " + result.getMessage());
+
+        String baseContent = Files.readString(base.toPath());
+        assertTrue(baseContent.contains("width()"), "width() 应被上提到 Figure");
+        assertTrue(baseContent.contains("twice()"), "twice() 应被上提到 Figure");
+        assertTrue(baseContent.contains("\"figure\""), "Figure 原有的 describe() 应保持不变");
+
+        assertFalse(Files.readString(oval.toPath()).contains("width()"), "Oval 中的重复实现应被移除");
+        assertFalse(Files.readString(line.toPath()).contains("width()"), "Line 中的重复实现应被移除");
+        assertTrue(Files.readString(line.toPath()).contains("w + w"), "Line 中不同的实现应保留");
+        assertTrue(Files.readString(rect.toPath()).contains("\"shape\""), "冲突的 describe() 应保留");
+
+        assertTrue(result.getWarnings().stream().anyMatch(w -> w.startsWith("已跳过") && w.contains("describe")),
+            "应报告被跳过的 describe(): " + result.getWarnings());
+    }
+
+    @Test
+    void testNoDuplicates() throws Exception {
+        writeFile("Base.java", "package test;\npublic class Base { }\n");
+        writeFile("A.java", "package test;\npublic class A extends Base {\n    public int a() { return 1; }\n}\n");
+        writeFile("B.java", "package test;\npublic class B extends Base {\n    public int a() { return 2; }\n}\n");
+
+        RefactoringResult result = orchestrator.dedupUnderAncestor(
+            Arrays.asList(tempDir.toString()), "Base", null);
+
+        assertTrue(result.isSuccess(), "没有重复方法时也应成功: " + result.getMessage());
+        assertTrue(result.getModifiedFiles().isEmpty(), "不应修改任何文件");
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.FileTransaction;
+import com.example.refactoring.core.RefactoringOptions;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import com.example.refactoring.core.SnapshotManager;
+import com.example.refactoring.core.UnifiedDiffOutputSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：文件事务一次性提交全部文件，中断的提交在下次写入的运行中按日志重做（预览不重做），不完整的日志被丢弃
+ */
+public class FileTransactionTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCommitWritesAllFilesAndLeavesNoJournal() throws Exception {
+        File root = tempDir.toFile();
+        File a = new File(root, "a.txt");
+        Files.writeString(a.toPath(), "old");
+        File b = new File(root, "sub/dir/b.txt");
+
+        FileTransaction transaction = new FileTransaction(root);
+        transaction.stage(a, bytes("new a"));
+        transaction.stage(b, bytes("new b"));
+        assertEquals("old", Files.readString(a.toPath()), "提交前不应修改文件");
+        assertEquals("new a", new String(transaction.read(a), StandardCharsets.UTF_8));
+
+        List<String> written = transaction.commit();
+
+        assertEquals(Arrays.asList(a.getAbsolutePath(), b.getAbsolutePath()), written);
+        assertEquals("new a", Files.readString(a.toPath()));
+        assertEquals("new b", Files.readString(b.toPath()));
+        assertEquals(Arrays.asList("a.txt", "sub", "sub/dir", "sub/dir/b.txt"), listFiles(),
+            "提交后不应留下日志或临时文件");
+    }
+
+    @Test
+    void testRecoverReplaysInterruptedCommit() throws Exception {
+        File root = tempDir.toFile();
+        File a = new File(root, "a.txt");
+        Files.writeString(a.toPath(), "old a");
+        // 目标目录位置被普通文件占据，提交在第二个文件处中断
+        File blocker = new File(root, "blocked");
+        Files.writeString(blocker.toPath(), "");
+        File b = new File(blocker, "b.txt");
+
+        FileTransaction transaction = new FileTransaction(root);
+        transaction.stage(a, bytes("new a"));
+        transaction.stage(b, bytes("new b"));
+        assertThrows(IOException.class, transaction::commit);
+        assertTrue(new File(root, FileTransaction.JOURNAL_FILE_NAME).isFile(), "中断的提交应保留日志");
+
+        assertTrue(blocker.delete());
+        Files.writeString(a.toPath(), "old a");
+        assertEquals(2, FileTransaction.recover(root));
+
+        assertEquals("new a", Files.readString(a.toPath()));
+        assertEquals("new b", Files.readString(b.toPath()));
+        assertFalse(new File(root, FileTransaction.JOURNAL_FILE_NAME).exists());
+        assertEquals(0, FileTransaction.recover(root), "恢复应只执行一次");
+    }
+
+    @Test
+    void testRecoverDiscardsTornJournal() throws Exception {
+        File root = tempDir.toFile();
+        File blocker = new File(root, "blocked");
+        Files.writeString(blocker.toPath(), "");
+        FileTransaction transaction = new FileTransaction(root);
+        transaction.stage(new File(blocker, "b.txt"), bytes("new b"));
+        assertThrows(IOException.class, transaction::commit);
+
+        // 模拟写日志途中崩溃：截掉末尾的校验和
+        Path journal = root.toPath().resolve(FileTransaction.JOURNAL_FILE_NAME);
+        byte[] full = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(full, full.length - 3));
+        assertTrue(blocker.delete());
+
+        assertEquals(0, FileTransaction.recover(root));
+        assertFalse(Files.exists(journal), "不完整的日志应被丢弃");
+        assertFalse(new File(blocker, "b.txt").exists(), "不完整的日志不应写入任何文件");
+    }
+
+    @Test
+    void testPullUpCommitsThroughTransaction() throws Exception {
+        File src = new File(tempDir.toFile(), "src");
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        Files.writeString(new File(pkg, "Base.java").toPath(), "package test;\n\npublic class Base {\n}\n");
+        Files.writeString(new File(pkg, "Child.java").toPath(), "package test;\n\npublic class Child extends Base {\n" +
+            "    public int calc() {\n        return 1;\n    }\n}\n");
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(src.getAbsolutePath()), "Child", "calc", null);
+
+        assertTrue(result.isSuccess(), result.getMessage());
+        assertTrue(Files.readString(pkg.toPath().resolve("Base.java")).contains("calc()"));
+        assertFalse(Files.readString(pkg.toPath().resolve("Child.java")).contains("calc()"));
+        assertFalse(new File(src, FileTransaction.JOURNAL_FILE_NAME).exists());
+        try (Stream<Path> paths = Files.list(pkg.toPath())) {
+            assertEquals(Arrays.asList("Base.java", "Child.java"),
+                paths.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testPreviewDoesNotReplayInterruptedCommit() throws Exception {
+        File src = new File(tempDir.toFile(), "src");
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        String base = "package test;\n\npublic class Base {\n}\n";
+        Files.writeString(new File(pkg, "Base.java").toPath(), base);
+        Files.writeString(new File(pkg, "Child.java").toPath(), "package test;\n\npublic class Child extends Base {\n" +
+            "    public int calc() {\n        return 1;\n    }\n}\n");
+        List<String> sourcePaths = Arrays.asList(src.getAbsolutePath());
+        File root = new SnapshotManager().determineProjectRoot(sourcePaths);
+        File blocker = new File(root, "blocked");
+        Files.writeString(blocker.toPath(), "");
+        File pending = new File(blocker, "b.txt");
+        FileTransaction transaction = new FileTransaction(root);
+        transaction.stage(pending, bytes("new b"));
+        assertThrows(IOException.class, transaction::commit);
+        assertTrue(blocker.delete());
+
+        RefactoringOrchestrator orchestrator = new RefactoringOrchestrator();
+        RefactoringResult preview = orchestrator.pullUpMethodToAncestor(sourcePaths, "Child", "calc", null, null,
+            RefactoringOptions.defaults().setOutputSink(new UnifiedDiffOutputSink()));
+
+        assertTrue(preview.isSuccess(), preview.getMessage());
+        assertTrue(new File(root, FileTransaction.JOURNAL_FILE_NAME).isFile(), "预览不应重做中断的提交");
+        assertFalse(pending.exists());
+        assertEquals(base, Files.readString(pkg.toPath().resolve("Base.java")));
+
+        RefactoringResult result = orchestrator.pullUpMethod(sourcePaths, "Child", "calc", null);
+        assertTrue(result.isSuccess(), result.getMessage());
+        assertEquals("new b", Files.readString(pending.toPath()), "写入的运行应先重做中断的提交");
+        assertFalse(new File(root, FileTransaction.JOURNAL_FILE_NAME).exists());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<String> listFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            return paths.filter(p -> !p.equals(tempDir))
+                .map(p -> tempDir.relativize(p).toString().replace(File.separatorChar, '/'))
+                .sorted().collect(Collectors.toList());
+        }
+    }
+}
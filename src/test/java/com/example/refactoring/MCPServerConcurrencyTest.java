@@ -0,0 +1,93 @@
+package com.example.refactoring;
+
+import com.example.refactoring.mcp.MCPServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：MCP 服务器把工具调用分派到工作线程，协议请求不被耗时的重构阻塞，
+ * 响应按 id 对应、每行完整；同一项目的修改类工具依次执行
+ */
+public class MCPServerConcurrencyTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testToolCallsDoNotBlockProtocolRequests() throws Exception {
+        File first = prepareProject("first");
+        File second = prepareProject("second");
+        List<String> requests = new ArrayList<>();
+        requests.add(request(1, "initialize", "{}"));
+        requests.add(toolCall(2, "pull_up_method", first, "\"className\":\"Child\",\"methodName\":\"calc\""));
+        requests.add(request(3, "tools/list", "{}"));
+        requests.add(toolCall(4, "pull_up_method", first, "\"className\":\"Child\",\"methodName\":\"other\""));
+        requests.add(toolCall(5, "analyze_pull_up", second, "\"className\":\"Child\",\"methodName\":\"calc\""));
+        requests.add(toolCall(6, "pull_up_method", second, "\"className\":\"Child\",\"methodName\":\"calc\""));
+        requests.add("not json");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MCPServer(new ByteArrayInputStream(String.join("\n", requests).getBytes(StandardCharsets.UTF_8)), out).run();
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<Integer> order = new ArrayList<>();
+        Map<Integer, JsonNode> responses = new HashMap<>();
+        int parseErrors = 0;
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            JsonNode response = mapper.readTree(line);
+            if (response.path("id").isNull()) {
+                parseErrors++;
+                continue;
+            }
+            order.add(response.path("id").asInt());
+            responses.put(response.path("id").asInt(), response);
+        }
+        assertEquals(1, parseErrors);
+        assertEquals(6, responses.size(), order.toString());
+        assertTrue(order.indexOf(3) < order.indexOf(2), "tools/list 不应等待之前的重构完成: " + order);
+        for (int id : new int[] {2, 4, 6}) {
+            assertFalse(responses.get(id).path("result").path("isError").asBoolean(true), responses.get(id).toString());
+        }
+        assertFalse(responses.get(5).path("result").path("isError").asBoolean(true));
+
+        String base = Files.readString(first.toPath().resolve("test/Base.java"));
+        assertTrue(base.contains("calc()") && base.contains("other()"), "同一项目的两次上提都应生效: " + base);
+        assertTrue(Files.readString(second.toPath().resolve("test/Base.java")).contains("calc()"));
+    }
+
+    private File prepareProject(String name) throws Exception {
+        File src = new File(tempDir.toFile(), name);
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        Files.writeString(new File(pkg, "Base.java").toPath(), "package test;\n\npublic class Base {\n}\n");
+        Files.writeString(new File(pkg, "Child.java").toPath(), "package test;\n\npublic class Child extends Base {\n" +
+            "    public int calc() {\n        return 1;\n    }\n\n" +
+            "    public int other() {\n        return 2;\n    }\n}\n");
+        return src;
+    }
+
+    private static String request(int id, String method, String params) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"" + method + "\",\"params\":" + params + "}";
+    }
+
+    private static String toolCall(int id, String tool, File projectRoot, String arguments) {
+        String root = projectRoot.getAbsolutePath().replace("\\", "\\\\");
+        return request(id, "tools/call", "{\"name\":\"" + tool + "\",\"arguments\":{\"projectRoot\":\"" + root + "\"," +
+            arguments + "}}");
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ModelBuilder;
+import com.example.refactoring.core.ModelCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：模型缓存按源码路径分别保存，失效只影响重叠的路径，目录时间戳变化时重新构建，
+ * 同一路径的并发请求只构建一次
+ */
+public class ModelCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testModelsAreCachedPerSourcePaths() throws Exception {
+        List<String> first = Collections.singletonList(project("first").getAbsolutePath());
+        List<String> second = Collections.singletonList(project("second").getAbsolutePath());
+        AtomicInteger builds = new AtomicInteger();
+        ModelCache cache = new ModelCache(countingBuilder(builds));
+
+        CtModel firstModel = cache.getModel(first);
+        CtModel secondModel = cache.getModel(second);
+        assertSame(firstModel, cache.getModel(first), "其他项目的模型不应挤掉已缓存的模型");
+        assertSame(secondModel, cache.getModel(Arrays.asList(second.get(0) + File.separator + ".")),
+            "写法不同的同一路径应共用模型");
+        assertEquals(2, builds.get());
+
+        cache.invalidate(first);
+        assertNotSame(firstModel, cache.getModel(first));
+        assertSame(secondModel, cache.getModel(second), "失效只应影响重叠的路径");
+
+        // 新增文件改变目录时间戳，模型重新构建
+        File extra = new File(second.get(0), "test/extra");
+        assertTrue(extra.mkdirs());
+        Files.writeString(new File(extra, "Extra.java").toPath(), "package test.extra;\n\npublic class Extra {}\n");
+        CtModel rebuilt = cache.getModel(second);
+        assertNotSame(secondModel, rebuilt);
+        assertNotNull(rebuilt.getAllTypes().stream().filter(t -> t.getSimpleName().equals("Extra")).findFirst().orElse(null));
+        assertEquals(4, builds.get());
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneBuild() throws Exception {
+        List<String> paths = Collections.singletonList(project("shared").getAbsolutePath());
+        AtomicInteger builds = new AtomicInteger();
+        ModelCache cache = new ModelCache(countingBuilder(builds));
+        CtModel[] models = new CtModel[4];
+        Thread[] threads = new Thread[models.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> models[index] = cache.getModel(paths));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, builds.get());
+        for (CtModel model : models) {
+            assertSame(models[0], model);
+        }
+    }
+
+    private ModelBuilder countingBuilder(AtomicInteger builds) {
+        return new ModelBuilder() {
+            @Override
+            public CtModel buildModel(List<String> sourcePaths) {
+                builds.incrementAndGet();
+                return super.buildModel(sourcePaths);
+            }
+        };
+    }
+
+    private File project(String name) throws Exception {
+        File src = new File(tempDir.toFile(), name);
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        Files.writeString(new File(pkg, "Base.java").toPath(), "package test;\n\npublic class Base {\n}\n");
+        return src;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ModuleMembership;
+import com.example.refactoring.core.ModuleResolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：模块解析器按最长包前缀解析模块，只读取文件头部且不限制文件数，
+ * 索引持久化后在模块未变化时复用，pom 或源码目录变化时重新解析；源文件所属模块为最近的 pom.xml 所在目录，
+ * 项目目录下按索引查询，查询结果只在实例内缓存
+ */
+public class ModuleResolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResolvesLongestPackagePrefix() throws Exception {
+        File root = prepareProject();
+        ModuleResolver resolver = new ModuleResolver(roots(root));
+
+        assertEquals("core", resolver.resolveByQualifiedName("com.acme.core.Engine").artifactId);
+        assertEquals("util", resolver.resolveByQualifiedName("com.acme.core.util.Strings").artifactId,
+            "应优先匹配更长的包前缀");
+        assertEquals("core", resolver.resolveByQualifiedName("static com.acme.core.Engine.start").artifactId);
+        assertEquals("com.acme", resolver.resolveByQualifiedName("com.acme.core.Engine").groupId,
+            "groupId 应继承自 parent");
+        assertNull(resolver.resolveByQualifiedName("com.acme.Unknown"));
+        assertNull(resolver.resolveByQualifiedName("java.util.List"));
+        assertNull(resolver.resolveByQualifiedName("Engine"));
+    }
+
+    @Test
+    void testIndexIsPersistedAndInvalidatedPerModule() throws Exception {
+        File root = prepareProject();
+        new ModuleResolver(roots(root));
+        assertTrue(new File(root, ".refactor-cache/module-index").isFile(), "索引应持久化到缓存目录");
+
+        // 原地改写文件内容不改变目录时间戳，缓存的索引继续使用
+        Path engine = root.toPath().resolve("core/src/main/java/com/acme/core/Engine.java");
+        Files.writeString(engine, "package com.acme.moved;\n\npublic class Engine {}\n");
+        ModuleResolver cached = new ModuleResolver(roots(root));
+        assertEquals("core", cached.resolveByQualifiedName("com.acme.core.Engine").artifactId);
+        assertNull(cached.resolveByQualifiedName("com.acme.moved.Engine"));
+
+        // 新增目录使该模块的索引失效
+        writeSource(root, "core", "com/acme/extra", "package com.acme.extra;\n\npublic class Extra {}\n");
+        ModuleResolver rescanned = new ModuleResolver(roots(root));
+        assertEquals("core", rescanned.resolveByQualifiedName("com.acme.extra.Extra").artifactId);
+        assertEquals("core", rescanned.resolveByQualifiedName("com.acme.moved.Engine").artifactId);
+
+        // pom.xml 变化同样使该模块的索引失效
+        Files.writeString(root.toPath().resolve("util/pom.xml"), modulePom("util-renamed"));
+        assertEquals("util-renamed",
+            new ModuleResolver(roots(root)).resolveByQualifiedName("com.acme.core.util.Strings").artifactId);
+    }
+
+    @Test
+    void testScansHeadersOfLargeModulesWithoutFileCap() throws Exception {
+        File root = prepareProject();
+        // 超过 5000 个文件的模块：每个目录只需一个带包声明的文件，所有目录都应被索引
+        for (int i = 0; i < 5200; i++) {
+            writeSource(root, "core", "com/acme/bulk/p" + (i % 400), "package com.acme.bulk.p" + (i % 400) + ";\n\n" +
+                "public class B" + i + " {}\n");
+        }
+        writeSource(root, "core", "com/acme/licensed", "/*\n * Licensed under the Apache License.\n * package wrong;\n */\n" +
+            "// package alsoWrong;\n@Deprecated\npackage com.acme.licensed;\n\npublic class Licensed {}\n");
+        writeSource(root, "util", "com/acme/mixed", "import java.util.List;\n\npublic class Orphan {}\n");
+        writeSource(root, "util", "com/acme/mixed", "/* a */ /* b */ package com.acme.mixed ;\npublic class Mixed {}\n");
+
+        ModuleResolver resolver = new ModuleResolver(roots(root));
+        for (int i = 0; i < 400; i += 57) {
+            assertEquals("core", resolver.resolveByQualifiedName("com.acme.bulk.p" + i + ".B" + i).artifactId);
+        }
+        assertEquals("core", resolver.resolveByQualifiedName("com.acme.bulk.p399.B399").artifactId);
+        assertEquals("core", resolver.resolveByQualifiedName("com.acme.licensed.Licensed").artifactId);
+        assertNull(resolver.resolveByQualifiedName("wrong.Licensed"), "注释中的包声明应被忽略");
+        assertEquals("util", resolver.resolveByQualifiedName("com.acme.mixed.Mixed").artifactId,
+            "默认包的文件不应掩盖同目录中的包声明");
+    }
+
+    @Test
+    void testModuleMembershipFindsNearestPom() throws Exception {
+        File root = prepareProject();
+        File core = new File(root, "core").getAbsoluteFile();
+        File engine = new File(core, "src/main/java/com/acme/core/Engine.java");
+        ModuleMembership modules = new ModuleResolver(roots(root)).getModuleMembership();
+
+        assertEquals(core, modules.moduleRootOf(engine));
+        assertEquals(new File(root, "util").getAbsoluteFile(),
+            modules.moduleRootOf(new File(root, "util/src/main/java/com/acme/core/util/Strings.java")));
+        assertEquals(root.getAbsoluteFile(), modules.moduleRootOf(core), "模块之上应为聚合模块");
+
+        // 项目目录下只按索引查询，不再访问文件系统：索引之后新增的 pom.xml 在重新索引前不可见
+        File nested = new File(core, "nested").getAbsoluteFile();
+        Files.createDirectories(nested.toPath().resolve("src"));
+        Files.writeString(nested.toPath().resolve("pom.xml"), modulePom("nested"));
+        assertEquals(core, modules.moduleRootOf(new File(nested, "src/A.java")));
+        assertEquals(nested, new ModuleResolver(roots(root)).getModuleMembership()
+            .moduleRootOf(new File(nested, "src/A.java")));
+        // 未索引的目录仍以最近的 pom.xml 为准
+        assertEquals(nested, new ModuleMembership().moduleRootOf(new File(nested, "src/A.java")));
+
+        // 缓存只在实例内有效：删除 pom.xml 后新的实例重新查询
+        Files.delete(core.toPath().resolve("pom.xml"));
+        assertEquals(core, modules.moduleRootOf(engine));
+        assertEquals(root.getAbsoluteFile(), new ModuleMembership().moduleRootOf(engine));
+        assertEquals(root.getAbsoluteFile(), new ModuleResolver(roots(root)).getModuleMembership().moduleRootOf(engine));
+    }
+
+    private File prepareProject() throws Exception {
+        File root = tempDir.toFile();
+        Files.writeString(root.toPath().resolve("pom.xml"), "<project><groupId>com.acme</groupId>" +
+            "<artifactId>parent</artifactId><modules><module>core</module><module>util</module></modules></project>");
+        Files.createDirectories(root.toPath().resolve("core"));
+        Files.createDirectories(root.toPath().resolve("util"));
+        Files.writeString(root.toPath().resolve("core/pom.xml"), modulePom("core"));
+        Files.writeString(root.toPath().resolve("util/pom.xml"), modulePom("util"));
+        writeSource(root, "core", "com/acme/core", "package com.acme.core;\n\npublic class Engine {}\n");
+        writeSource(root, "util", "com/acme/core/util", "/* header */\npackage com.acme.core.util;\n\n" +
+            "public class Strings {}\n");
+        return root;
+    }
+
+    private static String modulePom(String artifactId) {
+        return "<project><parent><groupId>com.acme</groupId><artifactId>parent</artifactId></parent>" +
+            "<artifactId>" + artifactId + "</artifactId></project>";
+    }
+
+    private static void writeSource(File root, String module, String packageDir, String content) throws Exception {
+        Path dir = root.toPath().resolve(module + "/src/main/java/" + packageDir);
+        Files.createDirectories(dir);
+        String name = content.substring(content.indexOf("class ") + 6, content.indexOf(" {}"));
+        Files.writeString(dir.resolve(name + ".java"), content);
+    }
+
+    private static List<String> roots(File root) {
+        return Arrays.asList(root.getAbsolutePath());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.InMemoryOutputSink;
+import com.example.refactoring.core.OutputSink;
+import com.example.refactoring.core.RefactoringOptions;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import com.example.refactoring.core.UnifiedDiffOutputSink;
+import com.example.refactoring.core.ZipOutputSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：内存、补丁与压缩包输出目标只生成对应产物，不修改源文件、不保存快照
+ */
+public class OutputSinkTest {
+
+    private static final String BASE_SOURCE = "package test;\n\npublic class Base {\n}\n";
+    private static final String CHILD_SOURCE = "package test;\n\npublic class Child extends Base {\n" +
+        "    public int calc() {\n        return 1;\n    }\n\n" +
+        "    public int other() {\n        return 2;\n    }\n}\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDiffSinkPreviewsWithoutTouchingDisk() throws Exception {
+        File src = prepareSources();
+        List<String> filesBefore = listFiles();
+
+        UnifiedDiffOutputSink sink = new UnifiedDiffOutputSink();
+        RefactoringResult result = pullUp(src, sink);
+        sink.close();
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        assertEquals(filesBefore, listFiles(), "预览不应创建或删除任何文件（包括快照）");
+        assertEquals(BASE_SOURCE, Files.readString(src.toPath().resolve("test/Base.java")));
+        assertEquals(CHILD_SOURCE, Files.readString(src.toPath().resolve("test/Child.java")));
+
+        String diff = sink.getDiff();
+        assertEquals(2, sink.getFileCount(), diff);
+        assertTrue(diff.contains("--- a/test/Base.java\n+++ b/test/Base.java\n"), diff);
+        assertTrue(diff.contains("--- a/test/Child.java\n+++ b/test/Child.java\n"), diff);
+        assertTrue(diff.contains("+    public int calc() {\n"), diff);
+        assertTrue(diff.contains("-    public int calc() {\n"), diff);
+        assertFalse(diff.contains("other()\n-"), diff);
+    }
+
+    @Test
+    void testPatchFileAndInMemorySink() throws Exception {
+        File src = prepareSources();
+        File patch = new File(tempDir.toFile(), "out/changes.diff");
+
+        UnifiedDiffOutputSink patchSink = new UnifiedDiffOutputSink(patch, StandardCharsets.UTF_8);
+        assertTrue(pullUp(src, patchSink).isSuccess());
+        patchSink.close();
+        assertEquals(patchSink.getDiff(), Files.readString(patch.toPath()));
+
+        InMemoryOutputSink memorySink = new InMemoryOutputSink();
+        assertTrue(pullUp(src, memorySink).isSuccess());
+        String child = memorySink.getText(new File(src, "test/Child.java").getPath());
+        assertNotNull(child, memorySink.getFiles().keySet().toString());
+        assertFalse(child.contains("calc()"), child);
+        assertTrue(memorySink.getText(new File(src, "test/Base.java").getPath()).contains("calc()"));
+        assertEquals(CHILD_SOURCE, Files.readString(src.toPath().resolve("test/Child.java")));
+    }
+
+    @Test
+    void testZipSinkPackagesChangedFiles() throws Exception {
+        File src = prepareSources();
+        File archive = new File(tempDir.toFile(), "changes.zip");
+
+        ZipOutputSink sink = new ZipOutputSink(archive);
+        assertTrue(pullUp(src, sink).isSuccess());
+        sink.close();
+
+        try (ZipFile zip = new ZipFile(archive)) {
+            List<String> names = zip.stream().map(ZipEntry::getName).sorted().collect(Collectors.toList());
+            assertEquals(Arrays.asList("test/Base.java", "test/Child.java"), names);
+            String base = new String(zip.getInputStream(zip.getEntry("test/Base.java")).readAllBytes());
+            assertTrue(base.contains("calc()"), base);
+        }
+        assertEquals(BASE_SOURCE, Files.readString(src.toPath().resolve("test/Base.java")));
+    }
+
+    private RefactoringResult pullUp(File src, OutputSink sink) {
+        return new RefactoringOrchestrator().pullUpMethodToAncestor(
+            Arrays.asList(src.getAbsolutePath()), "Child", "calc", null, null,
+            RefactoringOptions.defaults().setOutputSink(sink));
+    }
+
+    private File prepareSources() throws Exception {
+        File src = new File(tempDir.toFile(), "src");
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        Files.writeString(new File(pkg, "Base.java").toPath(), BASE_SOURCE);
+        Files.writeString(new File(pkg, "Child.java").toPath(), CHILD_SOURCE);
+        return src;
+    }
+
+    private List<String> listFiles() throws Exception {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            return paths.map(Path::toString).sorted().collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ClassFinder;
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.ModelBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.ModifierKind;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：并发打印多个编译单元的结果与逐个顺序打印完全一致，且顺序与输入一致
+ */
+public class ParallelPrintingTest {
+
+    private static final int CLASS_COUNT = 24;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParallelRenderingMatchesSequential() throws Exception {
+        writeFile("Base.java", "package test;\npublic class Base {\n    public void run() { }\n}\n");
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            writeFile("Sub" + i + ".java", "package test;\n\nimport java.util.List;\n\n" +
+                "public class Sub" + i + " extends Base {\n" +
+                "    void run() {\n        List<String> l = null;\n    }\n" +
+                "    int value() {\n        return " + i + ";\n    }\n}\n");
+        }
+        CtModel model = new ModelBuilder().buildModel(Arrays.asList(tempDir.toString()));
+        ClassFinder classFinder = new ClassFinder();
+        List<CtCompilationUnit> units = new ArrayList<>();
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            CtClass<?> sub = classFinder.findClass(model, "Sub" + i);
+            // 与可见性调整类似的修改
+            sub.getMethodsByName("run").get(0).addModifier(ModifierKind.PUBLIC);
+            units.add(sub.getPosition().getCompilationUnit());
+        }
+
+        // 固定使用多个打印线程，使单核环境下同样覆盖并发路径
+        CodeGenerator codeGenerator = new CodeGenerator(4);
+        List<String> parallel = codeGenerator.renderCompilationUnits(units);
+        assertEquals(CLASS_COUNT, parallel.size());
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            String sequential = codeGenerator.generateCompilationUnitContent(units.get(i));
+            assertEquals(sequential, parallel.get(i), "第 " + i + " 个编译单元的并发打印结果不一致");
+            assertTrue(parallel.get(i).contains("class Sub" + i + " "));
+            assertTrue(parallel.get(i).contains("return " + i + ";"), parallel.get(i));
+        }
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
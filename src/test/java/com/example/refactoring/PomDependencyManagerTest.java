@@ -0,0 +1,242 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ModelBuilder;
+import com.example.refactoring.core.ModuleGraph;
+import com.example.refactoring.core.ModuleResolver;
+import com.example.refactoring.core.PomDependencyManager;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：重构后按模块汇总引用的其他模块，每个 pom.xml 只追加一次缺失的依赖，不追加对自身模块的依赖，
+ * 方法体中的全限定名与通配符导入同样计入，追加时保留 pom.xml 原有的格式；会形成模块循环的上提被拒绝，可传递获得的依赖不再追加
+ */
+public class PomDependencyManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPullUpAddsMissingModuleDependencyOnce() throws Exception {
+        File root = prepareProject();
+        write(root, "app/src/main/java/com/acme/app/Base.java", "package com.acme.app;\n\npublic class Base {\n}\n");
+        write(root, "app/src/main/java/com/acme/app/Child.java", "package com.acme.app;\n\n" +
+            "import com.acme.app.util.Helper;\nimport com.acme.core.Engine;\n\n" +
+            "public class Child extends Base {\n" +
+            "    public int calc(Engine engine) {\n        return Helper.twice(engine.power());\n    }\n}\n");
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(root.getAbsolutePath()), "Child", "calc", null);
+
+        assertTrue(result.isSuccess(), result.getMessage());
+        assertTrue(read(root, "app/src/main/java/com/acme/app/Base.java").contains("Engine"));
+        String pom = read(root, "app/pom.xml");
+        assertEquals(1, count(pom, "<artifactId>core</artifactId>"), pom);
+        assertEquals(1, count(pom, "<artifactId>app</artifactId>"), "不应追加对自身模块的依赖: " + pom);
+        assertFalse(read(root, "core/pom.xml").contains("<dependency>"));
+    }
+
+    @Test
+    void testPullUpWithQualifiedNameInBodyAddsDependency() throws Exception {
+        File root = prepareProject();
+        write(root, "app/src/main/java/com/acme/app/Base.java", "package com.acme.app;\n\npublic class Base {\n}\n");
+        write(root, "app/src/main/java/com/acme/app/Child.java", "package com.acme.app;\n\n" +
+            "public class Child extends Base {\n" +
+            "    public int calc() {\n        return new com.acme.core.Engine().power();\n    }\n}\n");
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(root.getAbsolutePath()), "Child", "calc", null);
+
+        assertTrue(result.isSuccess(), result.getMessage());
+        assertTrue(read(root, "app/src/main/java/com/acme/app/Base.java").contains("Engine"));
+        String pom = read(root, "app/pom.xml");
+        assertEquals(1, count(pom, "<artifactId>core</artifactId>"), "方法体中的全限定名也应补充依赖: " + pom);
+    }
+
+    @Test
+    void testWildcardImportOfModifiedUnitAddsDependency() throws Exception {
+        File root = prepareProject();
+        write(root, "app/src/main/java/com/acme/app/A.java", "package com.acme.app;\n\n" +
+            "import com.acme.core.*;\n\npublic class A {\n}\n");
+        CtModel model = new ModelBuilder().buildModel(Arrays.asList(root.getAbsolutePath()));
+        CtCompilationUnit unit = model.getAllTypes().stream()
+            .filter(type -> type.getQualifiedName().equals("com.acme.app.A"))
+            .findFirst().orElseThrow().getPosition().getCompilationUnit();
+
+        new PomDependencyManager().fixMissingModuleDependencies(Collections.singletonList(unit),
+            Arrays.asList(root.getAbsolutePath()), null);
+
+        String pom = read(root, "app/pom.xml");
+        assertEquals(1, count(pom, "<artifactId>core</artifactId>"), "通配符导入应按包查找所属模块: " + pom);
+    }
+
+    @Test
+    void testFilesOfSameModuleUpdatePomOnce() throws Exception {
+        File root = prepareProject();
+        write(root, "app/src/main/java/com/acme/app/A.java", "package com.acme.app;\n\n" +
+            "import com.acme.core.Engine;\n\npublic class A {\n}\n");
+        write(root, "app/src/main/java/com/acme/app/B.java", "package com.acme.app;\n\n" +
+            "import static com.acme.core.Engine.start;\nimport com.acme.app.util.Helper;\n\npublic class B {\n}\n");
+        List<String> modified = Arrays.asList(
+            root.toPath().resolve("app/src/main/java/com/acme/app/A.java").toString(),
+            root.toPath().resolve("app/src/main/java/com/acme/app/B.java").toString());
+
+        new PomDependencyManager().fixMissingModuleDependencies(modified, Arrays.asList(root.getAbsolutePath()));
+        String pom = read(root, "app/pom.xml");
+        assertEquals(1, count(pom, "<artifactId>core</artifactId>"), pom);
+        assertTrue(pom.contains("<groupId>com.acme</groupId>"), pom);
+
+        // 再次执行不应重复追加
+        new PomDependencyManager().fixMissingModuleDependencies(modified, Arrays.asList(root.getAbsolutePath()));
+        assertEquals(pom, read(root, "app/pom.xml"));
+    }
+
+    @Test
+    void testPomFormattingIsPreserved() throws Exception {
+        File root = prepareProject();
+        String pom = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+            "<!-- <dependencies> in a comment -->\r\n" +
+            "<project   xmlns=\"http://maven.apache.org/POM/4.0.0\">\r\n" +
+            "    <parent><groupId>com.acme</groupId><artifactId>parent</artifactId></parent>\r\n" +
+            "    <artifactId>app</artifactId>\r\n" +
+            "    <dependencyManagement>\r\n" +
+            "        <dependencies><dependency><artifactId>core</artifactId></dependency></dependencies>\r\n" +
+            "    </dependencyManagement>\r\n" +
+            "    <dependencies>\r\n" +
+            "        <!-- 保留注释 -->\r\n" +
+            "        <dependency>\r\n" +
+            "            <groupId>junit</groupId>\r\n" +
+            "            <artifactId>junit</artifactId>\r\n" +
+            "        </dependency>\r\n" +
+            "    </dependencies>\r\n" +
+            "</project>\r\n";
+        write(root, "app/pom.xml", pom);
+        write(root, "app/src/main/java/com/acme/app/A.java", "package com.acme.app;\n\n" +
+            "import com.acme.core.Engine;\n\npublic class A {\n}\n");
+        List<String> modified = Arrays.asList(root.toPath().resolve("app/src/main/java/com/acme/app/A.java").toString());
+
+        new PomDependencyManager().fixMissingModuleDependencies(modified, Arrays.asList(root.getAbsolutePath()));
+
+        String expected = pom.replace("        </dependency>\r\n    </dependencies>",
+            "        </dependency>\r\n" +
+            "        <dependency>\r\n" +
+            "            <groupId>com.acme</groupId>\r\n" +
+            "            <artifactId>core</artifactId>\r\n" +
+            "            <version>${project.version}</version>\r\n" +
+            "        </dependency>\r\n" +
+            "    </dependencies>");
+        assertEquals(expected, read(root, "app/pom.xml"), "只应插入新依赖，其余内容保持不变");
+
+        // 自闭合的 dependencies 展开为成对标签
+        write(root, "app/pom.xml", "<project>\n\t<artifactId>app</artifactId>\n\t<dependencies/>\n</project>\n");
+        new PomDependencyManager().fixMissingModuleDependencies(modified, Arrays.asList(root.getAbsolutePath()));
+        assertEquals("<project>\n\t<artifactId>app</artifactId>\n\t<dependencies>\n" +
+            "\t\t<dependency>\n\t\t\t<groupId>com.acme</groupId>\n\t\t\t<artifactId>core</artifactId>\n" +
+            "\t\t\t<version>${project.version}</version>\n\t\t</dependency>\n\t</dependencies>\n</project>\n",
+            read(root, "app/pom.xml"));
+    }
+
+    @Test
+    void testPullUpRejectedWhenItWouldCreateModuleCycle() throws Exception {
+        File root = prepareProject();
+        write(root, "app/pom.xml", modulePom("app", "core", ""));
+        String base = "package com.acme.core;\n\npublic class Base {\n}\n";
+        write(root, "core/src/main/java/com/acme/core/Base.java", base);
+        write(root, "app/src/main/java/com/acme/app/Child.java", "package com.acme.app;\n\n" +
+            "import com.acme.app.util.Helper;\nimport com.acme.core.Base;\n\n" +
+            "public class Child extends Base {\n" +
+            "    public int calc() {\n        return Helper.twice(1);\n    }\n}\n");
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(root.getAbsolutePath()), "Child", "calc", null);
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getMessage().contains("core -> app -> core"), result.getMessage());
+        assertEquals(base, read(root, "core/src/main/java/com/acme/core/Base.java"));
+        assertEquals(modulePom("core"), read(root, "core/pom.xml"));
+    }
+
+    @Test
+    void testTransitiveAndCyclicDependenciesAreNotAdded() throws Exception {
+        File root = prepareProject();
+        write(root, "mid/pom.xml", modulePom("mid", "core", ""));
+        write(root, "app/pom.xml", modulePom("app", "mid", ""));
+        write(root, "app/src/main/java/com/acme/app/A.java", "package com.acme.app;\n\n" +
+            "import com.acme.core.Engine;\n\npublic class A {\n}\n");
+        write(root, "core/src/main/java/com/acme/core/C.java", "package com.acme.core;\n\n" +
+            "import com.acme.app.util.Helper;\n\npublic class C {\n}\n");
+        List<String> roots = Arrays.asList(root.getAbsolutePath());
+        List<String> modified = Arrays.asList(
+            root.toPath().resolve("app/src/main/java/com/acme/app/A.java").toString(),
+            root.toPath().resolve("core/src/main/java/com/acme/core/C.java").toString());
+
+        new PomDependencyManager().fixMissingModuleDependencies(modified, roots);
+        assertEquals(modulePom("app", "mid", ""), read(root, "app/pom.xml"), "core 已经由 mid 传递获得");
+        assertEquals(modulePom("core"), read(root, "core/pom.xml"), "core 依赖 app 会形成循环");
+
+        // provided 依赖自身的依赖不会传递
+        write(root, "app/pom.xml", modulePom("app", "mid", "provided"));
+        ModuleGraph graph = new ModuleResolver(roots).getModuleGraph();
+        assertTrue(graph.isAvailable("app", "mid"));
+        assertFalse(graph.isAvailable("app", "core"));
+        assertEquals(Arrays.asList("core", "app", "mid", "core"), graph.findCycleIfAdded("core", "app"));
+        assertNull(graph.findCycleIfAdded("app", "core"));
+    }
+
+    private File prepareProject() throws Exception {
+        File root = tempDir.toFile();
+        write(root, "pom.xml", "<project>\n  <groupId>com.acme</groupId>\n  <artifactId>parent</artifactId>\n" +
+            "  <modules>\n    <module>core</module>\n    <module>app</module>\n  </modules>\n</project>\n");
+        write(root, "core/pom.xml", modulePom("core"));
+        write(root, "app/pom.xml", modulePom("app"));
+        write(root, "core/src/main/java/com/acme/core/Engine.java", "package com.acme.core;\n\n" +
+            "public class Engine {\n    public static void start() {\n    }\n\n" +
+            "    public int power() {\n        return 1;\n    }\n}\n");
+        write(root, "app/src/main/java/com/acme/app/util/Helper.java", "package com.acme.app.util;\n\n" +
+            "public class Helper {\n    public static int twice(int value) {\n        return value * 2;\n    }\n}\n");
+        return root;
+    }
+
+    private static String modulePom(String artifactId) {
+        return "<project>\n  <parent>\n    <groupId>com.acme</groupId>\n    <artifactId>parent</artifactId>\n" +
+            "  </parent>\n  <artifactId>" + artifactId + "</artifactId>\n</project>\n";
+    }
+
+    private static String modulePom(String artifactId, String dependency, String scope) {
+        return modulePom(artifactId).replace("</project>", "  <dependencies>\n    <dependency>\n" +
+            "      <groupId>com.acme</groupId>\n      <artifactId>" + dependency + "</artifactId>\n" +
+            (scope.isEmpty() ? "" : "      <scope>" + scope + "</scope>\n") +
+            "    </dependency>\n  </dependencies>\n</project>");
+    }
+
+    private static void write(File root, String relativePath, String content) throws Exception {
+        Path file = root.toPath().resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private static String read(File root, String relativePath) throws Exception {
+        return Files.readString(root.toPath().resolve(relativePath));
+    }
+
+    private static int count(String text, String token) {
+        int count = 0;
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + token.length())) {
+            count++;
+        }
+        return count;
+    }
+}
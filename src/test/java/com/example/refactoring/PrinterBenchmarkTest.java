@@ -0,0 +1,113 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ClassFinder;
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.ModelBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.ModifierKind;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 打印器吞吐量基准：比较 Sniper 与快速打印模式在大编译单元上的耗时
+ *
+ * 默认跳过，运行方式：mvn test -Dtest=PrinterBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class PrinterBenchmarkTest {
+
+    private static final int UNIT_COUNT = 8;
+    private static final int METHODS_PER_UNIT = 400;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void benchmarkPrinterModes() throws Exception {
+        long totalLines = 0;
+        for (int i = 0; i < UNIT_COUNT; i++) {
+            totalLines += writeLargeUnit("Large" + i);
+        }
+        // 少量修改：约十分之一的方法调整了可见性（典型的上提场景）
+        runScenario("少量修改", totalLines, 10);
+        // 大量修改：每个方法都调整了可见性，Sniper 需要重新输出大部分元素
+        runScenario("大量修改", totalLines, 1);
+    }
+
+    private void runScenario(String name, long totalLines, int modifyEvery) throws Exception {
+        CtModel model = new ModelBuilder().buildModel(Arrays.asList(tempDir.toString()));
+        ClassFinder classFinder = new ClassFinder();
+        List<CtCompilationUnit> units = new ArrayList<>();
+        for (int i = 0; i < UNIT_COUNT; i++) {
+            CtClass<?> clazz = classFinder.findClass(model, "Large" + i);
+            int index = 0;
+            for (CtMethod<?> method : clazz.getMethods()) {
+                if (index++ % modifyEvery == 0) {
+                    method.addModifier(ModifierKind.PUBLIC);
+                }
+            }
+            units.add(clazz.getPosition().getCompilationUnit());
+        }
+
+        // 单线程测量，只比较打印器本身
+        CodeGenerator codeGenerator = new CodeGenerator(1);
+        double sniperMillis = measure(codeGenerator, units, CodeGenerator.PrinterMode.SNIPER);
+        double fastMillis = measure(codeGenerator, units, CodeGenerator.PrinterMode.FAST);
+
+        System.out.printf("[%s] 打印 %d 个编译单元（共 %d 行）:%n", name, UNIT_COUNT, totalLines);
+        report("sniper", sniperMillis, totalLines);
+        report("fast", fastMillis, totalLines);
+        System.out.printf("  fast / sniper 吞吐量比: %.2fx%n", sniperMillis / fastMillis);
+    }
+
+    private double measure(CodeGenerator codeGenerator, List<CtCompilationUnit> units,
+                           CodeGenerator.PrinterMode mode) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            codeGenerator.renderCompilationUnits(units, mode);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            List<String> contents = codeGenerator.renderCompilationUnits(units, mode);
+            assertFalse(contents.contains(null), mode + " 打印失败");
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+    }
+
+    private void report(String name, double millis, long lines) {
+        System.out.printf("  %-6s 每轮 %8.1f ms，%10.0f 行/秒%n", name, millis, lines / (millis / 1000.0));
+    }
+
+    private long writeLargeUnit(String className) throws Exception {
+        StringBuilder sb = new StringBuilder("package bench;\n\nimport java.util.ArrayList;\nimport java.util.List;\n\n");
+        sb.append("public class ").append(className).append(" {\n");
+        for (int m = 0; m < METHODS_PER_UNIT; m++) {
+            sb.append("    /** 方法 ").append(m).append(" */\n");
+            sb.append("    List<String> method").append(m).append("(int n) {\n");
+            sb.append("        List<String> result = new ArrayList<>();\n");
+            sb.append("        for (int i = 0; i < n; i++) {\n");
+            sb.append("            result.add(\"v\" + (i * ").append(m).append("));\n");
+            sb.append("        }\n");
+            sb.append("        return result;\n");
+            sb.append("    }\n\n");
+        }
+        sb.append("}\n");
+        File f = new File(tempDir.toFile(), className + ".java");
+        try (FileWriter w = new FileWriter(f)) { w.write(sb.toString()); }
+        return sb.chars().filter(c -> c == '\n').count();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.CodeGenerator;
+import com.example.refactoring.core.RefactoringOptions;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：快速打印模式输出完整可用的文件，打印模式名称可解析
+ */
+public class PrinterModeTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFastPrinterWritesOutputDirectory() throws Exception {
+        File src = new File(tempDir.toFile(), "src");
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        writeFile(pkg, "Base.java", "package test;\npublic class Base { }\n");
+        writeFile(pkg, "Child.java", "package test;\n\nimport java.util.List;\n\n" +
+            "public class Child extends Base {\n" +
+            "    public int size(List<String> items) {\n        return items.size();\n    }\n}\n");
+        File out = new File(tempDir.toFile(), "out");
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethodToAncestor(
+            Arrays.asList(src.getAbsolutePath()), "Child", "size", null, out.getAbsolutePath(),
+            RefactoringOptions.defaults().setPrinterMode(CodeGenerator.PrinterMode.FAST));
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        String base = Files.readString(new File(out, "test/Base.java").toPath());
+        String child = Files.readString(new File(out, "test/Child.java").toPath());
+        assertTrue(base.startsWith("package test;"), base);
+        assertTrue(base.contains("import java.util.List;"), base);
+        assertTrue(base.contains("public int size(List<String> items)"), base);
+        assertFalse(child.contains("size("), child);
+    }
+
+    @Test
+    void testPrinterModeFromName() {
+        assertEquals(CodeGenerator.PrinterMode.FAST, CodeGenerator.PrinterMode.fromName("fast"));
+        assertEquals(CodeGenerator.PrinterMode.SNIPER, CodeGenerator.PrinterMode.fromName("SNIPER"));
+        assertThrows(IllegalArgumentException.class, () -> CodeGenerator.PrinterMode.fromName("pretty"));
+    }
+
+    private File writeFile(File dir, String name, String content) throws Exception {
+        File f = new File(dir, name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
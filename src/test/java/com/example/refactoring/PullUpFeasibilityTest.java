@@ -0,0 +1,103 @@
+package com.example.refactoring;
+
+import com.example.refactoring.analyzer.PullUpFeasibilityAnalyzer;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：只读可行性分析给出完整的变更计划与可行性矩阵，且不修改任何文件
+ */
+public class PullUpFeasibilityTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RefactoringOrchestrator orchestrator;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = new RefactoringOrchestrator();
+    }
+
+    @Test
+    void testReportListsPlannedChangesWithoutWriting() throws Exception {
+        File base = writeFile("Base.java", "package test;\npublic abstract class Base { }\n");
+        String childSource = "package test;\npublic class A extends Base {\n" +
+            "    private int x;\n" +
+            "    protected int helper() {\n        return 1;\n    }\n" +
+            "    public int calc() {\n        return x + helper();\n    }\n}\n";
+        File child = writeFile("A.java", childSource);
+        File sibling = writeFile("B.java", "package test;\npublic class B extends Base { }\n");
+        String baseSource = Files.readString(base.toPath());
+
+        PullUpFeasibilityAnalyzer.FeasibilityReport report = orchestrator.analyzePullUp(
+            Arrays.asList(tempDir.toString()), "A", "calc", null);
+
+        assertTrue(report.isFeasible(), "应该可以上提: " + report.getBlockingIssues());
+        assertEquals(Arrays.asList("x"), report.getLiftedFields());
+        assertEquals(Arrays.asList("helper()"), report.getAbstractMethods());
+        assertEquals(Arrays.asList("test.B#helper()"), report.getStubs());
+        assertTrue(report.getFilesToChange().contains(child.getAbsolutePath()));
+        assertTrue(report.getFilesToChange().contains(base.getAbsolutePath()));
+        assertTrue(report.getFilesToChange().contains(sibling.getAbsolutePath()));
+
+        assertEquals(childSource, Files.readString(child.toPath()), "分析不应修改子类文件");
+        assertEquals(baseSource, Files.readString(base.toPath()), "分析不应修改父类文件");
+        assertFalse(new File(tempDir.toFile(), ".refactor-snapshot").exists(), "分析不应创建快照");
+    }
+
+    @Test
+    void testConflictIsReportedAsBlocking() throws Exception {
+        writeFile("Base.java", "package test;\npublic class Base {\n" +
+            "    public int calc() {\n        return 0;\n    }\n}\n");
+        writeFile("A.java", "package test;\npublic class A extends Base {\n" +
+            "    public int calc() {\n        return 1;\n    }\n}\n");
+
+        PullUpFeasibilityAnalyzer.FeasibilityReport report = orchestrator.analyzePullUp(
+            Arrays.asList(tempDir.toString()), "A", "calc", null);
+
+        assertFalse(report.isFeasible(), "存在冲突时不应可上提");
+        assertTrue(report.getBlockingIssues().get(0).contains("方法冲突"), report.getBlockingIssues().toString());
+    }
+
+    @Test
+    void testFeasibilityMatrixCoversEveryMethodAndAncestor() throws Exception {
+        writeFile("Top.java", "package test;\npublic class Top {\n" +
+            "    protected int helper() {\n        return 9;\n    }\n}\n");
+        writeFile("Mid.java", "package test;\npublic class Mid extends Top {\n" +
+            "    public int a() {\n        return 0;\n    }\n}\n");
+        writeFile("Leaf.java", "package test;\npublic class Leaf extends Mid {\n" +
+            "    public int a() {\n        return 1;\n    }\n" +
+            "    public int b() {\n        return helper();\n    }\n" +
+            "    public int helper() {\n        return 2;\n    }\n}\n");
+
+        PullUpFeasibilityAnalyzer.FeasibilityMatrix matrix = orchestrator.analyzeFeasibilityMatrix(
+            Arrays.asList(tempDir.toString()), "Leaf");
+
+        assertNotNull(matrix);
+        assertEquals(Arrays.asList("test.Mid", "test.Top"), matrix.getAncestorNames());
+        Map<String, List<PullUpFeasibilityAnalyzer.MatrixCell>> rows = matrix.getRows();
+        assertEquals(3, rows.size());
+        assertEquals("[CONFLICT, OK]", rows.get("a()").toString());
+        assertEquals("[OK, DEPENDENCY]", rows.get("b()").toString());
+        assertEquals("[OK, CONFLICT]", rows.get("helper()").toString());
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
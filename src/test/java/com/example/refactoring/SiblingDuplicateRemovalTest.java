@@ -0,0 +1,82 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.RefactoringOptions;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：一次上提即可移除所有后代类中结构相同的重复实现
+ */
+public class SiblingDuplicateRemovalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RefactoringOrchestrator orchestrator;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = new RefactoringOrchestrator();
+    }
+
+    @Test
+    void testIdenticalSiblingCopiesAreRemoved() throws Exception {
+        File base = writeFile("Shape.java", "package test;\npublic class Shape {\n    protected int size;\n}\n");
+        File circle = writeFile("Circle.java", "package test;\npublic class Circle extends Shape {\n" +
+            "    public int area() {\n        return size * size;\n    }\n}\n");
+        File square = writeFile("Square.java", "package test;\npublic class Square extends Shape {\n" +
+            "    public int area() {\n        return size * size;\n    }\n    public void other() { }\n}\n");
+        File triangle = writeFile("Triangle.java", "package test;\npublic class Triangle extends Shape {\n" +
+            "    public int area() {\n        return size * size / 2;\n    }\n}\n");
+
+        RefactoringResult result = orchestrator.pullUpMethodToAncestor(
+            Arrays.asList(tempDir.toString()), "Circle", "area", null, null,
+            RefactoringOptions.defaults().setRemoveIdenticalDescendantCopies(true));
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        assertTrue(Files.readString(base.toPath()).contains("area()"), "Shape 应包含上提的方法");
+        assertFalse(Files.readString(circle.toPath()).contains("area()"), "Circle 中的方法应被移除");
+        assertFalse(Files.readString(square.toPath()).contains("area()"), "Square 中相同的实现应被移除");
+
+        String triangleContent = Files.readString(triangle.toPath());
+        assertTrue(triangleContent.contains("size * size / 2"), "Triangle 中不同的实现应保留");
+        assertTrue(triangleContent.contains("@Override"), "保留的实现应添加 @Override");
+    }
+
+    @Test
+    void testShadowedCopyIsKept() throws Exception {
+        // Base <- Mid (不同实现) <- Leaf (与 Child 相同实现)：移除 Leaf 的实现会使其继承 Mid 的实现，因此必须保留
+        writeFile("Base.java", "package test;\npublic class Base { }\n");
+        File child = writeFile("Child.java", "package test;\npublic class Child extends Base {\n" +
+            "    public String name() {\n        return \"same\";\n    }\n}\n");
+        writeFile("Mid.java", "package test;\npublic class Mid extends Base {\n" +
+            "    public String name() {\n        return \"mid\";\n    }\n}\n");
+        File leaf = writeFile("Leaf.java", "package test;\npublic class Leaf extends Mid {\n" +
+            "    public String name() {\n        return \"same\";\n    }\n}\n");
+
+        RefactoringResult result = orchestrator.pullUpMethodToAncestor(
+            Arrays.asList(tempDir.toString()), "Child", "name", null, null,
+            RefactoringOptions.defaults().setRemoveIdenticalDescendantCopies(true));
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        assertFalse(Files.readString(child.toPath()).contains("name()"), "Child 中的方法应被移除");
+        assertTrue(Files.readString(leaf.toPath()).contains("\"same\""), "被中间类遮蔽的相同实现应保留");
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        try (FileWriter w = new FileWriter(f)) { w.write(content); }
+        return f;
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.FileTransaction;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.SnapshotManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：快照按内容寻址保存多代，可逐代撤销、按 id 恢复（更新的各代涉及的文件一并撤销），相同内容只保存一份，每代一个快照包，大批文件并行保存与恢复
+ */
+public class SnapshotStoreTest {
+
+    private static final String BASE_SOURCE = "package test;\n\npublic class Base {\n}\n";
+    private static final String CHILD_SOURCE = "package test;\n\npublic class Child extends Base {\n" +
+        "    public int calc() {\n        return 1;\n    }\n\n" +
+        "    public int other() {\n        return 2;\n    }\n}\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testUndoGenerationsOneByOne() throws Exception {
+        File src = prepareSources();
+        List<String> sourcePaths = Arrays.asList(src.getAbsolutePath());
+        RefactoringOrchestrator orchestrator = new RefactoringOrchestrator();
+
+        assertTrue(orchestrator.pullUpMethod(sourcePaths, "Child", "calc", null).isSuccess());
+        String childAfterFirst = read(src, "test/Child.java");
+        assertTrue(orchestrator.pullUpMethod(sourcePaths, "Child", "other", null).isSuccess());
+        assertFalse(read(src, "test/Child.java").contains("other()"));
+
+        List<SnapshotManager.SnapshotInfo> snapshots = orchestrator.listSnapshots(sourcePaths);
+        assertEquals(2, snapshots.size(), snapshots.toString());
+        assertTrue(snapshots.get(0).getId().compareTo(snapshots.get(1).getId()) > 0, "最新的快照应排在前面");
+
+        assertTrue(orchestrator.restoreSnapshot(sourcePaths));
+        assertEquals(childAfterFirst, read(src, "test/Child.java"), "第一次恢复应撤销第二次重构");
+        assertTrue(orchestrator.restoreSnapshot(sourcePaths));
+        assertEquals(CHILD_SOURCE, read(src, "test/Child.java"), "第二次恢复应撤销第一次重构");
+        assertEquals(BASE_SOURCE, read(src, "test/Base.java"));
+        assertTrue(orchestrator.listSnapshots(sourcePaths).isEmpty());
+        assertFalse(orchestrator.restoreSnapshot(sourcePaths));
+        assertTrue(listPacks(src).isEmpty(), "撤销全部快照后快照包应被删除");
+    }
+
+    @Test
+    void testRestoreByIdDropsNewerGenerations() throws Exception {
+        File src = prepareSources();
+        List<String> sourcePaths = Arrays.asList(src.getAbsolutePath());
+        RefactoringOrchestrator orchestrator = new RefactoringOrchestrator();
+        assertTrue(orchestrator.pullUpMethod(sourcePaths, "Child", "calc", null).isSuccess());
+        assertTrue(orchestrator.pullUpMethod(sourcePaths, "Child", "other", null).isSuccess());
+
+        List<SnapshotManager.SnapshotInfo> snapshots = orchestrator.listSnapshots(sourcePaths);
+        String oldest = snapshots.get(1).getId();
+        assertFalse(orchestrator.restoreSnapshot(sourcePaths, "no-such-id"));
+
+        assertTrue(orchestrator.restoreSnapshot(sourcePaths, oldest));
+        assertEquals(CHILD_SOURCE, read(src, "test/Child.java"));
+        assertEquals(BASE_SOURCE, read(src, "test/Base.java"));
+        assertTrue(orchestrator.listSnapshots(sourcePaths).isEmpty());
+    }
+
+    @Test
+    void testRestoreByIdAlsoUndoesFilesOnlyNewerGenerationsChanged() throws Exception {
+        File src = new File(tempDir.toFile(), "src");
+        assertTrue(src.mkdirs());
+        List<String> sourcePaths = Arrays.asList(src.getAbsolutePath());
+        File a = new File(src, "A.java");
+        File b = new File(src, "B.java");
+        Files.writeString(a.toPath(), source(1));
+        Files.writeString(b.toPath(), source(2));
+        SnapshotManager snapshots = new SnapshotManager();
+
+        String first = snapshots.saveSnapshot(Arrays.asList(a.getAbsolutePath()), sourcePaths, false);
+        Files.writeString(a.toPath(), source(10));
+        // 第二代只涉及 B，以硬链接保存、重命名替换
+        assertNotNull(snapshots.saveSnapshot(Arrays.asList(b.getAbsolutePath()), sourcePaths, true));
+        commitAll(snapshots.determineProjectRoot(sourcePaths), Arrays.asList(b.getAbsolutePath()), 20);
+        Files.writeString(a.toPath(), source(11));
+
+        assertTrue(snapshots.restoreSnapshot(sourcePaths, first));
+        assertEquals(source(1), read(src, "A.java"), "同一文件应以最旧一代保存的版本为准");
+        assertEquals(source(2), read(src, "B.java"), "只有更新的一代修改过的文件同样应撤销");
+        assertTrue(snapshots.listSnapshots(sourcePaths).isEmpty());
+    }
+
+    @Test
+    void testIdenticalContentStoredOnceAndOldGenerationsPruned() throws Exception {
+        File root = tempDir.toFile();
+        File a = new File(root, "A.java");
+        File pom = new File(root, "pom.xml");
+        Files.writeString(pom.toPath(), "<project>" + "<dependency/>".repeat(2000) + "</project>");
+        List<String> sourcePaths = Arrays.asList(root.getAbsolutePath());
+        SnapshotManager manager = new SnapshotManager(2);
+
+        List<Long> packSizes = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Files.writeString(a.toPath(), "class A { int v = " + i + "; }");
+            String id = manager.saveSnapshot(Collections.singletonList(a.getAbsolutePath()), sourcePaths);
+            assertNotNull(id);
+            packSizes.add(Files.size(root.toPath().resolve(".refactor-snapshot/packs/" + id + ".pack")));
+        }
+        // 未变化的 pom.xml 只保存在第一代的包中，之后各代只多出 A.java 的内容
+        assertTrue(packSizes.get(1) < packSizes.get(0), packSizes.toString());
+        assertEquals(packSizes.get(1), packSizes.get(2), packSizes.toString());
+
+        List<SnapshotManager.SnapshotInfo> snapshots = manager.listSnapshots(sourcePaths);
+        assertEquals(2, snapshots.size(), "只应保留最近两代");
+        assertEquals(2, listPacks(root).size());
+        assertEquals(Arrays.asList("A.java", "pom.xml"), snapshots.get(0).getFiles());
+
+        // 最旧一代被删除后，仍被引用的 pom.xml 内容应已转移到保留的包中
+        Files.writeString(a.toPath(), "modified");
+        Files.writeString(pom.toPath(), "modified");
+        assertTrue(manager.restoreSnapshot(sourcePaths, snapshots.get(1).getId()));
+        assertEquals("class A { int v = 2; }", Files.readString(a.toPath()));
+        assertTrue(Files.readString(pom.toPath()).startsWith("<project><dependency/>"));
+        assertTrue(listPacks(root).isEmpty());
+    }
+
+    @Test
+    void testFilesReplacedByRenameAreHardLinked() throws Exception {
+        File root = tempDir.toFile();
+        File a = new File(root, "A.java");
+        Files.writeString(a.toPath(), "old");
+        List<String> sourcePaths = Arrays.asList(root.getAbsolutePath());
+        SnapshotManager manager = new SnapshotManager();
+
+        String id = manager.saveSnapshot(Collections.singletonList(a.getAbsolutePath()), sourcePaths, true);
+        Path link = root.toPath().resolve(".refactor-snapshot/links/" + id + "/A.java.snap");
+        assertTrue(Files.isSameFile(link, a.toPath()), "快照应直接链接原文件");
+
+        FileTransaction transaction = new FileTransaction(root);
+        transaction.stage(a, "new".getBytes(StandardCharsets.UTF_8));
+        transaction.commit();
+        assertEquals("old", Files.readString(link), "重命名写入不应影响快照持有的原文件");
+        assertEquals(Collections.singletonList("A.java"), manager.listSnapshots(sourcePaths).get(0).getFiles());
+
+        assertTrue(manager.restoreSnapshot(sourcePaths));
+        assertEquals("old", Files.readString(a.toPath()));
+        assertFalse(Files.exists(link.getParent()), "恢复后该代的链接应被删除");
+    }
+
+    @Test
+    void testLargeBatchRoundTripReportsProgress() throws Exception {
+        File root = tempDir.toFile();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            File file = new File(root, "p" + (i % 7) + "/F" + i + ".java");
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            Files.writeString(file.toPath(), source(i % 50));
+            files.add(file.getAbsolutePath());
+        }
+        List<String> sourcePaths = Arrays.asList(root.getAbsolutePath());
+        SnapshotManager manager = new SnapshotManager();
+        Map<String, AtomicInteger> reported = new ConcurrentHashMap<>();
+        manager.setProgressListener((phase, completed, total) -> {
+            assertEquals(300, total);
+            reported.computeIfAbsent(phase, p -> new AtomicInteger()).accumulateAndGet(completed, Math::max);
+        });
+
+        // 第一代全部以硬链接保存，第二代全部写入快照包（相同内容只保存一份）
+        assertNotNull(manager.saveSnapshot(files, sourcePaths, true));
+        commitAll(root, files, 100);
+        assertNotNull(manager.saveSnapshot(files, sourcePaths));
+        commitAll(root, files, 200);
+        assertEquals(300, reported.get("保存快照").get());
+
+        assertTrue(manager.restoreSnapshot(sourcePaths));
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(source(i % 50 + 100), Files.readString(Path.of(files.get(i))));
+        }
+        assertTrue(manager.restoreSnapshot(sourcePaths));
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(source(i % 50), Files.readString(Path.of(files.get(i))));
+        }
+        assertEquals(300, reported.get("恢复快照").get());
+        assertTrue(manager.listSnapshots(sourcePaths).isEmpty());
+    }
+
+    @Test
+    void testLegacySnapshotIsMigrated() throws Exception {
+        File root = tempDir.toFile();
+        File a = new File(root, "A.java");
+        Files.writeString(a.toPath(), "new");
+        File snapshotDir = new File(root, ".refactor-snapshot");
+        assertTrue(snapshotDir.mkdirs());
+        Files.writeString(new File(snapshotDir, "A.java.snap").toPath(), "old");
+        Files.writeString(new File(snapshotDir, "meta.txt").toPath(),
+            "timestamp=2024-01-02 03:04:05\ncount=1\nA.java\n");
+        List<String> sourcePaths = Arrays.asList(root.getAbsolutePath());
+        SnapshotManager manager = new SnapshotManager();
+
+        List<SnapshotManager.SnapshotInfo> snapshots = manager.listSnapshots(sourcePaths);
+        assertEquals(1, snapshots.size());
+        assertEquals("20240102-030405-000", snapshots.get(0).getId());
+        assertFalse(new File(snapshotDir, "meta.txt").exists(), "旧版元数据应被迁移");
+
+        assertTrue(manager.restoreSnapshot(sourcePaths));
+        assertEquals("old", Files.readString(a.toPath()));
+    }
+
+    private File prepareSources() throws Exception {
+        File src = new File(tempDir.toFile(), "src");
+        File pkg = new File(src, "test");
+        assertTrue(pkg.mkdirs());
+        Files.writeString(new File(pkg, "Base.java").toPath(), BASE_SOURCE);
+        Files.writeString(new File(pkg, "Child.java").toPath(), CHILD_SOURCE);
+        return src;
+    }
+
+    private static String source(int value) {
+        return "class F { int v = " + value + "; }";
+    }
+
+    private void commitAll(File root, List<String> files, int offset) throws Exception {
+        FileTransaction transaction = new FileTransaction(root);
+        for (int i = 0; i < files.size(); i++) {
+            transaction.stage(new File(files.get(i)), source(i % 50 + offset).getBytes(StandardCharsets.UTF_8));
+        }
+        transaction.commit();
+    }
+
+    private String read(File src, String relativePath) throws Exception {
+        return Files.readString(src.toPath().resolve(relativePath));
+    }
+
+    private List<Path> listPacks(File projectRoot) throws Exception {
+        Path packs = projectRoot.toPath().resolve(".refactor-snapshot/packs");
+        if (!Files.isDirectory(packs)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.list(packs)) {
+            return paths.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.refactoring;
+
+import com.example.refactoring.core.ChangeJournal;
+import com.example.refactoring.core.ClassFinder;
+import com.example.refactoring.core.ModelBuilder;
+import com.example.refactoring.core.RefactoringOrchestrator;
+import com.example.refactoring.core.RefactoringResult;
+import com.example.refactoring.core.TextEditEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.ModifierKind;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证：文本编辑引擎只改动被修改的源码区间，其余格式与注释逐字节保留，插入的文本沿用文件的换行符；
+ * 不支持的修改回退到打印器
+ */
+public class TextEditEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPullUpKeepsUnrelatedFormatting() throws Exception {
+        String baseSource = "package test;\n\n" +
+            "/* 父类：非常规格式应原样保留 */\n" +
+            "public class Base\n{\n" +
+            "    protected   int   value ;   // 行尾注释\n\n" +
+            "    public Base( ) {  value=1; }\n" +
+            "}\n";
+        String method = "    // 计算结果\n" +
+            "    public int calc() {\n        return value * 2;\n    }\n";
+        String childPrefix = "package test;\n\n" +
+            "public class Child extends Base {\n" +
+            "    int   other( )   { return   3 ; }  /* 保留 */\n\n";
+        String childSuffix = "\n    //   结尾注释\n}\n";
+        File base = writeFile("Base.java", baseSource);
+        File child = writeFile("Child.java", childPrefix + method + childSuffix);
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(tempDir.toString()), "Child", "calc", null);
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        assertEquals(childPrefix + childSuffix.substring(1), Files.readString(child.toPath()));
+        String expectedBase = "package test;\n\n" +
+            "/* 父类：非常规格式应原样保留 */\n" +
+            "public class Base\n{\n" +
+            "    protected   int   value ;   // 行尾注释\n\n" +
+            "    public Base( ) {  value=1; }\n" +
+            "\n" + method +
+            "}\n";
+        assertEquals(expectedBase, Files.readString(base.toPath()));
+    }
+
+    @Test
+    void testCrlfFilesKeepCrlfLineEndings() throws Exception {
+        String baseSource = "package test;\r\n\r\npublic class Base {\r\n    protected int value;\r\n}\r\n";
+        File base = writeFile("Base.java", baseSource);
+        File child = writeFile("Child.java", "package test;\r\n\r\nimport java.util.ArrayList;\r\n" +
+            "import java.util.List;\r\n\r\n" +
+            "public class Child extends Base {\r\n" +
+            "    /**\r\n     * 文档\r\n     */\r\n" +
+            "    @Deprecated\r\n    public List<Integer> values() {\r\n" +
+            "        List<Integer> list = new ArrayList<>();\r\n        list.add(value);\r\n        return list;\r\n    }\r\n}\r\n");
+
+        RefactoringResult result = new RefactoringOrchestrator().pullUpMethod(
+            Arrays.asList(tempDir.toString()), "Child", "values", null);
+
+        assertTrue(result.isSuccess(), "重构应该成功: " + result.getMessage());
+        String baseAfter = Files.readString(base.toPath());
+        assertTrue(baseAfter.contains("import java.util.List;\r\n"), baseAfter);
+        assertTrue(baseAfter.contains("public List<Integer> values()"), baseAfter);
+        assertEquals(-1, baseAfter.replace("\r\n", "").indexOf('\n'), "不应混入 LF 换行: " + baseAfter);
+        String childAfter = Files.readString(child.toPath());
+        assertFalse(childAfter.contains("values()"));
+        assertEquals(-1, childAfter.replace("\r\n", "").indexOf('\n'), "不应混入 LF 换行: " + childAfter);
+    }
+
+    @Test
+    void testModifierAndAnnotationEdits() throws Exception {
+        writeFile("Base.java", "package test;\npublic class Base {\n    public void run() { }\n}\n");
+        String source = "package test;\npublic class Child extends Base {\n" +
+            "    /** 文档 */\n    void  run()  { }\n" +
+            "    static   int helper() { return 1; }\n}\n";
+        writeFile("Child.java", source);
+        CtModel model = new ModelBuilder().buildModel(Arrays.asList(tempDir.toString()));
+        CtClass<?> childClass = new ClassFinder().findClass(model, "Child");
+        CtCompilationUnit unit = childClass.getPosition().getCompilationUnit();
+        CtMethod<?> run = childClass.getMethodsByName("run").get(0);
+        CtMethod<?> helper = childClass.getMethodsByName("helper").get(0);
+
+        ChangeJournal journal = ChangeJournal.begin(childClass.getFactory().getEnvironment());
+        run.addModifier(ModifierKind.PUBLIC);
+        run.addAnnotation(childClass.getFactory().createAnnotation(
+            childClass.getFactory().Type().createReference(Override.class)));
+        helper.removeModifier(ModifierKind.STATIC);
+        helper.addModifier(ModifierKind.FINAL);
+        journal.close();
+
+        String expected = "package test;\npublic class Child extends Base {\n" +
+            "    /** 文档 */\n    @Override\n    public void  run()  { }\n" +
+            "    final int helper() { return 1; }\n}\n";
+        assertEquals(expected, new TextEditEngine().apply(unit, journal));
+    }
+
+    @Test
+    void testUnsupportedChangeFallsBack() throws Exception {
+        writeFile("Child.java", "package test;\npublic class Child {\n    void run() { }\n}\n");
+        CtModel model = new ModelBuilder().buildModel(Arrays.asList(tempDir.toString()));
+        CtClass<?> childClass = new ClassFinder().findClass(model, "Child");
+        CtCompilationUnit unit = childClass.getPosition().getCompilationUnit();
+
+        ChangeJournal journal = ChangeJournal.begin(childClass.getFactory().getEnvironment());
+        childClass.getMethodsByName("run").get(0).setSimpleName("execute");
+        journal.close();
+
+        assertNull(new TextEditEngine().apply(unit, journal), "重命名无法表达为文本编辑，应回退到打印器");
+    }
+
+    private File writeFile(String name, String content) throws Exception {
+        File f = new File(tempDir.toFile(), name);
+        Files.writeString(f.toPath(), content);
+        return f;
+    }
+}